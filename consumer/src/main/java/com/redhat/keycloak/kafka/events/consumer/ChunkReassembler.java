@@ -0,0 +1,106 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Rebuilds values the listener split into chunks because they exceeded the producer's {@code max.request.size}.
+ * Feed every record of a topic in order, consumed as strings; unchunked values are returned as they are, chunks are
+ * buffered until the last one arrives and the complete value is returned. Pass the value to a deserializer as UTF-8.
+ *
+ * Incomplete values are bounded by the number of buffered characters. When the limit is exceeded, the oldest
+ * incomplete value is dropped, so a chunk lost to an aborted transaction cannot hold memory forever.
+ * Instances are not thread-safe; use one per consumer.
+ */
+public class ChunkReassembler {
+
+    private final long maxBufferedChars;
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private long bufferedChars;
+    private long dropped;
+
+    public ChunkReassembler(long maxBufferedChars) {
+        this.maxBufferedChars = maxBufferedChars;
+    }
+
+    private static final class Pending {
+        private final String[] parts;
+        private int received;
+        private long chars;
+
+        private Pending(int count) {
+            this.parts = new String[count];
+        }
+    }
+
+    /**
+     * Returns the complete value, or null while chunks of the value are still missing.
+     */
+    public String accept(ConsumerRecord<String, String> record) {
+        return accept(record.headers(), record.value());
+    }
+
+    public String accept(Headers headers, String value) {
+        String chunkId = EventHeaders.string(headers, EventHeaders.CHUNK_ID);
+        if (chunkId == null) {
+            return value;
+        }
+        int index = Integer.parseInt(EventHeaders.string(headers, EventHeaders.CHUNK_INDEX));
+        int count = Integer.parseInt(EventHeaders.string(headers, EventHeaders.CHUNK_COUNT));
+
+        Pending chunks = pending.computeIfAbsent(chunkId, id -> new Pending(count));
+        if (index < 0 || index >= chunks.parts.length || chunks.parts[index] != null) {
+            // Redelivered or malformed chunk
+            return null;
+        }
+        chunks.parts[index] = value;
+        chunks.received++;
+        int length = value != null ? value.length() : 0;
+        chunks.chars += length;
+        bufferedChars += length;
+
+        if (chunks.received < chunks.parts.length) {
+            evictOldest(chunkId);
+            return null;
+        }
+
+        pending.remove(chunkId);
+        bufferedChars -= chunks.chars;
+        StringBuilder builder = new StringBuilder((int) chunks.chars);
+        for (String part : chunks.parts) {
+            builder.append(part);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Drops the oldest incomplete values until the buffer fits, never the value that just received a chunk.
+     */
+    private void evictOldest(String current) {
+        Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+        while (bufferedChars > maxBufferedChars && iterator.hasNext()) {
+            Map.Entry<String, Pending> entry = iterator.next();
+            if (entry.getKey().equals(current)) {
+                continue;
+            }
+            bufferedChars -= entry.getValue().chars;
+            iterator.remove();
+            dropped++;
+        }
+    }
+
+    /**
+     * Number of values whose chunks were dropped before they were complete.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+}
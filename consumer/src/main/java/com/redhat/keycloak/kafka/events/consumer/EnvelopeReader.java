@@ -0,0 +1,105 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Unpacks envelope records, which the listener writes when several small events of one partition are packed into a
+ * single record. Records without the {@link EventHeaders#ENVELOPE_COUNT} header are returned as they are, so every
+ * record of a topic can be passed through {@link #unpack(ConsumerRecord)}.
+ *
+ * The unpacked records carry the key, headers and value of the original event, and the topic, partition, offset and
+ * timestamp of the envelope; all events of an envelope therefore share one offset. Headers are read from the array of
+ * {@code [key, base64 value]} pairs in their original order, including repeated keys, and from the object of UTF-8
+ * strings written by earlier versions. Pass them on to
+ * {@link ChunkReassembler} and the deserializers like any other record consumed as strings.
+ */
+public final class EnvelopeReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private EnvelopeReader() {
+    }
+
+    public static boolean isEnvelope(ConsumerRecord<String, String> record) {
+        return record.headers().lastHeader(EventHeaders.ENVELOPE_COUNT) != null;
+    }
+
+    /**
+     * Returns the events of the envelope in publishing order, or the record itself if it is not an envelope.
+     */
+    public static List<ConsumerRecord<String, String>> unpack(ConsumerRecord<String, String> record) {
+        if (!isEnvelope(record)) {
+            return Collections.singletonList(record);
+        }
+        int count = (int) EventHeaders.number(record.headers(), EventHeaders.ENVELOPE_COUNT, 0);
+        List<ConsumerRecord<String, String>> events = new ArrayList<>(count);
+        try (JsonParser parser = JSON.createParser(record.value())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new SerializationException("Envelope value is not a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                events.add(readEvent(record, parser));
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Malformed envelope at offset " + record.offset(), e);
+        }
+        if (events.size() != count) {
+            throw new SerializationException("Envelope at offset " + record.offset() + " holds " + events.size()
+                + " events, its header announces " + count);
+        }
+        return events;
+    }
+
+    private static ConsumerRecord<String, String> readEvent(ConsumerRecord<String, String> envelope, JsonParser parser)
+        throws IOException {
+        String key = null;
+        String value = null;
+        RecordHeaders headers = new RecordHeaders();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("key".equals(name)) {
+                key = parser.getValueAsString();
+            } else if ("value".equals(name)) {
+                value = parser.getValueAsString();
+            } else if ("headers".equals(name) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    parser.nextToken();
+                    String header = parser.getValueAsString();
+                    parser.nextToken();
+                    String encoded = parser.getValueAsString();
+                    if (header == null || parser.nextToken() != JsonToken.END_ARRAY) {
+                        throw new SerializationException("Envelope header is not a [key, value] pair");
+                    }
+                    headers.add(header, encoded != null ? Base64.getDecoder().decode(encoded) : null);
+                }
+            } else if ("headers".equals(name) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String header = parser.currentName();
+                    parser.nextToken();
+                    String text = parser.getValueAsString();
+                    headers.add(header, text != null ? text.getBytes(StandardCharsets.UTF_8) : null);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ConsumerRecord<>(envelope.topic(), envelope.partition(), envelope.offset(), envelope.timestamp(),
+            envelope.timestampType(), key != null ? key.length() : -1, value != null ? value.length() : -1, key, value,
+            headers, Optional.empty());
+    }
+}
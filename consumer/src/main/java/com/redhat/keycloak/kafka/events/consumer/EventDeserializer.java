@@ -0,0 +1,43 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.util.Map;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Shared part of the event deserializers. Deserializing only checks the schema version header and wraps the bytes;
+ * the payload is parsed when a payload field is first read.
+ */
+abstract class EventDeserializer<T extends KeycloakEventRecord> implements Deserializer<T> {
+
+    /**
+     * If true, records with a newer payload layout than this library supports fail with a SerializationException
+     * instead of being read leniently.
+     */
+    public static final String STRICT_SCHEMA_VERSION_CONFIG = "keycloak.events.strict.schema.version";
+
+    private boolean strict;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object value = configs.get(STRICT_SCHEMA_VERSION_CONFIG);
+        strict = value != null && Boolean.parseBoolean(value.toString());
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return deserialize(topic, new RecordHeaders(), data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        return create(headers, data, EventHeaders.schemaVersion(headers, strict));
+    }
+
+    protected abstract T create(Headers headers, byte[] data, int schemaVersion);
+}
@@ -0,0 +1,88 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Record headers written by the Keycloak Kafka event listener. The names are part of the wire format and match the
+ * listener's {@code CloudEventHeaders}.
+ */
+public final class EventHeaders {
+
+    public static final String SPEC_VERSION = "ce_specversion";
+    public static final String ID = "ce_id";
+    public static final String SOURCE = "ce_source";
+    public static final String TYPE = "ce_type";
+    public static final String TIME = "ce_time";
+    public static final String REALM_ID = "ce_realmid";
+    public static final String CLIENT_ID = "ce_clientid";
+    public static final String SCHEMA_VERSION = "ce_schemaversion";
+    public static final String NODE_CLOCK = "ce_nodeclock";
+    public static final String SEQUENCE = "ce_sequence";
+    public static final String SEQUENCE_EPOCH = "ce_sequenceepoch";
+    public static final String BACKFILL = "ce_backfill";
+    public static final String REPRESENTATION = "ce_representation";
+    public static final String REPRESENTATION_BASE = "ce_representationbase";
+    public static final String CHUNK_ID = "ce_chunkid";
+    public static final String CHUNK_INDEX = "ce_chunkindex";
+    public static final String CHUNK_COUNT = "ce_chunkcount";
+    public static final String ENVELOPE_COUNT = "ce_envelopecount";
+    public static final String ENVELOPE_FIRST_TIME = "ce_envelopefirsttime";
+    public static final String ENVELOPE_LAST_TIME = "ce_envelopelasttime";
+    public static final String ENCRYPTION_KEY_ID = "ce_encryptionkeyid";
+    public static final String ENCRYPTED_FIELDS = "ce_encryptedfields";
+
+    public static final String EVENT_TYPE_PREFIX = "com.redhat.keycloak.event.";
+    public static final String ADMIN_EVENT_TYPE_PREFIX = "com.redhat.keycloak.admin-event.";
+
+    /**
+     * Newest payload layout this library understands. Records without a schema version header use layout 1.
+     */
+    public static final int SUPPORTED_SCHEMA_VERSION = 1;
+
+    private EventHeaders() {
+    }
+
+    /**
+     * Reads a header value as a UTF-8 string, or returns null if the header is absent.
+     */
+    public static String string(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header != null && header.value() != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Reads a decimal header value, or returns the default if the header is absent.
+     */
+    public static long number(Headers headers, String key, long defaultValue) {
+        Header header = headers.lastHeader(key);
+        if (header == null || header.value() == null || header.value().length == 0) {
+            return defaultValue;
+        }
+        // Parsed from the bytes, the values are ASCII digits
+        long value = 0;
+        for (byte digit : header.value()) {
+            if (digit < '0' || digit > '9') {
+                throw new SerializationException("Header " + key + " is not a number");
+            }
+            value = value * 10 + (digit - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the payload layout version of the record. A newer layout than {@link #SUPPORTED_SCHEMA_VERSION} is
+     * rejected in strict mode; otherwise it is read as far as it is understood, skipping unknown fields.
+     */
+    static int schemaVersion(Headers headers, boolean strict) {
+        int version = (int) number(headers, SCHEMA_VERSION, 1);
+        if (strict && version > SUPPORTED_SCHEMA_VERSION) {
+            throw new SerializationException("Unsupported event schema version " + version + ", this library reads "
+                + "up to version " + SUPPORTED_SCHEMA_VERSION);
+        }
+        return version;
+    }
+}
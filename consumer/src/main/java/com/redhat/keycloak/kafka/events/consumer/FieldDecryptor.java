@@ -0,0 +1,100 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Decrypts payload fields the listener encrypted with AES-GCM. The record names its key in
+ * {@link EventHeaders#ENCRYPTION_KEY_ID} and the encrypted dotted paths, such as {@code details.email}, in
+ * {@link EventHeaders#ENCRYPTED_FIELDS}. Keep every key that may still appear in the topic: after a rotation, older
+ * records carry the id of the previous key.
+ *
+ * An encrypted value is the Base64 encoding of the 12 byte IV, the ciphertext and the 16 byte tag, with the path as
+ * additional authenticated data. Instances are thread-safe; each thread reuses its cipher.
+ */
+public class FieldDecryptor {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(TRANSFORMATION + " is not available", e);
+        }
+    });
+
+    private final Map<String, SecretKey> keys;
+
+    /**
+     * @param keys keys by the id the listener publishes, the keystore alias
+     */
+    public FieldDecryptor(Map<String, SecretKey> keys) {
+        this.keys = Collections.unmodifiableMap(new HashMap<>(keys));
+    }
+
+    /**
+     * Uses every AES key of the keystore, by alias.
+     */
+    public static FieldDecryptor fromKeyStore(KeyStore keyStore, char[] password) throws GeneralSecurityException {
+        Map<String, SecretKey> keys = new HashMap<>();
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isKeyEntry(alias)) {
+                Key key = keyStore.getKey(alias, password);
+                if (key instanceof SecretKey && "AES".equalsIgnoreCase(key.getAlgorithm())) {
+                    keys.put(alias, (SecretKey) key);
+                }
+            }
+        }
+        return new FieldDecryptor(keys);
+    }
+
+    /**
+     * Whether the listener encrypted the field of this record.
+     */
+    public static boolean isEncrypted(Headers headers, String path) {
+        String fields = EventHeaders.string(headers, EventHeaders.ENCRYPTED_FIELDS);
+        return fields != null && Arrays.asList(fields.split(",")).contains(path);
+    }
+
+    /**
+     * Returns the clear text of the field, or the value as it is if the record does not list the field as encrypted.
+     *
+     * @throws SerializationException if the key is unknown or the value was altered
+     */
+    public String decrypt(Headers headers, String path, String value) {
+        if (value == null || !isEncrypted(headers, path)) {
+            return value;
+        }
+        String keyId = EventHeaders.string(headers, EventHeaders.ENCRYPTION_KEY_ID);
+        SecretKey key = keyId != null ? keys.get(keyId) : null;
+        if (key == null) {
+            throw new SerializationException("Unknown encryption key " + keyId + " of field " + path);
+        }
+        try {
+            byte[] input = Base64.getDecoder().decode(value);
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, input, 0, IV_BYTES));
+            cipher.updateAAD(path.getBytes(StandardCharsets.UTF_8));
+            byte[] plaintext = cipher.doFinal(input, IV_BYTES, input.length - IV_BYTES);
+            return new String(plaintext, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new SerializationException("Failed to decrypt field " + path + " with key " + keyId, e);
+        }
+    }
+}
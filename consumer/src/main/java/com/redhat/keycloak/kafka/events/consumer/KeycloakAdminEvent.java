@@ -0,0 +1,163 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.io.IOException;
+
+import org.apache.kafka.common.header.Headers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * An admin event as published to the admin events topic. The auth fields describe the admin performing the change.
+ */
+public class KeycloakAdminEvent extends KeycloakEventRecord {
+
+    /**
+     * Value of the representation header when the representation is a JSON merge patch.
+     */
+    public static final String MERGE_PATCH = "merge-patch";
+
+    private String resourceType;
+    private String operationType;
+    private String resourcePath;
+    private String representation;
+    private String authRealmId;
+    private String authClientId;
+    private String authUserId;
+    private String authIpAddress;
+
+    public KeycloakAdminEvent(Headers headers, byte[] payload, int schemaVersion) {
+        super(headers, payload, schemaVersion);
+    }
+
+    /**
+     * Resource type name, for example {@code CLIENT}, including custom resource types.
+     */
+    public String getResourceType() {
+        String value = typeHeader(EventHeaders.ADMIN_EVENT_TYPE_PREFIX);
+        if (value != null) {
+            return value.substring(0, value.lastIndexOf('.'));
+        }
+        ensureParsed();
+        return resourceType;
+    }
+
+    /**
+     * Operation name: {@code CREATE}, {@code UPDATE}, {@code DELETE} or {@code ACTION}.
+     */
+    public String getOperationType() {
+        String value = typeHeader(EventHeaders.ADMIN_EVENT_TYPE_PREFIX);
+        if (value != null) {
+            return value.substring(value.lastIndexOf('.') + 1);
+        }
+        ensureParsed();
+        return operationType;
+    }
+
+    public String getResourcePath() {
+        ensureParsed();
+        return resourcePath;
+    }
+
+    /**
+     * The representation, or a JSON merge patch of it when {@link #isMergePatch()} is true.
+     */
+    public String getRepresentation() {
+        ensureParsed();
+        return representation;
+    }
+
+    /**
+     * Whether the representation is a merge patch against the event named by {@link #getRepresentationBase()}.
+     */
+    public boolean isMergePatch() {
+        return MERGE_PATCH.equals(EventHeaders.string(getHeaders(), EventHeaders.REPRESENTATION));
+    }
+
+    public String getRepresentationBase() {
+        return EventHeaders.string(getHeaders(), EventHeaders.REPRESENTATION_BASE);
+    }
+
+    public String getAuthRealmId() {
+        ensureParsed();
+        return authRealmId;
+    }
+
+    public String getAuthClientId() {
+        String value = EventHeaders.string(getHeaders(), EventHeaders.CLIENT_ID);
+        if (value != null) {
+            return value;
+        }
+        ensureParsed();
+        return authClientId;
+    }
+
+    public String getAuthUserId() {
+        ensureParsed();
+        return authUserId;
+    }
+
+    public String getAuthIpAddress() {
+        ensureParsed();
+        return authIpAddress;
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser) throws IOException {
+        switch (name) {
+            case "resourceType":
+                if (resourceType == null) {
+                    resourceType = parser.getValueAsString();
+                }
+                return true;
+            case "resourceTypeAsString":
+                // Also set for custom resource types, which have no enum value
+                String value = parser.getValueAsString();
+                if (value != null) {
+                    resourceType = value;
+                }
+                return true;
+            case "operationType":
+                operationType = parser.getValueAsString();
+                return true;
+            case "resourcePath":
+                resourcePath = parser.getValueAsString();
+                return true;
+            case "representation":
+                representation = parser.getValueAsString();
+                return true;
+            case "authDetails":
+                readAuthDetails(parser);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readAuthDetails(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            parser.nextToken();
+            switch (name) {
+                case "realmId":
+                    authRealmId = parser.getValueAsString();
+                    break;
+                case "clientId":
+                    authClientId = parser.getValueAsString();
+                    break;
+                case "userId":
+                    authUserId = parser.getValueAsString();
+                    break;
+                case "ipAddress":
+                    authIpAddress = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+}
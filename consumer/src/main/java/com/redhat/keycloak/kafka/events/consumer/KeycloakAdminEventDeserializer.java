@@ -0,0 +1,14 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Deserializer for the admin events topic, see {@link KeycloakAdminEvent}.
+ */
+public class KeycloakAdminEventDeserializer extends EventDeserializer<KeycloakAdminEvent> {
+
+    @Override
+    protected KeycloakAdminEvent create(Headers headers, byte[] data, int schemaVersion) {
+        return new KeycloakAdminEvent(headers, data, schemaVersion);
+    }
+}
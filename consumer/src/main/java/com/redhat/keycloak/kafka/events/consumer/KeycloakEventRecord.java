@@ -0,0 +1,208 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Base of the typed events. Values carried in headers are read from the headers, so routing on id, type, realm or
+ * ordering never touches the payload. The payload is parsed on the first access to a field that is only in the
+ * payload, in one streaming pass without building a tree. Unknown fields are skipped, so fields added by newer
+ * listener versions do not break consumers.
+ *
+ * Instances are not thread-safe.
+ */
+public abstract class KeycloakEventRecord {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Headers headers;
+    private final byte[] payload;
+    private final int schemaVersion;
+    private boolean parsed;
+
+    private String id;
+    private long time;
+    private String realmId;
+    private String error;
+    private Map<String, String> enrichment = Collections.emptyMap();
+
+    protected KeycloakEventRecord(Headers headers, byte[] payload, int schemaVersion) {
+        this.headers = headers;
+        this.payload = payload;
+        this.schemaVersion = schemaVersion;
+    }
+
+    public Headers getHeaders() {
+        return headers;
+    }
+
+    /**
+     * The JSON payload as received, for passing the event on unchanged.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public String getId() {
+        String value = EventHeaders.string(headers, EventHeaders.ID);
+        if (value != null) {
+            return value;
+        }
+        ensureParsed();
+        return id;
+    }
+
+    /**
+     * Event time in epoch milliseconds.
+     */
+    public long getTime() {
+        String value = EventHeaders.string(headers, EventHeaders.TIME);
+        if (value != null) {
+            return Instant.parse(value).toEpochMilli();
+        }
+        ensureParsed();
+        return time;
+    }
+
+    public String getRealmId() {
+        String value = EventHeaders.string(headers, EventHeaders.REALM_ID);
+        if (value != null) {
+            return value;
+        }
+        ensureParsed();
+        return realmId;
+    }
+
+    public String getError() {
+        ensureParsed();
+        return error;
+    }
+
+    /**
+     * Attributes added by the listener's enrichment, empty if none were configured.
+     */
+    public Map<String, String> getEnrichment() {
+        ensureParsed();
+        return enrichment;
+    }
+
+    /**
+     * Monotonic timestamp of the publishing node, or -1 if absent. It orders the events of one node only.
+     */
+    public long getNodeClock() {
+        return EventHeaders.number(headers, EventHeaders.NODE_CLOCK, -1);
+    }
+
+    /**
+     * Per-user sequence number of the publishing node, or -1 if the event is not sequenced.
+     */
+    public long getSequence() {
+        return EventHeaders.number(headers, EventHeaders.SEQUENCE, -1);
+    }
+
+    /**
+     * Epoch of the sequence, {@code <nodeClock>-<nodeId>}, or null if the event is not sequenced. Sequence numbers are only
+     * comparable within one epoch.
+     */
+    public String getSequenceEpoch() {
+        return EventHeaders.string(headers, EventHeaders.SEQUENCE_EPOCH);
+    }
+
+    /**
+     * Whether the event was replayed from the Keycloak event store.
+     */
+    public boolean isBackfill() {
+        return "true".equals(EventHeaders.string(headers, EventHeaders.BACKFILL));
+    }
+
+    /**
+     * Type header without its prefix, or null if absent.
+     */
+    protected String typeHeader(String prefix) {
+        String value = EventHeaders.string(headers, EventHeaders.TYPE);
+        return value != null && value.startsWith(prefix) ? value.substring(prefix.length()) : null;
+    }
+
+    protected final void ensureParsed() {
+        if (parsed) {
+            return;
+        }
+        parsed = true;
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new SerializationException("Event payload is not a JSON object");
+            }
+            String name;
+            while ((name = parser.nextFieldName()) != null) {
+                parser.nextToken();
+                if (!readCommonField(name, parser) && !readField(name, parser)) {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Invalid event payload", e);
+        }
+    }
+
+    private boolean readCommonField(String name, JsonParser parser) throws IOException {
+        switch (name) {
+            case "id":
+                id = parser.getValueAsString();
+                return true;
+            case "time":
+                time = parser.getValueAsLong();
+                return true;
+            case "realmId":
+                realmId = parser.getValueAsString();
+                return true;
+            case "error":
+                error = parser.getValueAsString();
+                return true;
+            case "enrichment":
+                enrichment = readStringMap(parser);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads a field of the concrete event type. Returns false for unknown fields, which are skipped.
+     */
+    protected abstract boolean readField(String name, JsonParser parser) throws IOException;
+
+    /**
+     * Reads an object of string values at the current token. Nested values are skipped.
+     */
+    protected static Map<String, String> readStringMap(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return Collections.emptyMap();
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if (token.isScalarValue()) {
+                values.put(name, parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,93 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.kafka.common.header.Headers;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A user event, such as LOGIN or REGISTER, as published to the events topic.
+ */
+public class KeycloakUserEvent extends KeycloakEventRecord {
+
+    private String type;
+    private String clientId;
+    private String userId;
+    private String sessionId;
+    private String ipAddress;
+    private Map<String, String> details = Collections.emptyMap();
+
+    public KeycloakUserEvent(Headers headers, byte[] payload, int schemaVersion) {
+        super(headers, payload, schemaVersion);
+    }
+
+    /**
+     * Keycloak event type name, for example {@code LOGIN}.
+     */
+    public String getType() {
+        String value = typeHeader(EventHeaders.EVENT_TYPE_PREFIX);
+        if (value != null) {
+            return value;
+        }
+        ensureParsed();
+        return type;
+    }
+
+    public String getClientId() {
+        String value = EventHeaders.string(getHeaders(), EventHeaders.CLIENT_ID);
+        if (value != null) {
+            return value;
+        }
+        ensureParsed();
+        return clientId;
+    }
+
+    public String getUserId() {
+        ensureParsed();
+        return userId;
+    }
+
+    public String getSessionId() {
+        ensureParsed();
+        return sessionId;
+    }
+
+    public String getIpAddress() {
+        ensureParsed();
+        return ipAddress;
+    }
+
+    public Map<String, String> getDetails() {
+        ensureParsed();
+        return details;
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser) throws IOException {
+        switch (name) {
+            case "type":
+                type = parser.getValueAsString();
+                return true;
+            case "clientId":
+                clientId = parser.getValueAsString();
+                return true;
+            case "userId":
+                userId = parser.getValueAsString();
+                return true;
+            case "sessionId":
+                sessionId = parser.getValueAsString();
+                return true;
+            case "ipAddress":
+                ipAddress = parser.getValueAsString();
+                return true;
+            case "details":
+                details = readStringMap(parser);
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Deserializer for the events topic, see {@link KeycloakUserEvent}.
+ */
+public class KeycloakUserEventDeserializer extends EventDeserializer<KeycloakUserEvent> {
+
+    @Override
+    protected KeycloakUserEvent create(Headers headers, byte[] data, int schemaVersion) {
+        return new KeycloakUserEvent(headers, data, schemaVersion);
+    }
+}
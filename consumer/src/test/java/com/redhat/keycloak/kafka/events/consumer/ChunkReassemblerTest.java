@@ -0,0 +1,51 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+class ChunkReassemblerTest {
+
+    @Test
+    void shouldReassembleInterleavedAndRedeliveredChunks() {
+        ChunkReassembler reassembler = new ChunkReassembler(1_000_000);
+
+        for (int i = 0; i < 4; i++) {
+            assertNull(reassembler.accept(chunk("first", i, 5), "x".repeat(1000)));
+            assertNull(reassembler.accept(chunk("second", i, 5), "y".repeat(1000)));
+        }
+        assertNull(reassembler.accept(chunk("first", 0, 5), "x".repeat(1000)));
+        assertEquals("x".repeat(5000), reassembler.accept(chunk("first", 4, 5), "x".repeat(1000)));
+        assertEquals("y".repeat(5000), reassembler.accept(chunk("second", 4, 5), "y".repeat(1000)));
+        assertEquals("plain", reassembler.accept(new RecordHeaders(), "plain"));
+        assertEquals(0, reassembler.getPendingCount());
+    }
+
+    @Test
+    void shouldDropOldestIncompleteValueWhenBufferIsFull() {
+        ChunkReassembler reassembler = new ChunkReassembler(4000);
+
+        reassembler.accept(chunk("lost", 0, 5), "x".repeat(1000));
+        String result = null;
+        for (int i = 0; i < 5; i++) {
+            result = reassembler.accept(chunk("complete", i, 5), "y".repeat(1000));
+        }
+
+        assertEquals("y".repeat(5000), result);
+        assertEquals(1, reassembler.getDropped());
+        assertEquals(0, reassembler.getPendingCount());
+    }
+
+    private static Headers chunk(String id, int index, int count) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(EventHeaders.CHUNK_ID, id.getBytes(StandardCharsets.UTF_8));
+        headers.add(EventHeaders.CHUNK_INDEX, Integer.toString(index).getBytes(StandardCharsets.UTF_8));
+        headers.add(EventHeaders.CHUNK_COUNT, Integer.toString(count).getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+}
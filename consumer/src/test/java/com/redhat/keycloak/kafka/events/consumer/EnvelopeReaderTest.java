@@ -0,0 +1,87 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+
+class EnvelopeReaderTest {
+
+    @Test
+    void shouldUnpackEventsInOrderWithTheirKeysAndHeaders() {
+        String value = "[{\"key\":\"user-1\",\"headers\":[[\"ce_id\",\"MQ==\"],[\"ce_chunkid\",\"Yw==\"]],"
+            + "\"value\":\"{\\\"a\\\":1}\"},"
+            + "{\"key\":null,\"headers\":[[\"ce_id\",\"Mg==\"]],\"value\":\"{}\",\"future\":[1,2]}]";
+
+        List<ConsumerRecord<String, String>> events = EnvelopeReader.unpack(envelope(value, 2));
+
+        assertEquals(2, events.size());
+        assertEquals("user-1", events.get(0).key());
+        assertEquals("{\"a\":1}", events.get(0).value());
+        assertEquals("1", EventHeaders.string(events.get(0).headers(), EventHeaders.ID));
+        assertEquals("c", EventHeaders.string(events.get(0).headers(), EventHeaders.CHUNK_ID));
+        assertNull(events.get(1).key());
+        assertEquals("2", EventHeaders.string(events.get(1).headers(), EventHeaders.ID));
+        assertEquals(42, events.get(1).offset());
+        assertEquals(3, events.get(1).partition());
+    }
+
+    @Test
+    void shouldKeepBinaryAndRepeatedHeaders() {
+        byte[] binary = { (byte) 0xff, 0, (byte) 0xc3 };
+        String value = "[{\"key\":null,\"headers\":[[\"trace\",\"" + Base64.getEncoder().encodeToString(binary)
+            + "\"],[\"tag\",\"YQ==\"],[\"tag\",\"Yg==\"],[\"empty\",null]],\"value\":\"{}\"}]";
+
+        ConsumerRecord<String, String> event = EnvelopeReader.unpack(envelope(value, 1)).get(0);
+
+        assertArrayEquals(binary, event.headers().lastHeader("trace").value());
+        Header[] tags = event.headers().toArray();
+        assertEquals("tag", tags[1].key());
+        assertEquals("a", new String(tags[1].value(), StandardCharsets.UTF_8));
+        assertEquals("tag", tags[2].key());
+        assertEquals("b", new String(tags[2].value(), StandardCharsets.UTF_8));
+        assertNull(event.headers().lastHeader("empty").value());
+    }
+
+    @Test
+    void shouldReadHeadersOfEarlierEnvelopes() {
+        String value = "[{\"key\":null,\"headers\":{\"ce_id\":\"1\"},\"value\":\"{}\"}]";
+
+        ConsumerRecord<String, String> event = EnvelopeReader.unpack(envelope(value, 1)).get(0);
+
+        assertEquals("1", EventHeaders.string(event.headers(), EventHeaders.ID));
+    }
+
+    @Test
+    void shouldPassThroughPlainRecords() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("events", 0, 7, "key", "{}");
+
+        assertSame(record, EnvelopeReader.unpack(record).get(0));
+    }
+
+    @Test
+    void shouldRejectEnvelopesNotMatchingTheirCount() {
+        assertThrows(SerializationException.class, () -> EnvelopeReader.unpack(envelope("[]", 1)));
+        assertThrows(SerializationException.class, () -> EnvelopeReader.unpack(envelope("{}", 0)));
+    }
+
+    private static ConsumerRecord<String, String> envelope(String value, int count) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(EventHeaders.ENVELOPE_COUNT, Integer.toString(count).getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>("events", 3, 42, 1000L, TimestampType.CREATE_TIME, -1, value.length(), null,
+            value, headers, Optional.empty());
+    }
+}
@@ -0,0 +1,93 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the lazy deserializers with parsing every record into a tree up front, as a consumer using
+ * {@code ObjectMapper.readTree} would. Run with {@code mvn -B -f consumer/pom.xml test -Dtest=EventDeserializerBenchmark}.
+ */
+class EventDeserializerBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TOPIC = "keycloak-events";
+
+    // Payload and headers as the listener writes them for a LOGIN
+    private static final byte[] USER_EVENT = ("{\"id\":\"5b0f3c9e-8d6a-4d41-9a43-0c2b7f1e6d55\","
+        + "\"time\":1700000000000,\"type\":\"LOGIN\",\"realmId\":\"7c1d2e55-3f4a-4b6c-8d9e-0a1b2c3d4e5f\","
+        + "\"clientId\":\"account-console\",\"userId\":\"0e8f9a1b-2c3d-4e5f-6a7b-8c9d0e1f2a3b\","
+        + "\"sessionId\":\"1a2b3c4d-5e6f-7a8b-9c0d-1e2f3a4b5c6d\",\"ipAddress\":\"10.0.0.1\",\"error\":null,"
+        + "\"details\":{\"auth_method\":\"openid-connect\",\"auth_type\":\"code\","
+        + "\"redirect_uri\":\"https://sso.example.com/realms/demo/account/\",\"consent\":\"no_consent_required\","
+        + "\"code_id\":\"1a2b3c4d-5e6f-7a8b-9c0d-1e2f3a4b5c6d\",\"username\":\"alice\"}}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    // An admin update carrying a client representation of about 4 KiB
+    private static final byte[] ADMIN_EVENT = ("{\"id\":\"admin-1\",\"time\":1700000000000,\"realmId\":\"realm-1\","
+        + "\"authDetails\":{\"realmId\":\"master\",\"clientId\":\"admin-cli\",\"userId\":\"admin\","
+        + "\"ipAddress\":\"10.0.0.2\"},\"resourceType\":\"CLIENT\",\"operationType\":\"UPDATE\","
+        + "\"resourcePath\":\"clients/c1\",\"representation\":\"{\\\"attributes\\\":{"
+        + "\\\"key\\\":\\\"value\\\",".repeat(200) + "\\\"last\\\":\\\"value\\\"}}\",\"error\":null}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void compareLazyAndEagerReads() throws Exception {
+        RecordHeaders userHeaders = new RecordHeaders();
+        add(userHeaders, EventHeaders.ID, "5b0f3c9e-8d6a-4d41-9a43-0c2b7f1e6d55");
+        add(userHeaders, EventHeaders.TYPE, EventHeaders.EVENT_TYPE_PREFIX + "LOGIN");
+        add(userHeaders, EventHeaders.REALM_ID, "7c1d2e55-3f4a-4b6c-8d9e-0a1b2c3d4e5f");
+        add(userHeaders, EventHeaders.SCHEMA_VERSION, "1");
+        RecordHeaders adminHeaders = new RecordHeaders();
+        add(adminHeaders, EventHeaders.TYPE, EventHeaders.ADMIN_EVENT_TYPE_PREFIX + "CLIENT.UPDATE");
+        add(adminHeaders, EventHeaders.SCHEMA_VERSION, "1");
+        KeycloakUserEventDeserializer users = new KeycloakUserEventDeserializer();
+        KeycloakAdminEventDeserializer admins = new KeycloakAdminEventDeserializer();
+
+        assertEquals("LOGIN", users.deserialize(TOPIC, userHeaders, USER_EVENT).getType());
+        assertEquals("LOGIN", MAPPER.readTree(USER_EVENT).get("type").asText());
+
+        System.out.println("User event of " + USER_EVENT.length + " bytes");
+        Microbenchmark.measure("lazy, type and realm from headers", () -> {
+            KeycloakUserEvent event = users.deserialize(TOPIC, userHeaders, USER_EVENT);
+            return event.getType() + event.getRealmId();
+        });
+        Microbenchmark.measure("readTree, type and realm", () -> {
+            JsonNode event = MAPPER.readTree(USER_EVENT);
+            return event.get("type").asText() + event.get("realmId").asText();
+        });
+        Microbenchmark.measure("lazy, user id from payload", () ->
+            users.deserialize(TOPIC, userHeaders, USER_EVENT).getUserId());
+        Microbenchmark.measure("readTree, user id", () -> MAPPER.readTree(USER_EVENT).get("userId").asText());
+        Microbenchmark.measure("lazy, every field", () -> {
+            KeycloakUserEvent event = users.deserialize(TOPIC, userHeaders, USER_EVENT);
+            return event.getUserId() + event.getSessionId() + event.getIpAddress() + event.getClientId()
+                + event.getDetails().size();
+        });
+        Microbenchmark.measure("readTree, every field", () -> {
+            JsonNode event = MAPPER.readTree(USER_EVENT);
+            return event.get("userId").asText() + event.get("sessionId").asText() + event.get("ipAddress").asText()
+                + event.get("clientId").asText() + event.get("details").size();
+        });
+
+        System.out.println("Admin event of " + ADMIN_EVENT.length + " bytes");
+        Microbenchmark.measure("lazy, resource type from headers", () ->
+            admins.deserialize(TOPIC, adminHeaders, ADMIN_EVENT).getResourceType());
+        Microbenchmark.measure("readTree, resource type", () ->
+            MAPPER.readTree(ADMIN_EVENT).get("resourceType").asText());
+        Microbenchmark.measure("lazy, resource path from payload", () ->
+            admins.deserialize(TOPIC, adminHeaders, ADMIN_EVENT).getResourcePath());
+        Microbenchmark.measure("readTree, resource path", () ->
+            MAPPER.readTree(ADMIN_EVENT).get("resourcePath").asText());
+    }
+
+    private static void add(RecordHeaders headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
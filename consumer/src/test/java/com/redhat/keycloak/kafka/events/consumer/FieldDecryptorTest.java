@@ -0,0 +1,68 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+class FieldDecryptorTest {
+
+    private static final SecretKey OLD_KEY = new SecretKeySpec(new byte[32], "AES");
+    private static final SecretKey NEW_KEY = new SecretKeySpec(new byte[] {
+        1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }, "AES");
+
+    private final FieldDecryptor decryptor = new FieldDecryptor(Map.of("key-1", OLD_KEY, "key-2", NEW_KEY));
+
+    @Test
+    void shouldDecryptFieldsWithTheKeyOfTheRecord() throws Exception {
+        assertEquals("10.0.0.1", decryptor.decrypt(headers("key-1", "ipAddress,details.email"), "ipAddress",
+            encrypt(OLD_KEY, "ipAddress", "10.0.0.1")));
+        assertEquals("alice@example.com", decryptor.decrypt(headers("key-2", "ipAddress,details.email"),
+            "details.email", encrypt(NEW_KEY, "details.email", "alice@example.com")));
+        assertEquals("alice", decryptor.decrypt(headers("key-2", "ipAddress"), "details.username", "alice"));
+    }
+
+    @Test
+    void shouldRejectUnknownKeysAndMovedValues() throws Exception {
+        String ip = encrypt(NEW_KEY, "ipAddress", "10.0.0.1");
+
+        assertThrows(SerializationException.class,
+            () -> decryptor.decrypt(headers("key-3", "ipAddress"), "ipAddress", ip));
+        assertThrows(SerializationException.class,
+            () -> decryptor.decrypt(headers("key-2", "details.email"), "details.email", ip));
+        assertThrows(SerializationException.class,
+            () -> decryptor.decrypt(headers("key-1", "ipAddress"), "ipAddress", ip));
+    }
+
+    private static Headers headers(String keyId, String fields) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(EventHeaders.ENCRYPTION_KEY_ID, keyId.getBytes(StandardCharsets.UTF_8));
+        headers.add(EventHeaders.ENCRYPTED_FIELDS, fields.getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    private static String encrypt(SecretKey key, String path, String value) throws Exception {
+        byte[] iv = new byte[12];
+        iv[11] = 7;
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        cipher.updateAAD(path.getBytes(StandardCharsets.UTF_8));
+        byte[] ciphertext = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        byte[] output = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, output, 0, iv.length);
+        System.arraycopy(ciphertext, 0, output, iv.length, ciphertext.length);
+        return Base64.getEncoder().encodeToString(output);
+    }
+}
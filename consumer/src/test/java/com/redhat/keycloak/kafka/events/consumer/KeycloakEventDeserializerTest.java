@@ -0,0 +1,126 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+class KeycloakEventDeserializerTest {
+
+    // Payload layout as written by the listener's ObjectMapper, with a field a newer listener might add
+    private static final String USER_EVENT = "{\"id\":\"event-1\",\"time\":1700000000000,\"type\":\"LOGIN\","
+        + "\"realmId\":\"realm-1\",\"clientId\":\"account\",\"userId\":\"user-1\",\"sessionId\":\"session-1\","
+        + "\"ipAddress\":\"10.0.0.1\",\"error\":null,\"details\":{\"auth_method\":\"openid-connect\"},"
+        + "\"futureField\":{\"nested\":[1,2,3]},\"enrichment\":{\"user.username\":\"alice\"}}";
+
+    private static final String ADMIN_EVENT = "{\"id\":\"admin-1\",\"time\":1700000000000,\"realmId\":\"realm-1\","
+        + "\"authDetails\":{\"realmId\":\"master\",\"clientId\":\"admin-cli\",\"userId\":\"admin\","
+        + "\"ipAddress\":\"10.0.0.2\"},\"resourceType\":\"CUSTOM\",\"operationType\":\"UPDATE\","
+        + "\"resourcePath\":\"clients/c1\",\"representation\":\"{\\\"enabled\\\":false}\",\"error\":null,"
+        + "\"resourceTypeAsString\":\"MY_RESOURCE\"}";
+
+    @Test
+    void shouldReadUserEventFromPayload() {
+        KeycloakUserEvent event = new KeycloakUserEventDeserializer()
+            .deserialize("keycloak-events", USER_EVENT.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("event-1", event.getId());
+        assertEquals(1700000000000L, event.getTime());
+        assertEquals("LOGIN", event.getType());
+        assertEquals("realm-1", event.getRealmId());
+        assertEquals("account", event.getClientId());
+        assertEquals("user-1", event.getUserId());
+        assertEquals("session-1", event.getSessionId());
+        assertEquals("10.0.0.1", event.getIpAddress());
+        assertNull(event.getError());
+        assertEquals(Map.of("auth_method", "openid-connect"), event.getDetails());
+        assertEquals(Map.of("user.username", "alice"), event.getEnrichment());
+        assertEquals(1, event.getSchemaVersion());
+        assertEquals(-1, event.getSequence());
+    }
+
+    @Test
+    void shouldServeHeaderFieldsWithoutParsingThePayload() {
+        RecordHeaders headers = new RecordHeaders();
+        add(headers, EventHeaders.ID, "event-1");
+        add(headers, EventHeaders.TYPE, EventHeaders.EVENT_TYPE_PREFIX + "LOGIN");
+        add(headers, EventHeaders.REALM_ID, "realm-1");
+        add(headers, EventHeaders.TIME, "2023-11-14T22:13:20Z");
+        add(headers, EventHeaders.NODE_CLOCK, "111");
+        add(headers, EventHeaders.SEQUENCE, "7");
+        add(headers, EventHeaders.SCHEMA_VERSION, "1");
+
+        // Not valid JSON: any payload access would fail
+        KeycloakUserEvent event = new KeycloakUserEventDeserializer()
+            .deserialize("keycloak-events", headers, "not json".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("event-1", event.getId());
+        assertEquals("LOGIN", event.getType());
+        assertEquals("realm-1", event.getRealmId());
+        assertEquals(1700000000000L, event.getTime());
+        assertEquals(111, event.getNodeClock());
+        assertEquals(7, event.getSequence());
+        assertFalse(event.isBackfill());
+        assertThrows(SerializationException.class, event::getUserId);
+    }
+
+    @Test
+    void shouldReadAdminEventWithCustomResourceType() {
+        RecordHeaders headers = new RecordHeaders();
+        add(headers, EventHeaders.REPRESENTATION, KeycloakAdminEvent.MERGE_PATCH);
+        add(headers, EventHeaders.REPRESENTATION_BASE, "admin-0");
+
+        KeycloakAdminEvent event = new KeycloakAdminEventDeserializer()
+            .deserialize("admin-events", headers, ADMIN_EVENT.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("MY_RESOURCE", event.getResourceType());
+        assertEquals("UPDATE", event.getOperationType());
+        assertEquals("clients/c1", event.getResourcePath());
+        assertEquals("{\"enabled\":false}", event.getRepresentation());
+        assertEquals("master", event.getAuthRealmId());
+        assertEquals("admin-cli", event.getAuthClientId());
+        assertEquals("admin", event.getAuthUserId());
+        assertEquals("10.0.0.2", event.getAuthIpAddress());
+        assertTrue(event.isMergePatch());
+        assertEquals("admin-0", event.getRepresentationBase());
+    }
+
+    @Test
+    void shouldSplitAdminTypeHeader() {
+        RecordHeaders headers = new RecordHeaders();
+        add(headers, EventHeaders.TYPE, EventHeaders.ADMIN_EVENT_TYPE_PREFIX + "REALM_ROLE.CREATE");
+
+        KeycloakAdminEvent event = new KeycloakAdminEventDeserializer()
+            .deserialize("admin-events", headers, "{}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("REALM_ROLE", event.getResourceType());
+        assertEquals("CREATE", event.getOperationType());
+    }
+
+    @Test
+    void shouldRejectNewerSchemaVersionOnlyInStrictMode() {
+        RecordHeaders headers = new RecordHeaders();
+        add(headers, EventHeaders.SCHEMA_VERSION, "2");
+        byte[] payload = USER_EVENT.getBytes(StandardCharsets.UTF_8);
+
+        KeycloakUserEventDeserializer lenient = new KeycloakUserEventDeserializer();
+        assertEquals("user-1", lenient.deserialize("keycloak-events", headers, payload).getUserId());
+
+        KeycloakUserEventDeserializer strict = new KeycloakUserEventDeserializer();
+        strict.configure(Map.of(KeycloakUserEventDeserializer.STRICT_SCHEMA_VERSION_CONFIG, "true"), false);
+        assertThrows(SerializationException.class, () -> strict.deserialize("keycloak-events", headers, payload));
+        assertNull(strict.deserialize("keycloak-events", headers, (byte[]) null));
+    }
+
+    private static void add(RecordHeaders headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
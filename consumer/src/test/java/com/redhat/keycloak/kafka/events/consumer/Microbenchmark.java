@@ -0,0 +1,52 @@
+package com.redhat.keycloak.kafka.events.consumer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Single-threaded timing loop shared by the {@code *Benchmark} classes. Surefire only picks up {@code *Test}
+ * classes, so benchmarks run on request, e.g. {@code mvn -B -f consumer/pom.xml test -Dtest=EventDeserializerBenchmark}.
+ */
+final class Microbenchmark {
+
+    private static final int WARMUP_OPERATIONS = 200_000;
+    private static final int MEASURED_OPERATIONS = 200_000;
+
+    // Results are published here so the JIT cannot drop the measured work
+    static volatile Object sink;
+
+    @FunctionalInterface
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    private Microbenchmark() {
+    }
+
+    /**
+     * Times each call of the operation after a warm-up and prints the mean, throughput and percentiles.
+     *
+     * @return mean nanoseconds per operation
+     */
+    static double measure(String name, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+            sink = operation.run();
+        }
+        long[] latencies = new long[MEASURED_OPERATIONS];
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_OPERATIONS; i++) {
+            long before = System.nanoTime();
+            sink = operation.run();
+            latencies[i] = System.nanoTime() - before;
+        }
+        return report(name, System.nanoTime() - startedAt, latencies);
+    }
+
+    private static double report(String name, long elapsedNanos, long[] latencies) {
+        double mean = (double) elapsedNanos / latencies.length;
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.ROOT, "%-40s %8.0f ns/op %10.0f ops/s  p50 %6d ns  p99 %6d ns",
+            name, mean, 1e9 / mean, latencies[latencies.length / 2], latencies[latencies.length * 99 / 100]));
+        return mean;
+    }
+}
@@ -0,0 +1,239 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.header.Headers;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Replaces the representation of admin UPDATE events with a JSON merge patch (RFC 7386) against the previous
+ * representation of the same resource.
+ *
+ * Previous representations are kept in a cache bounded by their estimated size, evicting the least recently updated
+ * resources first. A resource without a cached representation, and every {@code snapshotInterval}-th update of a
+ * resource, is published in full so consumers can resync. A patch names the event it applies to in the
+ * {@code ce_representationbase} header; a consumer whose last event for the resource differs, for example because
+ * another Keycloak node published an update in between, waits for the next full representation.
+ */
+public class AdminRepresentationDiffer {
+
+    public static final String FULL = "full";
+    public static final String MERGE_PATCH = "merge-patch";
+
+    // Rough per-entry overhead of the map node and the entry object
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final byte[] FULL_VALUE = FULL.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MERGE_PATCH_VALUE = MERGE_PATCH.getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long maxWeight;
+    private final int snapshotInterval;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+    private long evictions;
+
+    private final AtomicLong patches = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong fullBytes = new AtomicLong();
+    private final AtomicLong publishedBytes = new AtomicLong();
+
+    public AdminRepresentationDiffer(long maxWeight, int snapshotInterval) {
+        this.maxWeight = maxWeight;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+    private static final class Entry {
+        private final String representation;
+        private final String eventId;
+        private final int updates;
+        private final long weight;
+
+        private Entry(String representation, String eventId, int updates) {
+            this.representation = representation;
+            this.eventId = eventId;
+            this.updates = updates;
+            this.weight = ENTRY_OVERHEAD + 2L * representation.length() + (eventId != null ? 2L * eventId.length() : 0);
+        }
+    }
+
+    /**
+     * Representation to publish for an UPDATE event.
+     */
+    public static final class Result {
+        private final String representation;
+        private final String format;
+        private final String baseEventId;
+
+        private Result(String representation, String format, String baseEventId) {
+            this.representation = representation;
+            this.format = format;
+            this.baseEventId = baseEventId;
+        }
+
+        public String getRepresentation() {
+            return representation;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public String getBaseEventId() {
+            return baseEventId;
+        }
+
+        public void addHeaders(Headers headers) {
+            headers.add(CloudEventHeaders.REPRESENTATION, MERGE_PATCH.equals(format) ? MERGE_PATCH_VALUE : FULL_VALUE);
+            if (baseEventId != null) {
+                headers.add(CloudEventHeaders.REPRESENTATION_BASE, baseEventId.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Records the event's representation and, for UPDATE events, returns what to publish instead.
+     * Returns null if the event is published unchanged.
+     */
+    public Result diff(AdminEvent event) {
+        String key = event.getRealmId() + "/" + event.getResourcePath();
+        String representation = event.getRepresentation();
+        OperationType operation = event.getOperationType();
+
+        if (operation == OperationType.DELETE || representation == null) {
+            remove(key);
+            return null;
+        }
+        if (operation != OperationType.UPDATE) {
+            put(key, new Entry(representation, event.getId(), 0));
+            return null;
+        }
+
+        Entry previous;
+        synchronized (this) {
+            previous = entries.get(key);
+        }
+        fullBytes.addAndGet(representation.length());
+
+        if (previous != null && previous.updates + 1 < snapshotInterval) {
+            String patch = mergePatch(previous.representation, representation);
+            if (patch != null && patch.length() < representation.length()) {
+                put(key, new Entry(representation, event.getId(), previous.updates + 1));
+                patches.incrementAndGet();
+                publishedBytes.addAndGet(patch.length());
+                return new Result(patch, MERGE_PATCH, previous.eventId);
+            }
+        }
+
+        put(key, new Entry(representation, event.getId(), 0));
+        snapshots.incrementAndGet();
+        publishedBytes.addAndGet(representation.length());
+        return new Result(representation, FULL, null);
+    }
+
+    /**
+     * Returns the merge patch turning source into target, or null if either is not valid JSON.
+     */
+    String mergePatch(String source, String target) {
+        try {
+            return mapper.writeValueAsString(mergePatch(mapper.readTree(source), mapper.readTree(target)));
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static JsonNode mergePatch(JsonNode source, JsonNode target) {
+        if (!source.isObject() || !target.isObject()) {
+            return target;
+        }
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+        Iterator<String> sourceFields = source.fieldNames();
+        while (sourceFields.hasNext()) {
+            String field = sourceFields.next();
+            if (!target.has(field)) {
+                patch.putNull(field);
+            }
+        }
+        Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+        while (targetFields.hasNext()) {
+            Map.Entry<String, JsonNode> field = targetFields.next();
+            JsonNode previous = source.get(field.getKey());
+            if (previous == null) {
+                patch.set(field.getKey(), field.getValue());
+            } else if (!previous.equals(field.getValue())) {
+                patch.set(field.getKey(), mergePatch(previous, field.getValue()));
+            }
+        }
+        return patch;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        remove(key);
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        entries.put(key, entry);
+        weight += entry.weight;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    public long getPatches() {
+        return patches.get();
+    }
+
+    public long getSnapshots() {
+        return snapshots.get();
+    }
+
+    /**
+     * Total length of the full representations of all UPDATE events seen.
+     */
+    public long getFullBytes() {
+        return fullBytes.get();
+    }
+
+    /**
+     * Total length of the representations published for UPDATE events, patches or full.
+     */
+    public long getPublishedBytes() {
+        return publishedBytes.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Estimated size of the cached representations in bytes.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
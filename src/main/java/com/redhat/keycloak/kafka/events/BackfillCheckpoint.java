@@ -0,0 +1,128 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Position of a backfill, kept in a persistent storage so an interrupted backfill resumes where it stopped, also on
+ * another node of the cluster.
+ *
+ * The position of a stream is the time of the last published event together with the ids published at that time,
+ * because several stored events can share a timestamp.
+ */
+public class BackfillCheckpoint {
+
+    /**
+     * Where the checkpoint is kept, in the format of {@link Properties#store}.
+     */
+    public interface Storage {
+        /**
+         * Returns the stored checkpoint, or null if none was stored yet.
+         */
+        String read();
+
+        void write(String checkpoint);
+    }
+
+    private final Storage storage;
+    private final Properties properties = new Properties();
+
+    public BackfillCheckpoint(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Loads the stored position, replacing the one in memory. Called once the backfill lease is held, as another
+     * node may have advanced it.
+     */
+    public synchronized void read() {
+        properties.clear();
+        String checkpoint = storage.read();
+        if (checkpoint != null) {
+            try {
+                properties.load(new StringReader(checkpoint));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read backfill checkpoint", e);
+            }
+        }
+    }
+
+    /**
+     * Published position of one stream.
+     */
+    public static final class Cursor {
+        private final long time;
+        private final Set<String> ids;
+
+        public Cursor(long time, Set<String> ids) {
+            this.time = time;
+            this.ids = ids;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Set<String> getIds() {
+            return ids;
+        }
+    }
+
+    public synchronized Cursor load(String stream, long defaultTime) {
+        String time = properties.getProperty(stream + ".time");
+        if (time == null) {
+            return new Cursor(defaultTime, new HashSet<>());
+        }
+        String ids = properties.getProperty(stream + ".ids", "");
+        Set<String> idSet = new HashSet<>();
+        if (!ids.isEmpty()) {
+            idSet.addAll(Arrays.asList(ids.split(",")));
+        }
+        return new Cursor(Long.parseLong(time), idSet);
+    }
+
+    public synchronized void save(String stream, Cursor cursor) {
+        properties.setProperty(stream + ".time", Long.toString(cursor.getTime()));
+        properties.setProperty(stream + ".ids", String.join(",", cursor.getIds()));
+        store();
+    }
+
+    /**
+     * Returns the end of the backfill window, storing {@code defaultUntil} on the first run. A resumed backfill keeps
+     * the original end, so events published live since then are not sent twice.
+     */
+    public synchronized long until(long defaultUntil) {
+        String until = properties.getProperty("until");
+        if (until != null) {
+            return Long.parseLong(until);
+        }
+        properties.setProperty("until", Long.toString(defaultUntil));
+        store();
+        return defaultUntil;
+    }
+
+    public synchronized boolean isCompleted(String stream) {
+        return Boolean.parseBoolean(properties.getProperty(stream + ".completed"));
+    }
+
+    public synchronized void markCompleted(String stream) {
+        properties.setProperty(stream + ".completed", "true");
+        store();
+    }
+
+    private void store() {
+        StringWriter checkpoint = new StringWriter();
+        try {
+            properties.store(checkpoint, "Kafka event backfill checkpoint");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write backfill checkpoint", e);
+        }
+        storage.write(checkpoint.toString());
+    }
+}
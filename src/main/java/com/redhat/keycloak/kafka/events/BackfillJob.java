@@ -0,0 +1,401 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.jboss.logging.Logger;
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Publishes events from Keycloak's event store to Kafka, first user events and then admin events.
+ *
+ * Stored events are read oldest first in pages keyed by time, skipping the ids already published at the page's start
+ * time. Each page is serialized in parallel by the listener's record builders, sent through a dedicated producer and
+ * checkpointed once Kafka acknowledged it. Delivery is at least once: a page that is retried after a partial failure
+ * may be sent twice, which consumers can detect with the {@code ce_id} header.
+ *
+ * To keep live events unaffected, the job runs on low priority threads with its own producer and a rate cap.
+ *
+ * Every node starts the job, but only the holder of the cluster-wide lease backfills; the others wait for the lease
+ * and find the backfill completed or continue from the checkpoint once they get it.
+ */
+public class BackfillJob {
+
+    private static final Logger LOG = Logger.getLogger(BackfillJob.class);
+
+    static final String EVENTS = "events";
+    static final String ADMIN_EVENTS = "adminEvents";
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Reads a page of stored events.
+     */
+    @FunctionalInterface
+    interface Fetcher<T> {
+        List<T> fetch(long fromTime, long toTime, int limit);
+    }
+
+    /**
+     * Builds the record for a stored event, or returns null if it is not published.
+     */
+    @FunctionalInterface
+    interface RecordBuilder<T> {
+        ProducerRecord<String, String> build(T event) throws JsonProcessingException;
+    }
+
+    /**
+     * Cluster-wide lease, so a single node backfills at a time.
+     */
+    public interface Lease {
+        /**
+         * Acquires or renews the lease, returns false if another node holds it.
+         */
+        boolean tryAcquire();
+
+        void release();
+    }
+
+    private final BackfillSource source;
+    private final KafkaEventListenerProvider listener;
+    private final Object producerLock = new Object();
+    private Producer<String, String> producer; // guarded by producerLock
+    private final BackfillCheckpoint checkpoint;
+    private final Lease lease;
+    private final RecordChunker chunker;
+    private final long leaseMs;
+    private final int batchSize;
+    private final int workerCount;
+    private final long maxRecordsPerSecond;
+    private final long fromTime;
+    private long toTime;
+    private final ExecutorService workers;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private volatile long cursorTime;
+    private volatile long startedAt;
+    private volatile boolean completed;
+    private volatile boolean failed;
+    private volatile boolean stopped;
+    private long nextSendAt;
+    private Thread thread;
+
+    public BackfillJob(BackfillSource source, KafkaEventListenerProvider listener, Producer<String, String> producer,
+                       BackfillCheckpoint checkpoint, Lease lease, KafkaEventListenerConfig config) {
+        this(source, listener, producer, checkpoint, lease, config,
+            new RecordChunker(RecordChunker.DEFAULT_MAX_REQUEST_SIZE - RecordChunker.HEADROOM));
+    }
+
+    public BackfillJob(BackfillSource source, KafkaEventListenerProvider listener, Producer<String, String> producer,
+                       BackfillCheckpoint checkpoint, Lease lease, KafkaEventListenerConfig config,
+                       RecordChunker chunker) {
+        this.source = source;
+        this.chunker = chunker;
+        this.listener = listener;
+        this.producer = producer;
+        this.checkpoint = checkpoint;
+        this.lease = lease;
+        this.leaseMs = config.getBackfillLeaseMs();
+        this.batchSize = Math.max(1, config.getBackfillBatchSize());
+        this.workerCount = Math.max(1, config.getBackfillWorkers());
+        this.maxRecordsPerSecond = config.getBackfillMaxRecordsPerSecond();
+        this.fromTime = config.getBackfillFromTime();
+
+        AtomicInteger workerId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread worker = new Thread(runnable, "kafka-events-backfill-worker-" + workerId.incrementAndGet());
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            return worker;
+        });
+    }
+
+    public void start() {
+        thread = new Thread(this::runSafely, "kafka-events-backfill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void runSafely() {
+        try {
+            run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failed = true;
+            LOG.error("Backfill stopped, it resumes from the last checkpoint on the next start", e);
+        }
+    }
+
+    /**
+     * Runs the backfill to completion on the calling thread.
+     */
+    void run() throws InterruptedException {
+        if (!awaitLease()) {
+            return;
+        }
+        try {
+            // Read only now, the node that held the lease before may have advanced the position
+            checkpoint.read();
+            toTime = checkpoint.until(System.currentTimeMillis());
+            startedAt = System.currentTimeMillis();
+            LOG.info("Backfilling stored events up to " + toTime);
+            backfill(EVENTS, source::events, Event::getId, Event::getTime, listener::toBackfillRecord);
+            backfill(ADMIN_EVENTS, source::adminEvents, AdminEvent::getId, AdminEvent::getTime,
+                listener::toBackfillRecord);
+            if (!stopped) {
+                completed = true;
+                LOG.info("Backfill completed, " + published.get() + " event(s) published");
+            }
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * Waits until this node holds the lease. Returns false if the job was stopped first.
+     */
+    private boolean awaitLease() throws InterruptedException {
+        boolean waiting = false;
+        while (!stopped) {
+            if (lease.tryAcquire()) {
+                return true;
+            }
+            if (!waiting) {
+                LOG.info("Backfill lease is held by another node, waiting for it");
+                waiting = true;
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.max(1, leaseMs / 2));
+        }
+        return false;
+    }
+
+    private <T> void backfill(String stream, Fetcher<T> fetcher, Function<T, String> idOf, ToLongFunction<T> timeOf,
+                              RecordBuilder<T> builder) throws InterruptedException {
+        if (checkpoint.isCompleted(stream)) {
+            return;
+        }
+        BackfillCheckpoint.Cursor cursor = checkpoint.load(stream, fromTime);
+
+        while (!stopped) {
+            // Events at the cursor time are read again, so ask for enough rows to get past them
+            int limit = batchSize + cursor.getIds().size();
+            List<T> fetched = fetcher.fetch(cursor.getTime(), toTime, limit);
+            List<T> page = new ArrayList<>(fetched.size());
+            for (T event : fetched) {
+                if (timeOf.applyAsLong(event) != cursor.getTime() || !cursor.getIds().contains(idOf.apply(event))) {
+                    page.add(event);
+                }
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+            if (!lease.tryAcquire()) {
+                LOG.warn("Backfill lease was taken over by another node, it continues from the last checkpoint");
+                stopped = true;
+                break;
+            }
+
+            publish(page, builder);
+            cursor = advance(cursor, page, idOf, timeOf);
+            checkpoint.save(stream, cursor);
+            cursorTime = cursor.getTime();
+            pages.incrementAndGet();
+
+            if (fetched.size() < limit) {
+                break;
+            }
+        }
+        if (!stopped) {
+            checkpoint.markCompleted(stream);
+        }
+    }
+
+    private static <T> BackfillCheckpoint.Cursor advance(BackfillCheckpoint.Cursor cursor, List<T> page,
+                                                         Function<T, String> idOf, ToLongFunction<T> timeOf) {
+        long time = cursor.getTime();
+        for (T event : page) {
+            time = Math.max(time, timeOf.applyAsLong(event));
+        }
+        Set<String> ids = time == cursor.getTime() ? new HashSet<>(cursor.getIds()) : new HashSet<>();
+        for (T event : page) {
+            if (timeOf.applyAsLong(event) == time) {
+                ids.add(idOf.apply(event));
+            }
+        }
+        return new BackfillCheckpoint.Cursor(time, ids);
+    }
+
+    private <T> void publish(List<T> page, RecordBuilder<T> builder) throws InterruptedException {
+        List<ProducerRecord<String, String>> records = serialize(page, builder);
+        throttle(records.size());
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                send(records);
+                published.addAndGet(records.size());
+                return;
+            } catch (ExecutionException | TimeoutException | KafkaException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new IllegalStateException("Backfill page failed after " + attempt + " attempts", e);
+                }
+                LOG.warn("Backfill page failed, retrying", e);
+                TimeUnit.SECONDS.sleep(attempt);
+            }
+        }
+    }
+
+    /**
+     * Builds the records of a page on the worker threads, keeping the page order.
+     */
+    private <T> List<ProducerRecord<String, String>> serialize(List<T> page, RecordBuilder<T> builder) {
+        int sliceSize = (page.size() + workerCount - 1) / workerCount;
+        List<CompletableFuture<List<ProducerRecord<String, String>>>> slices = new ArrayList<>();
+        for (int from = 0; from < page.size(); from += sliceSize) {
+            List<T> slice = page.subList(from, Math.min(page.size(), from + sliceSize));
+            slices.add(CompletableFuture.supplyAsync(() -> build(slice, builder), workers));
+        }
+
+        List<ProducerRecord<String, String>> records = new ArrayList<>(page.size());
+        for (CompletableFuture<List<ProducerRecord<String, String>>> slice : slices) {
+            records.addAll(slice.join());
+        }
+        return records;
+    }
+
+    private <T> List<ProducerRecord<String, String>> build(List<T> events, RecordBuilder<T> builder) {
+        List<ProducerRecord<String, String>> records = new ArrayList<>(events.size());
+        for (T event : events) {
+            try {
+                ProducerRecord<String, String> record = builder.build(event);
+                if (record != null) {
+                    records.add(record);
+                } else {
+                    skipped.incrementAndGet();
+                }
+            } catch (JsonProcessingException e) {
+                skipped.incrementAndGet();
+                LOG.error("Skipping stored event that could not be serialized", e);
+            }
+        }
+        return records;
+    }
+
+    private void send(List<ProducerRecord<String, String>> records)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        List<Future<RecordMetadata>> futures = new ArrayList<>(records.size());
+        synchronized (producerLock) {
+            for (ProducerRecord<String, String> record : records) {
+                // Stored events can be larger than a request, like live ones
+                for (ProducerRecord<String, String> chunk : chunker.split(record)) {
+                    futures.add(producer.send(chunk));
+                }
+            }
+            producer.flush();
+        }
+        for (Future<RecordMetadata> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Sleeps as needed to keep the send rate under the configured cap.
+     */
+    private void throttle(int records) throws InterruptedException {
+        if (maxRecordsPerSecond <= 0 || records == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextSendAt > now) {
+            TimeUnit.NANOSECONDS.sleep(nextSendAt - now);
+        }
+        nextSendAt = Math.max(now, nextSendAt) + records * TimeUnit.SECONDS.toNanos(1) / maxRecordsPerSecond;
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Stored events not published because their type is filtered out or they could not be serialized.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getPages() {
+        return pages.get();
+    }
+
+    /**
+     * Time of the newest event published so far.
+     */
+    public long getCursorTime() {
+        return cursorTime;
+    }
+
+    public long getRecordsPerSecond() {
+        long elapsed = System.currentTimeMillis() - startedAt;
+        return startedAt == 0 || elapsed <= 0 ? 0 : published.get() * 1000 / elapsed;
+    }
+
+    /**
+     * Replaces the producer between two pages, for example after the TLS certificates were rotated. The old producer
+     * is closed once it delivered what it holds.
+     */
+    public void rollProducer(Producer<String, String> replacement) {
+        Producer<String, String> old;
+        synchronized (producerLock) {
+            old = producer;
+            producer = replacement;
+        }
+        old.close();
+        LOG.info("Backfill producer rolled");
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void close() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.shutdownNow();
+        synchronized (producerLock) {
+            producer.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.UUID;
+
+/**
+ * Backfill lease and checkpoint in the database, so a single node of the cluster backfills at a time and a node taking
+ * over continues from the shared position. A checkpoint is only written while the lease is held: the write renews the
+ * lease in the same transaction and fails if another node took it over.
+ */
+public class BackfillLease implements BackfillJob.Lease, BackfillCheckpoint.Storage {
+
+    private final OutboxStore store;
+    private final OutboxStore.TransactionRunner transactionRunner;
+    private final long leaseMs;
+    private final String owner = UUID.randomUUID().toString();
+
+    public BackfillLease(OutboxStore store, OutboxStore.TransactionRunner transactionRunner, long leaseMs) {
+        this.store = store;
+        this.transactionRunner = transactionRunner;
+        this.leaseMs = leaseMs;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return transactionRunner.inTransaction(connection ->
+            store.tryAcquireLease(connection, OutboxStore.BACKFILL_LEASE, owner, System.currentTimeMillis(), leaseMs));
+    }
+
+    @Override
+    public void release() {
+        transactionRunner.inTransaction(connection -> {
+            store.releaseLease(connection, OutboxStore.BACKFILL_LEASE, owner);
+            return null;
+        });
+    }
+
+    @Override
+    public String read() {
+        return transactionRunner.inTransaction(store::loadCheckpoint);
+    }
+
+    @Override
+    public void write(String checkpoint) {
+        transactionRunner.inTransaction(connection -> {
+            if (!store.tryAcquireLease(connection, OutboxStore.BACKFILL_LEASE, owner, System.currentTimeMillis(),
+                leaseMs)) {
+                throw new IllegalStateException("Backfill lease was taken over by another node");
+            }
+            store.saveCheckpoint(connection, checkpoint);
+            return null;
+        });
+    }
+}
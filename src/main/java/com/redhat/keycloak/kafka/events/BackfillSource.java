@@ -0,0 +1,22 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.List;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+
+/**
+ * Reads stored events for a backfill, oldest first.
+ */
+public interface BackfillSource {
+
+    /**
+     * Returns up to {@code limit} user events with {@code fromTime <= time <= toTime}, ordered by time.
+     */
+    List<Event> events(long fromTime, long toTime, int limit);
+
+    /**
+     * Returns up to {@code limit} admin events with {@code fromTime <= time <= toTime}, ordered by time.
+     */
+    List<AdminEvent> adminEvents(long fromTime, long toTime, int limit);
+}
@@ -0,0 +1,207 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+/**
+ * Builds Kafka record headers following the CloudEvents Kafka protocol binding (binary content mode).
+ * Consumers can route on type, realm and client by reading headers only, without parsing the JSON payload.
+ * Header values that never change, or only depend on an enum, are encoded once and reused.
+ */
+public final class CloudEventHeaders {
+
+    public static final String SPEC_VERSION = "ce_specversion";
+    public static final String ID = "ce_id";
+    public static final String SOURCE = "ce_source";
+    public static final String TYPE = "ce_type";
+    public static final String TIME = "ce_time";
+    public static final String REALM_ID = "ce_realmid";
+    public static final String CLIENT_ID = "ce_clientid";
+    public static final String SCHEMA_VERSION = "ce_schemaversion";
+    public static final String CONTENT_TYPE = "content-type";
+    public static final String NODE_CLOCK = "ce_nodeclock";
+    public static final String SEQUENCE = "ce_sequence";
+    public static final String SEQUENCE_EPOCH = "ce_sequenceepoch";
+    public static final String BACKFILL = "ce_backfill";
+    public static final String REPRESENTATION = "ce_representation";
+    public static final String REPRESENTATION_BASE = "ce_representationbase";
+    public static final String CHUNK_ID = "ce_chunkid";
+    public static final String CHUNK_INDEX = "ce_chunkindex";
+    public static final String CHUNK_COUNT = "ce_chunkcount";
+    public static final String ENVELOPE_COUNT = "ce_envelopecount";
+    public static final String ENVELOPE_FIRST_TIME = "ce_envelopefirsttime";
+    public static final String ENVELOPE_LAST_TIME = "ce_envelopelasttime";
+    public static final String ENCRYPTION_KEY_ID = "ce_encryptionkeyid";
+    public static final String ENCRYPTED_FIELDS = "ce_encryptedfields";
+
+    public static final String EVENT_TYPE_PREFIX = "com.redhat.keycloak.event.";
+    public static final String ADMIN_EVENT_TYPE_PREFIX = "com.redhat.keycloak.admin-event.";
+
+    /**
+     * Version of the JSON payload layout emitted by {@link KafkaEventListenerProvider}.
+     */
+    public static final String PAYLOAD_SCHEMA_VERSION = "1";
+
+    private static final byte[] SPEC_VERSION_VALUE = encode("1.0");
+    private static final byte[] CONTENT_TYPE_VALUE = encode("application/json");
+    private static final byte[] SCHEMA_VERSION_VALUE = encode(PAYLOAD_SCHEMA_VERSION);
+    private static final byte[] DEFAULT_SOURCE_VALUE = encode("/keycloak");
+
+    private static final Map<EventType, byte[]> EVENT_TYPES = new EnumMap<>(EventType.class);
+    private static final byte[][][] ADMIN_EVENT_TYPES =
+        new byte[ResourceType.values().length][OperationType.values().length][];
+
+    static {
+        for (EventType type : EventType.values()) {
+            EVENT_TYPES.put(type, encode(EVENT_TYPE_PREFIX + type.name()));
+        }
+        for (ResourceType resource : ResourceType.values()) {
+            for (OperationType operation : OperationType.values()) {
+                ADMIN_EVENT_TYPES[resource.ordinal()][operation.ordinal()] =
+                    encode(ADMIN_EVENT_TYPE_PREFIX + resource.name() + "." + operation.name());
+            }
+        }
+    }
+
+    private CloudEventHeaders() {
+    }
+
+    /**
+     * Builds the headers for a user event.
+     */
+    public static Headers forEvent(Event event) {
+        RecordHeaders headers = new RecordHeaders();
+        addCommonHeaders(headers, eventId(event), event.getRealmId(), event.getTime());
+
+        if (event.getType() != null) {
+            headers.add(TYPE, EVENT_TYPES.get(event.getType()));
+        }
+        if (event.getClientId() != null) {
+            headers.add(CLIENT_ID, encode(event.getClientId()));
+        }
+        return headers;
+    }
+
+    /**
+     * Builds the headers for an admin event.
+     */
+    public static Headers forAdminEvent(AdminEvent event) {
+        RecordHeaders headers = new RecordHeaders();
+        addCommonHeaders(headers, eventId(event), event.getRealmId(), event.getTime());
+
+        byte[] type = adminEventType(event);
+        if (type != null) {
+            headers.add(TYPE, type);
+        }
+        if (event.getAuthDetails() != null && event.getAuthDetails().getClientId() != null) {
+            headers.add(CLIENT_ID, encode(event.getAuthDetails().getClientId()));
+        }
+        return headers;
+    }
+
+    /**
+     * Id of the event, so every record carries a {@code ce_id} consumers can deduplicate on. Events without an id get
+     * a name-based UUID of their content, which is the same when the same event is published again.
+     */
+    public static String eventId(Event event) {
+        if (event.getId() != null) {
+            return event.getId();
+        }
+        return nameId("event", event.getType(), event.getTime(), event.getRealmId(), event.getClientId(),
+            event.getUserId(), event.getSessionId(), event.getIpAddress(), event.getError());
+    }
+
+    /**
+     * Id of the admin event, see {@link #eventId(Event)}.
+     */
+    public static String eventId(AdminEvent event) {
+        if (event.getId() != null) {
+            return event.getId();
+        }
+        AuthDetails auth = event.getAuthDetails();
+        return nameId("admin-event", event.getOperationType(), event.getTime(), event.getRealmId(),
+            event.getResourceTypeAsString(), event.getResourcePath(), auth != null ? auth.getUserId() : null,
+            auth != null ? auth.getIpAddress() : null, event.getError());
+    }
+
+    private static String nameId(Object... fields) {
+        StringBuilder name = new StringBuilder();
+        for (Object field : fields) {
+            // The separator cannot occur in the fields, so different field values never produce the same name
+            name.append(field).append('\u0000');
+        }
+        return UUID.nameUUIDFromBytes(encode(name.toString())).toString();
+    }
+
+    /**
+     * Adds the node clock timestamp and, if tracked, the per-user sequence of this node.
+     */
+    public static void addOrdering(Headers headers, long nodeClock, UserSequenceTracker.Sequence sequence) {
+        headers.add(NODE_CLOCK, encode(Long.toString(nodeClock)));
+        if (sequence != null) {
+            headers.add(SEQUENCE, encode(Long.toString(sequence.getValue())));
+            headers.add(SEQUENCE_EPOCH, encode(sequence.getEpoch()));
+        }
+    }
+
+    private static void addCommonHeaders(RecordHeaders headers, String id, String realmId, long time) {
+        headers.add(SPEC_VERSION, SPEC_VERSION_VALUE);
+        headers.add(CONTENT_TYPE, CONTENT_TYPE_VALUE);
+        headers.add(SCHEMA_VERSION, SCHEMA_VERSION_VALUE);
+
+        if (id != null) {
+            headers.add(ID, encode(id));
+        }
+        if (realmId != null) {
+            headers.add(SOURCE, encode("/realms/" + realmId));
+            headers.add(REALM_ID, encode(realmId));
+        } else {
+            headers.add(SOURCE, DEFAULT_SOURCE_VALUE);
+        }
+        if (time > 0) {
+            headers.add(TIME, encode(Instant.ofEpochMilli(time).toString()));
+        }
+    }
+
+    private static byte[] adminEventType(AdminEvent event) {
+        OperationType operation = event.getOperationType();
+        if (operation == null) {
+            return null;
+        }
+
+        ResourceType resource = event.getResourceType();
+        if (resource != null && resource != ResourceType.CUSTOM) {
+            return ADMIN_EVENT_TYPES[resource.ordinal()][operation.ordinal()];
+        }
+
+        // Custom resource types are only available as strings
+        String resourceType = event.getResourceTypeAsString();
+        return encode(ADMIN_EVENT_TYPE_PREFIX + (resourceType != null ? resourceType : "UNKNOWN")
+            + "." + operation.name());
+    }
+
+    /**
+     * Reads a header value as a UTF-8 string, or returns null if the header is absent.
+     */
+    public static String headerAsString(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header != null && header.value() != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
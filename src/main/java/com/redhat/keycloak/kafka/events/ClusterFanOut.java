@@ -0,0 +1,88 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+/**
+ * Publishes every event to additional clusters next to the primary one, for disaster recovery without mirroring lag.
+ * The acknowledgement policy decides when the event counts as delivered: once any cluster, including the primary,
+ * acknowledged it, or once all did.
+ */
+public class ClusterFanOut implements AutoCloseable {
+
+    public enum AckPolicy {
+        ANY, ALL;
+
+        public static AckPolicy parse(String value) {
+            return value != null ? valueOf(value.trim().toUpperCase()) : ANY;
+        }
+
+        /**
+         * Combines the acknowledgements of the clusters. The result completes with null, or exceptionally with the
+         * first failure that decides the outcome.
+         */
+        CompletableFuture<RecordMetadata> combine(List<CompletableFuture<?>> acks) {
+            CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+            AtomicInteger remaining = new AtomicInteger(acks.size());
+            for (CompletableFuture<?> ack : acks) {
+                ack.whenComplete((value, error) -> {
+                    boolean last = remaining.decrementAndGet() == 0;
+                    if (this == ANY) {
+                        if (error == null) {
+                            result.complete(null);
+                        } else if (last) {
+                            result.completeExceptionally(error);
+                        }
+                    } else if (error != null) {
+                        result.completeExceptionally(error);
+                    } else if (last) {
+                        result.complete(null);
+                    }
+                });
+            }
+            return result;
+        }
+    }
+
+    private final List<ClusterPublisher> clusters;
+    private final AckPolicy policy;
+
+    public ClusterFanOut(List<ClusterPublisher> clusters, AckPolicy policy) {
+        this.clusters = clusters;
+        this.policy = policy;
+    }
+
+    /**
+     * Queues the chunks of one event for every additional cluster and combines their acknowledgements with the primary's.
+     *
+     * @param primary acknowledgement of the primary cluster, or null if it does not take part in the policy
+     */
+    public CompletableFuture<RecordMetadata> publish(List<EncodedEvent> events, CompletableFuture<?> primary) {
+        List<CompletableFuture<?>> acks = new ArrayList<>(clusters.size() + 1);
+        if (primary != null) {
+            acks.add(primary);
+        }
+        for (ClusterPublisher cluster : clusters) {
+            acks.add(cluster.submit(events));
+        }
+        return policy.combine(acks);
+    }
+
+    public List<ClusterPublisher> getClusters() {
+        return Collections.unmodifiableList(clusters);
+    }
+
+    public AckPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public void close() {
+        clusters.forEach(ClusterPublisher::close);
+    }
+}
@@ -0,0 +1,223 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.common.KafkaException;
+import org.jboss.logging.Logger;
+
+/**
+ * Publishes to one additional cluster. Events are queued and handed to the cluster's sink by a dedicated thread, so
+ * a cluster whose producer blocks, for example while its metadata is unavailable, never holds up the request thread
+ * or the other clusters. A full queue or an open circuit breaker rejects events immediately. Queued events are kept
+ * serialized in an {@link OffHeapEventBuffer}; the queue itself only holds their futures.
+ */
+public class ClusterPublisher implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ClusterPublisher.class);
+
+    private final String name;
+    private final Object sinkLock = new Object();
+    private EventSink sink; // guarded by sinkLock
+    private final BlockingQueue<Pending> queue;
+    private final OffHeapEventBuffer buffer;
+    private final Object submitLock = new Object();
+    private final CircuitBreaker breaker;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalLagMs = new LongAdder();
+    private volatile long lastLagMs = -1;
+
+    /**
+     * Queued event; its chunks are the entry at the same position of the buffer.
+     */
+    private static final class Pending {
+        private final CompletableFuture<Void> result;
+        private final long enqueuedAt;
+
+        private Pending(CompletableFuture<Void> result, long enqueuedAt) {
+            this.result = result;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    public ClusterPublisher(String name, EventSink sink, int queueCapacity, CircuitBreaker breaker) {
+        this(name, sink, queueCapacity, KafkaEventListenerConfig.DEFAULT_CLUSTER_QUEUE_MAX_BYTES, breaker);
+    }
+
+    /**
+     * @param queueMaxBytes direct memory the queued events may use
+     */
+    public ClusterPublisher(String name, EventSink sink, int queueCapacity, long queueMaxBytes, CircuitBreaker breaker) {
+        this.name = name;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.buffer = new OffHeapEventBuffer(queueMaxBytes);
+        this.breaker = breaker;
+        this.worker = new Thread(this::drain, "kafka-events-cluster-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues the chunks of one event. The future completes once all of them are acknowledged.
+     */
+    public CompletableFuture<Void> submit(List<EncodedEvent> events) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (!breaker.allowRequest()) {
+            rejected.increment();
+            result.completeExceptionally(new KafkaException("Circuit breaker of cluster " + name + " is open"));
+        } else if (!enqueue(events, result)) {
+            // A cluster that cannot keep up counts as failing; this also ends a half-open trial
+            breaker.recordFailure();
+            rejected.increment();
+            result.completeExceptionally(new KafkaException("Queue of cluster " + name + " is full"));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the event to the buffer and its future to the queue. Only submitters add, so a queue with room keeps it
+     * until the future is added.
+     */
+    private boolean enqueue(List<EncodedEvent> events, CompletableFuture<Void> result) {
+        synchronized (submitLock) {
+            if (queue.remainingCapacity() == 0 || !buffer.offer(events, 0)) {
+                return false;
+            }
+            queue.add(new Pending(result, System.currentTimeMillis()));
+            return true;
+        }
+    }
+
+    private void drain() {
+        while (!closed) {
+            Pending pending;
+            try {
+                pending = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            send(pending, buffer.poll().getEvents());
+        }
+    }
+
+    private void send(Pending pending, List<EncodedEvent> events) {
+        try {
+            CompletableFuture<?> published;
+            synchronized (sinkLock) {
+                published = sink.publish(events);
+            }
+            published.whenComplete((ignored, error) -> complete(pending, error));
+        } catch (RuntimeException e) {
+            complete(pending, e);
+        }
+    }
+
+    private void complete(Pending pending, Throwable error) {
+        long lag = System.currentTimeMillis() - pending.enqueuedAt;
+        lastLagMs = lag;
+        totalLagMs.add(lag);
+        if (error == null) {
+            acked.increment();
+            breaker.recordSuccess();
+            pending.result.complete(null);
+        } else {
+            failed.increment();
+            breaker.recordFailure();
+            LOG.warn("Failed to deliver event to cluster " + name, error);
+            pending.result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Replaces the cluster's sink, for example after the TLS certificates were rotated. Events already handed to the
+     * old sink are delivered by it before it is closed.
+     */
+    public void rollSink(EventSink replacement) {
+        EventSink old;
+        synchronized (sinkLock) {
+            old = sink;
+            sink = replacement;
+        }
+        old.close();
+        LOG.info("Sink of cluster " + name + " rolled");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Direct memory held for queued events.
+     */
+    public long getQueueAllocatedBytes() {
+        return buffer.getAllocatedBytes();
+    }
+
+    public long getAcked() {
+        return acked.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Events not sent because the queue was full or the circuit breaker was open.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Time from queueing to acknowledgement of the last completed event, or -1 if none completed yet.
+     */
+    public long getLastLagMs() {
+        return lastLagMs;
+    }
+
+    public long getAverageLagMs() {
+        long completed = acked.sum() + failed.sum();
+        return completed > 0 ? totalLagMs.sum() / completed : 0;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    /**
+     * Stops the worker and closes the sink, which delivers what it already holds. Queued events that were not
+     * handed to the sink are failed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new KafkaException("Cluster " + name + " publisher closed"));
+        }
+        buffer.clear();
+        synchronized (sinkLock) {
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Polls files and notifies a listener whenever one of them changes. Polling the modification time and size,
+ * rather than using a WatchService, also picks up the symlink swaps used by Kubernetes ConfigMap and Secret volumes.
+ */
+public class ConfigFileWatcher {
+
+    private static final Logger LOG = Logger.getLogger(ConfigFileWatcher.class);
+
+    private final List<Path> files;
+    private final long intervalMs;
+    private final Runnable listener;
+    private final boolean notifyOnStart;
+    private ScheduledExecutorService scheduler;
+    private List<Long> lastSignature;
+
+    /**
+     * Watches a properties file and hands its content to the listener, starting with the current content.
+     */
+    public ConfigFileWatcher(Path file, long intervalMs, Consumer<Properties> listener) {
+        this(Collections.singletonList(file), intervalMs, () -> listener.accept(load(file)), true);
+    }
+
+    /**
+     * Watches a set of files, such as certificates and keys, and runs the listener once they changed.
+     * The content present at start is taken as the baseline.
+     */
+    public ConfigFileWatcher(List<Path> files, long intervalMs, Runnable listener) {
+        this(files, intervalMs, listener, false);
+    }
+
+    private ConfigFileWatcher(List<Path> files, long intervalMs, Runnable listener, boolean notifyOnStart) {
+        this.files = new ArrayList<>(files);
+        this.intervalMs = Math.max(100, intervalMs);
+        this.listener = listener;
+        this.notifyOnStart = notifyOnStart;
+    }
+
+    /**
+     * Applies the current file content and starts watching for changes.
+     */
+    public void start() {
+        if (notifyOnStart) {
+            checkForChanges();
+        } else {
+            synchronized (this) {
+                lastSignature = signature();
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-events-config-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkForChanges, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Watching " + files + " for changes");
+    }
+
+    /**
+     * Notifies the listener if the modification time or size of any file changed since the last check.
+     * A failing listener is retried on the next check.
+     *
+     * @return true if the listener was notified
+     */
+    synchronized boolean checkForChanges() {
+        try {
+            List<Long> signature = signature();
+            if (signature == null || signature.equals(lastSignature)) {
+                return false;
+            }
+            listener.run();
+            lastSignature = signature;
+            return true;
+        } catch (RuntimeException e) {
+            // Keep the current configuration and retry on the next check
+            LOG.error("Failed to apply changes from " + files, e);
+            return false;
+        }
+    }
+
+    /**
+     * Modification time and size of every file, or null while any of them is missing or unreadable.
+     */
+    private List<Long> signature() {
+        List<Long> signature = new ArrayList<>(files.size() * 2);
+        for (Path file : files) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                signature.add(attributes.lastModifiedTime().toMillis());
+                signature.add(attributes.size());
+            } catch (IOException e) {
+                LOG.debug("Cannot read attributes of " + file, e);
+                return null;
+            }
+        }
+        return signature;
+    }
+
+    private static Properties load(Path file) {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+        return properties;
+    }
+
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
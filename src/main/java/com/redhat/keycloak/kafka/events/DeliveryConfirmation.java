@@ -0,0 +1,116 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Decides how the request thread waits for Kafka to acknowledge a record.
+ *
+ * <ul>
+ * <li>{@code BLOCKING} parks the request thread in {@link Future#get} until the broker answers.</li>
+ * <li>{@code VIRTUAL} moves the wait to a virtual thread; the request thread only awaits its completion with a
+ * deadline. On a runtime without virtual threads a cached pool of daemon threads is used instead.</li>
+ * <li>{@code ASYNC} does not wait; failures are reported by the send callback.</li>
+ * </ul>
+ */
+public class DeliveryConfirmation implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(DeliveryConfirmation.class);
+
+    public enum Mode {
+        BLOCKING, VIRTUAL, ASYNC;
+
+        public static Mode parse(String value) {
+            return value != null ? valueOf(value.trim().toUpperCase()) : BLOCKING;
+        }
+    }
+
+    private final Mode mode;
+    private final long timeoutMs;
+    private final ExecutorService executor;
+
+    public DeliveryConfirmation(Mode mode, long timeoutMs) {
+        this.mode = mode;
+        this.timeoutMs = timeoutMs;
+        this.executor = mode == Mode.VIRTUAL ? newWaitExecutor() : null;
+    }
+
+    /**
+     * Returns a virtual thread per task executor when the runtime provides one. The plugin is compiled for Java 17,
+     * so the factory method is looked up reflectively.
+     */
+    static ExecutorService newWaitExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            LOG.info("Delivery confirmations wait on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Virtual threads are not available, delivery confirmations wait on platform threads");
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "kafka-events-confirmation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Waits for the acknowledgement according to the mode and returns it, or returns null at once in async mode.
+     * Both waiting modes throw the same exceptions: {@link ExecutionException} if the delivery failed and
+     * {@link TimeoutException} once the deadline passed.
+     */
+    public <T> T await(Future<T> future)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        switch (mode) {
+            case ASYNC:
+                return null;
+            case VIRTUAL:
+                CompletableFuture<T> completion = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CompletionException(e);
+                    } catch (ExecutionException | TimeoutException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+                try {
+                    return completion.get(timeoutMs, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    // Unwrap so callers see the same exceptions as in blocking mode
+                    Throwable cause = e.getCause();
+                    if (cause instanceof ExecutionException) {
+                        throw (ExecutionException) cause;
+                    }
+                    if (cause instanceof TimeoutException) {
+                        throw (TimeoutException) cause;
+                    }
+                    throw e;
+                }
+            default:
+                return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * An event ready to be published: destination topic, optional partition and key, serialized value and headers.
+ */
+public final class EncodedEvent {
+
+    private final String topic;
+    private final Integer partition;
+    private final String key;
+    private final String value;
+    private final Headers headers;
+
+    public EncodedEvent(String topic, String key, String value, Headers headers) {
+        this(topic, null, key, value, headers);
+    }
+
+    /**
+     * @param partition partition the event must be published to, or null to let the producer choose
+     */
+    public EncodedEvent(String topic, Integer partition, String key, String value, Headers headers) {
+        this.topic = topic;
+        this.partition = partition;
+        this.key = key;
+        this.value = value;
+        this.headers = headers;
+    }
+
+    public static EncodedEvent of(ProducerRecord<String, String> record) {
+        return new EncodedEvent(record.topic(), record.partition(), record.key(), record.value(), record.headers());
+    }
+
+    public static List<EncodedEvent> of(List<ProducerRecord<String, String>> records) {
+        List<EncodedEvent> events = new ArrayList<>(records.size());
+        for (ProducerRecord<String, String> record : records) {
+            events.add(of(record));
+        }
+        return events;
+    }
+
+    public ProducerRecord<String, String> toRecord() {
+        return new ProducerRecord<>(topic, partition, key, value, headers);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Partition the event must be published to, or null if the producer chooses it.
+     */
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Headers of the event, or null if it has none.
+     */
+    public Headers getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,36 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * Session-scoped listener used when enrichment is enabled. It hands the session to the shared
+ * {@link KafkaEventListenerProvider}, which resolves the configured attributes through it.
+ */
+public class EnrichingEventListenerProvider implements EventListenerProvider {
+
+    private final KeycloakSession session;
+    private final KafkaEventListenerProvider delegate;
+
+    public EnrichingEventListenerProvider(KeycloakSession session, KafkaEventListenerProvider delegate) {
+        this.session = session;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        delegate.onEvent(event, session);
+    }
+
+    @Override
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        delegate.onEvent(event, session);
+    }
+
+    @Override
+    public void close() {
+        // ignore
+    }
+}
@@ -0,0 +1,195 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache for resolved entity attributes. Entries expire after a fixed time to live, and the least recently
+ * used entries are evicted once the estimated size of all entries exceeds the configured limit.
+ *
+ * The size of an entry is estimated from the length of its strings, so a cache with many small entries and one with
+ * few large entries use roughly the same amount of heap.
+ *
+ * Values are loaded outside the lock. An invalidation that arrives while a key is loading bumps the generation of that
+ * load, and the loaded value is then returned but not stored, as it may predate the change.
+ */
+public class EntityCache {
+
+    // Rough per-entry overhead of the map node, the entry object and the attribute map
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxWeight;
+    private final long ttlMs;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Load> loads = new HashMap<>();
+
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public EntityCache(long maxWeight, long ttlMs) {
+        this(maxWeight, ttlMs, System::currentTimeMillis);
+    }
+
+    EntityCache(long maxWeight, long ttlMs, LongSupplier clock) {
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    private static final class Entry {
+        private final Map<String, String> value;
+        private final long expiresAt;
+        private final long weight;
+
+        private Entry(Map<String, String> value, long expiresAt, long weight) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Loads in progress for a key. The generation is bumped by every invalidation of the key during the loads.
+     */
+    private static final class Load {
+        private long generation;
+        private int loaders;
+    }
+
+    /**
+     * Returns the cached value for the key, loading it if it is missing or expired. The loader runs outside the
+     * lock, so a slow lookup does not block other events; concurrent misses for the same key may load twice.
+     */
+    public Map<String, String> get(String key, Function<String, Map<String, String>> loader) {
+        long now = clock.getAsLong();
+        Load load;
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            load = loads.computeIfAbsent(key, k -> new Load());
+            load.loaders++;
+            generation = load.generation;
+        }
+
+        Map<String, String> value = null;
+        try {
+            value = loader.apply(key);
+            value = value != null ? Collections.unmodifiableMap(value) : Collections.emptyMap();
+        } finally {
+            synchronized (this) {
+                if (--load.loaders == 0) {
+                    loads.remove(key);
+                }
+                if (value != null && load.generation == generation) {
+                    put(key, value, now);
+                }
+            }
+        }
+        return value;
+    }
+
+    private synchronized void put(String key, Map<String, String> value, long now) {
+        Entry entry = new Entry(value, now + ttlMs, weigh(key, value));
+        remove(key);
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        entries.put(key, entry);
+        weight += entry.weight;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        remove(key);
+        Load load = loads.get(key);
+        if (load != null) {
+            load.generation++;
+        }
+    }
+
+    /**
+     * Removes every entry whose key starts with the prefix.
+     */
+    public synchronized void invalidatePrefix(String prefix) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                weight -= entry.getValue().weight;
+            }
+        }
+        for (Map.Entry<String, Load> load : loads.entrySet()) {
+            if (load.getKey().startsWith(prefix)) {
+                load.getValue().generation++;
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private static long weigh(String key, Map<String, String> value) {
+        long chars = key.length();
+        for (Map.Entry<String, String> attribute : value.entrySet()) {
+            chars += attribute.getKey().length();
+            chars += attribute.getValue() != null ? attribute.getValue().length() : 0;
+        }
+        return ENTRY_OVERHEAD + 2 * chars;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Share of lookups answered from the cache, between 0 and 1.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Estimated size of all entries in bytes.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,331 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.utils.Utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Packs events bound for the same topic and partition into one envelope record, so tiny events share the per-record
+ * overhead of Kafka and a single acknowledgement callback. An envelope is sent once the next event would take it
+ * over {@code maxChars} characters or {@code maxBytes} UTF-8 bytes, or its first event waited {@code lingerMs},
+ * whichever comes first. An event whose encoding alone takes more than {@code maxChars} or {@code maxBytes} bytes is
+ * sent on its own as a plain record, since JSON escaping can make it larger than the record it came from.
+ * <p>
+ * The value is a JSON array with one {@code {"key", "headers", "value"}} object per event, in publishing order. The
+ * headers are an array of {@code [key, base64 value]} pairs, so binary values and repeated keys survive. Each event is
+ * encoded when it is added and appended to the open envelope if it fits, so sending only closes the array.
+ * The envelope's headers carry the event count and the {@code ce_time} of the first and last event. Events with a
+ * partition keep it, and keyed events are assigned the partition the default partitioner would choose for their key,
+ * so a user's events stay on one partition in order. The {@code EnvelopeReader} of the consumer module unpacks
+ * envelopes into the original records.
+ */
+public class EnvelopePacker implements AutoCloseable {
+
+    static final String CONTENT_TYPE = "application/vnd.keycloak.event-envelope+json";
+    private static final byte[] CONTENT_TYPE_VALUE = CONTENT_TYPE.getBytes(StandardCharsets.UTF_8);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Producer<String, String> producer;
+    private final int maxChars;
+    private final int maxBytes;
+    private final long lingerMs;
+    private final ScheduledExecutorService timer;
+    private final Map<String, Envelope> open = new HashMap<>();
+    private final AtomicLong pending = new AtomicLong();
+
+    public EnvelopePacker(Producer<String, String> producer, int maxChars, long lingerMs) {
+        this(producer, maxChars, RecordChunker.DEFAULT_MAX_REQUEST_SIZE - RecordChunker.HEADROOM, lingerMs);
+    }
+
+    /**
+     * @param maxBytes UTF-8 bytes an envelope may take, at most the producer's chunk size
+     */
+    public EnvelopePacker(Producer<String, String> producer, int maxChars, int maxBytes, long lingerMs) {
+        this.producer = producer;
+        this.maxChars = maxChars;
+        this.maxBytes = maxBytes;
+        this.lingerMs = lingerMs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-events-envelopes");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Member {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final IntConsumer partitions;
+
+        private Member(IntConsumer partitions) {
+            this.partitions = partitions;
+        }
+
+        private void complete(RecordMetadata metadata, Exception exception) {
+            if (exception != null) {
+                future.completeExceptionally(exception);
+                return;
+            }
+            if (partitions != null) {
+                partitions.accept(metadata.partition());
+            }
+            future.complete(null);
+        }
+    }
+
+    /**
+     * Open envelope of one topic and partition. Guarded by the packer.
+     */
+    private static final class Envelope {
+        private final String topic;
+        private final int partition;
+        private final StringWriter writer = new StringWriter();
+        private final JsonGenerator json;
+        private final List<Member> members = new ArrayList<>();
+        private int bytes;
+        private String firstTime;
+        private String lastTime;
+
+        private Envelope(String topic, int partition) throws IOException {
+            this.topic = topic;
+            this.partition = partition;
+            this.json = JSON.createGenerator(writer);
+            json.writeStartArray();
+        }
+
+        /**
+         * Appends an event encoded by {@link #encode}.
+         */
+        private void add(String encoded, int encodedBytes, String time, Member member) throws IOException {
+            bytes = bytesWith(encodedBytes) - 1;
+            json.writeRawValue(encoded);
+            json.flush();
+            members.add(member);
+            if (time != null) {
+                if (firstTime == null) {
+                    firstTime = time;
+                }
+                lastTime = time;
+            }
+        }
+
+        /**
+         * Characters the envelope would hold with the encoded event and the closing bracket.
+         */
+        private int charsWith(String encoded) {
+            return chars() + (members.isEmpty() ? 0 : 1) + encoded.length() + 1;
+        }
+
+        private int chars() {
+            return writer.getBuffer().length();
+        }
+
+        /**
+         * UTF-8 bytes the envelope would take with the encoded event and the closing bracket. The brackets and commas
+         * are one byte each.
+         */
+        private int bytesWith(int encodedBytes) {
+            return (members.isEmpty() ? 1 : bytes + 1) + encodedBytes + 1;
+        }
+
+        private ProducerRecord<String, String> toRecord() throws IOException {
+            json.writeEndArray();
+            json.close();
+            Headers headers = new RecordHeaders();
+            headers.add(CloudEventHeaders.CONTENT_TYPE, CONTENT_TYPE_VALUE);
+            headers.add(CloudEventHeaders.ENVELOPE_COUNT,
+                String.valueOf(members.size()).getBytes(StandardCharsets.UTF_8));
+            if (firstTime != null) {
+                headers.add(CloudEventHeaders.ENVELOPE_FIRST_TIME, firstTime.getBytes(StandardCharsets.UTF_8));
+                headers.add(CloudEventHeaders.ENVELOPE_LAST_TIME, lastTime.getBytes(StandardCharsets.UTF_8));
+            }
+            Integer assigned = partition >= 0 ? partition : null;
+            return new ProducerRecord<>(topic, assigned, (String) null, writer.toString(), headers);
+        }
+
+        private void complete(RecordMetadata metadata, Exception exception) {
+            for (Member member : members) {
+                member.complete(metadata, exception);
+            }
+        }
+    }
+
+    /**
+     * Adds the event to the open envelope of its topic and partition. If the event does not fit, the open envelope is
+     * sent first. An event too large for any envelope is sent on its own after the open envelope, keeping the order of
+     * the partition.
+     *
+     * @param partitions called with the envelope's partition before the future completes, may be null
+     * @return completes once the envelope is acknowledged
+     */
+    public CompletableFuture<Void> add(EncodedEvent event, IntConsumer partitions) {
+        // Outside the lock: the first call for a topic waits for its metadata
+        int partition = partition(event);
+        String bucket = event.getTopic() + '\n' + partition;
+        Member member = new Member(partitions);
+        pending.incrementAndGet();
+        member.future.whenComplete((ignored, error) -> pending.decrementAndGet());
+        try {
+            String encoded = encode(event);
+            int encodedBytes = Utils.utf8Length(encoded);
+            String time = event.getHeaders() != null
+                ? CloudEventHeaders.headerAsString(event.getHeaders(), CloudEventHeaders.TIME) : null;
+            synchronized (this) {
+                Envelope envelope = open.get(bucket);
+                if (envelope != null && (envelope.charsWith(encoded) > maxChars
+                    || envelope.bytesWith(encodedBytes) > maxBytes)) {
+                    open.remove(bucket);
+                    send(envelope);
+                    envelope = null;
+                }
+                if (encodedBytes + 2 > Math.min(maxChars, maxBytes)) {
+                    sendAlone(event, partition, member);
+                    return member.future;
+                }
+                if (envelope == null) {
+                    envelope = open(bucket, event.getTopic(), partition);
+                }
+                envelope.add(encoded, encodedBytes, time, member);
+                if (envelope.chars() + 1 >= maxChars || envelope.bytes + 1 >= maxBytes) {
+                    open.remove(bucket);
+                    send(envelope);
+                }
+            }
+        } catch (IOException e) {
+            // Writes to a StringWriter do not fail
+            member.future.completeExceptionally(new UncheckedIOException(e));
+        }
+        return member.future;
+    }
+
+    private Envelope open(String bucket, String topic, int partition) throws IOException {
+        Envelope created = new Envelope(topic, partition);
+        open.put(bucket, created);
+        timer.schedule(() -> expire(bucket, created), lingerMs, TimeUnit.MILLISECONDS);
+        return created;
+    }
+
+    /**
+     * Writes the event as the {@code {"key", "headers", "value"}} object of an envelope.
+     */
+    static String encode(EncodedEvent event) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator json = JSON.createGenerator(writer)) {
+            json.writeStartObject();
+            json.writeStringField("key", event.getKey());
+            json.writeArrayFieldStart("headers");
+            if (event.getHeaders() != null) {
+                for (Header header : event.getHeaders()) {
+                    json.writeStartArray();
+                    json.writeString(header.key());
+                    json.writeString(header.value() != null ? Base64.getEncoder().encodeToString(header.value()) : null);
+                    json.writeEndArray();
+                }
+            }
+            json.writeEndArray();
+            json.writeStringField("value", event.getValue());
+            json.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Partition the event was assigned, or of a keyed event as the default partitioner assigns it, or -1 to let the
+     * producer choose.
+     */
+    private int partition(EncodedEvent event) {
+        if (event.getPartition() != null) {
+            return event.getPartition();
+        }
+        if (event.getKey() == null) {
+            return -1;
+        }
+        int partitions = producer.partitionsFor(event.getTopic()).size();
+        if (partitions == 0) {
+            return -1;
+        }
+        return Utils.toPositive(Utils.murmur2(event.getKey().getBytes(StandardCharsets.UTF_8))) % partitions;
+    }
+
+    private synchronized void expire(String bucket, Envelope envelope) {
+        if (open.get(bucket) == envelope) {
+            open.remove(bucket);
+            send(envelope);
+        }
+    }
+
+    /**
+     * Sends the envelope. Called with the lock held, so envelopes of one partition are sent in the order they were
+     * filled.
+     */
+    private void send(Envelope envelope) {
+        try {
+            producer.send(envelope.toRecord(), envelope::complete);
+        } catch (IOException e) {
+            envelope.complete(null, new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            envelope.complete(null, e);
+        }
+    }
+
+    /**
+     * Sends the event as its own record, on the partition an envelope would have used. Called with the lock held.
+     */
+    private void sendAlone(EncodedEvent event, int partition, Member member) {
+        ProducerRecord<String, String> record = new ProducerRecord<>(event.getTopic(), partition >= 0 ? partition : null,
+            event.getKey(), event.getValue(), event.getHeaders());
+        try {
+            producer.send(record, member::complete);
+        } catch (RuntimeException e) {
+            member.complete(null, e);
+        }
+    }
+
+    /**
+     * Sends all open envelopes without waiting for their linger time.
+     */
+    public synchronized void flush() {
+        for (Envelope envelope : open.values()) {
+            send(envelope);
+        }
+        open.clear();
+    }
+
+    /**
+     * Events in open envelopes or in envelopes not yet acknowledged.
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Sends the open envelopes and stops the linger timer. The producer is not closed.
+     */
+    @Override
+    public void close() {
+        flush();
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,326 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.jboss.logging.Logger;
+
+/**
+ * Publishes probe records through the listener's producer and consumes them again to measure the latency from
+ * publishing to consuming and to detect probes that were acknowledged by the broker but never arrived. The consumer is
+ * assigned every partition of the canary topic without a consumer group, so it causes no rebalances. Probes are keyed
+ * by the instance id and each node only counts its own, so all nodes can share one topic.
+ */
+public class EventCanary implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(EventCanary.class);
+
+    static final String PROBE_TYPE = "com.redhat.keycloak.canary";
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final String topic;
+    private final Function<EncodedEvent, CompletableFuture<Void>> publisher;
+    private volatile Consumer<String, String> consumer;
+    private final AtomicReference<Consumer<String, String>> replacement = new AtomicReference<>();
+    private final long intervalNanos;
+    private final long lossTimeoutNanos;
+    private final ConcurrentMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder sendFailed = new LongAdder();
+    private final LongAdder unexpected = new LongAdder();
+    private volatile long lastLatencyMs = -1;
+
+    private long sequence;
+    private long nextProbeAt;
+    private boolean assigned;
+    private Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * @param publisher sends a probe with the listener's current producer
+     * @param consumer consumer used by the canary thread only
+     */
+    public EventCanary(String topic, Function<EncodedEvent, CompletableFuture<Void>> publisher,
+                       Consumer<String, String> consumer, long intervalMs, long lossTimeoutMs) {
+        this.topic = topic;
+        this.publisher = publisher;
+        this.consumer = consumer;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMs));
+        this.lossTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lossTimeoutMs);
+        this.nextProbeAt = System.nanoTime();
+    }
+
+    public void start() {
+        worker = new Thread(this::run, "kafka-events-canary");
+        worker.setDaemon(true);
+        worker.start();
+        LOG.info("Kafka event canary started on topic " + topic + " with instance id " + instanceId);
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                runOnce(POLL_TIMEOUT);
+            } catch (RuntimeException e) {
+                if (!closed) {
+                    LOG.warn("Kafka event canary run failed", e);
+                    sleep();
+                }
+            }
+        }
+        consumer.close();
+        closeReplacement();
+    }
+
+    /**
+     * Sends a probe if one is due, consumes the arrived probes and counts the overdue ones as lost.
+     */
+    void runOnce(Duration pollTimeout) {
+        Consumer<String, String> next = replacement.getAndSet(null);
+        if (next != null) {
+            switchConsumer(next);
+        }
+        if (!assigned) {
+            assigned = assign();
+            if (!assigned) {
+                return;
+            }
+        }
+        long now = System.nanoTime();
+        if (now - nextProbeAt >= 0) {
+            nextProbeAt = now + intervalNanos;
+            sendProbe(now);
+        }
+        for (ConsumerRecord<String, String> record : consumer.poll(pollTimeout)) {
+            receive(record, System.nanoTime());
+        }
+        expire(System.nanoTime());
+    }
+
+    /**
+     * Assigns every partition of the topic and starts from its end, so probes of earlier runs are not replayed.
+     */
+    private boolean assign() {
+        List<PartitionInfo> infos = consumer.partitionsFor(topic);
+        if (infos == null || infos.isEmpty()) {
+            LOG.warn("Canary topic " + topic + " has no partitions, retrying");
+            sleep();
+            return false;
+        }
+        List<TopicPartition> partitions = infos.stream()
+            .map(partition -> new TopicPartition(topic, partition.partition()))
+            .collect(Collectors.toList());
+        consumer.assign(partitions);
+        consumer.seekToEnd(partitions);
+        // Resolves the end offsets now, before the first probe is sent
+        partitions.forEach(consumer::position);
+        return true;
+    }
+
+    /**
+     * Continues from the old consumer's positions, so probes in flight are still consumed.
+     */
+    private void switchConsumer(Consumer<String, String> next) {
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        if (assigned) {
+            try {
+                for (TopicPartition partition : consumer.assignment()) {
+                    positions.put(partition, consumer.position(partition));
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to read the canary consumer's positions, starting from the end", e);
+                positions.clear();
+            }
+        }
+        consumer.close();
+        consumer = next;
+        if (positions.isEmpty()) {
+            assigned = false;
+        } else {
+            next.assign(positions.keySet());
+            positions.forEach(next::seek);
+        }
+        LOG.info("Kafka event canary consumer rolled");
+    }
+
+    private void sendProbe(long now) {
+        long seq = ++sequence;
+        Headers headers = new RecordHeaders();
+        headers.add(CloudEventHeaders.TYPE, PROBE_TYPE.getBytes(StandardCharsets.UTF_8));
+        headers.add(CloudEventHeaders.ID, (instanceId + "-" + seq).getBytes(StandardCharsets.UTF_8));
+        String value = "{\"instance\":\"" + instanceId + "\",\"sequence\":" + seq + ",\"sentAt\":"
+            + System.currentTimeMillis() + "}";
+        pending.put(seq, now);
+        sent.increment();
+        CompletableFuture<Void> published;
+        try {
+            published = publisher.apply(new EncodedEvent(topic, instanceId, value, headers));
+        } catch (RuntimeException e) {
+            published = CompletableFuture.failedFuture(e);
+        }
+        published.whenComplete((ignored, error) -> {
+            // A probe the producer failed to send is not silently lost
+            if (error != null && pending.remove(seq) != null) {
+                sendFailed.increment();
+                LOG.debug("Canary probe " + seq + " could not be sent", error);
+            }
+        });
+    }
+
+    private void receive(ConsumerRecord<String, String> record, long now) {
+        if (!PROBE_TYPE.equals(CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.TYPE))) {
+            return;
+        }
+        String id = CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ID);
+        String prefix = instanceId + "-";
+        if (id == null || !id.startsWith(prefix)) {
+            return;
+        }
+        Long sentAt = pending.remove(Long.parseLong(id.substring(prefix.length())));
+        if (sentAt == null) {
+            // Duplicate, or arrived after it was counted as lost
+            unexpected.increment();
+            return;
+        }
+        long nanos = now - sentAt;
+        received.increment();
+        latency.record(nanos);
+        lastLatencyMs = TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<Long, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> entry = iterator.next();
+            if (now - entry.getValue() > lossTimeoutNanos) {
+                iterator.remove();
+                lost.increment();
+                LOG.warn("Canary probe " + entry.getKey() + " was not consumed within "
+                    + TimeUnit.NANOSECONDS.toMillis(lossTimeoutNanos) + " ms");
+            }
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Probes not consumed within the loss timeout.
+     */
+    public long getLost() {
+        return lost.sum();
+    }
+
+    /**
+     * Probes the producer failed to send.
+     */
+    public long getSendFailed() {
+        return sendFailed.sum();
+    }
+
+    /**
+     * Probes consumed again or after they were counted as lost.
+     */
+    public long getUnexpected() {
+        return unexpected.sum();
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Time from publishing a probe to consuming it, in microseconds.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Latency of the last consumed probe, or -1 if none was consumed yet.
+     */
+    public long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    /**
+     * Replaces the consumer before the next poll, for example after the TLS certificates were rotated.
+     */
+    public void rollConsumer(Consumer<String, String> next) {
+        Consumer<String, String> previous = replacement.getAndSet(next);
+        if (previous != null) {
+            previous.close();
+        }
+        if (closed) {
+            // The thread may have stopped before picking it up
+            closeReplacement();
+        }
+    }
+
+    private void closeReplacement() {
+        Consumer<String, String> unused = replacement.getAndSet(null);
+        if (unused != null) {
+            unused.close();
+        }
+    }
+
+    /**
+     * Stops the canary thread, which closes the consumer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (worker == null) {
+            consumer.close();
+            closeReplacement();
+            return;
+        }
+        consumer.wakeup();
+        try {
+            worker.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.logging.Logger;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Resolves configured realm, client and user attributes for an event, so consumers do not have to call the
+ * admin API for them. Attributes are named like {@code realm.name}, {@code client.name}, {@code user.username}
+ * or {@code user.attribute.department}.
+ *
+ * Resolved entities are kept in an {@link EntityCache}. Admin events for a realm, client or user drop the matching
+ * entries; changes made on other cluster nodes are picked up once the entries expire.
+ */
+public class EventEnricher {
+
+    private static final Logger LOG = Logger.getLogger(EventEnricher.class);
+
+    static final String REALM = "realm.";
+    static final String CLIENT = "client.";
+    static final String USER = "user.";
+    static final String USER_ATTRIBUTE = "user.attribute.";
+
+    private static final List<String> REALM_ATTRIBUTES = List.of("realm.name", "realm.displayName");
+    private static final List<String> CLIENT_ATTRIBUTES = List.of("client.id", "client.name");
+    private static final List<String> USER_ATTRIBUTES = List.of("user.username", "user.email", "user.firstName",
+        "user.lastName");
+
+    private final List<String> realmAttributes = new ArrayList<>();
+    private final List<String> clientAttributes = new ArrayList<>();
+    private final List<String> userAttributes = new ArrayList<>();
+    private final EntityCache cache;
+
+    public EventEnricher(List<String> attributes, EntityCache cache) {
+        for (String attribute : attributes) {
+            if (REALM_ATTRIBUTES.contains(attribute)) {
+                realmAttributes.add(attribute);
+            } else if (CLIENT_ATTRIBUTES.contains(attribute)) {
+                clientAttributes.add(attribute);
+            } else if (USER_ATTRIBUTES.contains(attribute)
+                || attribute.startsWith(USER_ATTRIBUTE) && attribute.length() > USER_ATTRIBUTE.length()) {
+                userAttributes.add(attribute);
+            } else {
+                throw new IllegalArgumentException("Unknown enrichment attribute: " + attribute);
+            }
+        }
+        this.cache = cache;
+    }
+
+    public EntityCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the configured attributes of the event's realm, client and user. Entities that do not exist
+     * contribute no attributes.
+     */
+    public Map<String, String> enrich(KeycloakSession session, String realmId, String clientId, String userId) {
+        Map<String, String> enrichment = new LinkedHashMap<>();
+        if (realmId == null) {
+            return enrichment;
+        }
+        if (!realmAttributes.isEmpty()) {
+            enrichment.putAll(cache.get(REALM + realmId, key -> loadRealm(session, realmId)));
+        }
+        if (!clientAttributes.isEmpty() && clientId != null) {
+            enrichment.putAll(cache.get(CLIENT + realmId + "/" + clientId, key -> loadClient(session, realmId, clientId)));
+        }
+        if (!userAttributes.isEmpty() && userId != null) {
+            enrichment.putAll(cache.get(USER + realmId + "/" + userId, key -> loadUser(session, realmId, userId)));
+        }
+        return enrichment;
+    }
+
+    /**
+     * Drops cached entities changed by an admin event.
+     */
+    public void invalidate(AdminEvent event) {
+        if (event.getOperationType() == OperationType.CREATE || event.getResourceType() == null) {
+            return;
+        }
+        String realmId = event.getRealmId();
+        switch (event.getResourceType()) {
+            case REALM:
+                cache.invalidate(REALM + realmId);
+                break;
+            case CLIENT:
+                // The resource path carries the internal id, while entries are keyed by clientId
+                cache.invalidatePrefix(CLIENT + realmId + "/");
+                break;
+            case USER:
+                String userId = resourceId(event.getResourcePath(), "users/");
+                if (userId != null) {
+                    cache.invalidate(USER + realmId + "/" + userId);
+                } else {
+                    cache.invalidatePrefix(USER + realmId + "/");
+                }
+                break;
+            default:
+                return;
+        }
+        LOG.trace("Enrichment cache invalidated by " + event.getResourceType() + " " + event.getOperationType());
+    }
+
+    private static String resourceId(String resourcePath, String collection) {
+        if (resourcePath == null || !resourcePath.startsWith(collection)) {
+            return null;
+        }
+        String id = resourcePath.substring(collection.length());
+        int end = id.indexOf('/');
+        return end < 0 ? id : id.substring(0, end);
+    }
+
+    private Map<String, String> loadRealm(KeycloakSession session, String realmId) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm == null) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String attribute : realmAttributes) {
+            putIfPresent(values, attribute, "realm.name".equals(attribute) ? realm.getName() : realm.getDisplayName());
+        }
+        return values;
+    }
+
+    private Map<String, String> loadClient(KeycloakSession session, String realmId, String clientId) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        ClientModel client = realm != null ? realm.getClientByClientId(clientId) : null;
+        if (client == null) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String attribute : clientAttributes) {
+            putIfPresent(values, attribute, "client.id".equals(attribute) ? client.getId() : client.getName());
+        }
+        return values;
+    }
+
+    private Map<String, String> loadUser(KeycloakSession session, String realmId, String userId) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        UserModel user = realm != null ? session.users().getUserById(realm, userId) : null;
+        if (user == null) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String attribute : userAttributes) {
+            putIfPresent(values, attribute, userAttribute(user, attribute));
+        }
+        return values;
+    }
+
+    private static String userAttribute(UserModel user, String attribute) {
+        switch (attribute) {
+            case "user.username":
+                return user.getUsername();
+            case "user.email":
+                return user.getEmail();
+            case "user.firstName":
+                return user.getFirstName();
+            case "user.lastName":
+                return user.getLastName();
+            default:
+                return user.getFirstAttribute(attribute.substring(USER_ATTRIBUTE.length()));
+        }
+    }
+
+    private static void putIfPresent(Map<String, String> values, String attribute, String value) {
+        if (value != null) {
+            values.put(attribute, value);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs events through a fixed array of stages. The array is assembled once, ordered by phase, so processing an event
+ * involves no lookups. Every stage records how often it ran, how long it took and how many events it discarded.
+ */
+public class EventPipeline {
+
+    private final EventPipelineStage[] stages;
+    private final LongAdder[] invocations;
+    private final LongAdder[] nanos;
+    private final LongAdder[] discards;
+    private final LongAdder[] failures;
+    private final int sendIndex;
+
+    /**
+     * @param stages stages in the order they run within their phase
+     */
+    public EventPipeline(List<EventPipelineStage> stages) {
+        List<EventPipelineStage> ordered = new ArrayList<>(stages);
+        // List.sort is stable, so the given order is kept within a phase
+        ordered.sort(Comparator.comparing(EventPipelineStage::getPhase));
+        this.stages = ordered.toArray(new EventPipelineStage[0]);
+        this.invocations = newCounters(this.stages.length);
+        this.nanos = newCounters(this.stages.length);
+        this.discards = newCounters(this.stages.length);
+        this.failures = newCounters(this.stages.length);
+
+        int index = 0;
+        while (index < this.stages.length && this.stages[index].getPhase() != EventPipelineStage.Phase.SEND) {
+            index++;
+        }
+        this.sendIndex = index;
+    }
+
+    private static LongAdder[] newCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * Runs all stages. Returns false if a stage discarded the event.
+     */
+    public boolean process(EventPipelineContext context) throws Exception {
+        return run(context, 0, stages.length);
+    }
+
+    /**
+     * Runs the stages before the {@link EventPipelineStage.Phase#SEND} phase, leaving the record in the context.
+     */
+    public boolean prepare(EventPipelineContext context) throws Exception {
+        return run(context, 0, sendIndex);
+    }
+
+    private boolean run(EventPipelineContext context, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            long startedAt = System.nanoTime();
+            boolean passed;
+            try {
+                passed = stages[i].process(context);
+            } catch (Exception e) {
+                failures[i].increment();
+                throw e;
+            } finally {
+                invocations[i].increment();
+                nanos[i].add(System.nanoTime() - startedAt);
+            }
+            if (!passed) {
+                discards[i].increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return stages.length;
+    }
+
+    public EventPipelineStage getStage(int index) {
+        return stages[index];
+    }
+
+    public long getInvocations(int index) {
+        return invocations[index].sum();
+    }
+
+    /**
+     * Total time spent in the stage, in nanoseconds.
+     */
+    public long getNanos(int index) {
+        return nanos[index].sum();
+    }
+
+    public long getDiscards(int index) {
+        return discards[index].sum();
+    }
+
+    public long getFailures(int index) {
+        return failures[index].sum();
+    }
+
+    /**
+     * Stage names in execution order, for logging.
+     */
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (EventPipelineStage stage : stages) {
+            if (builder.length() > 0) {
+                builder.append(" -> ");
+            }
+            builder.append(stage.getPhase()).append(':').append(stage.getName());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Closes all stages.
+     */
+    public void close() {
+        for (EventPipelineStage stage : stages) {
+            stage.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * State of one event travelling through the {@link EventPipeline}. Exactly one of {@link #getEvent()} and
+ * {@link #getAdminEvent()} is set. Keycloak hands the same event instance to every listener, so stages replace the
+ * admin event instead of modifying it.
+ */
+public class EventPipelineContext {
+
+    private final Event event;
+    private AdminEvent adminEvent;
+    private final KeycloakSession session;
+    private final String realmId;
+    private final String clientId;
+    private final String userId;
+    private String topic;
+    private PriorityClassifier.Priority priority = PriorityClassifier.Priority.NORMAL;
+    private Map<String, String> enrichment;
+    private AdminRepresentationDiffer.Result representationDiff;
+    private ProducerRecord<String, String> record;
+    private String dedupeId;
+
+    public EventPipelineContext(Event event, KeycloakSession session) {
+        this.event = event;
+        this.session = session;
+        this.realmId = event.getRealmId();
+        this.clientId = event.getClientId();
+        this.userId = event.getUserId();
+    }
+
+    /**
+     * For admin events, the realm, client and user are those of the admin performing the change.
+     */
+    public EventPipelineContext(AdminEvent adminEvent, KeycloakSession session) {
+        this.event = null;
+        this.adminEvent = adminEvent;
+        this.session = session;
+        AuthDetails authDetails = adminEvent.getAuthDetails();
+        this.realmId = authDetails != null ? authDetails.getRealmId() : null;
+        this.clientId = authDetails != null ? authDetails.getClientId() : null;
+        this.userId = authDetails != null ? authDetails.getUserId() : null;
+    }
+
+    public boolean isAdminEvent() {
+        return event == null;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public AdminEvent getAdminEvent() {
+        return adminEvent;
+    }
+
+    public void setAdminEvent(AdminEvent adminEvent) {
+        this.adminEvent = adminEvent;
+    }
+
+    /**
+     * Session of the event, or null when the listener is used without one, as in tests.
+     */
+    public KeycloakSession getSession() {
+        return session;
+    }
+
+    public String getRealmId() {
+        return realmId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Lane the event is sent in, assigned in the {@link EventPipelineStage.Phase#ROUTE} phase.
+     */
+    public PriorityClassifier.Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(PriorityClassifier.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Attributes published in the {@code enrichment} object of the payload. Empty until a stage adds one.
+     */
+    public Map<String, String> getEnrichment() {
+        return enrichment != null ? enrichment : Collections.emptyMap();
+    }
+
+    public void putEnrichment(String name, String value) {
+        if (enrichment == null) {
+            enrichment = new LinkedHashMap<>();
+        }
+        enrichment.put(name, value);
+    }
+
+    void putAllEnrichment(Map<String, String> values) {
+        if (!values.isEmpty()) {
+            if (enrichment == null) {
+                enrichment = new LinkedHashMap<>(values);
+            } else {
+                enrichment.putAll(values);
+            }
+        }
+    }
+
+    AdminRepresentationDiffer.Result getRepresentationDiff() {
+        return representationDiff;
+    }
+
+    void setRepresentationDiff(AdminRepresentationDiffer.Result representationDiff) {
+        this.representationDiff = representationDiff;
+    }
+
+    /**
+     * The record, available from the {@link EventPipelineStage.Phase#SERIALIZE} phase on.
+     */
+    public ProducerRecord<String, String> getRecord() {
+        return record;
+    }
+
+    public void setRecord(ProducerRecord<String, String> record) {
+        this.record = record;
+    }
+
+    /**
+     * Id remembered by the dedupe stage, or null. It is forgotten again if the event is not published.
+     */
+    public String getDedupeId() {
+        return dedupeId;
+    }
+
+    public void setDedupeId(String dedupeId) {
+        this.dedupeId = dedupeId;
+    }
+}
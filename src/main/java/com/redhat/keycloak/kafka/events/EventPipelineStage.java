@@ -0,0 +1,50 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.keycloak.provider.Provider;
+
+/**
+ * A step of the {@link EventPipeline}. Built-in stages filter, enrich, diff, route, serialize and send events;
+ * extensions contribute further stages through the {@link EventPipelineStageSpi}.
+ *
+ * Stages are created once when the listener starts and shared by all sessions, so they must be thread-safe and must
+ * not keep the session they were created with. The session of the event is available from the context.
+ */
+public interface EventPipelineStage extends Provider {
+
+    /**
+     * Phases in execution order. Within a phase, built-in stages run before extension stages.
+     */
+    enum Phase {
+        /** Decides whether the event is published. */
+        FILTER,
+        /** Adds attributes to {@link EventPipelineContext#getEnrichment()}. */
+        ENRICH,
+        /** Replaces the admin event, for example to redact the representation. */
+        TRANSFORM,
+        /** Sets the topic. */
+        ROUTE,
+        /** Builds the record. Later stages of this phase may add headers to it. */
+        SERIALIZE,
+        /** Hands the record to Kafka. Skipped in outbox mode, where the record is written to the outbox table. */
+        SEND
+    }
+
+    Phase getPhase();
+
+    /**
+     * Processes the event. Returning false discards it, so no later stage runs.
+     */
+    boolean process(EventPipelineContext context) throws Exception;
+
+    /**
+     * Name shown in the stage metrics.
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    default void close() {
+        // ignore
+    }
+}
@@ -0,0 +1,11 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.keycloak.provider.ProviderFactory;
+
+/**
+ * Factory of an extension {@link EventPipelineStage}. Register implementations in
+ * {@code META-INF/services/com.redhat.keycloak.kafka.events.EventPipelineStageProviderFactory}.
+ * Stages of the same phase run in descending {@link #order()}.
+ */
+public interface EventPipelineStageProviderFactory extends ProviderFactory<EventPipelineStage> {
+}
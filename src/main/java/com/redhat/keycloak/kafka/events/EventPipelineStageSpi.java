@@ -0,0 +1,32 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.keycloak.provider.Provider;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.provider.Spi;
+
+/**
+ * SPI through which extensions add stages to the Kafka event pipeline.
+ */
+public class EventPipelineStageSpi implements Spi {
+
+    @Override
+    public boolean isInternal() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return "kafka-event-pipeline-stage";
+    }
+
+    @Override
+    public Class<? extends Provider> getProviderClass() {
+        return EventPipelineStage.class;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Class<? extends ProviderFactory> getProviderFactoryClass() {
+        return EventPipelineStageProviderFactory.class;
+    }
+}
@@ -0,0 +1,31 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Destination of published events. Events are handed over in batches, for example the chunks of one event, and keep
+ * their order within a batch. The returned future completes once the sink accepted every event of the batch, or
+ * exceptionally with the first failure.
+ */
+public interface EventSink extends AutoCloseable {
+
+    enum Type {
+        KAFKA, FILE;
+
+        public static Type parse(String value) {
+            return value != null ? valueOf(value.trim().toUpperCase()) : KAFKA;
+        }
+    }
+
+    CompletableFuture<Void> publish(List<EncodedEvent> events);
+
+    /**
+     * Blocks until every event handed over so far is accepted.
+     */
+    default void flush() {
+    }
+
+    @Override
+    void close();
+}
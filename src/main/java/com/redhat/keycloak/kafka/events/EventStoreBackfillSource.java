@@ -0,0 +1,47 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Reads stored events through Keycloak's {@link EventStoreProvider}, one short transaction per page.
+ */
+public class EventStoreBackfillSource implements BackfillSource {
+
+    private final KeycloakSessionFactory sessionFactory;
+
+    public EventStoreBackfillSource(KeycloakSessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<Event> events(long fromTime, long toTime, int limit) {
+        return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            session.getProvider(EventStoreProvider.class).createQuery()
+                .fromDate(new Date(fromTime))
+                .toDate(new Date(toTime))
+                .orderByAscTime()
+                .maxResults(limit)
+                .getResultStream()
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<AdminEvent> adminEvents(long fromTime, long toTime, int limit) {
+        return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            session.getProvider(EventStoreProvider.class).createAdminQuery()
+                .fromTime(new Date(fromTime))
+                .toTime(new Date(toTime))
+                .orderByAscTime()
+                .maxResults(limit)
+                .getResultStream()
+                .collect(Collectors.toList()));
+    }
+}
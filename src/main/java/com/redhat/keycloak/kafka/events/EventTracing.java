@@ -0,0 +1,119 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.charset.StandardCharsets;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapSetter;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * OpenTelemetry spans of the publishing path. Spans are children of the span current on the Keycloak request thread,
+ * such as the HTTP request span of the OpenTelemetry Java agent, so the publish latency shows up in the request's
+ * trace. The W3C trace context of the publish span is added to the record headers for consumers to continue the
+ * trace. Attributes are only computed for recorded spans, so unsampled events cost little more than a span lookup.
+ */
+public class EventTracing {
+
+    static final String INSTRUMENTATION_NAME = "keycloak-kafka-events";
+
+    static final AttributeKey<String> MESSAGING_SYSTEM = AttributeKey.stringKey("messaging.system");
+    static final AttributeKey<String> MESSAGING_OPERATION = AttributeKey.stringKey("messaging.operation");
+    static final AttributeKey<String> DESTINATION = AttributeKey.stringKey("messaging.destination.name");
+    static final AttributeKey<Long> PARTITION = AttributeKey.longKey("messaging.kafka.destination.partition");
+    static final AttributeKey<Long> BODY_SIZE = AttributeKey.longKey("messaging.message.body.size");
+    static final AttributeKey<String> EVENT_TYPE = AttributeKey.stringKey("keycloak.event.type");
+    static final AttributeKey<Long> QUEUE_TIME = AttributeKey.longKey("keycloak.event.queue_time_ms");
+    static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("keycloak.event.outcome");
+
+    private static final TextMapSetter<Headers> HEADER_SETTER = (headers, key, value) -> {
+        headers.remove(key);
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    };
+
+    private final Tracer tracer;
+
+    public EventTracing(OpenTelemetry openTelemetry) {
+        this.tracer = openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+
+    /**
+     * Starts the span of serializing the event; the caller ends it.
+     */
+    Span startSerialize(EventPipelineContext context) {
+        Span span = tracer.spanBuilder("keycloak-events serialize").startSpan();
+        if (span.isRecording()) {
+            span.setAttribute(EVENT_TYPE, eventType(context));
+        }
+        return span;
+    }
+
+    /**
+     * Starts the span of publishing the record and adds its trace context to the record headers.
+     *
+     * @param eventTime time of the Keycloak event, the queue time is measured from it
+     */
+    PublishSpan startPublish(EventPipelineContext context, ProducerRecord<String, String> record, long eventTime) {
+        Span span = tracer.spanBuilder(record.topic() + " publish").setSpanKind(SpanKind.PRODUCER).startSpan();
+        if (span.isRecording()) {
+            span.setAttribute(MESSAGING_SYSTEM, "kafka");
+            span.setAttribute(MESSAGING_OPERATION, "publish");
+            span.setAttribute(DESTINATION, record.topic());
+            span.setAttribute(EVENT_TYPE, eventType(context));
+            if (record.value() != null) {
+                span.setAttribute(BODY_SIZE, (long) record.value().getBytes(StandardCharsets.UTF_8).length);
+            }
+            span.setAttribute(QUEUE_TIME, Math.max(0, System.currentTimeMillis() - eventTime));
+        }
+        W3CTraceContextPropagator.getInstance().inject(Context.current().with(span), record.headers(), HEADER_SETTER);
+        return new PublishSpan(span);
+    }
+
+    private static String eventType(EventPipelineContext context) {
+        if (context.isAdminEvent()) {
+            return context.getAdminEvent().getResourceTypeAsString() + "." + context.getAdminEvent().getOperationType();
+        }
+        return String.valueOf(context.getEvent().getType());
+    }
+
+    /**
+     * Publish span of one record, ended once the record is acknowledged, failed or not sent.
+     */
+    static final class PublishSpan {
+        private final Span span;
+
+        private PublishSpan(Span span) {
+            this.span = span;
+        }
+
+        void partition(int partition) {
+            if (span.isRecording()) {
+                span.setAttribute(PARTITION, (long) partition);
+            }
+        }
+
+        /**
+         * Ends the span of a record that was not handed to Kafka, for example because it was held while paused.
+         */
+        void skipped(String outcome) {
+            span.setAttribute(OUTCOME, outcome);
+            span.end();
+        }
+
+        void end(Throwable error) {
+            if (error != null) {
+                span.recordException(error);
+                span.setStatus(StatusCode.ERROR);
+            }
+            span.end();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.kafka.common.header.Headers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Encrypts selected payload fields with AES-GCM, so readers of the topic without the key see neither IP addresses nor
+ * user details. A field is addressed by its dotted path in the JSON payload, for example {@code details.email}.
+ * Its value is replaced by the Base64 encoding of the 12 byte IV, the ciphertext and the 16 byte tag; the path is the
+ * additional authenticated data, so a value cannot be moved to another field. Values that are not strings are
+ * encrypted as their JSON text.
+ * <p>
+ * Records name the key in the {@code ce_encryptionkeyid} header and the encrypted paths in
+ * {@code ce_encryptedfields}. Keys are rotated by adding a new key to the keystore: without a configured key id the
+ * newest key encrypts, while consumers keep the older keys for the records already written.
+ * <p>
+ * Each thread reuses its cipher. The IV is a random per-thread prefix followed by a counter, so IVs never repeat
+ * without drawing from {@link SecureRandom} for every field.
+ */
+public class FieldEncryptor {
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int IV_BYTES = 12;
+    static final int TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<CipherState> CIPHERS = ThreadLocal.withInitial(CipherState::new);
+
+    private final String keyId;
+    private final SecretKey key;
+    private final List<String> fields;
+    private final List<String[]> paths = new ArrayList<>();
+    private final byte[] keyIdValue;
+
+    public FieldEncryptor(String keyId, SecretKey key, List<String> fields) {
+        this.keyId = keyId;
+        this.key = key;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        for (String field : fields) {
+            paths.add(field.split("\\."));
+        }
+        this.keyIdValue = keyId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cipher of a thread with the IV state that goes with it.
+     */
+    private static final class CipherState {
+        private final Cipher cipher;
+        private final byte[] prefix = new byte[IV_BYTES - Integer.BYTES];
+        private int counter;
+
+        private CipherState() {
+            try {
+                cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(TRANSFORMATION + " is not available", e);
+            }
+            RANDOM.nextBytes(prefix);
+        }
+
+        private byte[] nextIv() {
+            if (counter == -1) {
+                // 2^32 IVs used with this prefix
+                RANDOM.nextBytes(prefix);
+            }
+            return ByteBuffer.allocate(IV_BYTES).put(prefix).putInt(counter++).array();
+        }
+    }
+
+    /**
+     * Loads the AES keys of a keystore and encrypts with the given one, or with the newest if the key id is null.
+     *
+     * @throws KeyStoreException if the keystore holds no AES key or not the configured one
+     */
+    public static FieldEncryptor load(Path file, String type, String password, String keyId, List<String> fields)
+        throws IOException, GeneralSecurityException {
+        char[] secret = password != null ? password.toCharArray() : null;
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream in = Files.newInputStream(file)) {
+            keyStore.load(in, secret);
+        }
+        String selected = null;
+        Date selectedDate = null;
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (!isAesKey(keyStore, alias, secret)) {
+                continue;
+            }
+            if (keyId != null) {
+                if (alias.equalsIgnoreCase(keyId)) {
+                    selected = alias;
+                    break;
+                }
+                continue;
+            }
+            Date created = keyStore.getCreationDate(alias);
+            if (selected == null || created.after(selectedDate)
+                || created.equals(selectedDate) && alias.compareTo(selected) > 0) {
+                selected = alias;
+                selectedDate = created;
+            }
+        }
+        if (selected == null) {
+            throw new KeyStoreException(keyId != null ? "No AES key " + keyId + " in " + file : "No AES key in " + file);
+        }
+        return new FieldEncryptor(selected, (SecretKey) keyStore.getKey(selected, secret), fields);
+    }
+
+    private static boolean isAesKey(KeyStore keyStore, String alias, char[] secret) throws GeneralSecurityException {
+        if (!keyStore.isKeyEntry(alias)) {
+            return false;
+        }
+        Key key = keyStore.getKey(alias, secret);
+        return key instanceof SecretKey && "AES".equalsIgnoreCase(key.getAlgorithm());
+    }
+
+    /**
+     * Alias of the key that encrypts.
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Encrypts the configured fields present in the payload and adds the key and field headers if any was found.
+     */
+    void encrypt(ObjectNode payload, Headers headers) {
+        StringBuilder encrypted = null;
+        for (int i = 0; i < paths.size(); i++) {
+            String[] path = paths.get(i);
+            JsonNode parent = payload;
+            for (int segment = 0; segment < path.length - 1 && parent != null; segment++) {
+                parent = parent.get(path[segment]);
+            }
+            if (!(parent instanceof ObjectNode)) {
+                continue;
+            }
+            JsonNode value = parent.get(path[path.length - 1]);
+            if (value == null || value.isNull()) {
+                continue;
+            }
+            String plaintext = value.isValueNode() ? value.asText() : value.toString();
+            ((ObjectNode) parent).put(path[path.length - 1], encrypt(fields.get(i), plaintext));
+            encrypted = encrypted == null ? new StringBuilder(fields.get(i)) : encrypted.append(',').append(fields.get(i));
+        }
+        if (encrypted != null) {
+            headers.add(CloudEventHeaders.ENCRYPTION_KEY_ID, keyIdValue);
+            headers.add(CloudEventHeaders.ENCRYPTED_FIELDS, encrypted.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Encrypts one value, bound to its path.
+     */
+    String encrypt(String path, String plaintext) {
+        CipherState state = CIPHERS.get();
+        byte[] iv = state.nextIv();
+        byte[] input = plaintext.getBytes(StandardCharsets.UTF_8);
+        try {
+            state.cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            state.cipher.updateAAD(path.getBytes(StandardCharsets.UTF_8));
+            byte[] output = new byte[IV_BYTES + state.cipher.getOutputSize(input.length)];
+            System.arraycopy(iv, 0, output, 0, IV_BYTES);
+            state.cipher.doFinal(input, 0, input.length, output, IV_BYTES);
+            return Base64.getEncoder().encodeToString(output);
+        } catch (GeneralSecurityException e) {
+            // Never fall back to clear text, the event fails instead
+            throw new IllegalStateException("Failed to encrypt " + path, e);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -14,12 +13,10 @@ import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.PartitionInfo;
-import org.apache.kafka.common.serialization.StringDeserializer;
 import org.jboss.logging.Logger;
 
 /**
@@ -198,31 +195,10 @@ public class KafkaConsumerProducerTest {
     private static Consumer<String, String> createConsumer(String bootstrapServers,
                                                             String clientId,
                                                             Map<String, String> securityEnvVars) {
-        Properties props = new Properties();
-
-        // Basic consumer configuration
-        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+        Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.GROUP_ID_CONFIG, clientId + "-group");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
-        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
-
-        // Apply security configuration from environment variables
-        if (!securityEnvVars.isEmpty()) {
-            try {
-                SecurityConfiguration securityConfig = new SecurityConfiguration(securityEnvVars);
-                securityConfig.validateConfiguration();
-                Map<String, Object> securityProperties = securityConfig.getSecurityProperties();
-                props.putAll(securityProperties);
-                LOG.debug("Security configuration applied to consumer: " + securityProperties.get("security.protocol"));
-            } catch (Exception e) {
-                LOG.warn("Failed to apply security configuration to consumer", e);
-            }
-        }
-
-        return new KafkaConsumer<>(props);
+        return new KafkaProducerFactory().createConsumer(clientId, bootstrapServers, props, securityEnvVars);
     }
 
     /**
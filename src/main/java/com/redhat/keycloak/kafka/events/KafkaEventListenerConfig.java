@@ -0,0 +1,1052 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.keycloak.Config.Scope;
+
+/**
+ * Listener options that are not Kafka producer properties. Each option is read from the SPI
+ * configuration first and falls back to the matching KAFKA_* environment variable.
+ */
+public class KafkaEventListenerConfig {
+
+    static final int DEFAULT_TRANSACTION_BATCH_SIZE = 100;
+    static final long DEFAULT_TRANSACTION_COMMIT_INTERVAL_MS = 100;
+    static final int DEFAULT_OUTBOX_BATCH_SIZE = 500;
+    static final long DEFAULT_OUTBOX_POLL_INTERVAL_MS = 1000;
+    static final long DEFAULT_OUTBOX_LEASE_MS = 30000;
+    static final int DEFAULT_USER_SEQUENCE_CAPACITY = 100000;
+    static final long DEFAULT_CONFIG_RELOAD_INTERVAL_MS = 5000;
+    static final long DEFAULT_CONFIRMATION_TIMEOUT_MS = 30000;
+    static final long DEFAULT_ENRICHMENT_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+    static final long DEFAULT_ENRICHMENT_CACHE_TTL_MS = 60000;
+    static final int DEFAULT_BACKFILL_BATCH_SIZE = 500;
+    static final int DEFAULT_BACKFILL_WORKERS = 2;
+    static final long DEFAULT_BACKFILL_MAX_RECORDS_PER_SECOND = 1000;
+    static final long DEFAULT_BACKFILL_LEASE_MS = 60000;
+    static final long DEFAULT_ADMIN_DIFF_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+    static final int DEFAULT_ADMIN_DIFF_SNAPSHOT_INTERVAL = 20;
+    static final int DEFAULT_CLUSTER_QUEUE_CAPACITY = 10000;
+    static final int DEFAULT_CLUSTER_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_CLUSTER_OPEN_MS = 30000;
+    static final long DEFAULT_SINK_FILE_MAX_BYTES = 100 * 1024 * 1024;
+    static final int DEFAULT_SINK_FILE_MAX_FILES = 10;
+    static final int DEFAULT_DEDUPE_MAX_IDS = 1000000;
+    static final double DEFAULT_STATS_SAMPLING_RATE = 1.0;
+    static final int DEFAULT_PAUSE_BUFFER_CAPACITY = 10000;
+    static final long DEFAULT_PAUSE_BUFFER_MAX_BYTES = 64 * 1024 * 1024;
+    static final long DEFAULT_CLUSTER_QUEUE_MAX_BYTES = 64 * 1024 * 1024;
+    static final long DEFAULT_CANARY_INTERVAL_MS = 5000;
+    static final long DEFAULT_CANARY_LOSS_TIMEOUT_MS = 30000;
+    static final long DEFAULT_TOPIC_PROVISIONING_TIMEOUT_MS = 10000;
+    static final int DEFAULT_EXPECTED_EVENT_BYTES = 1024;
+    static final long DEFAULT_ENVELOPE_LINGER_MS = 5;
+    static final String DEFAULT_ENCRYPTION_KEYSTORE_TYPE = "PKCS12";
+    static final double DEFAULT_PARTITION_EVENTS_PER_SECOND = 1000;
+    static final long DEFAULT_PRIORITY_SLO_MS = 100;
+    static final long DEFAULT_NORMAL_SLO_MS = 1000;
+
+    private int transactionBatchSize = DEFAULT_TRANSACTION_BATCH_SIZE;
+    private long transactionCommitIntervalMs = DEFAULT_TRANSACTION_COMMIT_INTERVAL_MS;
+    private boolean outboxEnabled;
+    private int outboxBatchSize = DEFAULT_OUTBOX_BATCH_SIZE;
+    private long outboxPollIntervalMs = DEFAULT_OUTBOX_POLL_INTERVAL_MS;
+    private long outboxLeaseMs = DEFAULT_OUTBOX_LEASE_MS;
+    private int userSequenceCapacity = DEFAULT_USER_SEQUENCE_CAPACITY;
+    private String configFile;
+    private long configReloadIntervalMs = DEFAULT_CONFIG_RELOAD_INTERVAL_MS;
+    private DeliveryConfirmation.Mode confirmationMode = DeliveryConfirmation.Mode.BLOCKING;
+    private long confirmationTimeoutMs = DEFAULT_CONFIRMATION_TIMEOUT_MS;
+    private List<String> enrichment = Collections.emptyList();
+    private long enrichmentCacheMaxBytes = DEFAULT_ENRICHMENT_CACHE_MAX_BYTES;
+    private long enrichmentCacheTtlMs = DEFAULT_ENRICHMENT_CACHE_TTL_MS;
+    private boolean backfillEnabled;
+    private long backfillFromTime;
+    private int backfillBatchSize = DEFAULT_BACKFILL_BATCH_SIZE;
+    private int backfillWorkers = DEFAULT_BACKFILL_WORKERS;
+    private long backfillMaxRecordsPerSecond = DEFAULT_BACKFILL_MAX_RECORDS_PER_SECOND;
+    private long backfillLeaseMs = DEFAULT_BACKFILL_LEASE_MS;
+    private boolean adminDiffEnabled;
+    private long adminDiffCacheMaxBytes = DEFAULT_ADMIN_DIFF_CACHE_MAX_BYTES;
+    private int adminDiffSnapshotInterval = DEFAULT_ADMIN_DIFF_SNAPSHOT_INTERVAL;
+    private int chunkSizeBytes;
+    private Map<String, String> clusters = Collections.emptyMap();
+    private ClusterFanOut.AckPolicy clusterAckPolicy = ClusterFanOut.AckPolicy.ANY;
+    private int clusterQueueCapacity = DEFAULT_CLUSTER_QUEUE_CAPACITY;
+    private int clusterFailureThreshold = DEFAULT_CLUSTER_FAILURE_THRESHOLD;
+    private long clusterOpenMs = DEFAULT_CLUSTER_OPEN_MS;
+    private EventSink.Type sinkType = EventSink.Type.KAFKA;
+    private String sinkFileDirectory;
+    private long sinkFileMaxBytes = DEFAULT_SINK_FILE_MAX_BYTES;
+    private int sinkFileMaxFiles = DEFAULT_SINK_FILE_MAX_FILES;
+    private long dedupeWindowMs;
+    private int dedupeMaxIds = DEFAULT_DEDUPE_MAX_IDS;
+    private double statsSamplingRate = DEFAULT_STATS_SAMPLING_RATE;
+    private int pauseBufferCapacity = DEFAULT_PAUSE_BUFFER_CAPACITY;
+    private long pauseBufferMaxBytes = DEFAULT_PAUSE_BUFFER_MAX_BYTES;
+    private long clusterQueueMaxBytes = DEFAULT_CLUSTER_QUEUE_MAX_BYTES;
+    private boolean tracingEnabled;
+    private String canaryTopic;
+    private long canaryIntervalMs = DEFAULT_CANARY_INTERVAL_MS;
+    private long canaryLossTimeoutMs = DEFAULT_CANARY_LOSS_TIMEOUT_MS;
+    private TopicProvisioner.Mode topicProvisioning = TopicProvisioner.Mode.NONE;
+    private long topicProvisioningTimeoutMs = DEFAULT_TOPIC_PROVISIONING_TIMEOUT_MS;
+    private double expectedEventsPerSecond;
+    private int expectedEventBytes = DEFAULT_EXPECTED_EVENT_BYTES;
+    private double partitionEventsPerSecond = DEFAULT_PARTITION_EVENTS_PER_SECOND;
+    private int topicReplicationFactor = -1;
+    private long topicRetentionMs = -1;
+    private String topicCleanupPolicy;
+    private int envelopeMaxChars;
+    private long envelopeLingerMs = DEFAULT_ENVELOPE_LINGER_MS;
+    private List<String> encryptedFields = Collections.emptyList();
+    private String encryptionKeystoreFile;
+    private String encryptionKeystorePassword;
+    private String encryptionKeystoreType = DEFAULT_ENCRYPTION_KEYSTORE_TYPE;
+    private String encryptionKeyId;
+    private List<String> priorityEvents = Collections.emptyList();
+    private List<String> priorityAdminOperations = Collections.emptyList();
+    private long priorityLingerMs;
+    private long prioritySloMs = DEFAULT_PRIORITY_SLO_MS;
+    private long normalSloMs = DEFAULT_NORMAL_SLO_MS;
+
+    public static KafkaEventListenerConfig init(Scope scope) {
+        KafkaEventListenerConfig config = new KafkaEventListenerConfig();
+
+        config.transactionBatchSize = getInt(scope, "transactionBatchSize",
+            "KAFKA_TRANSACTION_BATCH_SIZE", DEFAULT_TRANSACTION_BATCH_SIZE);
+        config.transactionCommitIntervalMs = getLong(scope, "transactionCommitIntervalMs",
+            "KAFKA_TRANSACTION_COMMIT_INTERVAL_MS", DEFAULT_TRANSACTION_COMMIT_INTERVAL_MS);
+
+        config.outboxEnabled = getBoolean(scope, "outboxEnabled", "KAFKA_OUTBOX_ENABLED", false);
+        config.outboxBatchSize = getInt(scope, "outboxBatchSize", "KAFKA_OUTBOX_BATCH_SIZE",
+            DEFAULT_OUTBOX_BATCH_SIZE);
+        config.outboxPollIntervalMs = getLong(scope, "outboxPollIntervalMs", "KAFKA_OUTBOX_POLL_INTERVAL_MS",
+            DEFAULT_OUTBOX_POLL_INTERVAL_MS);
+        config.outboxLeaseMs = getLong(scope, "outboxLeaseMs", "KAFKA_OUTBOX_LEASE_MS", DEFAULT_OUTBOX_LEASE_MS);
+
+        config.userSequenceCapacity = getInt(scope, "userSequenceCapacity", "KAFKA_USER_SEQUENCE_CAPACITY",
+            DEFAULT_USER_SEQUENCE_CAPACITY);
+
+        config.configFile = getString(scope, "configFile", "KAFKA_CONFIG_FILE", null);
+        config.configReloadIntervalMs = getLong(scope, "configReloadIntervalMs", "KAFKA_CONFIG_RELOAD_INTERVAL_MS",
+            DEFAULT_CONFIG_RELOAD_INTERVAL_MS);
+
+        config.confirmationMode = DeliveryConfirmation.Mode.parse(getString(scope, "confirmationMode",
+            "KAFKA_CONFIRMATION_MODE", null));
+        config.confirmationTimeoutMs = getLong(scope, "confirmationTimeoutMs", "KAFKA_CONFIRMATION_TIMEOUT_MS",
+            DEFAULT_CONFIRMATION_TIMEOUT_MS);
+
+        config.enrichment = getList(scope, "enrichment", "KAFKA_ENRICHMENT");
+        config.enrichmentCacheMaxBytes = getLong(scope, "enrichmentCacheMaxBytes", "KAFKA_ENRICHMENT_CACHE_MAX_BYTES",
+            DEFAULT_ENRICHMENT_CACHE_MAX_BYTES);
+        config.enrichmentCacheTtlMs = getLong(scope, "enrichmentCacheTtlMs", "KAFKA_ENRICHMENT_CACHE_TTL_MS",
+            DEFAULT_ENRICHMENT_CACHE_TTL_MS);
+
+        config.backfillEnabled = getBoolean(scope, "backfillEnabled", "KAFKA_BACKFILL_ENABLED", false);
+        config.backfillFromTime = getLong(scope, "backfillFromTime", "KAFKA_BACKFILL_FROM_TIME", 0);
+        config.backfillBatchSize = getInt(scope, "backfillBatchSize", "KAFKA_BACKFILL_BATCH_SIZE",
+            DEFAULT_BACKFILL_BATCH_SIZE);
+        config.backfillWorkers = getInt(scope, "backfillWorkers", "KAFKA_BACKFILL_WORKERS", DEFAULT_BACKFILL_WORKERS);
+        config.backfillMaxRecordsPerSecond = getLong(scope, "backfillMaxRecordsPerSecond",
+            "KAFKA_BACKFILL_MAX_RECORDS_PER_SECOND", DEFAULT_BACKFILL_MAX_RECORDS_PER_SECOND);
+        config.backfillLeaseMs = getLong(scope, "backfillLeaseMs", "KAFKA_BACKFILL_LEASE_MS", DEFAULT_BACKFILL_LEASE_MS);
+
+        config.adminDiffEnabled = getBoolean(scope, "adminDiffEnabled", "KAFKA_ADMIN_DIFF_ENABLED", false);
+        config.adminDiffCacheMaxBytes = getLong(scope, "adminDiffCacheMaxBytes", "KAFKA_ADMIN_DIFF_CACHE_MAX_BYTES",
+            DEFAULT_ADMIN_DIFF_CACHE_MAX_BYTES);
+        config.adminDiffSnapshotInterval = getInt(scope, "adminDiffSnapshotInterval",
+            "KAFKA_ADMIN_DIFF_SNAPSHOT_INTERVAL", DEFAULT_ADMIN_DIFF_SNAPSHOT_INTERVAL);
+
+        config.chunkSizeBytes = getInt(scope, "chunkSizeBytes", "KAFKA_CHUNK_SIZE_BYTES", 0);
+
+        String clusters = getString(scope, "clusters", "KAFKA_CLUSTERS", null);
+        if (clusters != null) {
+            config.clusters = new LinkedHashMap<>();
+            for (String name : clusters.split(",")) {
+                name = name.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                String bootstrapServers = getString(scope, name + "BootstrapServers",
+                    clusterEnvironmentPrefix(name) + "BOOTSTRAP_HOST", null);
+                if (bootstrapServers == null) {
+                    throw new NullPointerException("bootstrapServers of cluster " + name + " must not be null");
+                }
+                config.clusters.put(name, bootstrapServers);
+            }
+        }
+        config.clusterAckPolicy = ClusterFanOut.AckPolicy.parse(getString(scope, "clusterAckPolicy",
+            "KAFKA_CLUSTER_ACK_POLICY", null));
+        config.clusterQueueCapacity = getInt(scope, "clusterQueueCapacity", "KAFKA_CLUSTER_QUEUE_CAPACITY",
+            DEFAULT_CLUSTER_QUEUE_CAPACITY);
+        config.clusterFailureThreshold = getInt(scope, "clusterFailureThreshold", "KAFKA_CLUSTER_FAILURE_THRESHOLD",
+            DEFAULT_CLUSTER_FAILURE_THRESHOLD);
+        config.clusterOpenMs = getLong(scope, "clusterOpenMs", "KAFKA_CLUSTER_OPEN_MS", DEFAULT_CLUSTER_OPEN_MS);
+        config.clusterQueueMaxBytes = getLong(scope, "clusterQueueMaxBytes", "KAFKA_CLUSTER_QUEUE_MAX_BYTES",
+            DEFAULT_CLUSTER_QUEUE_MAX_BYTES);
+
+        config.sinkType = EventSink.Type.parse(getString(scope, "sink", "KAFKA_SINK", null));
+        config.sinkFileDirectory = getString(scope, "sinkFileDirectory", "KAFKA_SINK_FILE_DIRECTORY", null);
+        if (config.sinkType == EventSink.Type.FILE && config.sinkFileDirectory == null) {
+            throw new NullPointerException("sinkFileDirectory must not be null");
+        }
+        config.sinkFileMaxBytes = getLong(scope, "sinkFileMaxBytes", "KAFKA_SINK_FILE_MAX_BYTES",
+            DEFAULT_SINK_FILE_MAX_BYTES);
+        config.sinkFileMaxFiles = getInt(scope, "sinkFileMaxFiles", "KAFKA_SINK_FILE_MAX_FILES",
+            DEFAULT_SINK_FILE_MAX_FILES);
+
+        config.dedupeWindowMs = getLong(scope, "dedupeWindowMs", "KAFKA_DEDUPE_WINDOW_MS", 0);
+        config.dedupeMaxIds = getInt(scope, "dedupeMaxIds", "KAFKA_DEDUPE_MAX_IDS", DEFAULT_DEDUPE_MAX_IDS);
+
+        config.statsSamplingRate = getDouble(scope, "statsSamplingRate", "KAFKA_STATS_SAMPLING_RATE",
+            DEFAULT_STATS_SAMPLING_RATE);
+        config.pauseBufferCapacity = getInt(scope, "pauseBufferCapacity", "KAFKA_PAUSE_BUFFER_CAPACITY",
+            DEFAULT_PAUSE_BUFFER_CAPACITY);
+        config.pauseBufferMaxBytes = getLong(scope, "pauseBufferMaxBytes", "KAFKA_PAUSE_BUFFER_MAX_BYTES",
+            DEFAULT_PAUSE_BUFFER_MAX_BYTES);
+
+        config.tracingEnabled = getBoolean(scope, "tracingEnabled", "KAFKA_TRACING_ENABLED", false);
+
+        config.canaryTopic = getString(scope, "canaryTopic", "KAFKA_CANARY_TOPIC", null);
+        config.canaryIntervalMs = getLong(scope, "canaryIntervalMs", "KAFKA_CANARY_INTERVAL_MS",
+            DEFAULT_CANARY_INTERVAL_MS);
+        config.canaryLossTimeoutMs = getLong(scope, "canaryLossTimeoutMs", "KAFKA_CANARY_LOSS_TIMEOUT_MS",
+            DEFAULT_CANARY_LOSS_TIMEOUT_MS);
+
+        config.topicProvisioning = TopicProvisioner.Mode.parse(getString(scope, "topicProvisioning",
+            "KAFKA_TOPIC_PROVISIONING", null));
+        config.topicProvisioningTimeoutMs = getLong(scope, "topicProvisioningTimeoutMs",
+            "KAFKA_TOPIC_PROVISIONING_TIMEOUT_MS", DEFAULT_TOPIC_PROVISIONING_TIMEOUT_MS);
+        config.expectedEventsPerSecond = getDouble(scope, "expectedEventsPerSecond", "KAFKA_EXPECTED_EVENTS_PER_SECOND",
+            0);
+        config.expectedEventBytes = getInt(scope, "expectedEventBytes", "KAFKA_EXPECTED_EVENT_BYTES",
+            DEFAULT_EXPECTED_EVENT_BYTES);
+        config.partitionEventsPerSecond = getDouble(scope, "partitionEventsPerSecond",
+            "KAFKA_PARTITION_EVENTS_PER_SECOND", DEFAULT_PARTITION_EVENTS_PER_SECOND);
+        if (config.partitionEventsPerSecond <= 0) {
+            throw new IllegalArgumentException("partitionEventsPerSecond must be positive");
+        }
+        config.topicReplicationFactor = getInt(scope, "topicReplicationFactor", "KAFKA_TOPIC_REPLICATION_FACTOR", -1);
+        config.topicRetentionMs = getLong(scope, "topicRetentionMs", "KAFKA_TOPIC_RETENTION_MS", -1);
+        config.topicCleanupPolicy = getString(scope, "topicCleanupPolicy", "KAFKA_TOPIC_CLEANUP_POLICY", null);
+
+        config.envelopeMaxChars = getInt(scope, "envelopeMaxChars", "KAFKA_ENVELOPE_MAX_CHARS", 0);
+        config.envelopeLingerMs = getLong(scope, "envelopeLingerMs", "KAFKA_ENVELOPE_LINGER_MS",
+            DEFAULT_ENVELOPE_LINGER_MS);
+
+        config.encryptedFields = getList(scope, "encryptedFields", "KAFKA_ENCRYPTED_FIELDS");
+        config.encryptionKeystoreFile = getString(scope, "encryptionKeystoreFile", "KAFKA_ENCRYPTION_KEYSTORE_FILE",
+            null);
+        config.encryptionKeystorePassword = getString(scope, "encryptionKeystorePassword",
+            "KAFKA_ENCRYPTION_KEYSTORE_PASSWORD", null);
+        config.encryptionKeystoreType = getString(scope, "encryptionKeystoreType", "KAFKA_ENCRYPTION_KEYSTORE_TYPE",
+            DEFAULT_ENCRYPTION_KEYSTORE_TYPE);
+        config.encryptionKeyId = getString(scope, "encryptionKeyId", "KAFKA_ENCRYPTION_KEY_ID", null);
+        if (!config.encryptedFields.isEmpty() && config.encryptionKeystoreFile == null) {
+            throw new IllegalArgumentException("encryptedFields requires encryptionKeystoreFile");
+        }
+
+        config.priorityEvents = getList(scope, "priorityEvents", "KAFKA_PRIORITY_EVENTS");
+        config.priorityAdminOperations = getList(scope, "priorityAdminOperations", "KAFKA_PRIORITY_ADMIN_OPERATIONS");
+        config.priorityLingerMs = getLong(scope, "priorityLingerMs", "KAFKA_PRIORITY_LINGER_MS", 0);
+        config.prioritySloMs = getLong(scope, "prioritySloMs", "KAFKA_PRIORITY_SLO_MS", DEFAULT_PRIORITY_SLO_MS);
+        config.normalSloMs = getLong(scope, "normalSloMs", "KAFKA_NORMAL_SLO_MS", DEFAULT_NORMAL_SLO_MS);
+
+        return config;
+    }
+
+    /**
+     * Maximum number of records grouped into one Kafka transaction.
+     */
+    public int getTransactionBatchSize() {
+        return transactionBatchSize;
+    }
+
+    public KafkaEventListenerConfig setTransactionBatchSize(int transactionBatchSize) {
+        this.transactionBatchSize = transactionBatchSize;
+        return this;
+    }
+
+    /**
+     * Maximum time an open transaction is kept before it is committed.
+     */
+    public long getTransactionCommitIntervalMs() {
+        return transactionCommitIntervalMs;
+    }
+
+    public KafkaEventListenerConfig setTransactionCommitIntervalMs(long transactionCommitIntervalMs) {
+        this.transactionCommitIntervalMs = transactionCommitIntervalMs;
+        return this;
+    }
+
+    /**
+     * Whether events are written to the outbox table in the Keycloak transaction instead of being sent directly.
+     */
+    public boolean isOutboxEnabled() {
+        return outboxEnabled;
+    }
+
+    public KafkaEventListenerConfig setOutboxEnabled(boolean outboxEnabled) {
+        this.outboxEnabled = outboxEnabled;
+        return this;
+    }
+
+    /**
+     * Number of outbox rows read and published per page.
+     */
+    public int getOutboxBatchSize() {
+        return outboxBatchSize;
+    }
+
+    public KafkaEventListenerConfig setOutboxBatchSize(int outboxBatchSize) {
+        this.outboxBatchSize = outboxBatchSize;
+        return this;
+    }
+
+    /**
+     * Delay between two relay runs when the outbox is drained.
+     */
+    public long getOutboxPollIntervalMs() {
+        return outboxPollIntervalMs;
+    }
+
+    public KafkaEventListenerConfig setOutboxPollIntervalMs(long outboxPollIntervalMs) {
+        this.outboxPollIntervalMs = outboxPollIntervalMs;
+        return this;
+    }
+
+    /**
+     * How long a node keeps the relay lease without renewing it before another node may take over.
+     */
+    public long getOutboxLeaseMs() {
+        return outboxLeaseMs;
+    }
+
+    public KafkaEventListenerConfig setOutboxLeaseMs(long outboxLeaseMs) {
+        this.outboxLeaseMs = outboxLeaseMs;
+        return this;
+    }
+
+    /**
+     * Maximum number of users whose event sequence is tracked; 0 disables the sequence headers.
+     */
+    public int getUserSequenceCapacity() {
+        return userSequenceCapacity;
+    }
+
+    public KafkaEventListenerConfig setUserSequenceCapacity(int userSequenceCapacity) {
+        this.userSequenceCapacity = userSequenceCapacity;
+        return this;
+    }
+
+    /**
+     * Properties file watched for topic, filter and producer changes, or null if reloading is disabled.
+     */
+    public String getConfigFile() {
+        return configFile;
+    }
+
+    public KafkaEventListenerConfig setConfigFile(String configFile) {
+        this.configFile = configFile;
+        return this;
+    }
+
+    public long getConfigReloadIntervalMs() {
+        return configReloadIntervalMs;
+    }
+
+    public KafkaEventListenerConfig setConfigReloadIntervalMs(long configReloadIntervalMs) {
+        this.configReloadIntervalMs = configReloadIntervalMs;
+        return this;
+    }
+
+    /**
+     * How the request thread waits for Kafka to acknowledge an event.
+     */
+    public DeliveryConfirmation.Mode getConfirmationMode() {
+        return confirmationMode;
+    }
+
+    public KafkaEventListenerConfig setConfirmationMode(DeliveryConfirmation.Mode confirmationMode) {
+        this.confirmationMode = confirmationMode;
+        return this;
+    }
+
+    /**
+     * Deadline for the acknowledgement of a single event.
+     */
+    public long getConfirmationTimeoutMs() {
+        return confirmationTimeoutMs;
+    }
+
+    public KafkaEventListenerConfig setConfirmationTimeoutMs(long confirmationTimeoutMs) {
+        this.confirmationTimeoutMs = confirmationTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Realm, client and user attributes added to the event payload; empty disables enrichment.
+     */
+    public List<String> getEnrichment() {
+        return enrichment;
+    }
+
+    public KafkaEventListenerConfig setEnrichment(List<String> enrichment) {
+        this.enrichment = enrichment;
+        return this;
+    }
+
+    /**
+     * Estimated heap the enrichment cache may use before least recently used entries are evicted.
+     */
+    public long getEnrichmentCacheMaxBytes() {
+        return enrichmentCacheMaxBytes;
+    }
+
+    public KafkaEventListenerConfig setEnrichmentCacheMaxBytes(long enrichmentCacheMaxBytes) {
+        this.enrichmentCacheMaxBytes = enrichmentCacheMaxBytes;
+        return this;
+    }
+
+    /**
+     * How long resolved attributes are reused before they are looked up again.
+     */
+    public long getEnrichmentCacheTtlMs() {
+        return enrichmentCacheTtlMs;
+    }
+
+    public KafkaEventListenerConfig setEnrichmentCacheTtlMs(long enrichmentCacheTtlMs) {
+        this.enrichmentCacheTtlMs = enrichmentCacheTtlMs;
+        return this;
+    }
+
+    /**
+     * Whether stored events are published from the event store at startup.
+     */
+    public boolean isBackfillEnabled() {
+        return backfillEnabled;
+    }
+
+    public KafkaEventListenerConfig setBackfillEnabled(boolean backfillEnabled) {
+        this.backfillEnabled = backfillEnabled;
+        return this;
+    }
+
+    /**
+     * Epoch milliseconds of the oldest stored event to backfill.
+     */
+    public long getBackfillFromTime() {
+        return backfillFromTime;
+    }
+
+    public KafkaEventListenerConfig setBackfillFromTime(long backfillFromTime) {
+        this.backfillFromTime = backfillFromTime;
+        return this;
+    }
+
+    /**
+     * Number of stored events read and published per page.
+     */
+    public int getBackfillBatchSize() {
+        return backfillBatchSize;
+    }
+
+    public KafkaEventListenerConfig setBackfillBatchSize(int backfillBatchSize) {
+        this.backfillBatchSize = backfillBatchSize;
+        return this;
+    }
+
+    /**
+     * Number of threads serializing stored events.
+     */
+    public int getBackfillWorkers() {
+        return backfillWorkers;
+    }
+
+    public KafkaEventListenerConfig setBackfillWorkers(int backfillWorkers) {
+        this.backfillWorkers = backfillWorkers;
+        return this;
+    }
+
+    /**
+     * Upper bound on backfilled records sent per second; 0 removes the cap.
+     */
+    public long getBackfillMaxRecordsPerSecond() {
+        return backfillMaxRecordsPerSecond;
+    }
+
+    public KafkaEventListenerConfig setBackfillMaxRecordsPerSecond(long backfillMaxRecordsPerSecond) {
+        this.backfillMaxRecordsPerSecond = backfillMaxRecordsPerSecond;
+        return this;
+    }
+
+    /**
+     * How long a node keeps the backfill lease without renewing it; it is renewed with every page.
+     */
+    public long getBackfillLeaseMs() {
+        return backfillLeaseMs;
+    }
+
+    public KafkaEventListenerConfig setBackfillLeaseMs(long backfillLeaseMs) {
+        this.backfillLeaseMs = backfillLeaseMs;
+        return this;
+    }
+
+    /**
+     * Whether admin UPDATE events carry a merge patch against the previous representation.
+     */
+    public boolean isAdminDiffEnabled() {
+        return adminDiffEnabled;
+    }
+
+    public KafkaEventListenerConfig setAdminDiffEnabled(boolean adminDiffEnabled) {
+        this.adminDiffEnabled = adminDiffEnabled;
+        return this;
+    }
+
+    /**
+     * Estimated heap used by previous representations before least recently updated resources are evicted.
+     */
+    public long getAdminDiffCacheMaxBytes() {
+        return adminDiffCacheMaxBytes;
+    }
+
+    public KafkaEventListenerConfig setAdminDiffCacheMaxBytes(long adminDiffCacheMaxBytes) {
+        this.adminDiffCacheMaxBytes = adminDiffCacheMaxBytes;
+        return this;
+    }
+
+    /**
+     * Every n-th update of a resource is published with its full representation.
+     */
+    public int getAdminDiffSnapshotInterval() {
+        return adminDiffSnapshotInterval;
+    }
+
+    public KafkaEventListenerConfig setAdminDiffSnapshotInterval(int adminDiffSnapshotInterval) {
+        this.adminDiffSnapshotInterval = adminDiffSnapshotInterval;
+        return this;
+    }
+
+    /**
+     * Largest record value sent in one piece; 0 derives it from the producer's max.request.size.
+     */
+    public int getChunkSizeBytes() {
+        return chunkSizeBytes;
+    }
+
+    public KafkaEventListenerConfig setChunkSizeBytes(int chunkSizeBytes) {
+        this.chunkSizeBytes = chunkSizeBytes;
+        return this;
+    }
+
+    /**
+     * Additional clusters every event is published to, by name, with their bootstrap servers.
+     */
+    public Map<String, String> getClusters() {
+        return clusters;
+    }
+
+    public KafkaEventListenerConfig setClusters(Map<String, String> clusters) {
+        this.clusters = clusters;
+        return this;
+    }
+
+    /**
+     * Whether an event counts as delivered once any cluster acknowledged it, or only once all did.
+     */
+    public ClusterFanOut.AckPolicy getClusterAckPolicy() {
+        return clusterAckPolicy;
+    }
+
+    public KafkaEventListenerConfig setClusterAckPolicy(ClusterFanOut.AckPolicy clusterAckPolicy) {
+        this.clusterAckPolicy = clusterAckPolicy;
+        return this;
+    }
+
+    /**
+     * Events queued per additional cluster before new events are rejected for it.
+     */
+    public int getClusterQueueCapacity() {
+        return clusterQueueCapacity;
+    }
+
+    public KafkaEventListenerConfig setClusterQueueCapacity(int clusterQueueCapacity) {
+        this.clusterQueueCapacity = clusterQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Consecutive failures after which the circuit breaker of a cluster opens.
+     */
+    public int getClusterFailureThreshold() {
+        return clusterFailureThreshold;
+    }
+
+    public KafkaEventListenerConfig setClusterFailureThreshold(int clusterFailureThreshold) {
+        this.clusterFailureThreshold = clusterFailureThreshold;
+        return this;
+    }
+
+    /**
+     * How long an open circuit breaker rejects events before a trial event is sent.
+     */
+    public long getClusterOpenMs() {
+        return clusterOpenMs;
+    }
+
+    public KafkaEventListenerConfig setClusterOpenMs(long clusterOpenMs) {
+        this.clusterOpenMs = clusterOpenMs;
+        return this;
+    }
+
+    /**
+     * Direct memory the queue of each additional cluster may use for the serialized events it keeps.
+     */
+    public long getClusterQueueMaxBytes() {
+        return clusterQueueMaxBytes;
+    }
+
+    public KafkaEventListenerConfig setClusterQueueMaxBytes(long clusterQueueMaxBytes) {
+        this.clusterQueueMaxBytes = clusterQueueMaxBytes;
+        return this;
+    }
+
+    /**
+     * Where events are published: to Kafka, or to local files for development and offline use.
+     */
+    public EventSink.Type getSinkType() {
+        return sinkType;
+    }
+
+    public KafkaEventListenerConfig setSinkType(EventSink.Type sinkType) {
+        this.sinkType = sinkType;
+        return this;
+    }
+
+    /**
+     * Directory the file sink writes to.
+     */
+    public String getSinkFileDirectory() {
+        return sinkFileDirectory;
+    }
+
+    public KafkaEventListenerConfig setSinkFileDirectory(String sinkFileDirectory) {
+        this.sinkFileDirectory = sinkFileDirectory;
+        return this;
+    }
+
+    /**
+     * Size after which the file sink starts a new file.
+     */
+    public long getSinkFileMaxBytes() {
+        return sinkFileMaxBytes;
+    }
+
+    public KafkaEventListenerConfig setSinkFileMaxBytes(long sinkFileMaxBytes) {
+        this.sinkFileMaxBytes = sinkFileMaxBytes;
+        return this;
+    }
+
+    /**
+     * Number of files the file sink keeps; older files are deleted.
+     */
+    public int getSinkFileMaxFiles() {
+        return sinkFileMaxFiles;
+    }
+
+    public KafkaEventListenerConfig setSinkFileMaxFiles(int sinkFileMaxFiles) {
+        this.sinkFileMaxFiles = sinkFileMaxFiles;
+        return this;
+    }
+
+    /**
+     * Time within which an event id is published only once, 0 disables deduplication.
+     */
+    public long getDedupeWindowMs() {
+        return dedupeWindowMs;
+    }
+
+    public KafkaEventListenerConfig setDedupeWindowMs(long dedupeWindowMs) {
+        this.dedupeWindowMs = dedupeWindowMs;
+        return this;
+    }
+
+    /**
+     * Maximum number of ids remembered for deduplication; the oldest are dropped first.
+     */
+    public int getDedupeMaxIds() {
+        return dedupeMaxIds;
+    }
+
+    public KafkaEventListenerConfig setDedupeMaxIds(int dedupeMaxIds) {
+        this.dedupeMaxIds = dedupeMaxIds;
+        return this;
+    }
+
+    /**
+     * Share of events whose publishing latency is recorded, between 0 and 1.
+     */
+    public double getStatsSamplingRate() {
+        return statsSamplingRate;
+    }
+
+    public KafkaEventListenerConfig setStatsSamplingRate(double statsSamplingRate) {
+        this.statsSamplingRate = statsSamplingRate;
+        return this;
+    }
+
+    /**
+     * Events kept while publishing is paused; further events are dropped.
+     */
+    public int getPauseBufferCapacity() {
+        return pauseBufferCapacity;
+    }
+
+    public KafkaEventListenerConfig setPauseBufferCapacity(int pauseBufferCapacity) {
+        this.pauseBufferCapacity = pauseBufferCapacity;
+        return this;
+    }
+
+    /**
+     * Direct memory the pause buffer may use for the serialized events it keeps.
+     */
+    public long getPauseBufferMaxBytes() {
+        return pauseBufferMaxBytes;
+    }
+
+    public KafkaEventListenerConfig setPauseBufferMaxBytes(long pauseBufferMaxBytes) {
+        this.pauseBufferMaxBytes = pauseBufferMaxBytes;
+        return this;
+    }
+
+    /**
+     * Whether spans are created with the global OpenTelemetry instance and the trace context is added to the records.
+     */
+    public boolean isTracingEnabled() {
+        return tracingEnabled;
+    }
+
+    public KafkaEventListenerConfig setTracingEnabled(boolean tracingEnabled) {
+        this.tracingEnabled = tracingEnabled;
+        return this;
+    }
+
+    /**
+     * Topic of the canary probes, or null if the canary is disabled.
+     */
+    public String getCanaryTopic() {
+        return canaryTopic;
+    }
+
+    public KafkaEventListenerConfig setCanaryTopic(String canaryTopic) {
+        this.canaryTopic = canaryTopic;
+        return this;
+    }
+
+    /**
+     * Time between two canary probes.
+     */
+    public long getCanaryIntervalMs() {
+        return canaryIntervalMs;
+    }
+
+    public KafkaEventListenerConfig setCanaryIntervalMs(long canaryIntervalMs) {
+        this.canaryIntervalMs = canaryIntervalMs;
+        return this;
+    }
+
+    /**
+     * Time after which a probe that was not consumed is counted as lost.
+     */
+    public long getCanaryLossTimeoutMs() {
+        return canaryLossTimeoutMs;
+    }
+
+    public KafkaEventListenerConfig setCanaryLossTimeoutMs(long canaryLossTimeoutMs) {
+        this.canaryLossTimeoutMs = canaryLossTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Whether the topics are verified or created at startup.
+     */
+    public TopicProvisioner.Mode getTopicProvisioning() {
+        return topicProvisioning;
+    }
+
+    public KafkaEventListenerConfig setTopicProvisioning(TopicProvisioner.Mode topicProvisioning) {
+        this.topicProvisioning = topicProvisioning;
+        return this;
+    }
+
+    public long getTopicProvisioningTimeoutMs() {
+        return topicProvisioningTimeoutMs;
+    }
+
+    public KafkaEventListenerConfig setTopicProvisioningTimeoutMs(long topicProvisioningTimeoutMs) {
+        this.topicProvisioningTimeoutMs = topicProvisioningTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Peak rate of events the events topic is sized for, or 0 if unknown.
+     */
+    public double getExpectedEventsPerSecond() {
+        return expectedEventsPerSecond;
+    }
+
+    public KafkaEventListenerConfig setExpectedEventsPerSecond(double expectedEventsPerSecond) {
+        this.expectedEventsPerSecond = expectedEventsPerSecond;
+        return this;
+    }
+
+    /**
+     * Average size of a published event, used to size the topic segments.
+     */
+    public int getExpectedEventBytes() {
+        return expectedEventBytes;
+    }
+
+    public KafkaEventListenerConfig setExpectedEventBytes(int expectedEventBytes) {
+        this.expectedEventBytes = expectedEventBytes;
+        return this;
+    }
+
+    /**
+     * Rate of events a single partition sustains, including its consumers.
+     */
+    public double getPartitionEventsPerSecond() {
+        return partitionEventsPerSecond;
+    }
+
+    public KafkaEventListenerConfig setPartitionEventsPerSecond(double partitionEventsPerSecond) {
+        this.partitionEventsPerSecond = partitionEventsPerSecond;
+        return this;
+    }
+
+    /**
+     * Replication factor of created topics, or -1 for the broker default.
+     */
+    public int getTopicReplicationFactor() {
+        return topicReplicationFactor;
+    }
+
+    public KafkaEventListenerConfig setTopicReplicationFactor(int topicReplicationFactor) {
+        this.topicReplicationFactor = topicReplicationFactor;
+        return this;
+    }
+
+    /**
+     * Retention of created topics, or -1 for the broker default.
+     */
+    public long getTopicRetentionMs() {
+        return topicRetentionMs;
+    }
+
+    public KafkaEventListenerConfig setTopicRetentionMs(long topicRetentionMs) {
+        this.topicRetentionMs = topicRetentionMs;
+        return this;
+    }
+
+    /**
+     * {@code cleanup.policy} of created topics, or null for the broker default.
+     */
+    public String getTopicCleanupPolicy() {
+        return topicCleanupPolicy;
+    }
+
+    public KafkaEventListenerConfig setTopicCleanupPolicy(String topicCleanupPolicy) {
+        this.topicCleanupPolicy = topicCleanupPolicy;
+        return this;
+    }
+
+    /**
+     * Size of an envelope record in characters, or 0 to publish every event as a record of its own.
+     */
+    public int getEnvelopeMaxChars() {
+        return envelopeMaxChars;
+    }
+
+    public KafkaEventListenerConfig setEnvelopeMaxChars(int envelopeMaxChars) {
+        this.envelopeMaxChars = envelopeMaxChars;
+        return this;
+    }
+
+    /**
+     * Time an envelope waits for more events before it is sent.
+     */
+    public long getEnvelopeLingerMs() {
+        return envelopeLingerMs;
+    }
+
+    public KafkaEventListenerConfig setEnvelopeLingerMs(long envelopeLingerMs) {
+        this.envelopeLingerMs = envelopeLingerMs;
+        return this;
+    }
+
+    /**
+     * Payload fields encrypted before publishing, as dotted paths such as {@code details.email}.
+     */
+    public List<String> getEncryptedFields() {
+        return encryptedFields;
+    }
+
+    public KafkaEventListenerConfig setEncryptedFields(List<String> encryptedFields) {
+        this.encryptedFields = encryptedFields;
+        return this;
+    }
+
+    /**
+     * Keystore holding the AES keys of field encryption, watched for added keys.
+     */
+    public String getEncryptionKeystoreFile() {
+        return encryptionKeystoreFile;
+    }
+
+    public KafkaEventListenerConfig setEncryptionKeystoreFile(String encryptionKeystoreFile) {
+        this.encryptionKeystoreFile = encryptionKeystoreFile;
+        return this;
+    }
+
+    /**
+     * Password of the keystore and its keys.
+     */
+    public String getEncryptionKeystorePassword() {
+        return encryptionKeystorePassword;
+    }
+
+    public KafkaEventListenerConfig setEncryptionKeystorePassword(String encryptionKeystorePassword) {
+        this.encryptionKeystorePassword = encryptionKeystorePassword;
+        return this;
+    }
+
+    public String getEncryptionKeystoreType() {
+        return encryptionKeystoreType;
+    }
+
+    public KafkaEventListenerConfig setEncryptionKeystoreType(String encryptionKeystoreType) {
+        this.encryptionKeystoreType = encryptionKeystoreType;
+        return this;
+    }
+
+    /**
+     * Alias of the key that encrypts, or null for the newest key of the keystore.
+     */
+    public String getEncryptionKeyId() {
+        return encryptionKeyId;
+    }
+
+    public KafkaEventListenerConfig setEncryptionKeyId(String encryptionKeyId) {
+        this.encryptionKeyId = encryptionKeyId;
+        return this;
+    }
+
+    /**
+     * Event types sent in the high priority lane.
+     */
+    public List<String> getPriorityEvents() {
+        return priorityEvents;
+    }
+
+    public KafkaEventListenerConfig setPriorityEvents(List<String> priorityEvents) {
+        this.priorityEvents = priorityEvents;
+        return this;
+    }
+
+    /**
+     * Admin operations, such as {@code CREATE} and {@code DELETE}, sent in the high priority lane.
+     */
+    public List<String> getPriorityAdminOperations() {
+        return priorityAdminOperations;
+    }
+
+    public KafkaEventListenerConfig setPriorityAdminOperations(List<String> priorityAdminOperations) {
+        this.priorityAdminOperations = priorityAdminOperations;
+        return this;
+    }
+
+    /**
+     * {@code linger.ms} of the high priority producer.
+     */
+    public long getPriorityLingerMs() {
+        return priorityLingerMs;
+    }
+
+    public KafkaEventListenerConfig setPriorityLingerMs(long priorityLingerMs) {
+        this.priorityLingerMs = priorityLingerMs;
+        return this;
+    }
+
+    /**
+     * Latency target of the high priority lane; slower acknowledgements are counted as breaches.
+     */
+    public long getPrioritySloMs() {
+        return prioritySloMs;
+    }
+
+    public KafkaEventListenerConfig setPrioritySloMs(long prioritySloMs) {
+        this.prioritySloMs = prioritySloMs;
+        return this;
+    }
+
+    /**
+     * Latency target of the normal lane.
+     */
+    public long getNormalSloMs() {
+        return normalSloMs;
+    }
+
+    public KafkaEventListenerConfig setNormalSloMs(long normalSloMs) {
+        this.normalSloMs = normalSloMs;
+        return this;
+    }
+
+    /**
+     * Prefix of the environment variables of an additional cluster, for example {@code KAFKA_CLUSTER_DR_}.
+     */
+    static String clusterEnvironmentPrefix(String name) {
+        return "KAFKA_CLUSTER_" + name.toUpperCase(Locale.ROOT).replace('-', '_') + "_";
+    }
+
+    static String getString(Scope scope, String key, String env, String defaultValue) {
+        String value = scope.get(key, System.getenv(env));
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    static List<String> getList(Scope scope, String key, String env) {
+        String value = getString(scope, key, env, null);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty())
+            .collect(Collectors.toList());
+    }
+
+    static int getInt(Scope scope, String key, String env, int defaultValue) {
+        String value = getString(scope, key, env, null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    static long getLong(Scope scope, String key, String env, long defaultValue) {
+        String value = getString(scope, key, env, null);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    static double getDouble(Scope scope, String key, String env, double defaultValue) {
+        String value = getString(scope, key, env, null);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    static boolean getBoolean(Scope scope, String key, String env, boolean defaultValue) {
+        String value = getString(scope, key, env, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
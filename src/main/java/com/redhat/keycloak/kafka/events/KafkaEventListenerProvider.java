@@ -1,24 +1,43 @@
 package com.redhat.keycloak.kafka.events;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
 
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Headers;
 import org.jboss.logging.Logger;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventType;
 import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
  * Enhanced Kafka event listener provider that supports comprehensive security configuration.
@@ -27,11 +46,40 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class KafkaEventListenerProvider implements EventListenerProvider {
 
     private static final Logger LOG = Logger.getLogger(KafkaEventListenerProvider.class);
-    private String topicEvents;
-    private List<EventType> events;
-    private String topicAdminEvents;
-    private Producer<String, String> producer;
+    private static final byte[] BACKFILL_VALUE = "true".getBytes(StandardCharsets.UTF_8);
+    private volatile Routing routing;
+    private volatile Producer<String, String> producer;
+    private volatile EventSink sink;
+    private volatile KafkaEventSink prioritySink;
+    private PriorityClassifier priorities;
+    private Map<String, Object> priorityOverrides;
+    private final ReadWriteLock producerLock = new ReentrantReadWriteLock();
+    // Serializes reloads and producer rolls, which run on the config and certificate watcher threads
+    private final Object swapLock = new Object();
+    private Map<String, Object> producerProperties; // guarded by swapLock
+    private Function<Map<String, Object>, Producer<String, String>> producerCreator;
+    private volatile long lastSwapMillis = -1;
+    private TransactionalEventPublisher transactionalPublisher;
+    private final DeliveryConfirmation confirmation;
+    private final RecordChunker chunker;
+    private final int envelopeMaxChars;
+    private final long envelopeLingerMs;
     private ObjectMapper mapper;
+    private final NodeClock clock = new NodeClock();
+    private UserSequenceTracker userSequences;
+    private EventEnricher enricher;
+    private volatile FieldEncryptor encryptor;
+    private AdminRepresentationDiffer representationDiffer;
+    private volatile EventPipeline pipeline;
+    private ClusterFanOut fanOut;
+    private EventTracing tracing;
+    private EventCanary canary;
+    private RecentIdCache recentIds;
+    private final PublisherStats stats;
+    private volatile boolean paused;
+    private final Object pauseLock = new Object();
+    private final OffHeapEventBuffer held;
+    private final int pauseBufferCapacity;
 
     public KafkaEventListenerProvider(String bootstrapServers, String clientId, String topicEvents, String[] events,
                                       String topicAdminEvents, Map<String, Object> kafkaProducerProperties, KafkaProducerInterface factory) {
@@ -53,64 +101,743 @@ public class KafkaEventListenerProvider implements EventListenerProvider {
     public KafkaEventListenerProvider(String bootstrapServers, String clientId, String topicEvents, String[] events,
                                       String topicAdminEvents, Map<String, Object> kafkaProducerProperties,
                                       Map<String, String> environmentVariables, KafkaProducerInterface factory) {
-        this.topicEvents = topicEvents;
-        this.events = new ArrayList<>();
-        this.topicAdminEvents = topicAdminEvents;
+        this(bootstrapServers, clientId, topicEvents, events, topicAdminEvents, kafkaProducerProperties,
+            environmentVariables, factory, new KafkaEventListenerConfig());
+    }
+
+    /**
+     * Constructor that additionally accepts the listener options.
+     *
+     * @param config Listener options such as the transaction batching settings
+     */
+    public KafkaEventListenerProvider(String bootstrapServers, String clientId, String topicEvents, String[] events,
+                                      String topicAdminEvents, Map<String, Object> kafkaProducerProperties,
+                                      Map<String, String> environmentVariables, KafkaProducerInterface factory,
+                                      KafkaEventListenerConfig config) {
+        this.routing = new Routing(topicEvents, parseEventTypes(events), topicAdminEvents);
+        this.producerProperties = kafkaProducerProperties;
+
+        // Create producer with enhanced security support
+        if (factory instanceof KafkaProducerFactory && environmentVariables != null && !environmentVariables.isEmpty()) {
+            producerCreator = properties -> ((KafkaProducerFactory) factory).createProducer(clientId, bootstrapServers,
+                properties, environmentVariables);
+        } else {
+            producerCreator = properties -> factory.createProducer(clientId, bootstrapServers, properties);
+        }
+        Supplier<Producer<String, String>> producerSupplier = () -> producerCreator.apply(kafkaProducerProperties);
+        envelopeMaxChars = config.getEnvelopeMaxChars();
+        envelopeLingerMs = config.getEnvelopeLingerMs();
+        chunker = RecordChunker.forProducer(kafkaProducerProperties, config);
+        // A UTF-16 char takes up to three bytes in UTF-8, so a full envelope has to fit three times
+        if (envelopeMaxChars > 0 && 3L * envelopeMaxChars > chunker.getMaxChunkBytes()) {
+            throw new IllegalArgumentException("envelopeMaxChars " + envelopeMaxChars + " can take up to "
+                + 3L * envelopeMaxChars + " bytes in UTF-8, more than the " + chunker.getMaxChunkBytes()
+                + " bytes max.request.size leaves for a record; use at most " + chunker.getMaxChunkBytes() / 3);
+        }
+
+        if (config.isOutboxEnabled()) {
+            // Events are written to the outbox table and published by the OutboxRelay
+            LOG.info("Outbox publishing enabled, no producer is created for the listener");
+        } else if (config.getSinkType() == EventSink.Type.FILE) {
+            sink = new RollingFileEventSink(Paths.get(config.getSinkFileDirectory()), config.getSinkFileMaxBytes(),
+                config.getSinkFileMaxFiles());
+            LOG.info("Events are written to files in " + config.getSinkFileDirectory() + ", no producer is created");
+        } else if (kafkaProducerProperties.get(ProducerConfig.TRANSACTIONAL_ID_CONFIG) != null) {
+            // A transactional.id switches to exactly-once publishing with commit-batched transactions
+            transactionalPublisher = new TransactionalEventPublisher(producerSupplier,
+                config.getTransactionBatchSize(), config.getTransactionCommitIntervalMs());
+            producer = transactionalPublisher.getProducer();
+            LOG.info("Transactional publishing enabled, batch size " + config.getTransactionBatchSize()
+                + ", commit interval " + config.getTransactionCommitIntervalMs() + " ms");
+        } else {
+            producer = producerSupplier.get();
+            sink = newSink(producer);
+            if (envelopeMaxChars > 0) {
+                LOG.info("Events are packed into envelopes of up to " + envelopeMaxChars + " characters, lingering "
+                    + envelopeLingerMs + " ms");
+            }
+        }
+        if (envelopeMaxChars > 0 && !(sink instanceof KafkaEventSink)) {
+            LOG.warn("Envelopes require publishing to Kafka without transactions and are ignored");
+        }
+
+        PriorityClassifier classifier = new PriorityClassifier(config.getPriorityEvents(),
+            config.getPriorityAdminOperations());
+        if (classifier.isEnabled()) {
+            if (sink instanceof KafkaEventSink) {
+                // A producer of its own, so high priority events never queue behind the normal lane's batches
+                priorities = classifier;
+                priorityOverrides = Map.of(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(config.getPriorityLingerMs()),
+                    ProducerConfig.CLIENT_ID_CONFIG, clientId + "-priority");
+                prioritySink = new KafkaEventSink(producerCreator.apply(priorityProperties(kafkaProducerProperties)));
+                LOG.info("Priority lane enabled for events " + config.getPriorityEvents() + " and admin operations "
+                    + config.getPriorityAdminOperations());
+            } else {
+                LOG.warn("Priority lanes require publishing to Kafka without transactions and are ignored");
+            }
+        }
+
+        stats = new PublisherStats(config.getStatsSamplingRate());
+        stats.setLatencyTarget(PriorityClassifier.Priority.HIGH, config.getPrioritySloMs());
+        stats.setLatencyTarget(PriorityClassifier.Priority.NORMAL, config.getNormalSloMs());
+        if (transactionalPublisher != null) {
+            // Those events were counted as published when they joined the transaction
+            transactionalPublisher.setDroppedListener(stats::recordDropped);
+        }
+        pauseBufferCapacity = config.getPauseBufferCapacity();
+        held = new OffHeapEventBuffer(config.getPauseBufferMaxBytes());
+        confirmation = new DeliveryConfirmation(config.getConfirmationMode(), config.getConfirmationTimeoutMs());
+
+        if (!config.getEnrichment().isEmpty()) {
+            enricher = new EventEnricher(config.getEnrichment(),
+                new EntityCache(config.getEnrichmentCacheMaxBytes(), config.getEnrichmentCacheTtlMs()));
+            LOG.info("Event enrichment enabled for " + config.getEnrichment());
+        }
+
+        if (config.isAdminDiffEnabled()) {
+            representationDiffer = new AdminRepresentationDiffer(config.getAdminDiffCacheMaxBytes(),
+                config.getAdminDiffSnapshotInterval());
+        }
+
+        if (config.getDedupeWindowMs() > 0 && !config.isOutboxEnabled()) {
+            // Not in outbox mode: an id remembered in a transaction that is rolled back would suppress the retry
+            recentIds = new RecentIdCache(config.getDedupeWindowMs(), config.getDedupeMaxIds());
+            LOG.info("Events published within " + config.getDedupeWindowMs() + " ms are not published again");
+        }
+
+        if (config.getUserSequenceCapacity() > 0) {
+            // Counters live in this process only, so its epochs carry an id of their own
+            userSequences = new UserSequenceTracker(config.getUserSequenceCapacity(), UUID.randomUUID().toString());
+        }
+
+        mapper = new ObjectMapper();
+        pipeline = new EventPipeline(builtInStages());
+    }
+
+    /**
+     * Built-in stages of the enabled features, so disabled features cost nothing per event.
+     */
+    private List<EventPipelineStage> builtInStages() {
+        List<EventPipelineStage> stages = new ArrayList<>();
+        stages.add(new FilterStage());
+        if (recentIds != null) {
+            stages.add(new DedupeStage());
+        }
+        if (enricher != null) {
+            stages.add(new EnrichStage());
+        }
+        if (representationDiffer != null) {
+            stages.add(new RepresentationDiffStage());
+        }
+        stages.add(new RouteStage());
+        stages.add(new SerializeStage());
+        stages.add(new SendStage());
+        return stages;
+    }
+
+    /**
+     * Adds extension stages to the pipeline. Called once by the factory when the listener is created.
+     */
+    public void installStages(List<EventPipelineStage> extensions) {
+        List<EventPipelineStage> stages = builtInStages();
+        stages.addAll(extensions);
+        pipeline = new EventPipeline(stages);
+        LOG.info("Kafka event pipeline: " + pipeline.describe());
+    }
+
+    /**
+     * Publishes every event to the additional clusters as well. Called once by the factory when the listener is
+     * created.
+     */
+    public void enableFanOut(ClusterFanOut fanOut) {
+        this.fanOut = fanOut;
+        LOG.info("Publishing to " + fanOut.getClusters().size() + " additional cluster(s), acknowledgement policy "
+            + fanOut.getPolicy());
+    }
+
+    /**
+     * Creates spans for serializing and publishing events. Called once by the factory when the listener is created.
+     */
+    public void enableTracing(EventTracing tracing) {
+        this.tracing = tracing;
+        LOG.info("OpenTelemetry tracing of published events enabled");
+    }
 
+    /**
+     * Encrypts the configured payload fields of every following event. Called by the factory before the listener is
+     * used and again whenever the keystore changed.
+     */
+    public void enableEncryption(FieldEncryptor encryptor) {
+        this.encryptor = encryptor;
+        LOG.info("Encrypting fields " + encryptor.getFields() + " with key " + encryptor.getKeyId());
+    }
+
+    /**
+     * Encryptor of payload fields, or null if field encryption is disabled.
+     */
+    public FieldEncryptor getEncryptor() {
+        return encryptor;
+    }
+
+    /**
+     * Starts the canary, which is stopped on shutdown. Called once by the factory when the listener is created.
+     */
+    public void enableCanary(EventCanary canary) {
+        this.canary = canary;
+        canary.start();
+    }
+
+    /**
+     * Canary measuring the latency from publishing to consuming, or null if it is disabled.
+     */
+    public EventCanary getCanary() {
+        return canary;
+    }
+
+    /**
+     * Sends a canary probe with the current producer. Probes bypass the pipeline, envelopes and the publisher
+     * statistics.
+     */
+    CompletableFuture<Void> publishProbe(EncodedEvent probe) {
+        producerLock.readLock().lock();
+        try {
+            EventSink sink = this.sink;
+            if (!(sink instanceof KafkaEventSink)) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Probes require a Kafka producer"));
+            }
+            return ((KafkaEventSink) sink).publishDirect(Collections.singletonList(probe));
+        } finally {
+            producerLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fan-out to additional clusters, or null if none are configured.
+     */
+    public ClusterFanOut getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * The pipeline, for its per-stage metrics.
+     */
+    public EventPipeline getPipeline() {
+        return pipeline;
+    }
+
+    private static Set<EventType> parseEventTypes(String[] events) {
+        Set<EventType> eventTypes = EnumSet.noneOf(EventType.class);
         for (String event : events) {
             try {
-                EventType eventType = EventType.valueOf(event.toUpperCase());
-                this.events.add(eventType);
+                eventTypes.add(EventType.valueOf(event.trim().toUpperCase()));
             } catch (IllegalArgumentException e) {
                 LOG.debug("Ignoring event >" + event + "<. Event does not exist.");
             }
         }
+        return eventTypes;
+    }
 
-        // Create producer with enhanced security support
-        if (factory instanceof KafkaProducerFactory && environmentVariables != null && !environmentVariables.isEmpty()) {
-            producer = ((KafkaProducerFactory) factory).createProducer(clientId, bootstrapServers,
-                kafkaProducerProperties, environmentVariables);
-        } else {
-            producer = factory.createProducer(clientId, bootstrapServers, kafkaProducerProperties);
+    /**
+     * Applies a reloaded configuration. Topics and the event filter are switched atomically. If the producer
+     * properties changed, a new producer is built and swapped in; the old one is closed only after it has delivered
+     * every record already handed to it, so no event is dropped during the handover.
+     *
+     * @param properties topicEvents, topicAdminEvents, events and producer.* overrides
+     */
+    public void reload(Properties properties) {
+        synchronized (swapLock) {
+            Routing current = routing;
+            String events = properties.getProperty("events");
+            routing = new Routing(properties.getProperty("topicEvents", current.topicEvents),
+                events != null ? parseEventTypes(events.split(",")) : current.events,
+                properties.getProperty("topicAdminEvents", current.topicAdminEvents));
+
+            Map<String, Object> reloadedProperties = new HashMap<>(producerProperties);
+            properties.stringPropertyNames().stream()
+                .filter(name -> name.startsWith("producer."))
+                .forEach(name -> reloadedProperties.put(name.substring("producer.".length()), properties.getProperty(name)));
+
+            if (!reloadedProperties.equals(producerProperties)) {
+                if (transactionalPublisher != null || producer == null) {
+                    LOG.warn("Producer properties changed, but transactional, outbox and file publishing require a restart");
+                } else {
+                    swapProducer(reloadedProperties);
+                }
+            }
         }
+        LOG.info("Kafka event listener configuration reloaded");
+    }
 
-        mapper = new ObjectMapper();
+    /**
+     * Producer properties of the high priority lane.
+     */
+    private Map<String, Object> priorityProperties(Map<String, Object> properties) {
+        Map<String, Object> result = new HashMap<>(properties);
+        result.putAll(priorityOverrides);
+        return result;
+    }
+
+    /**
+     * Sink of the normal lane. High priority events are never packed, as envelopes add their linger time.
+     */
+    private KafkaEventSink newSink(Producer<String, String> producer) {
+        return new KafkaEventSink(producer,
+            envelopeMaxChars > 0
+                ? new EnvelopePacker(producer, envelopeMaxChars, chunker.getMaxChunkBytes(), envelopeLingerMs) : null);
+    }
+
+    /**
+     * Called with the swap lock held.
+     */
+    private void swapProducer(Map<String, Object> properties) {
+        long startedAt = System.nanoTime();
+        Producer<String, String> newProducer = producerCreator.apply(properties);
+        KafkaEventSink newPrioritySink = priorities != null
+            ? new KafkaEventSink(producerCreator.apply(priorityProperties(properties))) : null;
+        KafkaEventSink oldSink;
+        KafkaEventSink oldPrioritySink;
+
+        // Waits only for send() calls in progress; records already queued are delivered by the old producer
+        producerLock.writeLock().lock();
+        try {
+            oldSink = (KafkaEventSink) sink;
+            oldPrioritySink = prioritySink;
+            producer = newProducer;
+            sink = newSink(newProducer);
+            prioritySink = newPrioritySink;
+            producerProperties = properties;
+        } finally {
+            producerLock.writeLock().unlock();
+        }
+        long switchedAt = System.nanoTime();
+        long handedOver = oldSink.getInFlight();
+        if (oldPrioritySink != null) {
+            handedOver += oldPrioritySink.getInFlight();
+            oldPrioritySink.close();
+        }
+
+        oldSink.close();
+        lastSwapMillis = TimeUnit.NANOSECONDS.toMillis(switchedAt - startedAt);
+        LOG.info("Kafka producer swapped in " + lastSwapMillis + " ms, old producer drained "
+            + handedOver + " in-flight record(s) in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - switchedAt)
+            + " ms");
+    }
+
+    /**
+     * Replaces the producer with a new instance built from the current properties, for example after the TLS
+     * certificates were rotated. Events are not dropped: the old producer delivers what it already holds.
+     */
+    public void rollProducer() {
+        synchronized (swapLock) {
+            if (transactionalPublisher != null) {
+                transactionalPublisher.renewProducer();
+                producer = transactionalPublisher.getProducer();
+            } else if (producer != null) {
+                swapProducer(producerProperties);
+            }
+        }
+    }
+
+    /**
+     * Time taken by the last producer swap to build and switch to the new producer, or -1 if none happened.
+     */
+    public long getLastSwapMillis() {
+        return lastSwapMillis;
+    }
+
+    /**
+     * Number of records sent with the current producers but not yet acknowledged by Kafka.
+     */
+    public long getInFlight() {
+        EventSink sink = this.sink;
+        KafkaEventSink prioritySink = this.prioritySink;
+        return (sink instanceof KafkaEventSink ? ((KafkaEventSink) sink).getInFlight() : 0)
+            + (prioritySink != null ? prioritySink.getInFlight() : 0);
+    }
+
+    /**
+     * Whether events classified as high priority are sent by a producer of their own.
+     */
+    public boolean isPriorityLaneEnabled() {
+        return priorities != null;
+    }
+
+    /**
+     * Sink events are published to, or null in transactional and outbox mode.
+     */
+    public EventSink getSink() {
+        return sink;
+    }
+
+    ProducerRecord<String, String> toRecord(Event event) throws Exception {
+        return toRecord(event, null);
+    }
+
+    /**
+     * Runs the event through the pipeline up to the send phase and returns the record, or null if a stage
+     * discarded the event. With a session, the configured enrichment attributes are added to the payload.
+     */
+    ProducerRecord<String, String> toRecord(Event event, KeycloakSession session) throws Exception {
+        EventPipelineContext context = new EventPipelineContext(event, session);
+        return pipeline.prepare(context) ? context.getRecord() : null;
+    }
+
+    /**
+     * Builds the record for a stored user event replayed by a backfill. It carries no ordering headers, so live
+     * sequences are not advanced, and is marked with the {@code ce_backfill} header instead.
+     */
+    ProducerRecord<String, String> toBackfillRecord(Event event) throws JsonProcessingException {
+        Routing routing = this.routing;
+        if (!routing.events.contains(event.getType())) {
+            return null;
+        }
+        Headers headers = CloudEventHeaders.forEvent(event);
+        headers.add(CloudEventHeaders.BACKFILL, BACKFILL_VALUE);
+        String payload = serialize(event, Collections.emptyMap(), headers);
+        return new ProducerRecord<>(routing.topicEvents, null, (String) null, payload, headers);
     }
 
-    private void produceEvent(String eventAsString, String topic)
+    /**
+     * Builds the record for a stored admin event replayed by a backfill, see {@link #toBackfillRecord(Event)}.
+     */
+    ProducerRecord<String, String> toBackfillRecord(AdminEvent event) throws JsonProcessingException {
+        String topicAdminEvents = routing.topicAdminEvents;
+        if (topicAdminEvents == null) {
+            return null;
+        }
+        Headers headers = CloudEventHeaders.forAdminEvent(event);
+        headers.add(CloudEventHeaders.BACKFILL, BACKFILL_VALUE);
+        String payload = serialize(event, Collections.emptyMap(), headers);
+        return new ProducerRecord<>(topicAdminEvents, null, (String) null, payload, headers);
+    }
+
+    ProducerRecord<String, String> toRecord(AdminEvent event) throws Exception {
+        return toRecord(event, null);
+    }
+
+    /**
+     * Builds the record for an admin event, see {@link #toRecord(Event, KeycloakSession)}.
+     * Cached enrichment entries changed by the event are dropped even if admin events are not published.
+     */
+    ProducerRecord<String, String> toRecord(AdminEvent event, KeycloakSession session) throws Exception {
+        EventPipelineContext context = new EventPipelineContext(event, session);
+        return pipeline.prepare(context) ? context.getRecord() : null;
+    }
+
+    /**
+     * Copies the event with another representation. Keycloak hands the same event to other listeners, so it is
+     * never modified. The copy constructor is not used as it fails on events without auth details.
+     */
+    private static AdminEvent withRepresentation(AdminEvent event, String representation) {
+        AdminEvent copy = new AdminEvent();
+        copy.setId(event.getId());
+        copy.setTime(event.getTime());
+        copy.setRealmId(event.getRealmId());
+        copy.setAuthDetails(event.getAuthDetails());
+        copy.setOperationType(event.getOperationType());
+        copy.setResourceTypeAsString(event.getResourceTypeAsString());
+        copy.setResourcePath(event.getResourcePath());
+        copy.setError(event.getError());
+        copy.setRepresentation(representation);
+        return copy;
+    }
+
+    /**
+     * Serializes the event, adding an {@code enrichment} object when attributes were collected and encrypting the
+     * configured fields, which adds the encryption headers.
+     */
+    private String serialize(Object event, Map<String, String> enrichment, Headers headers)
+        throws JsonProcessingException {
+        FieldEncryptor encryptor = this.encryptor;
+        if (enrichment.isEmpty() && encryptor == null) {
+            return mapper.writeValueAsString(event);
+        }
+        ObjectNode node = mapper.valueToTree(event);
+        if (!enrichment.isEmpty()) {
+            node.set("enrichment", mapper.valueToTree(enrichment));
+        }
+        if (encryptor != null) {
+            encryptor.encrypt(node, headers);
+        }
+        return mapper.writeValueAsString(node);
+    }
+
+    /**
+     * Differ of admin representations, or null if diff payloads are disabled.
+     */
+    public AdminRepresentationDiffer getRepresentationDiffer() {
+        return representationDiffer;
+    }
+
+    /**
+     * Ids published within the dedupe window, or null if deduplication is disabled.
+     */
+    public RecentIdCache getRecentIds() {
+        return recentIds;
+    }
+
+    /**
+     * Enricher of this listener, or null if enrichment is disabled.
+     */
+    public EventEnricher getEnricher() {
+        return enricher;
+    }
+
+    /**
+     * Adds the node clock timestamp and the per-user sequence, so consumers can order the events a node published
+     * for a user and detect gaps. Events of one user published by different nodes are not ordered.
+     */
+    private void addOrderingHeaders(Headers headers, String realmId, String userId) {
+        long timestamp = clock.now();
+        UserSequenceTracker.Sequence sequence = null;
+        if (userSequences != null && userId != null) {
+            sequence = userSequences.next(realmId, userId, timestamp);
+        }
+        CloudEventHeaders.addOrdering(headers, timestamp, sequence);
+    }
+
+    /**
+     * Publishes the record.
+     *
+     * @param priority lane the record is sent in
+     * @param span publish span ended with the outcome, or null if the event is not traced
+     * @param await whether to wait for the acknowledgement according to the confirmation mode
+     */
+    private boolean produceEvent(ProducerRecord<String, String> record, PriorityClassifier.Priority priority,
+                                 EventTracing.PublishSpan span, boolean await)
         throws InterruptedException, ExecutionException, TimeoutException {
-        LOG.debug("Produce to topic: " + topicEvents + " ...");
-        ProducerRecord<String, String> record = new ProducerRecord<>(topic, eventAsString);
-        Future<RecordMetadata> metaData = producer.send(record);
-        RecordMetadata recordMetadata = metaData.get(30, TimeUnit.SECONDS);
-        LOG.debug("Produced to topic: " + recordMetadata.topic());
+        // Duplicates were discarded by the dedupe stage, the id is only needed to forget it on failure
+        String id = recentIds != null ? CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ID) : null;
+        LOG.debug("Produce to topic: " + record.topic() + " ...");
+        List<ProducerRecord<String, String>> records = chunker.split(record);
+        if (records.size() > 1) {
+            LOG.debug("Record for topic " + record.topic() + " split into " + records.size() + " chunks");
+        }
+        List<EncodedEvent> events = EncodedEvent.of(records);
+        if (transactionalPublisher != null) {
+            // Delivery is confirmed by the transaction commit
+            try {
+                transactionalPublisher.sendAll(records);
+            } catch (RuntimeException e) {
+                stats.recordFailed();
+                forget(id);
+                if (span != null) {
+                    span.end(e);
+                }
+                throw e;
+            }
+            stats.recordPublished(record.topic());
+            if (span != null) {
+                span.end(null);
+            }
+            if (fanOut != null) {
+                // Additional clusters are not transactional, their acknowledgements are not awaited
+                fanOut.publish(events, null);
+            }
+            return true;
+        }
+        long startedAt = stats.sample() ? System.nanoTime() : 0;
+        CompletableFuture<Void> published;
+        producerLock.readLock().lock();
+        try {
+            // Chunks are published under one read lock so a producer swap cannot split them across producers
+            EventSink laneSink = priority == PriorityClassifier.Priority.HIGH && prioritySink != null ? prioritySink : sink;
+            if (span != null && laneSink instanceof KafkaEventSink) {
+                published = ((KafkaEventSink) laneSink).publish(events, span::partition);
+            } else {
+                published = laneSink.publish(events);
+            }
+        } catch (RuntimeException e) {
+            stats.recordFailed();
+            forget(id);
+            if (span != null) {
+                span.end(e);
+            }
+            throw e;
+        } finally {
+            producerLock.readLock().unlock();
+        }
+        boolean logFailure = !await || confirmation.getMode() == DeliveryConfirmation.Mode.ASYNC;
+        published.whenComplete((ignored, exception) -> {
+            if (span != null) {
+                span.end(exception);
+            }
+            if (exception == null) {
+                stats.recordPublished(record.topic());
+                if (startedAt != 0) {
+                    stats.recordLatency(priority, System.nanoTime() - startedAt);
+                }
+                return;
+            }
+            stats.recordFailed();
+            // Also after the confirmation timed out: the record is only known to be lost once the sink reports it
+            forget(id);
+            if (logFailure) {
+                LOG.error("Failed to deliver event to topic " + record.topic(), exception);
+            }
+        });
+        // The acknowledgement policy spans the primary and the additional clusters
+        CompletableFuture<?> acknowledged = fanOut != null ? fanOut.publish(events, published) : published;
+        if (await) {
+            confirmation.await(acknowledged);
+        }
+        return true;
     }
 
-    @Override
-    public void onEvent(Event event) {
-        if (events.contains(event.getType())) {
+    /**
+     * Keeps the serialized record off-heap until publishing is resumed, or drops it if the pause buffer is full.
+     */
+    private boolean hold(ProducerRecord<String, String> record, PriorityClassifier.Priority priority) {
+        if (held.size() >= pauseBufferCapacity
+            || !held.offer(Collections.singletonList(EncodedEvent.of(record)), priority.ordinal())) {
+            stats.recordDropped();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops publishing. Events are kept in the pause buffer until {@link #resume()}; once it is full, further events
+     * are dropped.
+     */
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+        LOG.info("Kafka event publishing paused");
+    }
+
+    /**
+     * Publishes the events kept while paused, in order, and resumes publishing. New events wait until the buffer is
+     * drained so they cannot overtake it.
+     */
+    public void resume() {
+        synchronized (pauseLock) {
+            int count = publishHeld();
+            paused = false;
+            LOG.info("Kafka event publishing resumed, published " + count + " event(s) kept during the pause");
+        }
+        flush();
+    }
+
+    /**
+     * Publishes the events of the pause buffer in order and returns their number. Stops early if interrupted, the
+     * remaining events stay in the buffer.
+     */
+    private int publishHeld() {
+        int count = 0;
+        OffHeapEventBuffer.Entry entry;
+        while ((entry = held.poll()) != null) {
+            count++;
             try {
-                produceEvent(mapper.writeValueAsString(event), topicEvents);
-            } catch (JsonProcessingException | ExecutionException | TimeoutException e) {
-                LOG.error(e.getMessage(), e);
+                produceEvent(entry.getEvents().get(0).toRecord(),
+                    PriorityClassifier.Priority.values()[entry.getTag()], null, false);
             } catch (InterruptedException e) {
-                LOG.error(e.getMessage(), e);
                 Thread.currentThread().interrupt();
+                LOG.error("Interrupted while publishing events kept during the pause", e);
+                break;
+            } catch (Exception e) {
+                LOG.error("Failed to publish an event kept during the pause", e);
+            }
+        }
+        return count;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Blocks until every event handed to the producer is acknowledged, or commits the open transaction.
+     */
+    public void flush() {
+        if (transactionalPublisher != null) {
+            transactionalPublisher.flush();
+        } else if (sink != null) {
+            sink.flush();
+        }
+        KafkaEventSink prioritySink = this.prioritySink;
+        if (prioritySink != null) {
+            prioritySink.flush();
+        }
+    }
+
+    /**
+     * Events kept in the pause buffer, open transaction and cluster queues. Does not take any lock.
+     */
+    public long getQueueDepth() {
+        long depth = held.size();
+        if (transactionalPublisher != null) {
+            depth += transactionalPublisher.getUncommitted();
+        }
+        if (fanOut != null) {
+            for (ClusterPublisher cluster : fanOut.getClusters()) {
+                depth += cluster.getQueueSize();
             }
         }
+        return depth;
+    }
+
+    /**
+     * Direct memory held by the pause buffer and the cluster queues.
+     */
+    public long getOffHeapBytes() {
+        long bytes = held.getAllocatedBytes();
+        if (fanOut != null) {
+            for (ClusterPublisher cluster : fanOut.getClusters()) {
+                bytes += cluster.getQueueAllocatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    public PublisherStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Lets a retry of an event that failed to publish through the dedupe window.
+     */
+    private void forget(String id) {
+        if (id != null) {
+            recentIds.remove(id);
+        }
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        onEvent(event, (KeycloakSession) null);
+    }
+
+    void onEvent(Event event, KeycloakSession session) {
+        process(new EventPipelineContext(event, session));
     }
 
     @Override
     public void onEvent(AdminEvent event, boolean includeRepresentation) {
-        if (topicAdminEvents != null) {
-            try {
-                produceEvent(mapper.writeValueAsString(event), topicAdminEvents);
-            } catch (JsonProcessingException | ExecutionException | TimeoutException e) {
-                LOG.error(e.getMessage(), e);
-            } catch (InterruptedException e) {
-                LOG.error(e.getMessage(), e);
-                Thread.currentThread().interrupt();
+        onEvent(event, (KeycloakSession) null);
+    }
+
+    void onEvent(AdminEvent event, KeycloakSession session) {
+        process(new EventPipelineContext(event, session));
+    }
+
+    /**
+     * Runs the pipeline. Failures are logged and never reach Keycloak, as they would fail the user's request.
+     */
+    private void process(EventPipelineContext context) {
+        try {
+            if (!pipeline.process(context)) {
+                // Discarded after the dedupe stage, for example dropped from a full pause buffer
+                forget(context.getDedupeId());
             }
+        } catch (InterruptedException e) {
+            LOG.error(e.getMessage(), e);
+            Thread.currentThread().interrupt();
+            forget(context.getDedupeId());
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+            forget(context.getDedupeId());
         }
     }
 
@@ -118,4 +845,259 @@ public class KafkaEventListenerProvider implements EventListenerProvider {
     public void close() {
         // ignore
     }
+
+    /**
+     * Topics and event filter, replaced as a whole on reload.
+     */
+    private static final class Routing {
+        private final String topicEvents;
+        private final Set<EventType> events;
+        private final String topicAdminEvents;
+
+        private Routing(String topicEvents, Set<EventType> events, String topicAdminEvents) {
+            this.topicEvents = topicEvents;
+            this.events = events;
+            this.topicAdminEvents = topicAdminEvents;
+        }
+    }
+
+    /**
+     * Drops events whose type is not published, and admin events when no admin topic is set.
+     */
+    private final class FilterStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.FILTER;
+        }
+
+        @Override
+        public String getName() {
+            return "filter";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context) {
+            if (!context.isAdminEvent()) {
+                return routing.events.contains(context.getEvent().getType());
+            }
+            // Runs before the admin event is discarded, the cache must not keep stale entities
+            if (enricher != null) {
+                enricher.invalidate(context.getAdminEvent());
+            }
+            return routing.topicAdminEvents != null;
+        }
+    }
+
+    /**
+     * Drops events whose id was published within the dedupe window. Runs before serialization, so a duplicate takes
+     * no sequence number.
+     */
+    private final class DedupeStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.FILTER;
+        }
+
+        @Override
+        public String getName() {
+            return "dedupe";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context) {
+            String id = context.isAdminEvent() ? CloudEventHeaders.eventId(context.getAdminEvent())
+                : CloudEventHeaders.eventId(context.getEvent());
+            if (!recentIds.add(id)) {
+                LOG.debug("Event " + id + " was already published, skipping it");
+                return false;
+            }
+            context.setDedupeId(id);
+            return true;
+        }
+    }
+
+    private final class EnrichStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.ENRICH;
+        }
+
+        @Override
+        public String getName() {
+            return "enrich";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context) {
+            KeycloakSession session = context.getSession();
+            if (session != null) {
+                context.putAllEnrichment(enricher.enrich(session, context.getRealmId(), context.getClientId(),
+                    context.getUserId()));
+            }
+            return true;
+        }
+    }
+
+    private final class RepresentationDiffStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.TRANSFORM;
+        }
+
+        @Override
+        public String getName() {
+            return "representation-diff";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context) {
+            if (context.isAdminEvent()) {
+                AdminRepresentationDiffer.Result diff = representationDiffer.diff(context.getAdminEvent());
+                if (diff != null) {
+                    context.setAdminEvent(withRepresentation(context.getAdminEvent(), diff.getRepresentation()));
+                    context.setRepresentationDiff(diff);
+                }
+            }
+            return true;
+        }
+    }
+
+    private final class RouteStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.ROUTE;
+        }
+
+        @Override
+        public String getName() {
+            return "route";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context) {
+            Routing routing = KafkaEventListenerProvider.this.routing;
+            String topic = context.isAdminEvent() ? routing.topicAdminEvents : routing.topicEvents;
+            context.setTopic(topic);
+            if (priorities != null) {
+                context.setPriority(priorities.classify(context));
+            }
+            return topic != null;
+        }
+    }
+
+    private final class SerializeStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.SERIALIZE;
+        }
+
+        @Override
+        public String getName() {
+            return "serialize";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context) throws JsonProcessingException {
+            if (tracing == null) {
+                buildRecord(context);
+                return true;
+            }
+            Span span = tracing.startSerialize(context);
+            try (Scope ignored = span.makeCurrent()) {
+                buildRecord(context);
+            } catch (JsonProcessingException | RuntimeException e) {
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR);
+                throw e;
+            } finally {
+                span.end();
+            }
+            return true;
+        }
+
+        private void buildRecord(EventPipelineContext context) throws JsonProcessingException {
+            Object event;
+            Headers headers;
+            if (context.isAdminEvent()) {
+                event = context.getAdminEvent();
+                headers = CloudEventHeaders.forAdminEvent(context.getAdminEvent());
+            } else {
+                event = context.getEvent();
+                headers = CloudEventHeaders.forEvent(context.getEvent());
+            }
+            addOrderingHeaders(headers, context.getRealmId(), context.getUserId());
+            if (context.getRepresentationDiff() != null) {
+                context.getRepresentationDiff().addHeaders(headers);
+            }
+            String payload = serialize(event, context.getEnrichment(), headers);
+            context.setRecord(new ProducerRecord<>(context.getTopic(), null, (String) null, payload, headers));
+        }
+    }
+
+    private final class SendStage implements EventPipelineStage {
+        @Override
+        public Phase getPhase() {
+            return Phase.SEND;
+        }
+
+        @Override
+        public String getName() {
+            return "send";
+        }
+
+        @Override
+        public boolean process(EventPipelineContext context)
+            throws InterruptedException, ExecutionException, TimeoutException {
+            ProducerRecord<String, String> record = context.getRecord();
+            EventTracing.PublishSpan span = tracing != null ? tracing.startPublish(context, record,
+                context.isAdminEvent() ? context.getAdminEvent().getTime() : context.getEvent().getTime()) : null;
+            if (paused) {
+                synchronized (pauseLock) {
+                    if (paused) {
+                        boolean held = hold(record, context.getPriority());
+                        if (span != null) {
+                            span.skipped(held ? "held" : "dropped");
+                        }
+                        return held;
+                    }
+                }
+            }
+            return produceEvent(record, context.getPriority(), span, true);
+        }
+    }
+
+    /**
+     * Publishes the events kept during a pause, commits any open transaction and releases the producer. Called when the
+     * factory shuts down, as the provider instance is shared across sessions.
+     */
+    public void shutdown() {
+        if (canary != null) {
+            canary.close();
+        }
+        synchronized (pauseLock) {
+            if (held.size() > 0) {
+                // Hand the events kept during a pause to the producers, which send them before they close
+                LOG.info("Publishing " + publishHeld() + " event(s) kept during the pause before shutting down");
+            }
+            int left = held.size();
+            if (left > 0) {
+                LOG.warn("Dropping " + left + " event(s) kept during the pause");
+                stats.recordDropped(left);
+                held.clear();
+            }
+        }
+        pipeline.close();
+        if (fanOut != null) {
+            fanOut.close();
+        }
+        confirmation.close();
+        if (transactionalPublisher != null) {
+            transactionalPublisher.close();
+        } else if (sink != null) {
+            sink.close();
+        }
+        if (prioritySink != null) {
+            prioritySink.close();
+        }
+    }
 }
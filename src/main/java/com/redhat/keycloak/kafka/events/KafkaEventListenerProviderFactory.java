@@ -1,14 +1,32 @@
 package com.redhat.keycloak.kafka.events;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
+import io.opentelemetry.api.GlobalOpenTelemetry;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.jboss.logging.Logger;
 import org.keycloak.Config.Scope;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventListenerProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 /**
  * Enhanced factory that initializes security configuration for the Kafka event listener.
@@ -17,7 +35,7 @@ import org.keycloak.models.KeycloakSessionFactory;
 public class KafkaEventListenerProviderFactory implements EventListenerProviderFactory {
 
     private static final Logger LOG = Logger.getLogger(KafkaEventListenerProviderFactory.class);
-    private static final String ID = "kafka";
+    static final String ID = "kafka";
 
     private KafkaEventListenerProvider instance;
 
@@ -28,18 +46,208 @@ public class KafkaEventListenerProviderFactory implements EventListenerProviderF
     private String[] events;
     private Map<String, Object> kafkaProducerProperties;
     private Map<String, String> environmentVariables;
+    private KafkaEventListenerConfig listenerConfig;
+    private OutboxStore outboxStore;
+    private volatile OutboxRelay outboxRelay;
+    private ConfigFileWatcher configWatcher;
+    private ConfigFileWatcher certificateWatcher;
+    private ConfigFileWatcher keystoreWatcher;
+    private volatile BackfillJob backfillJob;
+    private KeycloakSessionFactory sessionFactory;
 
     @Override
     public EventListenerProvider create(KeycloakSession session) {
+        KafkaEventListenerProvider provider = getOrCreateInstance();
+
+        if (outboxStore != null) {
+            return new OutboxEventListenerProvider(session, provider, outboxStore);
+        }
+        if (provider.getEnricher() != null) {
+            return new EnrichingEventListenerProvider(session, provider);
+        }
+        return provider;
+    }
+
+    /**
+     * Creates the shared provider on first use. Synchronized so concurrent sessions never build two producers.
+     */
+    private synchronized KafkaEventListenerProvider getOrCreateInstance() {
         if (instance == null) {
+            // Loaded first: without its keys the listener must not publish the fields in clear text
+            FieldEncryptor encryptor = listenerConfig.getEncryptedFields().isEmpty() ? null : loadEncryptor();
             KafkaProducerFactory factory = new KafkaProducerFactory();
             instance = new KafkaEventListenerProvider(bootstrapServers, clientId, topicEvents, events, topicAdminEvents,
-                kafkaProducerProperties, environmentVariables, factory);
-        }
+                kafkaProducerProperties, environmentVariables, factory, listenerConfig);
+            if (encryptor != null) {
+                instance.enableEncryption(encryptor);
+                watchEncryptionKeystore(instance);
+            }
+            if (sessionFactory != null) {
+                instance.installStages(loadPipelineStages());
+            }
+            if (!listenerConfig.getClusters().isEmpty()) {
+                if (listenerConfig.isOutboxEnabled()) {
+                    LOG.warn("Additional clusters are not supported in outbox mode and are ignored");
+                } else {
+                    instance.enableFanOut(createFanOut());
+                }
+            }
 
+            if (listenerConfig.isTracingEnabled()) {
+                instance.enableTracing(new EventTracing(GlobalOpenTelemetry.get()));
+            }
+            if (listenerConfig.getCanaryTopic() != null) {
+                if (instance.getSink() instanceof KafkaEventSink) {
+                    instance.enableCanary(createCanary(instance));
+                } else {
+                    LOG.warn("The canary requires publishing to Kafka without transactions and is not started");
+                }
+            }
+
+            if (listenerConfig.getConfigFile() != null) {
+                configWatcher = new ConfigFileWatcher(Paths.get(listenerConfig.getConfigFile()),
+                    listenerConfig.getConfigReloadIntervalMs(), instance::reload);
+                configWatcher.start();
+            }
+
+            List<Path> certificateFiles = SecurityConfiguration.certificateFiles(environmentVariables);
+            if (!certificateFiles.isEmpty()) {
+                KafkaEventListenerProvider provider = instance;
+                certificateWatcher = new ConfigFileWatcher(certificateFiles, listenerConfig.getConfigReloadIntervalMs(),
+                    () -> rollClients(provider));
+                certificateWatcher.start();
+            }
+        }
         return instance;
     }
 
+    private FieldEncryptor loadEncryptor() {
+        try {
+            return FieldEncryptor.load(Paths.get(listenerConfig.getEncryptionKeystoreFile()),
+                listenerConfig.getEncryptionKeystoreType(), listenerConfig.getEncryptionKeystorePassword(),
+                listenerConfig.getEncryptionKeyId(), listenerConfig.getEncryptedFields());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to load the field encryption keys from "
+                + listenerConfig.getEncryptionKeystoreFile(), e);
+        }
+    }
+
+    /**
+     * Reloads the keys when the keystore changes, so a newly added key takes over without a restart. If the new
+     * keystore cannot be read, the current key stays in use.
+     */
+    private void watchEncryptionKeystore(KafkaEventListenerProvider provider) {
+        keystoreWatcher = new ConfigFileWatcher(List.of(Paths.get(listenerConfig.getEncryptionKeystoreFile())),
+            listenerConfig.getConfigReloadIntervalMs(), () -> {
+                try {
+                    provider.enableEncryption(loadEncryptor());
+                } catch (IllegalStateException e) {
+                    LOG.error("Keeping encryption key " + provider.getEncryptor().getKeyId(), e);
+                }
+            });
+        keystoreWatcher.start();
+    }
+
+    /**
+     * The shared listener, created if no session used it yet.
+     */
+    KafkaEventListenerProvider getListener() {
+        return getOrCreateInstance();
+    }
+
+    /**
+     * The outbox relay, or null if outbox publishing is disabled.
+     */
+    OutboxRelay getOutboxRelay() {
+        return outboxRelay;
+    }
+
+    /**
+     * The backfill job, or null if no backfill was configured.
+     */
+    BackfillJob getBackfillJob() {
+        return backfillJob;
+    }
+
+    /**
+     * Creates one instance of every extension stage, highest order first.
+     */
+    private List<EventPipelineStage> loadPipelineStages() {
+        return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            sessionFactory.getProviderFactoriesStream(EventPipelineStage.class)
+                .sorted((first, second) -> Integer.compare(second.order(), first.order()))
+                .map(stageFactory -> (EventPipelineStage) stageFactory.create(session))
+                .collect(Collectors.toList()));
+    }
+
+    private ClusterFanOut createFanOut() {
+        List<ClusterPublisher> clusters = new ArrayList<>();
+        listenerConfig.getClusters().forEach((name, clusterBootstrapServers) ->
+            clusters.add(new ClusterPublisher(name, new KafkaEventSink(createClusterProducer(name)),
+                listenerConfig.getClusterQueueCapacity(), listenerConfig.getClusterQueueMaxBytes(),
+                new CircuitBreaker(listenerConfig.getClusterFailureThreshold(), listenerConfig.getClusterOpenMs()))));
+        return new ClusterFanOut(clusters, listenerConfig.getClusterAckPolicy());
+    }
+
+    private Producer<String, String> createClusterProducer(String name) {
+        // Additional clusters are not transactional; sharing the transactional.id would fence the primary producer
+        Map<String, Object> properties = new HashMap<>(kafkaProducerProperties);
+        properties.remove(ProducerConfig.TRANSACTIONAL_ID_CONFIG);
+        return new KafkaProducerFactory().createProducer(clientId, listenerConfig.getClusters().get(name), properties,
+            clusterEnvironment(environmentVariables, name));
+    }
+
+    private EventCanary createCanary(KafkaEventListenerProvider listener) {
+        return new EventCanary(listenerConfig.getCanaryTopic(), listener::publishProbe, createCanaryConsumer(),
+            listenerConfig.getCanaryIntervalMs(), listenerConfig.getCanaryLossTimeoutMs());
+    }
+
+    private Consumer<String, String> createCanaryConsumer() {
+        return new KafkaProducerFactory().createConsumer(clientId + "-canary", bootstrapServers, new HashMap<>(),
+            environmentVariables);
+    }
+
+    /**
+     * Rebuilds every Kafka client of this node after the TLS certificates were rotated. Canary probes are sent with
+     * the listener's producer, so only the canary's consumer is rolled separately.
+     */
+    private void rollClients(KafkaEventListenerProvider provider) {
+        LOG.info("TLS certificates changed, rolling the Kafka clients");
+        SecurityConfiguration.invalidateCache();
+        provider.rollProducer();
+        if (provider.getFanOut() != null) {
+            for (ClusterPublisher cluster : provider.getFanOut().getClusters()) {
+                cluster.rollSink(new KafkaEventSink(createClusterProducer(cluster.getName())));
+            }
+        }
+        if (provider.getCanary() != null) {
+            provider.getCanary().rollConsumer(createCanaryConsumer());
+        }
+        OutboxRelay relay = outboxRelay;
+        if (relay != null) {
+            relay.rollProducer();
+        }
+        BackfillJob backfill = backfillJob;
+        if (backfill != null && !backfill.isCompleted()) {
+            backfill.rollProducer(createBackfillProducer());
+        }
+    }
+
+    /**
+     * Security variables of an additional cluster: its prefixed variables with the prefix replaced by {@code KAFKA_},
+     * so {@code KAFKA_CLUSTER_DR_SASL_USERNAME} configures the {@code dr} cluster as {@code KAFKA_SASL_USERNAME}.
+     */
+    static Map<String, String> clusterEnvironment(Map<String, String> environmentVariables, String name) {
+        String prefix = KafkaEventListenerConfig.clusterEnvironmentPrefix(name);
+        Map<String, String> clusterVariables = new HashMap<>();
+        environmentVariables.forEach((key, value) -> {
+            if (key.startsWith(prefix)) {
+                clusterVariables.put("KAFKA_" + key.substring(prefix.length()), value);
+            }
+        });
+        return clusterVariables;
+    }
+
     @Override
     public String getId() {
         return ID;
@@ -70,10 +278,6 @@ public class KafkaEventListenerProviderFactory implements EventListenerProviderF
             throw new NullPointerException("clientId must not be null.");
         }
 
-        if (bootstrapServers == null) {
-            throw new NullPointerException("bootstrapServers must not be null");
-        }
-
         if (events == null || events.length == 0) {
             events = new String[1];
             events[0] = "REGISTER";
@@ -81,6 +285,19 @@ public class KafkaEventListenerProviderFactory implements EventListenerProviderF
 
         // Initialize producer properties
         kafkaProducerProperties = KafkaProducerConfig.init(config);
+        Object transactionalId = kafkaProducerProperties.get(ProducerConfig.TRANSACTIONAL_ID_CONFIG);
+        if (transactionalId != null) {
+            // Every node publishes with the same configuration; a shared transactional.id would let the nodes fence
+            // each other and abort each other's open transactions
+            kafkaProducerProperties.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId + "-" + nodeName());
+            LOG.info("Publishing transactionally as " + kafkaProducerProperties.get(ProducerConfig.TRANSACTIONAL_ID_CONFIG));
+        }
+        listenerConfig = KafkaEventListenerConfig.init(config);
+
+        // The file sink publishes without a broker
+        if (bootstrapServers == null && listenerConfig.getSinkType() == EventSink.Type.KAFKA) {
+            throw new NullPointerException("bootstrapServers must not be null");
+        }
 
         // Collect all environment variables for security configuration
         environmentVariables = collectEnvironmentVariables();
@@ -88,7 +305,7 @@ public class KafkaEventListenerProviderFactory implements EventListenerProviderF
         // Validate security configuration if provided
         if (!environmentVariables.isEmpty()) {
             try {
-                SecurityConfiguration securityConfig = new SecurityConfiguration(environmentVariables);
+                SecurityConfiguration securityConfig = SecurityConfiguration.forEnvironment(environmentVariables);
                 securityConfig.validateConfiguration();
                 LOG.info("Security validation completed successfully");
 
@@ -114,6 +331,19 @@ public class KafkaEventListenerProviderFactory implements EventListenerProviderF
         LOG.info("Enhanced Kafka module initialization completed");
     }
 
+    /**
+     * Name of this node, stable across restarts where possible so that a restarted node fences its previous
+     * producer: the host name, or a random id if it cannot be resolved.
+     */
+    static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            LOG.warn("Host name unknown, using a random node name for the transactional.id", e);
+            return UUID.randomUUID().toString();
+        }
+    }
+
     /**
      * Collects all relevant environment variables for security configuration.
      */
@@ -132,12 +362,105 @@ public class KafkaEventListenerProviderFactory implements EventListenerProviderF
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory arg0) {
-        // ignore
+    public void postInit(KeycloakSessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+
+        if (listenerConfig.getTopicProvisioning() != TopicProvisioner.Mode.NONE
+            && listenerConfig.getSinkType() == EventSink.Type.KAFKA) {
+            provisionTopics();
+        }
+
+        if (listenerConfig.isOutboxEnabled()) {
+            outboxStore = new OutboxStore();
+            // Every node runs a relay, so each needs a transactional.id of its own; a shared one would let the
+            // nodes fence each other
+            Map<String, Object> relayProperties = new HashMap<>(kafkaProducerProperties);
+            Object transactionalId = relayProperties.get(ProducerConfig.TRANSACTIONAL_ID_CONFIG);
+            if (transactionalId != null) {
+                relayProperties.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG,
+                    transactionalId + "-outbox-" + UUID.randomUUID());
+            }
+            KafkaProducerFactory producerFactory = new KafkaProducerFactory();
+            outboxRelay = new OutboxRelay(outboxStore, new KeycloakOutboxTransactionRunner(sessionFactory),
+                () -> producerFactory.createProducer(clientId, bootstrapServers, relayProperties, environmentVariables),
+                transactionalId != null,
+                listenerConfig, RecordChunker.forProducer(kafkaProducerProperties, listenerConfig));
+            outboxRelay.start();
+        }
+
+        if (listenerConfig.isBackfillEnabled() && listenerConfig.getSinkType() == EventSink.Type.FILE) {
+            LOG.warn("Backfill publishes to Kafka and is not available with the file sink");
+        } else if (listenerConfig.isBackfillEnabled()) {
+            BackfillLease lease = new BackfillLease(outboxStore != null ? outboxStore : new OutboxStore(),
+                new KeycloakOutboxTransactionRunner(sessionFactory), listenerConfig.getBackfillLeaseMs());
+            backfillJob = new BackfillJob(new EventStoreBackfillSource(sessionFactory), getOrCreateInstance(),
+                createBackfillProducer(), new BackfillCheckpoint(lease), lease, listenerConfig,
+                RecordChunker.forProducer(backfillProperties(), listenerConfig));
+            backfillJob.start();
+        }
+    }
+
+    /**
+     * A dedicated producer keeps backfilled records out of the live producer's buffer. It must not share the
+     * transactional.id, as it would fence the live producer.
+     */
+    private Map<String, Object> backfillProperties() {
+        Map<String, Object> properties = new HashMap<>(kafkaProducerProperties);
+        properties.remove(ProducerConfig.TRANSACTIONAL_ID_CONFIG);
+        return properties;
+    }
+
+    private Producer<String, String> createBackfillProducer() {
+        return new KafkaProducerFactory().createProducer(clientId, bootstrapServers, backfillProperties(),
+            environmentVariables);
+    }
+
+    /**
+     * Verifies or creates the topics before the first event is published. Failures are logged so Keycloak still
+     * starts while the brokers are unreachable.
+     */
+    private void provisionTopics() {
+        long timeoutMs = listenerConfig.getTopicProvisioningTimeoutMs();
+        Admin admin = null;
+        try {
+            admin = new KafkaProducerFactory().createAdmin(clientId + "-admin", bootstrapServers, environmentVariables);
+            new TopicProvisioner(admin, listenerConfig.getTopicProvisioning(), timeoutMs)
+                .provision(TopicProvisioner.specs(listenerConfig, topicEvents, topicAdminEvents));
+        } catch (RuntimeException e) {
+            LOG.warn("Topic provisioning failed", e);
+        } finally {
+            if (admin != null) {
+                // Calls still waiting for an unreachable broker would otherwise delay startup
+                admin.close(Duration.ofMillis(timeoutMs));
+            }
+        }
     }
 
     @Override
-    public void close() {
-        // ignore
+    public synchronized void close() {
+        if (backfillJob != null) {
+            backfillJob.close();
+            backfillJob = null;
+        }
+        if (configWatcher != null) {
+            configWatcher.close();
+            configWatcher = null;
+        }
+        if (certificateWatcher != null) {
+            certificateWatcher.close();
+            certificateWatcher = null;
+        }
+        if (keystoreWatcher != null) {
+            keystoreWatcher.close();
+            keystoreWatcher = null;
+        }
+        if (outboxRelay != null) {
+            outboxRelay.close();
+            outboxRelay = null;
+        }
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
     }
 }
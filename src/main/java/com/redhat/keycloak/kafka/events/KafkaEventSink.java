@@ -0,0 +1,125 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+import org.apache.kafka.clients.producer.Producer;
+
+/**
+ * Publishes events with a Kafka producer. A batch is acknowledged once the broker acknowledged all of its records.
+ * With an {@link EnvelopePacker}, single events are packed into envelope records.
+ */
+public class KafkaEventSink implements EventSink {
+
+    private final Producer<String, String> producer;
+    private final EnvelopePacker envelopes;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public KafkaEventSink(Producer<String, String> producer) {
+        this(producer, null);
+    }
+
+    /**
+     * @param envelopes packs single-record events into envelopes, or null to send every record on its own
+     */
+    public KafkaEventSink(Producer<String, String> producer, EnvelopePacker envelopes) {
+        this.producer = producer;
+        this.envelopes = envelopes;
+    }
+
+    /**
+     * Sends the records in order. A record the producer rejects synchronously fails the batch and the remaining
+     * records are not sent.
+     */
+    @Override
+    public CompletableFuture<Void> publish(List<EncodedEvent> events) {
+        return publish(events, null);
+    }
+
+    /**
+     * Sends the records like {@link #publish(List)} and reports the partition of every acknowledged record.
+     *
+     * @param partitions called on the producer's I/O thread before the future completes, may be null
+     */
+    public CompletableFuture<Void> publish(List<EncodedEvent> events, IntConsumer partitions) {
+        if (envelopes != null && events.size() == 1) {
+            // Chunks of an oversized event are never packed, they are sent as they are
+            return envelopes.add(events.get(0), partitions);
+        }
+        return send(events, partitions);
+    }
+
+    /**
+     * Sends every record on its own, also when envelopes are enabled. For records consumers must see as they are,
+     * such as canary probes.
+     */
+    public CompletableFuture<Void> publishDirect(List<EncodedEvent> events) {
+        return send(events, null);
+    }
+
+    private CompletableFuture<Void> send(List<EncodedEvent> events, IntConsumer partitions) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (events.isEmpty()) {
+            result.complete(null);
+            return result;
+        }
+        AtomicInteger remaining = new AtomicInteger(events.size());
+        for (EncodedEvent event : events) {
+            inFlight.incrementAndGet();
+            try {
+                producer.send(event.toRecord(), (metadata, exception) -> {
+                    inFlight.decrementAndGet();
+                    if (exception != null) {
+                        result.completeExceptionally(exception);
+                        return;
+                    }
+                    if (partitions != null) {
+                        partitions.accept(metadata.partition());
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        result.complete(null);
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.decrementAndGet();
+                result.completeExceptionally(e);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of records sent but not yet acknowledged by Kafka, plus the events waiting in envelopes.
+     */
+    public long getInFlight() {
+        return inFlight.get() + (envelopes != null ? envelopes.getPending() : 0);
+    }
+
+    public Producer<String, String> getProducer() {
+        return producer;
+    }
+
+    @Override
+    public void flush() {
+        if (envelopes != null) {
+            envelopes.flush();
+        }
+        producer.flush();
+    }
+
+    /**
+     * Sends the open envelopes and closes the producer, which delivers the records it already holds.
+     */
+    @Override
+    public void close() {
+        if (envelopes != null) {
+            envelopes.close();
+        }
+        producer.close(Duration.ofSeconds(30));
+    }
+}
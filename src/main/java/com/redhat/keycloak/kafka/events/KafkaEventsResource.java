@@ -0,0 +1,267 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotAuthorizedException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
+import org.keycloak.services.resource.RealmResourceProvider;
+
+/**
+ * Statistics and controls of the Kafka event listener under {@code /realms/master/kafka-events}. The listener is
+ * shared by all realms, so only administrators of the master realm may use it; a realm administrator of another realm
+ * must not be able to pause publishing for everyone.
+ */
+public class KafkaEventsResource implements RealmResourceProvider {
+
+    private static final Logger LOG = Logger.getLogger(KafkaEventsResource.class);
+
+    private final KeycloakSession session;
+    private final KafkaEventListenerProviderFactory listenerFactory;
+
+    public KafkaEventsResource(KeycloakSession session, KafkaEventListenerProviderFactory listenerFactory) {
+        this.session = session;
+        this.listenerFactory = listenerFactory;
+    }
+
+    @Override
+    public Object getResource() {
+        return this;
+    }
+
+    @GET
+    @Path("stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getStats() {
+        return report(authorize());
+    }
+
+    @POST
+    @Path("pause")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> pause() {
+        KafkaEventListenerProvider listener = authorize();
+        listener.pause();
+        return report(listener);
+    }
+
+    @POST
+    @Path("resume")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> resume() {
+        KafkaEventListenerProvider listener = authorize();
+        listener.resume();
+        return report(listener);
+    }
+
+    @POST
+    @Path("flush")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> flush() {
+        KafkaEventListenerProvider listener = authorize();
+        listener.flush();
+        return report(listener);
+    }
+
+    @POST
+    @Path("sampling-rate")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> setSamplingRate(@QueryParam("rate") Double rate) {
+        KafkaEventListenerProvider listener = authorize();
+        if (rate == null) {
+            throw new BadRequestException("rate is required");
+        }
+        try {
+            listener.getStats().setSamplingRate(rate);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        LOG.info("Kafka event latency sampling rate set to " + rate);
+        return report(listener);
+    }
+
+    private KafkaEventListenerProvider authorize() {
+        RealmModel realm = session.getContext().getRealm();
+        if (!Config.getAdminRealm().equals(realm.getName())) {
+            throw new NotFoundException();
+        }
+        AuthenticationManager.AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+        RoleModel adminRole = realm.getRole(AdminRoles.ADMIN);
+        if (adminRole == null || !auth.getUser().hasRole(adminRole)) {
+            throw new ForbiddenException();
+        }
+        return listenerFactory.getListener();
+    }
+
+    private Map<String, Object> report(KafkaEventListenerProvider listener) {
+        return statistics(listener, listenerFactory.getOutboxRelay(), listenerFactory.getBackfillJob());
+    }
+
+    static Map<String, Object> statistics(KafkaEventListenerProvider listener) {
+        return statistics(listener, null, null);
+    }
+
+    /**
+     * Collects the statistics of the listener and of the outbox relay and backfill job, which may be null.
+     */
+    static Map<String, Object> statistics(KafkaEventListenerProvider listener, OutboxRelay outboxRelay,
+                                          BackfillJob backfillJob) {
+        PublisherStats stats = listener.getStats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("paused", listener.isPaused());
+        result.put("queueDepth", listener.getQueueDepth());
+        result.put("inFlight", listener.getInFlight());
+        result.put("offHeapBytes", listener.getOffHeapBytes());
+        result.put("published", stats.getPublished());
+        result.put("failed", stats.getFailed());
+        result.put("dropped", stats.getDropped());
+        result.put("errorRate", stats.getErrorRate());
+        result.put("throughputPerSecond", stats.getThroughput());
+
+        LatencyHistogram histogram = stats.getLatency();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("samplingRate", stats.getSamplingRate());
+        latency.put("count", histogram.getCount());
+        latency.put("p50", histogram.percentile(0.5));
+        latency.put("p90", histogram.percentile(0.9));
+        latency.put("p99", histogram.percentile(0.99));
+        latency.put("p999", histogram.percentile(0.999));
+        result.put("latencyMicros", latency);
+        result.put("topics", stats.getTopicCounts());
+
+        if (listener.isPriorityLaneEnabled()) {
+            Map<String, Object> lanes = new LinkedHashMap<>();
+            for (PriorityClassifier.Priority priority : PriorityClassifier.Priority.values()) {
+                LatencyHistogram laneLatency = stats.getLatency(priority);
+                Map<String, Object> lane = new LinkedHashMap<>();
+                lane.put("count", laneLatency.getCount());
+                lane.put("p99Micros", laneLatency.percentile(0.99));
+                lane.put("sloMs", stats.getLatencyTargetMs(priority));
+                lane.put("sloBreaches", stats.getSloBreaches(priority));
+                lanes.put(priority.name(), lane);
+            }
+            result.put("lanes", lanes);
+        }
+
+        EventCanary canary = listener.getCanary();
+        if (canary != null) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("topic", canary.getTopic());
+            entry.put("sent", canary.getSent());
+            entry.put("received", canary.getReceived());
+            entry.put("lost", canary.getLost());
+            entry.put("sendFailed", canary.getSendFailed());
+            entry.put("unexpected", canary.getUnexpected());
+            entry.put("pending", canary.getPending());
+            entry.put("lastLatencyMs", canary.getLastLatencyMs());
+            entry.put("p50Micros", canary.getLatency().percentile(0.5));
+            entry.put("p99Micros", canary.getLatency().percentile(0.99));
+            result.put("canary", entry);
+        }
+        if (listener.getRecentIds() != null) {
+            result.put("duplicatesSuppressed", listener.getRecentIds().getSuppressed());
+        }
+        if (listener.getEnricher() != null) {
+            EntityCache cache = listener.getEnricher().getCache();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("hits", cache.getHits());
+            entry.put("misses", cache.getMisses());
+            entry.put("hitRate", cache.getHitRate());
+            entry.put("evictions", cache.getEvictions());
+            entry.put("size", cache.size());
+            entry.put("weightBytes", cache.getWeight());
+            result.put("enrichmentCache", entry);
+        }
+        if (listener.getFanOut() != null) {
+            List<Map<String, Object>> clusters = new ArrayList<>();
+            for (ClusterPublisher cluster : listener.getFanOut().getClusters()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("name", cluster.getName());
+                entry.put("circuit", cluster.getCircuitState().name());
+                entry.put("queueSize", cluster.getQueueSize());
+                entry.put("queueOffHeapBytes", cluster.getQueueAllocatedBytes());
+                entry.put("acked", cluster.getAcked());
+                entry.put("failed", cluster.getFailed());
+                entry.put("rejected", cluster.getRejected());
+                entry.put("lastLagMs", cluster.getLastLagMs());
+                entry.put("averageLagMs", cluster.getAverageLagMs());
+                clusters.add(entry);
+            }
+            result.put("clusters", clusters);
+        }
+        AdminRepresentationDiffer differ = listener.getRepresentationDiffer();
+        if (differ != null) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("patches", differ.getPatches());
+            entry.put("snapshots", differ.getSnapshots());
+            entry.put("fullBytes", differ.getFullBytes());
+            entry.put("publishedBytes", differ.getPublishedBytes());
+            entry.put("size", differ.size());
+            entry.put("weightBytes", differ.getWeight());
+            entry.put("evictions", differ.getEvictions());
+            result.put("adminDiff", entry);
+        }
+        if (outboxRelay != null) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("published", outboxRelay.getPublishedRecords());
+            entry.put("failed", outboxRelay.getFailedRecords());
+            entry.put("lagMs", outboxRelay.getLagMs());
+            entry.put("lastRunThroughputPerSecond", outboxRelay.getLastRunThroughput());
+            result.put("outboxRelay", entry);
+        }
+        if (backfillJob != null) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("published", backfillJob.getPublished());
+            entry.put("skipped", backfillJob.getSkipped());
+            entry.put("pages", backfillJob.getPages());
+            entry.put("cursorTime", backfillJob.getCursorTime());
+            entry.put("recordsPerSecond", backfillJob.getRecordsPerSecond());
+            entry.put("completed", backfillJob.isCompleted());
+            entry.put("failed", backfillJob.isFailed());
+            result.put("backfill", entry);
+        }
+
+        EventPipeline pipeline = listener.getPipeline();
+        List<Map<String, Object>> stages = new ArrayList<>();
+        for (int i = 0; i < pipeline.size(); i++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", pipeline.getStage(i).getName());
+            entry.put("phase", pipeline.getStage(i).getPhase().name());
+            entry.put("invocations", pipeline.getInvocations(i));
+            entry.put("discards", pipeline.getDiscards(i));
+            entry.put("failures", pipeline.getFailures(i));
+            entry.put("timeMicros", TimeUnit.NANOSECONDS.toMicros(pipeline.getNanos(i)));
+            stages.add(entry);
+        }
+        result.put("stages", stages);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        // ignore
+    }
+}
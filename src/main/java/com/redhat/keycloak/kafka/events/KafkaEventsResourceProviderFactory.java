@@ -0,0 +1,44 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resource.RealmResourceProviderFactory;
+
+/**
+ * Registers {@link KafkaEventsResource} as {@code /realms/{realm}/kafka-events}.
+ */
+public class KafkaEventsResourceProviderFactory implements RealmResourceProviderFactory {
+
+    private static final String ID = "kafka-events";
+
+    private KafkaEventListenerProviderFactory listenerFactory;
+
+    @Override
+    public RealmResourceProvider create(KeycloakSession session) {
+        return new KafkaEventsResource(session, listenerFactory);
+    }
+
+    @Override
+    public void init(Scope config) {
+        // ignore
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        listenerFactory = (KafkaEventListenerProviderFactory) factory.getProviderFactory(EventListenerProvider.class,
+            KafkaEventListenerProviderFactory.ID);
+    }
+
+    @Override
+    public void close() {
+        // ignore
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+}
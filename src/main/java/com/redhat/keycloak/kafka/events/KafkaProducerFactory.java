@@ -4,9 +4,15 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.jboss.logging.Logger;
 
@@ -53,7 +59,7 @@ public final class KafkaProducerFactory implements KafkaProducerInterface {
         // Add enhanced security properties
         if (!environmentVariables.isEmpty()) {
             try {
-                SecurityConfiguration securityConfig = new SecurityConfiguration(environmentVariables);
+                SecurityConfiguration securityConfig = SecurityConfiguration.forEnvironment(environmentVariables);
                 securityConfig.validateConfiguration();
 
                 Map<String, Object> securityProperties = securityConfig.getSecurityProperties();
@@ -90,4 +96,64 @@ public final class KafkaProducerFactory implements KafkaProducerInterface {
             throw new RuntimeException("Failed to create Kafka producer: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Creates a Kafka consumer with the same security configuration as the producers. Offsets are not committed
+     * automatically.
+     *
+     * @param clientId Kafka client ID
+     * @param bootstrapServer Bootstrap server(s)
+     * @param optionalProperties Additional consumer properties, such as the group id
+     * @param environmentVariables Environment variables for security configuration
+     * @return Configured Kafka consumer
+     */
+    public Consumer<String, String> createConsumer(String clientId, String bootstrapServer,
+                                                   Map<String, Object> optionalProperties,
+                                                   Map<String, String> environmentVariables) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.putAll(optionalProperties);
+
+        if (!environmentVariables.isEmpty()) {
+            try {
+                SecurityConfiguration securityConfig = SecurityConfiguration.forEnvironment(environmentVariables);
+                securityConfig.validateConfiguration();
+                props.putAll(securityConfig.getSecurityProperties());
+            } catch (SecurityConfiguration.SecurityConfigurationException e) {
+                LOG.error("Failed to apply security configuration", e);
+                throw new RuntimeException("Kafka consumer security configuration failed: " + e.getMessage(), e);
+            }
+        }
+        return new KafkaConsumer<>(props);
+    }
+
+    /**
+     * Creates an admin client with the same security configuration as the producer.
+     *
+     * @param clientId Kafka client ID
+     * @param bootstrapServer Bootstrap server(s)
+     * @param environmentVariables Environment variables for security configuration
+     * @return Configured admin client
+     */
+    public Admin createAdmin(String clientId, String bootstrapServer, Map<String, String> environmentVariables) {
+        Properties props = new Properties();
+        props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
+        props.put(AdminClientConfig.CLIENT_ID_CONFIG, clientId);
+
+        if (!environmentVariables.isEmpty()) {
+            try {
+                SecurityConfiguration securityConfig = SecurityConfiguration.forEnvironment(environmentVariables);
+                securityConfig.validateConfiguration();
+                props.putAll(securityConfig.getSecurityProperties());
+            } catch (SecurityConfiguration.SecurityConfigurationException e) {
+                LOG.error("Failed to apply security configuration", e);
+                throw new RuntimeException("Kafka admin client security configuration failed: " + e.getMessage(), e);
+            }
+        }
+        return Admin.create(props);
+    }
 }
@@ -0,0 +1,26 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.hibernate.Session;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Runs outbox work in a new Keycloak session and transaction, using the JDBC connection behind
+ * the session's JPA entity manager.
+ */
+public class KeycloakOutboxTransactionRunner implements OutboxStore.TransactionRunner {
+
+    private final KeycloakSessionFactory sessionFactory;
+
+    public KeycloakOutboxTransactionRunner(KeycloakSessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public <T> T inTransaction(OutboxStore.Work<T> work) {
+        return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            session.getProvider(JpaConnectionProvider.class).getEntityManager().unwrap(Session.class)
+                .doReturningWork(work::execute));
+    }
+}
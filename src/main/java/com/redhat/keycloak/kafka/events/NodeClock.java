@@ -0,0 +1,50 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Monotonic clock of this node packed into a single long: the upper 48 bits hold wall-clock milliseconds and the
+ * lower 16 bits a counter that breaks ties. Timestamps issued by one node are strictly increasing even when the wall
+ * clock stalls or steps backwards. Nodes never exchange timestamps, so they only order the events of one node; across
+ * nodes they are as comparable as the wall clocks and no more.
+ */
+public class NodeClock {
+
+    static final int LOGICAL_BITS = 16;
+    private static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1;
+
+    private final AtomicLong state = new AtomicLong();
+    private final LongSupplier wallClock;
+
+    public NodeClock() {
+        this(System::currentTimeMillis);
+    }
+
+    NodeClock(LongSupplier wallClock) {
+        this.wallClock = wallClock;
+    }
+
+    /**
+     * Issues a timestamp greater than any previously issued one.
+     */
+    public long now() {
+        long physical = wallClock.getAsLong() << LOGICAL_BITS;
+        while (true) {
+            long current = state.get();
+            // A logical counter overflow carries into the physical part, which keeps the order intact
+            long next = physical > current ? physical : current + 1;
+            if (state.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public static long physicalTime(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+
+    public static long logicalCounter(long timestamp) {
+        return timestamp & LOGICAL_MASK;
+    }
+}
@@ -0,0 +1,269 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+/**
+ * FIFO buffer of serialized events in direct memory, limited by a byte budget. Pending events do not occupy the heap
+ * while a broker is slow or publishing is paused, so they neither grow the heap nor lengthen GC pauses; an event is
+ * turned back into objects only when it is taken out to be published.
+ * <p>
+ * Entries are appended to fixed-size slabs, which are allocated as needed and reused once drained. An entry larger
+ * than a slab gets a slab of its own. Slabs in use and slabs kept for reuse together never exceed the budget.
+ */
+public class OffHeapEventBuffer {
+
+    static final int DEFAULT_SLAB_BYTES = 1024 * 1024;
+
+    private final long maxBytes;
+    private final int slabBytes;
+    private final Deque<Slab> slabs = new ArrayDeque<>();
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private long slabBytesInUse;
+    private long usedBytes;
+    private volatile int size;
+
+    /**
+     * Entry taken from the buffer: the chunks of one event and the tag stored with them.
+     */
+    public static final class Entry {
+        private final int tag;
+        private final List<EncodedEvent> events;
+
+        private Entry(int tag, List<EncodedEvent> events) {
+            this.tag = tag;
+            this.events = events;
+        }
+
+        public int getTag() {
+            return tag;
+        }
+
+        public List<EncodedEvent> getEvents() {
+            return events;
+        }
+    }
+
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final boolean pooled;
+        private int readPosition;
+
+        private Slab(ByteBuffer buffer, boolean pooled) {
+            this.buffer = buffer;
+            this.pooled = pooled;
+        }
+    }
+
+    public OffHeapEventBuffer(long maxBytes) {
+        this(maxBytes, DEFAULT_SLAB_BYTES);
+    }
+
+    OffHeapEventBuffer(long maxBytes, int slabBytes) {
+        this.maxBytes = maxBytes;
+        this.slabBytes = slabBytes;
+    }
+
+    /**
+     * Appends the chunks of one event, or returns false if they do not fit into the budget.
+     *
+     * @param tag small value stored with the entry, such as the priority lane
+     */
+    public synchronized boolean offer(List<EncodedEvent> events, int tag) {
+        // Layout: length, tag, event count, then per event topic, partition or -1, key, value, header count and
+        // headers
+        List<byte[]> strings = new ArrayList<>();
+        int length = Integer.BYTES * 2;
+        for (EncodedEvent event : events) {
+            length += addField(strings, utf8(event.getTopic())) + Integer.BYTES + addField(strings, utf8(event.getKey()))
+                + addField(strings, utf8(event.getValue())) + Integer.BYTES;
+            if (event.getHeaders() != null) {
+                for (Header header : event.getHeaders()) {
+                    length += addField(strings, utf8(header.key())) + addField(strings, header.value());
+                }
+            }
+        }
+        int entryBytes = Integer.BYTES + length;
+
+        Slab tail = slabs.peekLast();
+        if (tail == null || !tail.pooled || tail.buffer.remaining() < entryBytes) {
+            tail = allocate(entryBytes);
+            if (tail == null) {
+                return false;
+            }
+            slabs.addLast(tail);
+        }
+        ByteBuffer buffer = tail.buffer;
+        buffer.putInt(length);
+        buffer.putInt(tag);
+        buffer.putInt(events.size());
+        int field = 0;
+        for (EncodedEvent event : events) {
+            putField(buffer, strings.get(field++));
+            buffer.putInt(event.getPartition() != null ? event.getPartition() : -1);
+            putField(buffer, strings.get(field++));
+            putField(buffer, strings.get(field++));
+            if (event.getHeaders() == null) {
+                buffer.putInt(-1);
+                continue;
+            }
+            int headerCountPosition = buffer.position();
+            buffer.putInt(0);
+            int headerCount = 0;
+            for (Header ignored : event.getHeaders()) {
+                putField(buffer, strings.get(field++));
+                putField(buffer, strings.get(field++));
+                headerCount++;
+            }
+            buffer.putInt(headerCountPosition, headerCount);
+        }
+        usedBytes += entryBytes;
+        size++;
+        return true;
+    }
+
+    /**
+     * Takes the oldest entry, or returns null if the buffer is empty.
+     */
+    public synchronized Entry poll() {
+        if (size == 0) {
+            return null;
+        }
+        Slab head = slabs.peekFirst();
+        ByteBuffer buffer = head.buffer.duplicate();
+        buffer.limit(head.buffer.position());
+        buffer.position(head.readPosition);
+        int length = buffer.getInt();
+        int tag = buffer.getInt();
+        int count = buffer.getInt();
+        List<EncodedEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String topic = readString(buffer);
+            int partition = buffer.getInt();
+            String key = readString(buffer);
+            String value = readString(buffer);
+            int headerCount = buffer.getInt();
+            Headers headers = null;
+            if (headerCount >= 0) {
+                headers = new RecordHeaders();
+                for (int j = 0; j < headerCount; j++) {
+                    headers.add(readString(buffer), readBytes(buffer));
+                }
+            }
+            events.add(new EncodedEvent(topic, partition >= 0 ? partition : null, key, value, headers));
+        }
+        head.readPosition = buffer.position();
+        usedBytes -= Integer.BYTES + length;
+        size--;
+        if (head.readPosition == head.buffer.position() && (slabs.size() > 1 || !head.pooled)) {
+            release(slabs.pollFirst());
+        } else if (size == 0) {
+            // The only slab is drained, write from its start again
+            head.buffer.clear();
+            head.readPosition = 0;
+        }
+        return new Entry(tag, events);
+    }
+
+    /**
+     * Discards all entries.
+     */
+    public synchronized void clear() {
+        Slab slab;
+        while ((slab = slabs.pollFirst()) != null) {
+            release(slab);
+        }
+        usedBytes = 0;
+        size = 0;
+    }
+
+    /**
+     * Number of entries. Does not take the lock.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Bytes taken by the entries.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Direct memory held by slabs in use and slabs kept for reuse.
+     */
+    public synchronized long getAllocatedBytes() {
+        return slabBytesInUse + (long) free.size() * slabBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private Slab allocate(int entryBytes) {
+        int capacity = Math.max(entryBytes, slabBytes);
+        if (slabBytesInUse + capacity > maxBytes) {
+            return null;
+        }
+        slabBytesInUse += capacity;
+        if (capacity > slabBytes) {
+            while (!free.isEmpty() && getAllocatedBytes() > maxBytes) {
+                free.pollFirst();
+            }
+            return new Slab(ByteBuffer.allocateDirect(capacity), false);
+        }
+        ByteBuffer buffer = free.pollFirst();
+        return new Slab(buffer != null ? buffer : ByteBuffer.allocateDirect(slabBytes), true);
+    }
+
+    private void release(Slab slab) {
+        slabBytesInUse -= slab.buffer.capacity();
+        if (slab.pooled) {
+            slab.buffer.clear();
+            free.addLast(slab.buffer);
+        }
+    }
+
+    private static int addField(List<byte[]> fields, byte[] field) {
+        fields.add(field);
+        return Integer.BYTES + (field != null ? field.length : 0);
+    }
+
+    private static void putField(ByteBuffer buffer, byte[] field) {
+        if (field == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(field.length);
+            buffer.put(field);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = readBytes(buffer);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
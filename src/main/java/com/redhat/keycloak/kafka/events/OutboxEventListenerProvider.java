@@ -0,0 +1,76 @@
+package com.redhat.keycloak.kafka.events;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.hibernate.Session;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * Session-scoped listener used in outbox mode. Events are filtered and serialized by the shared
+ * {@link KafkaEventListenerProvider} and written to the outbox table through the session's JPA connection,
+ * so they are committed or rolled back together with the Keycloak transaction.
+ */
+public class OutboxEventListenerProvider implements EventListenerProvider {
+
+    private static final Logger LOG = Logger.getLogger(OutboxEventListenerProvider.class);
+
+    private final KeycloakSession session;
+    private final KafkaEventListenerProvider delegate;
+    private final OutboxStore store;
+
+    public OutboxEventListenerProvider(KeycloakSession session, KafkaEventListenerProvider delegate,
+                                       OutboxStore store) {
+        this.session = session;
+        this.delegate = delegate;
+        this.store = store;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        try {
+            write(delegate.toRecord(event, session));
+        } catch (RuntimeException e) {
+            failTransaction(e);
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        try {
+            write(delegate.toRecord(event, session));
+        } catch (RuntimeException e) {
+            failTransaction(e);
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Marks the Keycloak transaction for rollback, so the user action is not committed without its event. Keycloak
+     * catches exceptions thrown by listeners, rethrowing alone would commit the action and lose the event.
+     */
+    private void failTransaction(RuntimeException e) {
+        LOG.error("Failed to write the event to the outbox, rolling back the transaction", e);
+        session.getTransactionManager().setRollbackOnly();
+        throw e;
+    }
+
+    private void write(ProducerRecord<String, String> record) {
+        if (record == null) {
+            return;
+        }
+        session.getProvider(JpaConnectionProvider.class).getEntityManager().unwrap(Session.class)
+            .doWork(connection -> store.insert(connection, record));
+    }
+
+    @Override
+    public void close() {
+        // ignore
+    }
+}
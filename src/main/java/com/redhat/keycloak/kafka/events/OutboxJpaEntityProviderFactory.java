@@ -0,0 +1,59 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProvider;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+/**
+ * Registers the Liquibase changelog that creates the outbox and backfill tables. They are accessed through JDBC,
+ * so no JPA entities are contributed.
+ */
+public class OutboxJpaEntityProviderFactory implements JpaEntityProviderFactory, JpaEntityProvider {
+
+    private static final String ID = "kafka-event-outbox";
+
+    @Override
+    public JpaEntityProvider create(KeycloakSession session) {
+        return this;
+    }
+
+    @Override
+    public List<Class<?>> getEntities() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getChangelogLocation() {
+        return "META-INF/kafka-event-outbox-changelog.xml";
+    }
+
+    @Override
+    public String getFactoryId() {
+        return ID;
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public void init(Scope config) {
+        // ignore
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        // ignore
+    }
+
+    @Override
+    public void close() {
+        // ignore
+    }
+}
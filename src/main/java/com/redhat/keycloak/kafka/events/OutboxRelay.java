@@ -0,0 +1,301 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.jboss.logging.Logger;
+
+/**
+ * Background relay that publishes outbox rows to Kafka and deletes them once acknowledged.
+ *
+ * Each run first takes the cluster-wide lease, then pages through the outbox with keyset pagination. A page is sent
+ * as a whole, flushed, and only the acknowledged rows are deleted. Rows that failed stay in the table and are retried
+ * on the next run. A node that crashes between the send and the delete causes the page to be sent again; consumers
+ * can drop such duplicates using the {@code ce_id} header.
+ *
+ * In transactional mode a fatal producer error, such as being fenced, closes the producer and the next page is sent
+ * by a fresh instance from the supplier.
+ */
+public class OutboxRelay {
+
+    private static final Logger LOG = Logger.getLogger(OutboxRelay.class);
+
+    private final OutboxStore store;
+    private final OutboxStore.TransactionRunner transactionRunner;
+    private final Supplier<Producer<String, String>> producerSupplier;
+    private final boolean transactional;
+    private final RecordChunker chunker;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final long leaseMs;
+    private final String owner = UUID.randomUUID().toString();
+
+    private final AtomicLong publishedRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong lagMs = new AtomicLong();
+    private final AtomicLong lastRunThroughput = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+    // Used by the relay thread only
+    private Producer<String, String> producer;
+    private volatile boolean rollRequested;
+
+    public OutboxRelay(OutboxStore store, OutboxStore.TransactionRunner transactionRunner,
+                       Supplier<Producer<String, String>> producerSupplier, boolean transactional,
+                       KafkaEventListenerConfig config) {
+        this(store, transactionRunner, producerSupplier, transactional, config,
+            new RecordChunker(RecordChunker.DEFAULT_MAX_REQUEST_SIZE - RecordChunker.HEADROOM));
+    }
+
+    public OutboxRelay(OutboxStore store, OutboxStore.TransactionRunner transactionRunner,
+                       Supplier<Producer<String, String>> producerSupplier, boolean transactional,
+                       KafkaEventListenerConfig config, RecordChunker chunker) {
+        this.store = store;
+        this.chunker = chunker;
+        this.transactionRunner = transactionRunner;
+        this.producerSupplier = producerSupplier;
+        this.transactional = transactional;
+        this.batchSize = Math.max(1, config.getOutboxBatchSize());
+        this.pollIntervalMs = Math.max(1, config.getOutboxPollIntervalMs());
+        this.leaseMs = config.getOutboxLeaseMs();
+        this.producer = newProducer();
+    }
+
+    private Producer<String, String> newProducer() {
+        Producer<String, String> created = producerSupplier.get();
+        if (transactional) {
+            created.initTransactions();
+        }
+        return created;
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-events-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Outbox relay started with owner id " + owner);
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            LOG.error("Outbox relay run failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drains the outbox if this node holds the lease.
+     *
+     * @return number of records published in this run
+     */
+    public int runOnce() throws InterruptedException {
+        long startedAt = System.currentTimeMillis();
+        int published = 0;
+        long afterId = 0;
+
+        while (true) {
+            long lastId = afterId;
+            List<OutboxStore.Entry> page = transactionRunner.inTransaction(connection -> {
+                if (!store.tryAcquireLease(connection, OutboxStore.RELAY_LEASE, owner, System.currentTimeMillis(), leaseMs)) {
+                    return null;
+                }
+                return store.fetchAfter(connection, lastId, batchSize);
+            });
+
+            if (page == null) {
+                LOG.trace("Outbox relay lease is held by another node");
+                return published;
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+
+            List<Long> acknowledged = publish(page);
+            transactionRunner.inTransaction(connection -> store.delete(connection, acknowledged));
+
+            published += acknowledged.size();
+            failedRecords.addAndGet(page.size() - acknowledged.size());
+            afterId = page.get(page.size() - 1).getId();
+
+            if (page.size() < batchSize) {
+                break;
+            }
+        }
+
+        long oldest = transactionRunner.inTransaction(store::oldestCreatedAt);
+        lagMs.set(oldest < 0 ? 0 : System.currentTimeMillis() - oldest);
+        publishedRecords.addAndGet(published);
+        long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+        lastRunThroughput.set(published * 1000L / elapsed);
+        if (published > 0) {
+            LOG.debug("Outbox relay published " + published + " record(s) in " + elapsed + " ms");
+        }
+        return published;
+    }
+
+    /**
+     * Sends a page and returns the ids of the rows Kafka acknowledged.
+     */
+    private List<Long> publish(List<OutboxStore.Entry> page) throws InterruptedException {
+        List<Long> acknowledged = new ArrayList<>(page.size());
+        if (rollRequested && producer != null) {
+            // The previous page was flushed, so the producer holds nothing
+            rollRequested = false;
+            LOG.info("Rolling the outbox relay producer");
+            producer.close();
+            producer = null;
+        }
+        if (producer == null) {
+            producer = newProducer();
+        }
+
+        if (transactional) {
+            try {
+                producer.beginTransaction();
+                for (OutboxStore.Entry entry : page) {
+                    for (ProducerRecord<String, String> chunk : chunker.split(entry.getRecord())) {
+                        producer.send(chunk);
+                    }
+                }
+                producer.commitTransaction();
+                page.forEach(entry -> acknowledged.add(entry.getId()));
+            } catch (KafkaException e) {
+                LOG.error("Outbox transaction failed, page will be retried", e);
+                if (TransactionalEventPublisher.isFatal(e)) {
+                    replaceProducer();
+                } else {
+                    try {
+                        producer.abortTransaction();
+                    } catch (KafkaException abortError) {
+                        LOG.debug("Failed to abort outbox transaction", abortError);
+                    }
+                }
+            }
+            return acknowledged;
+        }
+
+        // An entry is acknowledged once all of its chunks are
+        List<List<Future<RecordMetadata>>> futures = new ArrayList<>(page.size());
+        for (OutboxStore.Entry entry : page) {
+            List<Future<RecordMetadata>> entryFutures = new ArrayList<>(1);
+            try {
+                for (ProducerRecord<String, String> chunk : chunker.split(entry.getRecord())) {
+                    entryFutures.add(producer.send(chunk));
+                }
+            } catch (KafkaException e) {
+                LOG.warn("Outbox record " + entry.getId() + " could not be sent, will be retried", e);
+                entryFutures = null;
+            }
+            futures.add(entryFutures);
+        }
+        producer.flush();
+
+        for (int i = 0; i < page.size(); i++) {
+            if (futures.get(i) == null) {
+                continue;
+            }
+            try {
+                for (Future<RecordMetadata> future : futures.get(i)) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+                acknowledged.add(page.get(i).getId());
+            } catch (ExecutionException | TimeoutException e) {
+                LOG.warn("Outbox record " + page.get(i).getId() + " was not acknowledged, will be retried", e);
+            }
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Closes the unusable producer and creates a new one. If that fails, the next run tries again.
+     */
+    private void replaceProducer() {
+        LOG.warn("Outbox relay producer failed, creating a new producer instance");
+        try {
+            producer.close(Duration.ZERO);
+        } catch (RuntimeException e) {
+            LOG.debug("Failed to close the outbox relay producer", e);
+        }
+        producer = null;
+        try {
+            producer = newProducer();
+        } catch (RuntimeException e) {
+            LOG.error("Failed to create the outbox relay producer, retrying on the next run", e);
+        }
+    }
+
+    /**
+     * Replaces the producer before the next page, for example after the TLS certificates were rotated.
+     */
+    public void rollProducer() {
+        rollRequested = true;
+    }
+
+    public long getPublishedRecords() {
+        return publishedRecords.get();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.get();
+    }
+
+    /**
+     * Age of the oldest row left in the outbox after the last run, in milliseconds.
+     */
+    public long getLagMs() {
+        return lagMs.get();
+    }
+
+    /**
+     * Records per second published by the last run.
+     */
+    public long getLastRunThroughput() {
+        return lastRunThroughput.get();
+    }
+
+    String getOwner() {
+        return owner;
+    }
+
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(pollIntervalMs + 5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            transactionRunner.inTransaction(connection -> {
+                store.releaseLease(connection, OutboxStore.RELAY_LEASE, owner);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            LOG.debug("Failed to release outbox relay lease", e);
+        }
+        if (producer != null) {
+            producer.close();
+        }
+    }
+}
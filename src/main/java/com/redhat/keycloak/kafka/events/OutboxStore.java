@@ -0,0 +1,246 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JDBC access to the outbox tables created by {@code META-INF/kafka-event-outbox-changelog.xml}.
+ * Rows are read in id order using keyset pagination, so each page is an index range scan regardless of the
+ * size of the backlog. Lease rows decide which cluster node runs the relay and the backfill, and the backfill
+ * position is kept in a checkpoint row so a node taking over the lease continues from it.
+ */
+public class OutboxStore {
+
+    static final String OUTBOX_TABLE = "KAFKA_EVENT_OUTBOX";
+    static final String LEASE_TABLE = "KAFKA_EVENT_OUTBOX_LEASE";
+    static final String CHECKPOINT_TABLE = "KAFKA_EVENT_BACKFILL";
+    static final String RELAY_LEASE = "relay";
+    static final String BACKFILL_LEASE = "backfill";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Unit of work executed with a JDBC connection inside a transaction.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs work in its own database transaction, committing on success.
+     */
+    @FunctionalInterface
+    public interface TransactionRunner {
+        <T> T inTransaction(Work<T> work);
+    }
+
+    /**
+     * A record waiting in the outbox.
+     */
+    public static class Entry {
+        private final long id;
+        private final long createdAt;
+        private final ProducerRecord<String, String> record;
+
+        Entry(long id, long createdAt, ProducerRecord<String, String> record) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.record = record;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public ProducerRecord<String, String> getRecord() {
+            return record;
+        }
+    }
+
+    public void insert(Connection connection, ProducerRecord<String, String> record) throws SQLException {
+        String sql = "INSERT INTO " + OUTBOX_TABLE + " (TOPIC, RECORD_KEY, PAYLOAD, HEADERS, CREATED_AT)"
+            + " VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, record.topic());
+            statement.setString(2, record.key());
+            statement.setString(3, record.value());
+            statement.setString(4, encodeHeaders(record));
+            statement.setLong(5, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} entries with an id greater than {@code afterId}, in id order.
+     */
+    public List<Entry> fetchAfter(Connection connection, long afterId, int limit) throws SQLException {
+        String sql = "SELECT ID, TOPIC, RECORD_KEY, PAYLOAD, HEADERS, CREATED_AT FROM " + OUTBOX_TABLE
+            + " WHERE ID > ? ORDER BY ID";
+        List<Entry> entries = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, afterId);
+            // setMaxRows keeps the query portable across the databases Keycloak supports
+            statement.setMaxRows(limit);
+            statement.setFetchSize(limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ProducerRecord<String, String> record = new ProducerRecord<>(resultSet.getString(2), null,
+                        resultSet.getString(3), resultSet.getString(4), decodeHeaders(resultSet.getString(5)));
+                    entries.add(new Entry(resultSet.getLong(1), resultSet.getLong(6), record));
+                }
+            }
+        }
+        return entries;
+    }
+
+    public int delete(Connection connection, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+            "DELETE FROM " + OUTBOX_TABLE + " WHERE ID = ?")) {
+            for (Long id : ids) {
+                statement.setLong(1, id);
+                statement.addBatch();
+            }
+            int deleted = 0;
+            for (int count : statement.executeBatch()) {
+                deleted += Math.max(count, 0);
+            }
+            return deleted;
+        }
+    }
+
+    /**
+     * Returns the creation time of the oldest pending entry, or -1 if the outbox is empty.
+     */
+    public long oldestCreatedAt(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "SELECT MIN(CREATED_AT) FROM " + OUTBOX_TABLE);
+             ResultSet resultSet = statement.executeQuery()) {
+            if (resultSet.next()) {
+                long oldest = resultSet.getLong(1);
+                return resultSet.wasNull() ? -1 : oldest;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Acquires or renews a lease. The conditional update succeeds only for the current owner or once
+     * the lease has expired, so at most one node holds it at any time.
+     *
+     * @param name {@link #RELAY_LEASE} or {@link #BACKFILL_LEASE}
+     */
+    public boolean tryAcquireLease(Connection connection, String name, String owner, long now, long leaseMs)
+        throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "UPDATE " + LEASE_TABLE + " SET OWNER = ?, EXPIRES_AT = ? WHERE NAME = ? AND (OWNER = ? OR EXPIRES_AT < ?)")) {
+            statement.setString(1, owner);
+            statement.setLong(2, now + leaseMs);
+            statement.setString(3, name);
+            statement.setString(4, owner);
+            statement.setLong(5, now);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    public void releaseLease(Connection connection, String name, String owner) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "UPDATE " + LEASE_TABLE + " SET EXPIRES_AT = 0 WHERE NAME = ? AND OWNER = ?")) {
+            statement.setString(1, name);
+            statement.setString(2, owner);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns the stored backfill checkpoint, or null if no backfill has run yet.
+     */
+    public String loadCheckpoint(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "SELECT CHECKPOINT FROM " + CHECKPOINT_TABLE + " WHERE NAME = ?")) {
+            statement.setString(1, BACKFILL_LEASE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    public void saveCheckpoint(Connection connection, String checkpoint) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "UPDATE " + CHECKPOINT_TABLE + " SET CHECKPOINT = ? WHERE NAME = ?")) {
+            statement.setString(1, checkpoint);
+            statement.setString(2, BACKFILL_LEASE);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Stores the headers as an ordered list of {@code {"key", "value"}} pairs with base64 values, so repeated keys and
+     * binary values survive.
+     */
+    private String encodeHeaders(ProducerRecord<String, String> record) throws SQLException {
+        List<Map<String, String>> headers = new ArrayList<>();
+        for (Header header : record.headers()) {
+            Map<String, String> pair = new LinkedHashMap<>();
+            pair.put("key", header.key());
+            pair.put("value", header.value() != null ? Base64.getEncoder().encodeToString(header.value()) : null);
+            headers.add(pair);
+        }
+        try {
+            return mapper.writeValueAsString(headers);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Failed to encode record headers", e);
+        }
+    }
+
+    private RecordHeaders decodeHeaders(String value) throws SQLException {
+        RecordHeaders headers = new RecordHeaders();
+        if (value == null) {
+            return headers;
+        }
+        try {
+            JsonNode tree = mapper.readTree(value);
+            if (tree.isArray()) {
+                for (JsonNode pair : tree) {
+                    JsonNode headerValue = pair.get("value");
+                    headers.add(pair.get("key").asText(), headerValue == null || headerValue.isNull() ? null
+                        : Base64.getDecoder().decode(headerValue.asText()));
+                }
+                return headers;
+            }
+            // Rows written before the headers were stored as pairs hold an object of UTF-8 strings
+            for (Iterator<Map.Entry<String, JsonNode>> fields = tree.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                headers.add(field.getKey(), field.getValue().isNull() ? null
+                    : field.getValue().asText().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new SQLException("Failed to decode record headers", e);
+        }
+        return headers;
+    }
+}
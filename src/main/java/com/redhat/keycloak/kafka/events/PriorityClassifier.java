@@ -0,0 +1,57 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.jboss.logging.Logger;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.OperationType;
+
+/**
+ * Assigns events to a priority lane by event type or admin operation. High priority events are sent by a producer of
+ * their own, so they never wait in the accumulator behind bulk traffic such as {@code REFRESH_TOKEN}.
+ */
+public class PriorityClassifier {
+
+    private static final Logger LOG = Logger.getLogger(PriorityClassifier.class);
+
+    public enum Priority {
+        HIGH, NORMAL
+    }
+
+    private final Set<EventType> events = EnumSet.noneOf(EventType.class);
+    private final Set<OperationType> adminOperations = EnumSet.noneOf(OperationType.class);
+
+    public PriorityClassifier(Collection<String> events, Collection<String> adminOperations) {
+        for (String event : events) {
+            try {
+                this.events.add(EventType.valueOf(event.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Ignoring priority event >" + event + "<. Event does not exist.");
+            }
+        }
+        for (String operation : adminOperations) {
+            try {
+                this.adminOperations.add(OperationType.valueOf(operation.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Ignoring priority admin operation >" + operation + "<. Operation does not exist.");
+            }
+        }
+    }
+
+    /**
+     * Whether any event is classified as high priority.
+     */
+    public boolean isEnabled() {
+        return !events.isEmpty() || !adminOperations.isEmpty();
+    }
+
+    public Priority classify(EventPipelineContext context) {
+        if (context.isAdminEvent()) {
+            return adminOperations.contains(context.getAdminEvent().getOperationType()) ? Priority.HIGH
+                : Priority.NORMAL;
+        }
+        return events.contains(context.getEvent().getType()) ? Priority.HIGH : Priority.NORMAL;
+    }
+}
@@ -0,0 +1,171 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the publishing path. Publishing only increments lock-free counters, so reading the statistics, however
+ * often, never slows it down. Latency is recorded for the sampled share of the events, overall and per priority lane.
+ */
+public class PublisherStats {
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> topics = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram[] laneLatency = new LatencyHistogram[PriorityClassifier.Priority.values().length];
+    private final LongAdder[] sloBreaches = new LongAdder[PriorityClassifier.Priority.values().length];
+    private final long[] latencyTargetNanos = new long[PriorityClassifier.Priority.values().length];
+    private volatile double samplingRate;
+
+    // Throughput is derived on read from the change of the published count
+    private long rateMeasuredAt = System.nanoTime();
+    private long rateMeasuredCount;
+    private double rate;
+
+    public PublisherStats(double samplingRate) {
+        setSamplingRate(samplingRate);
+        for (int i = 0; i < laneLatency.length; i++) {
+            laneLatency[i] = new LatencyHistogram();
+            sloBreaches[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Sets the latency target of a lane; sampled events acknowledged later are counted as breaches. 0 disables it.
+     * Called before events are published.
+     */
+    void setLatencyTarget(PriorityClassifier.Priority priority, long millis) {
+        latencyTargetNanos[priority.ordinal()] = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Returns whether the latency of the current event is recorded.
+     */
+    boolean sample() {
+        double samplingRate = this.samplingRate;
+        return samplingRate >= 1 || (samplingRate > 0 && ThreadLocalRandom.current().nextDouble() < samplingRate);
+    }
+
+    void recordPublished(String topic) {
+        published.increment();
+        LongAdder count = topics.get(topic);
+        if (count == null) {
+            count = topics.computeIfAbsent(topic, name -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    void recordLatency(PriorityClassifier.Priority priority, long nanos) {
+        latency.record(nanos);
+        int lane = priority.ordinal();
+        laneLatency[lane].record(nanos);
+        long target = latencyTargetNanos[lane];
+        if (target > 0 && nanos > target) {
+            sloBreaches[lane].increment();
+        }
+    }
+
+    void recordFailed() {
+        failed.increment();
+    }
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    void recordDropped(long count) {
+        dropped.add(count);
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Events dropped after they were accepted: the pause buffer was full, or the records of a failed transaction
+     * could not be replayed.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Share of failed events among all completed ones.
+     */
+    public double getErrorRate() {
+        long failed = getFailed();
+        long completed = failed + getPublished();
+        return completed > 0 ? (double) failed / completed : 0;
+    }
+
+    /**
+     * Published events per topic, sorted by topic.
+     */
+    public Map<String, Long> getTopicCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        topics.forEach((topic, count) -> counts.put(topic, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Time from handing an event to the sink until its acknowledgement, in microseconds.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Latency of the events sent in the given lane, in microseconds.
+     */
+    public LatencyHistogram getLatency(PriorityClassifier.Priority priority) {
+        return laneLatency[priority.ordinal()];
+    }
+
+    public long getLatencyTargetMs(PriorityClassifier.Priority priority) {
+        return TimeUnit.NANOSECONDS.toMillis(latencyTargetNanos[priority.ordinal()]);
+    }
+
+    /**
+     * Sampled events of the lane acknowledged after its latency target.
+     */
+    public long getSloBreaches(PriorityClassifier.Priority priority) {
+        return sloBreaches[priority.ordinal()].sum();
+    }
+
+    /**
+     * Events published per second since the previous measurement, which is taken at most once per second.
+     */
+    public synchronized double getThroughput() {
+        long now = System.nanoTime();
+        long elapsed = now - rateMeasuredAt;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            long count = getPublished();
+            rate = (count - rateMeasuredCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            rateMeasuredAt = now;
+            rateMeasuredCount = count;
+        }
+        return rate;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    public void setSamplingRate(double samplingRate) {
+        if (!(samplingRate >= 0 && samplingRate <= 1)) {
+            throw new IllegalArgumentException("Sampling rate must be between 0 and 1: " + samplingRate);
+        }
+        this.samplingRate = samplingRate;
+    }
+}
@@ -0,0 +1,176 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the ids published within a time window, so a repeated event is not published twice. Ids are stored as
+ * 64-bit hashes in an open addressing table, with a ring in insertion order for expiry; an id takes about 40 bytes
+ * and no object is allocated per id. Two different ids share a hash with a probability of about n² / 2⁶⁵, which would
+ * suppress the second one.
+ *
+ * <p>When the cache is full, the oldest id is dropped before its window ends.</p>
+ */
+public class RecentIdCache {
+
+    private static final long EMPTY = 0;
+
+    private final long windowMs;
+    private final int maxIds;
+    private final LongSupplier clock;
+
+    // Linear probing table of hashes; slots holds the ring position of each hash
+    private final long[] table;
+    private final int[] slots;
+    private final int mask;
+
+    // Ring of hashes and insertion times, oldest at head
+    private final long[] ringHashes;
+    private final long[] ringTimes;
+    private int head;
+    private int size;
+
+    private long suppressed;
+
+    public RecentIdCache(long windowMs, int maxIds) {
+        this(windowMs, maxIds, System::currentTimeMillis);
+    }
+
+    RecentIdCache(long windowMs, int maxIds, LongSupplier clock) {
+        this.windowMs = windowMs;
+        this.maxIds = Math.max(1, maxIds);
+        this.clock = clock;
+        // Keeps the load factor at or below two thirds
+        int capacity = Integer.highestOneBit(Math.max(2, this.maxIds + this.maxIds / 2) - 1) << 1;
+        this.table = new long[capacity];
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.ringHashes = new long[this.maxIds];
+        this.ringTimes = new long[this.maxIds];
+    }
+
+    /**
+     * Records the id and returns true, or returns false if it was already recorded within the window.
+     */
+    public synchronized boolean add(String id) {
+        long hash = hash(id);
+        long now = clock.getAsLong();
+        expire(now);
+        if (indexOf(hash) >= 0) {
+            suppressed++;
+            return false;
+        }
+        if (size == maxIds) {
+            evictHead();
+        }
+        int slot = (head + size) % maxIds;
+        ringHashes[slot] = hash;
+        ringTimes[slot] = now;
+        size++;
+
+        int index = (int) hash & mask;
+        while (table[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        table[index] = hash;
+        slots[index] = slot;
+        return true;
+    }
+
+    /**
+     * Forgets the id, for example because publishing it failed and a retry must not be suppressed.
+     */
+    public synchronized void remove(String id) {
+        int index = indexOf(hash(id));
+        if (index >= 0) {
+            delete(index);
+        }
+    }
+
+    public synchronized boolean contains(String id) {
+        expire(clock.getAsLong());
+        return indexOf(hash(id)) >= 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Number of ids rejected as duplicates.
+     */
+    public synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * Memory taken by the table and the ring.
+     */
+    public long getAllocatedBytes() {
+        return (long) table.length * (Long.BYTES + Integer.BYTES) + (long) maxIds * 2 * Long.BYTES;
+    }
+
+    private void expire(long now) {
+        while (size > 0 && now - ringTimes[head] >= windowMs) {
+            evictHead();
+        }
+    }
+
+    private void evictHead() {
+        int index = indexOf(ringHashes[head]);
+        // The hash may have been removed, or removed and added again at a newer ring position
+        if (index >= 0 && slots[index] == head) {
+            delete(index);
+        }
+        head = (head + 1) % maxIds;
+        size--;
+    }
+
+    private int indexOf(long hash) {
+        int index = (int) hash & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == hash) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the entry at the index and shifts the following entries of its probe sequence back, so lookups never
+     * need tombstones.
+     */
+    private void delete(int index) {
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (table[next] != EMPTY) {
+            int home = (int) table[next] & mask;
+            // Moves the entry into the gap unless its home slot lies cyclically after the gap
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                slots[gap] = slots[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = EMPTY;
+    }
+
+    /**
+     * FNV-1a over the characters, finished with the MurmurHash3 mixer so the low bits used for the table index are
+     * well distributed. Never returns {@link #EMPTY}.
+     */
+    static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != EMPTY ? hash : 1;
+    }
+}
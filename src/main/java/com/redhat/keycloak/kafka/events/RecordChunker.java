@@ -0,0 +1,96 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+/**
+ * Splits records whose value would exceed the producer's {@code max.request.size} into ordered chunks.
+ *
+ * Every chunk carries the original headers plus {@code ce_chunkid}, {@code ce_chunkindex} and {@code ce_chunkcount}.
+ * All chunks share the chunk id as record key, so the default partitioner puts them on one partition in order.
+ * Values are split on UTF-8 character boundaries, so each chunk is a valid string and the chunks concatenate to the
+ * original value. The {@code ChunkReassembler} of the consumer module rebuilds the value.
+ */
+public class RecordChunker {
+
+    static final int DEFAULT_MAX_REQUEST_SIZE = 1024 * 1024;
+
+    // Room left in a request for the record key, headers and batch overhead
+    static final int HEADROOM = 16 * 1024;
+
+    private final int maxChunkBytes;
+
+    public RecordChunker(int maxChunkBytes) {
+        this.maxChunkBytes = Math.max(1024, maxChunkBytes);
+    }
+
+    /**
+     * Derives the chunk size from the producer's {@code max.request.size}, unless a chunk size is configured.
+     */
+    public static RecordChunker forProducer(Map<String, Object> producerProperties, KafkaEventListenerConfig config) {
+        if (config.getChunkSizeBytes() > 0) {
+            return new RecordChunker(config.getChunkSizeBytes());
+        }
+        Object maxRequestSize = producerProperties.get(ProducerConfig.MAX_REQUEST_SIZE_CONFIG);
+        int size = maxRequestSize != null ? Integer.parseInt(maxRequestSize.toString()) : DEFAULT_MAX_REQUEST_SIZE;
+        return new RecordChunker(size - HEADROOM);
+    }
+
+    public int getMaxChunkBytes() {
+        return maxChunkBytes;
+    }
+
+    /**
+     * Returns the record itself if it fits, or its chunks in order.
+     */
+    public List<ProducerRecord<String, String>> split(ProducerRecord<String, String> record) {
+        String value = record.value();
+        // A UTF-8 character takes at most three bytes per UTF-16 char, so short values skip the encoding
+        if (value == null || (long) value.length() * 3 <= maxChunkBytes) {
+            return Collections.singletonList(record);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxChunkBytes) {
+            return Collections.singletonList(record);
+        }
+
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (start < bytes.length) {
+            int end = Math.min(bytes.length, start + maxChunkBytes);
+            // Never cut a multi-byte character: move back over UTF-8 continuation bytes
+            while (end < bytes.length && (bytes[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            parts.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            start = end;
+        }
+
+        String chunkId = UUID.randomUUID().toString();
+        String key = record.key() != null ? record.key() : chunkId;
+        byte[] chunkIdValue = chunkId.getBytes(StandardCharsets.UTF_8);
+        byte[] countValue = Integer.toString(parts.size()).getBytes(StandardCharsets.UTF_8);
+
+        List<ProducerRecord<String, String>> chunks = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            RecordHeaders headers = new RecordHeaders();
+            for (Header header : record.headers()) {
+                headers.add(header);
+            }
+            headers.add(CloudEventHeaders.CHUNK_ID, chunkIdValue);
+            headers.add(CloudEventHeaders.CHUNK_INDEX, Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+            headers.add(CloudEventHeaders.CHUNK_COUNT, countValue);
+            chunks.add(new ProducerRecord<>(record.topic(), record.partition(), key, parts.get(i), headers));
+        }
+        return chunks;
+    }
+}
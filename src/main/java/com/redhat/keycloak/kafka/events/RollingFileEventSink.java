@@ -0,0 +1,196 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.header.Header;
+import org.jboss.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes events to local files as JSON lines, for development and offline use without a broker. Each line holds
+ * topic, key, headers and the serialized event as a string. A batch is encoded into one buffer and written with a
+ * single write; a batch is accepted once written to the file, not once synced to disk. Files are rolled when they
+ * exceed the size limit and the oldest are deleted beyond the retention count.
+ */
+public class RollingFileEventSink implements EventSink {
+
+    private static final Logger LOG = Logger.getLogger(RollingFileEventSink.class);
+    static final String FILE_PREFIX = "events-";
+    static final String FILE_SUFFIX = ".jsonl";
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final JsonFactory jsonFactory = new JsonFactory().setRootValueSeparator("\n");
+    private final Buffer buffer = new Buffer();
+
+    private FileChannel channel;
+    private Path file;
+    private long fileBytes;
+    private long fileIndex;
+
+    /**
+     * Byte buffer whose content is written without copying it.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        private Buffer() {
+            super(64 * 1024);
+        }
+
+        private ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    public RollingFileEventSink(Path directory, long maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        try {
+            Files.createDirectories(directory);
+            // Continues after the files of a previous run instead of appending to them
+            fileIndex = listFiles().stream().mapToLong(RollingFileEventSink::index).max().orElse(0);
+            roll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open event file in " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> publish(List<EncodedEvent> events) {
+        try {
+            if (channel == null) {
+                throw new IOException("Event file sink is closed");
+            }
+            if (events.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            buffer.reset();
+            try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+                for (EncodedEvent event : events) {
+                    write(generator, event);
+                }
+                generator.writeRaw('\n');
+            }
+            if (fileBytes > 0 && fileBytes + buffer.size() > maxFileBytes) {
+                roll();
+            }
+            ByteBuffer bytes = buffer.asByteBuffer();
+            while (bytes.hasRemaining()) {
+                fileBytes += channel.write(bytes);
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static void write(JsonGenerator generator, EncodedEvent event) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("topic", event.getTopic());
+        if (event.getKey() != null) {
+            generator.writeStringField("key", event.getKey());
+        }
+        if (event.getHeaders() != null) {
+            generator.writeObjectFieldStart("headers");
+            for (Header header : event.getHeaders()) {
+                generator.writeFieldName(header.key());
+                if (header.value() != null) {
+                    generator.writeString(new String(header.value(), StandardCharsets.UTF_8));
+                } else {
+                    generator.writeNull();
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeStringField("value", event.getValue());
+        generator.writeEndObject();
+    }
+
+    private void roll() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        fileIndex++;
+        file = directory.resolve(String.format("%s%08d%s", FILE_PREFIX, fileIndex, FILE_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+
+        List<Path> files = listFiles();
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        LOG.debug("Writing events to " + file);
+    }
+
+    /**
+     * Event files in the directory, oldest first.
+     */
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> index(path) > 0)
+                .sorted((first, second) -> Long.compare(index(first), index(second)))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static long index(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * File currently written to.
+     */
+    public synchronized Path getFile() {
+        return file;
+    }
+
+    /**
+     * Syncs the current file to disk.
+     */
+    @Override
+    public synchronized void flush() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close event file " + file, e);
+            }
+            channel = null;
+        }
+    }
+}
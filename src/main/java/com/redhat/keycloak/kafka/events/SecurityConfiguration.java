@@ -1,15 +1,18 @@
 package com.redhat.keycloak.kafka.events;
 
 import java.io.ByteArrayInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.jboss.logging.Logger;
@@ -17,13 +20,19 @@ import org.jboss.logging.Logger;
 /**
  * Central security configuration class that handles SSL certificate configuration
  * using KAFKA_SSL_CA_CERTIFICATE and SASL authentication setup for Kafka producers.
+ * Certificates are passed to Kafka as in-memory PEM stores, so nothing is written to disk.
  */
 public class SecurityConfiguration {
 
     private static final Logger LOG = Logger.getLogger(SecurityConfiguration.class);
-    private static final String TEMP_DIR = "/tmp";
-    private static final String DEFAULT_KEYSTORE_PASSWORD = "changeit";
-    private static final String DEFAULT_KEYSTORE_TYPE = "JKS";
+    private static final String PEM_STORE_TYPE = "PEM";
+    private static final String[] CA_CERTIFICATE_VARIABLES = { "KAFKA_SSL_CA_CERTIFICATE", "KAFKA_SSL_PEM_CA_CERTIFICATES" };
+    private static final String[] CERTIFICATE_FILE_VARIABLES = {
+        "KAFKA_SSL_CA_CERTIFICATE_FILE", "KAFKA_SSL_PEM_CERTIFICATE_CHAIN_FILE", "KAFKA_SSL_PEM_PRIVATE_KEY_FILE"
+    };
+
+    // One entry per environment, as each additional cluster has environment variables of its own
+    private static final Map<Map<String, String>, SecurityConfiguration> CACHE = new HashMap<>();
 
     private final Map<String, String> environmentVariables;
     private final Map<String, Object> securityProperties;
@@ -34,6 +43,37 @@ public class SecurityConfiguration {
         initializeSecurityConfiguration();
     }
 
+    /**
+     * Returns the configuration for the given environment, reusing the one built for the same variables.
+     * Certificates read from files are cached as well; call {@link #invalidateCache()} after they are rotated.
+     */
+    public static synchronized SecurityConfiguration forEnvironment(Map<String, String> environmentVariables) {
+        SecurityConfiguration cached = CACHE.get(environmentVariables);
+        if (cached == null) {
+            cached = new SecurityConfiguration(environmentVariables);
+            CACHE.put(cached.environmentVariables, cached);
+        }
+        return cached;
+    }
+
+    public static synchronized void invalidateCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Returns the certificate and key files referenced by the environment, which are watched for rotation.
+     */
+    public static List<Path> certificateFiles(Map<String, String> environmentVariables) {
+        List<Path> files = new ArrayList<>();
+        for (String variable : CERTIFICATE_FILE_VARIABLES) {
+            String file = environmentVariables.get(variable);
+            if (file != null && !file.trim().isEmpty()) {
+                files.add(Paths.get(file.trim()));
+            }
+        }
+        return files;
+    }
+
     /**
      * Initializes the complete security configuration by processing
      * environment variables and setting up certificates and SASL.
@@ -46,6 +86,9 @@ public class SecurityConfiguration {
             // Process CA certificate configuration
             configureCACertificate();
 
+            // Process client certificate for mutual TLS
+            configureClientCertificate();
+
             // Process SASL authentication if required
             configureSASLAuthentication();
 
@@ -68,25 +111,17 @@ public class SecurityConfiguration {
     }
 
     /**
-     * Configures SSL truststore from KAFKA_SSL_CA_CERTIFICATE.
+     * Configures an in-memory PEM truststore from KAFKA_SSL_CA_CERTIFICATE, so no keystore file is written.
      */
     private void configureCACertificate() throws CertificateException {
-        String caCertificate = getEnvVar("KAFKA_SSL_CA_CERTIFICATE");
+        String caCertificate = resolvePem(CA_CERTIFICATE_VARIABLES, "KAFKA_SSL_CA_CERTIFICATE_FILE");
         if (caCertificate != null && !caCertificate.trim().isEmpty()) {
             validatePEMCertificateFormat(caCertificate, "CA certificate");
+            parseCertificates(caCertificate, "CA certificate");
 
-            try {
-                KeyStore truststore = createTruststore(caCertificate);
-                String truststoreFile = createKeystoreFile(truststore);
-                securityProperties.put("ssl.truststore.location", truststoreFile);
-                securityProperties.put("ssl.truststore.password", getTruststorePassword());
-                securityProperties.put("ssl.truststore.type", getKeystoreType());
-
-                LOG.info("CA certificate configured successfully");
-            } catch (Exception e) {
-                LOG.error("Failed to configure CA certificate", e);
-                throw new CertificateException("CA certificate configuration failed: " + e.getMessage(), e);
-            }
+            securityProperties.put("ssl.truststore.type", PEM_STORE_TYPE);
+            securityProperties.put("ssl.truststore.certificates", caCertificate.trim());
+            LOG.info("CA certificate configured successfully");
         } else {
             LOG.debug("No CA certificate provided");
         }
@@ -96,32 +131,67 @@ public class SecurityConfiguration {
     }
 
     /**
-     * Creates a truststore containing the CA certificate.
+     * Configures an in-memory PEM keystore for mutual TLS from KAFKA_SSL_PEM_CERTIFICATE_CHAIN and
+     * KAFKA_SSL_PEM_PRIVATE_KEY.
      */
-    private KeyStore createTruststore(String caCertificate) throws Exception {
-        KeyStore truststore = KeyStore.getInstance(getKeystoreType());
-        truststore.load(null, null);
+    private void configureClientCertificate() throws CertificateException {
+        String certificateChain = resolvePem(new String[] { "KAFKA_SSL_PEM_CERTIFICATE_CHAIN" },
+            "KAFKA_SSL_PEM_CERTIFICATE_CHAIN_FILE");
+        String privateKey = resolvePem(new String[] { "KAFKA_SSL_PEM_PRIVATE_KEY" }, "KAFKA_SSL_PEM_PRIVATE_KEY_FILE");
+        if (certificateChain == null && privateKey == null) {
+            return;
+        }
+        if (certificateChain == null || privateKey == null) {
+            throw new CertificateException("Client authentication requires both a certificate chain and a private key");
+        }
 
-        CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-        Certificate caCert = certFactory.generateCertificate(
-            new ByteArrayInputStream(caCertificate.getBytes()));
+        validatePEMCertificateFormat(certificateChain, "client certificate chain");
+        parseCertificates(certificateChain, "client certificate chain");
+        if (!privateKey.contains("-----BEGIN") || !privateKey.contains("PRIVATE KEY-----")) {
+            throw new CertificateException("Invalid client private key format: Missing PEM private key boundaries");
+        }
 
-        truststore.setCertificateEntry("kafka-ca", caCert);
-        return truststore;
+        securityProperties.put("ssl.keystore.type", PEM_STORE_TYPE);
+        securityProperties.put("ssl.keystore.certificate.chain", certificateChain.trim());
+        securityProperties.put("ssl.keystore.key", privateKey.trim());
+        String keyPassword = getEnvVar("KAFKA_SSL_KEY_PASSWORD");
+        if (keyPassword != null && !keyPassword.isEmpty()) {
+            securityProperties.put("ssl.key.password", keyPassword);
+        }
+        LOG.info("Client certificate configured successfully");
     }
 
     /**
-     * Creates a temporary keystore file from the provided KeyStore and returns its path.
+     * Returns the PEM content from the first variable that is set, or else from the file named by the file variable.
      */
-    private String createKeystoreFile(KeyStore keystore) throws Exception {
-        Path tempFile = Files.createTempFile(Paths.get(TEMP_DIR), "kafka-truststore", ".jks");
-
-        try (FileOutputStream fos = new FileOutputStream(tempFile.toFile())) {
-            keystore.store(fos, getTruststorePassword().toCharArray());
+    private String resolvePem(String[] variables, String fileVariable) throws CertificateException {
+        for (String variable : variables) {
+            String value = getEnvVar(variable);
+            if (value != null && !value.trim().isEmpty()) {
+                return value;
+            }
+        }
+        String file = getEnvVar(fileVariable);
+        if (file == null || file.trim().isEmpty()) {
+            return null;
         }
+        try {
+            return Files.readString(Paths.get(file.trim()), StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new CertificateException("Failed to read " + fileVariable + " from " + file, e);
+        }
+    }
 
-        LOG.debug("Created temporary truststore file: " + tempFile.toAbsolutePath());
-        return tempFile.toAbsolutePath().toString();
+    /**
+     * Parses the PEM content so malformed certificates are reported at startup instead of on the first connection.
+     */
+    private void parseCertificates(String pem, String description) throws CertificateException {
+        CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+        Collection<? extends Certificate> certificates = certFactory.generateCertificates(
+            new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII)));
+        if (certificates.isEmpty()) {
+            throw new CertificateException("Invalid " + description + " format: No certificate found");
+        }
     }
 
     /**
@@ -184,32 +254,6 @@ public class SecurityConfiguration {
         LOG.debug("SASL authentication configured");
     }
 
-    /**
-     * Gets the keystore type from environment variables or defaults to JKS.
-     */
-    private String getKeystoreType() {
-        String keystoreType = getEnvVar("KAFKA_SSL_KEYSTORE_TYPE_DYNAMIC");
-        if (keystoreType != null && !keystoreType.trim().isEmpty()) {
-            String type = keystoreType.trim().toUpperCase();
-            if (type.equals("JKS") || type.equals("PKCS12")) {
-                return type;
-            }
-            LOG.warn("Invalid keystore type: " + type + ", using default JKS");
-        }
-        return DEFAULT_KEYSTORE_TYPE;
-    }
-
-    /**
-     * Gets the truststore password from environment variables or generates a default.
-     */
-    private String getTruststorePassword() {
-        String password = getEnvVar("KAFKA_SSL_TRUSTSTORE_PASSWORD_DYNAMIC");
-        if (password != null && !password.trim().isEmpty()) {
-            return password.trim();
-        }
-        return DEFAULT_KEYSTORE_PASSWORD;
-    }
-
     /**
      * Gets an environment variable by name.
      */
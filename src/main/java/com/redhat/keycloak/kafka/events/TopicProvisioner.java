@@ -0,0 +1,240 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.jboss.logging.Logger;
+
+/**
+ * Checks at startup that the topics the listener publishes to exist, and creates the missing ones if configured.
+ * Without the topic every send blocks for {@code max.block.ms} waiting for metadata, unless the broker creates topics
+ * automatically.
+ * <p>
+ * The partition count of the events topic is derived from the expected event rate and the rate a single partition
+ * sustains. Existing topics are never changed: adding partitions would move users to other partitions and break the
+ * per-user order, so a topic with too few partitions is only reported.
+ */
+public class TopicProvisioner {
+
+    private static final Logger LOG = Logger.getLogger(TopicProvisioner.class);
+
+    static final long MIN_SEGMENT_BYTES = 16L * 1024 * 1024;
+    static final long MAX_SEGMENT_BYTES = 1024L * 1024 * 1024;
+    static final long CANARY_RETENTION_MS = TimeUnit.HOURS.toMillis(1);
+
+    public enum Mode {
+        NONE, VERIFY, CREATE;
+
+        public static Mode parse(String value) {
+            return value != null ? valueOf(value.trim().toUpperCase()) : NONE;
+        }
+    }
+
+    public enum Status {
+        OK, CREATED, MISSING, TOO_FEW_PARTITIONS, FAILED
+    }
+
+    /**
+     * Shape a topic should have. A partition count or replication factor of -1 leaves it to the broker default.
+     */
+    static final class TopicSpec {
+        private final String name;
+        private final int partitions;
+        private final short replicationFactor;
+        private final Map<String, String> configs;
+
+        TopicSpec(String name, int partitions, short replicationFactor, Map<String, String> configs) {
+            this.name = name;
+            this.partitions = partitions;
+            this.replicationFactor = replicationFactor;
+            this.configs = configs;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getPartitions() {
+            return partitions;
+        }
+
+        short getReplicationFactor() {
+            return replicationFactor;
+        }
+
+        Map<String, String> getConfigs() {
+            return configs;
+        }
+    }
+
+    private final Admin admin;
+    private final Mode mode;
+    private final long timeoutMs;
+
+    public TopicProvisioner(Admin admin, Mode mode, long timeoutMs) {
+        this.admin = admin;
+        this.mode = mode;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Topics of the listener: the events topic sized for the expected rate, the admin events topic, which sees far
+     * fewer events and keeps the broker's partition count, and the canary topic with a single partition.
+     */
+    static List<TopicSpec> specs(KafkaEventListenerConfig config, String topicEvents, String topicAdminEvents) {
+        short replicationFactor = (short) config.getTopicReplicationFactor();
+        List<TopicSpec> specs = new ArrayList<>();
+        int partitions = requiredPartitions(config.getExpectedEventsPerSecond(), config.getPartitionEventsPerSecond());
+        Map<String, String> configs = retentionConfigs(config);
+        if (config.getExpectedEventsPerSecond() > 0) {
+            configs.put(TopicConfig.SEGMENT_BYTES_CONFIG, String.valueOf(segmentBytes(
+                config.getExpectedEventsPerSecond(), config.getExpectedEventBytes(), partitions)));
+        }
+        specs.add(new TopicSpec(topicEvents, partitions, replicationFactor, configs));
+        if (topicAdminEvents != null && !topicAdminEvents.equals(topicEvents)) {
+            specs.add(new TopicSpec(topicAdminEvents, -1, replicationFactor, retentionConfigs(config)));
+        }
+        if (config.getCanaryTopic() != null) {
+            Map<String, String> canaryConfigs = new LinkedHashMap<>();
+            canaryConfigs.put(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(CANARY_RETENTION_MS));
+            specs.add(new TopicSpec(config.getCanaryTopic(), 1, replicationFactor, canaryConfigs));
+        }
+        return specs;
+    }
+
+    /**
+     * Partitions needed to sustain the expected rate, or -1 if the rate is unknown.
+     */
+    static int requiredPartitions(double eventsPerSecond, double partitionEventsPerSecond) {
+        if (eventsPerSecond <= 0) {
+            return -1;
+        }
+        return (int) Math.max(1, Math.ceil(eventsPerSecond / partitionEventsPerSecond));
+    }
+
+    /**
+     * Segment size holding about an hour of events per partition, so time based retention deletes in hourly steps
+     * instead of waiting for the default 1 GiB segment of a quiet topic to fill up.
+     */
+    static long segmentBytes(double eventsPerSecond, int eventBytes, int partitions) {
+        double hourlyBytes = eventsPerSecond * eventBytes * TimeUnit.HOURS.toSeconds(1) / Math.max(1, partitions);
+        return Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES, (long) hourlyBytes));
+    }
+
+    private static Map<String, String> retentionConfigs(KafkaEventListenerConfig config) {
+        Map<String, String> configs = new LinkedHashMap<>();
+        if (config.getTopicRetentionMs() > 0) {
+            configs.put(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(config.getTopicRetentionMs()));
+        }
+        if (config.getTopicCleanupPolicy() != null) {
+            configs.put(TopicConfig.CLEANUP_POLICY_CONFIG, config.getTopicCleanupPolicy());
+        }
+        return configs;
+    }
+
+    /**
+     * Verifies the topics and, in {@link Mode#CREATE}, creates the missing ones. Problems are logged, never thrown,
+     * so Keycloak starts even if the brokers are unreachable.
+     */
+    Map<String, Status> provision(List<TopicSpec> specs) {
+        Map<String, Status> result = new LinkedHashMap<>();
+        Map<String, KafkaFuture<TopicDescription>> descriptions = admin.describeTopics(
+            specs.stream().map(TopicSpec::getName).collect(Collectors.toList())).topicNameValues();
+        List<TopicSpec> missing = new ArrayList<>();
+        for (TopicSpec spec : specs) {
+            try {
+                TopicDescription description = descriptions.get(spec.getName()).get(timeoutMs, TimeUnit.MILLISECONDS);
+                result.put(spec.getName(), check(spec, description));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UnknownTopicOrPartitionException) {
+                    missing.add(spec);
+                } else {
+                    result.put(spec.getName(), failed("describe", spec, e.getCause()));
+                }
+            } catch (TimeoutException e) {
+                result.put(spec.getName(), failed("describe", spec, e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.put(spec.getName(), Status.FAILED);
+            }
+        }
+        if (mode == Mode.CREATE && !missing.isEmpty()) {
+            create(missing, result);
+        } else {
+            for (TopicSpec spec : missing) {
+                LOG.warn("Topic " + spec.getName() + " does not exist, sends wait for max.block.ms unless the broker "
+                    + "creates topics automatically");
+                result.put(spec.getName(), Status.MISSING);
+            }
+        }
+        return result;
+    }
+
+    private Status check(TopicSpec spec, TopicDescription description) {
+        int partitions = description.partitions().size();
+        if (spec.getPartitions() > partitions) {
+            LOG.warn("Topic " + spec.getName() + " has " + partitions + " partition(s), the expected event rate needs "
+                + spec.getPartitions() + ". Existing topics are not changed; adding partitions moves users to other "
+                + "partitions, so their events may be consumed out of order during the change");
+            return Status.TOO_FEW_PARTITIONS;
+        }
+        int replicas = description.partitions().get(0).replicas().size();
+        if (spec.getReplicationFactor() > replicas) {
+            LOG.warn("Topic " + spec.getName() + " has " + replicas + " replica(s), " + spec.getReplicationFactor()
+                + " are configured");
+        }
+        LOG.debug("Topic " + spec.getName() + " exists with " + partitions + " partition(s)");
+        return Status.OK;
+    }
+
+    private void create(List<TopicSpec> specs, Map<String, Status> result) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (TopicSpec spec : specs) {
+            topics.add(new NewTopic(spec.getName(),
+                spec.getPartitions() > 0 ? Optional.of(spec.getPartitions()) : Optional.empty(),
+                spec.getReplicationFactor() > 0 ? Optional.of(spec.getReplicationFactor()) : Optional.empty())
+                .configs(spec.getConfigs()));
+        }
+        Map<String, KafkaFuture<Void>> created = admin.createTopics(topics).values();
+        for (TopicSpec spec : specs) {
+            try {
+                created.get(spec.getName()).get(timeoutMs, TimeUnit.MILLISECONDS);
+                LOG.info("Created topic " + spec.getName() + " with "
+                    + (spec.getPartitions() > 0 ? spec.getPartitions() : "the default number of") + " partition(s) and "
+                    + spec.getConfigs());
+                result.put(spec.getName(), Status.CREATED);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TopicExistsException) {
+                    // Created concurrently, for example by another Keycloak node
+                    result.put(spec.getName(), Status.OK);
+                } else {
+                    result.put(spec.getName(), failed("create", spec, e.getCause()));
+                }
+            } catch (TimeoutException e) {
+                result.put(spec.getName(), failed("create", spec, e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.put(spec.getName(), Status.FAILED);
+            }
+        }
+    }
+
+    private static Status failed(String action, TopicSpec spec, Throwable error) {
+        LOG.warn("Failed to " + action + " topic " + spec.getName(), error);
+        return Status.FAILED;
+    }
+}
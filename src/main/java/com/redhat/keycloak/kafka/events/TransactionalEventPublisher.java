@@ -0,0 +1,302 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.UnsupportedVersionException;
+import org.jboss.logging.Logger;
+
+/**
+ * Publishes records inside Kafka transactions. Records are grouped into one transaction until either
+ * the batch size is reached or the commit interval elapses, so the commit round trip is paid once per batch
+ * instead of once per event.
+ *
+ * Records of the open transaction are kept until the commit succeeds. A commit that times out is retried, as its
+ * outcome is unknown and aborting could lose or duplicate records the broker already committed; if it still times
+ * out, the records stay pending, the caller gets the exception and the next send or commit retries it. An abortable
+ * error aborts the transaction and replays the records in a new one. A fenced producer is closed and replaced by a
+ * fresh instance from the supplier, which bumps the producer epoch before the records are replayed. Records that
+ * cannot be replayed are reported to the dropped listener and the caller gets the exception.
+ */
+public class TransactionalEventPublisher {
+
+    private static final Logger LOG = Logger.getLogger(TransactionalEventPublisher.class);
+
+    static final int COMMIT_ATTEMPTS = 3;
+
+    private final Supplier<Producer<String, String>> producerSupplier;
+    private final int batchSize;
+    private final long commitIntervalMs;
+    private final List<ProducerRecord<String, String>> pending = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+
+    private Producer<String, String> producer;
+    private long transactionStartedAt;
+    private boolean closed;
+    // A commit timed out, the open transaction must be committed before anything else is sent
+    private boolean committing;
+    private volatile LongConsumer droppedListener = count -> { };
+    // Mirrors pending.size() for readers that must not take the lock
+    private volatile int uncommitted;
+
+    public TransactionalEventPublisher(Supplier<Producer<String, String>> producerSupplier, int batchSize,
+                                       long commitIntervalMs) {
+        this.producerSupplier = producerSupplier;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitIntervalMs = Math.max(1, commitIntervalMs);
+        this.producer = newProducer();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-events-transaction-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::commitIfDue, this.commitIntervalMs, this.commitIntervalMs,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the record to the open transaction, starting one if needed, and commits once the batch is full.
+     */
+    public void send(ProducerRecord<String, String> record) {
+        sendAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Adds the records to the same transaction, so the chunks of one event are committed together.
+     */
+    public synchronized void sendAll(List<ProducerRecord<String, String>> records) {
+        if (closed) {
+            throw new IllegalStateException("Transactional publisher is closed");
+        }
+        if (committing) {
+            commit();
+        }
+
+        for (ProducerRecord<String, String> record : records) {
+            pending.add(record);
+            try {
+                if (pending.size() == 1) {
+                    producer.beginTransaction();
+                    transactionStartedAt = System.currentTimeMillis();
+                }
+                producer.send(record);
+            } catch (KafkaException e) {
+                // Replays the pending records, including this one; the rest are added to the new transaction
+                recover(e);
+            }
+        }
+
+        if (pending.size() >= batchSize) {
+            commit();
+        }
+        uncommitted = pending.size();
+    }
+
+    /**
+     * Commits the open transaction, if any.
+     */
+    public synchronized void flush() {
+        if (!pending.isEmpty()) {
+            commit();
+        }
+    }
+
+    /**
+     * Commits the open transaction and replaces the producer with a new instance from the supplier.
+     * The new producer is initialized before the old one is closed, so a failure keeps the current producer.
+     */
+    public synchronized void renewProducer() {
+        flush();
+        Producer<String, String> newProducer = newProducer();
+        closeQuietly(producer);
+        producer = newProducer;
+        LOG.info("Transactional producer renewed");
+    }
+
+    /**
+     * Called with the number of records dropped after the transaction recovery failed. Those records belong to
+     * events that were already reported as published.
+     */
+    public void setDroppedListener(LongConsumer droppedListener) {
+        this.droppedListener = droppedListener;
+    }
+
+    /**
+     * Number of records in the open transaction. Does not take the lock.
+     */
+    public int getUncommitted() {
+        return uncommitted;
+    }
+
+    synchronized Producer<String, String> getProducer() {
+        return producer;
+    }
+
+    private synchronized void commitIfDue() {
+        if (!pending.isEmpty() && (committing || System.currentTimeMillis() - transactionStartedAt >= commitIntervalMs)) {
+            try {
+                commit();
+            } catch (KafkaException e) {
+                // An exception would cancel the schedule; the error was logged and counted already
+                LOG.debug("Scheduled commit failed", e);
+            }
+        }
+    }
+
+    private void commit() {
+        try {
+            commitWithRetries();
+            LOG.debug("Committed transaction with " + pending.size() + " record(s)");
+            pending.clear();
+        } catch (TimeoutException e) {
+            LOG.warn("Commit of " + pending.size() + " record(s) timed out " + COMMIT_ATTEMPTS + " times, keeping "
+                + "the transaction open to retry the commit", e);
+            committing = true;
+            throw e;
+        } catch (KafkaException e) {
+            recover(e);
+        } finally {
+            uncommitted = pending.size();
+        }
+    }
+
+    /**
+     * Commits, retrying timeouts. Committing again after a timeout completes the same transaction.
+     */
+    private void commitWithRetries() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                producer.commitTransaction();
+                committing = false;
+                return;
+            } catch (TimeoutException e) {
+                if (attempt >= COMMIT_ATTEMPTS) {
+                    throw e;
+                }
+                LOG.debug("Transaction commit timed out, retrying", e);
+            }
+        }
+    }
+
+    /**
+     * Aborts or replaces the producer depending on the error and replays the pending records once.
+     * If the replay fails too, the records are dropped, reported to the dropped listener and the error is thrown.
+     */
+    private void recover(KafkaException cause) {
+        List<ProducerRecord<String, String>> records = new ArrayList<>(pending);
+        pending.clear();
+        committing = false;
+
+        try {
+            if (isFenced(cause)) {
+                // Each node has a transactional.id of its own, so this is a second process publishing with it
+                LOG.error("Another producer took over this node's transactional.id; check that the Keycloak nodes have "
+                    + "distinct host names. Creating a new producer instance, which fences the other one", cause);
+                closeQuietly(producer);
+                producer = newProducer();
+            } else if (isFatal(cause)) {
+                LOG.warn("Transactional producer failed, creating a new producer instance", cause);
+                closeQuietly(producer);
+                producer = newProducer();
+            } else {
+                LOG.warn("Aborting Kafka transaction after error", cause);
+                producer.abortTransaction();
+            }
+
+            if (!records.isEmpty()) {
+                producer.beginTransaction();
+                for (ProducerRecord<String, String> record : records) {
+                    producer.send(record);
+                }
+                commitWithRetries();
+            }
+        } catch (TimeoutException e) {
+            // The replay may have been committed, keep it open like any other commit that timed out
+            pending.addAll(records);
+            committing = true;
+            throw e;
+        } catch (KafkaException e) {
+            LOG.error("Dropping " + records.size() + " record(s) after failed transaction recovery", e);
+            if (isFatal(e)) {
+                closeQuietly(producer);
+                producer = newProducer();
+            } else {
+                abortQuietly();
+            }
+            droppedListener.accept(records.size());
+            throw new KafkaException("Dropped " + records.size() + " record(s) after failed transaction recovery", e);
+        }
+    }
+
+    /**
+     * Fatal errors leave the producer unusable. The producer may wrap them, so the cause chain is checked too.
+     */
+    static boolean isFatal(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProducerFencedException
+                || cause instanceof OutOfOrderSequenceException
+                || cause instanceof AuthorizationException
+                || cause instanceof UnsupportedVersionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFenced(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProducerFencedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Producer<String, String> newProducer() {
+        Producer<String, String> newProducer = producerSupplier.get();
+        newProducer.initTransactions();
+        return newProducer;
+    }
+
+    private void abortQuietly() {
+        try {
+            producer.abortTransaction();
+        } catch (KafkaException e) {
+            LOG.debug("Failed to abort transaction", e);
+        }
+    }
+
+    private static void closeQuietly(Producer<String, String> producer) {
+        try {
+            producer.close();
+        } catch (KafkaException e) {
+            LOG.debug("Failed to close producer", e);
+        }
+    }
+
+    public void close() {
+        scheduler.shutdown();
+        synchronized (this) {
+            try {
+                flush();
+            } finally {
+                closed = true;
+                producer.close();
+            }
+        }
+    }
+}
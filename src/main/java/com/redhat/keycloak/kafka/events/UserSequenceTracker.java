@@ -0,0 +1,101 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded per-(realm, user) sequence counters. The keys are spread over lock-striped LRU maps, so concurrent
+ * logins of different users rarely contend, and the least recently active users are evicted once a stripe is full.
+ *
+ * Every counter remembers the clock value at which it was created and the id of the node that created it (its epoch,
+ * {@code <nodeClock>-<nodeId>}). An evicted user, or one seen first after a restart or on another node, starts a new
+ * epoch at sequence 1. Consumers detect gaps by checking that the sequence grows by one within the same (user, epoch)
+ * pair.
+ *
+ * A tracked user retains about 280 bytes with compressed oops, as measured by {@code UserSequenceTrackerBenchmark}:
+ * the map entry (40), its share of the table (~10), the key string for two UUIDs (~120), the counter (24) and its
+ * epoch string (~90).
+ */
+public class UserSequenceTracker {
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes;
+    private final String nodeId;
+
+    /**
+     * Sequence assigned to one event.
+     */
+    public static final class Sequence {
+        private final String epoch;
+        private final long value;
+
+        Sequence(String epoch, long value) {
+            this.epoch = epoch;
+            this.value = value;
+        }
+
+        public String getEpoch() {
+            return epoch;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+
+    private static final class Counter {
+        private final String epoch;
+        private long value;
+
+        private Counter(String epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, Counter> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Counter> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    public UserSequenceTracker(int capacity, String nodeId) {
+        this.nodeId = nodeId;
+        int perStripe = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Returns the next sequence for the user, starting a new epoch at {@code epochIfNew} for unknown users.
+     */
+    public Sequence next(String realmId, String userId, long epochIfNew) {
+        String key = realmId + '/' + userId;
+        Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+        synchronized (stripe) {
+            Counter counter = stripe.computeIfAbsent(key, k -> new Counter(epochIfNew + "-" + nodeId));
+            return new Sequence(counter.epoch, ++counter.value);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,90 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class AdminRepresentationDifferTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void shouldComputeMergePatch() throws Exception {
+        AdminRepresentationDiffer differ = new AdminRepresentationDiffer(1_000_000, 10);
+
+        String patch = differ.mergePatch("{\"name\":\"app\",\"enabled\":true,\"attributes\":{\"a\":\"1\",\"b\":\"2\"}}",
+            "{\"name\":\"app\",\"enabled\":false,\"attributes\":{\"a\":\"1\"},\"rootUrl\":\"https://app\"}");
+
+        assertEquals(mapper.readTree("{\"enabled\":false,\"attributes\":{\"b\":null},\"rootUrl\":\"https://app\"}"),
+            mapper.readTree(patch));
+    }
+
+    @Test
+    void shouldPublishPatchesBetweenSnapshots() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, "keycloak-admin-events", Map.of(), Map.of(), new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setAdminDiffEnabled(true).setAdminDiffSnapshotInterval(3));
+        String large = "\"description\":\"" + "x".repeat(2000) + "\"";
+
+        AdminEvent create = event("e1", OperationType.CREATE, "{\"enabled\":true," + large + "}");
+        ProducerRecord<String, String> created = listener.toRecord(create);
+        assertNull(CloudEventHeaders.headerAsString(created.headers(), CloudEventHeaders.REPRESENTATION));
+
+        AdminEvent update = event("e2", OperationType.UPDATE, "{\"enabled\":false," + large + "}");
+        ProducerRecord<String, String> patched = listener.toRecord(update);
+        assertEquals("merge-patch", CloudEventHeaders.headerAsString(patched.headers(), CloudEventHeaders.REPRESENTATION));
+        assertEquals("e1", CloudEventHeaders.headerAsString(patched.headers(), CloudEventHeaders.REPRESENTATION_BASE));
+        JsonNode payload = mapper.readTree(patched.value());
+        assertEquals("{\"enabled\":false}", payload.get("representation").asText());
+        assertTrue(update.getRepresentation().contains("description"), "The Keycloak event must not be modified");
+
+        listener.toRecord(event("e3", OperationType.UPDATE, "{\"enabled\":true," + large + "}"));
+        ProducerRecord<String, String> snapshot = listener.toRecord(
+            event("e4", OperationType.UPDATE, "{\"enabled\":false," + large + "}"));
+        assertEquals("full", CloudEventHeaders.headerAsString(snapshot.headers(), CloudEventHeaders.REPRESENTATION));
+
+        AdminRepresentationDiffer differ = listener.getRepresentationDiffer();
+        assertEquals(2, differ.getPatches());
+        assertEquals(1, differ.getSnapshots());
+        assertTrue(differ.getPublishedBytes() * 2 < differ.getFullBytes());
+        Map<?, ?> statistics = (Map<?, ?>) KafkaEventsResource.statistics(listener).get("adminDiff");
+        assertEquals(2L, statistics.get("patches"));
+        assertEquals(differ.getFullBytes(), statistics.get("fullBytes"));
+    }
+
+    @Test
+    void shouldStayWithinMaxWeight() {
+        AdminRepresentationDiffer differ = new AdminRepresentationDiffer(10_000, 10);
+        for (int i = 0; i < 100; i++) {
+            AdminEvent event = event("e" + i, OperationType.CREATE, "{\"value\":\"" + "x".repeat(500) + "\"}");
+            event.setResourcePath("clients/" + i);
+            differ.diff(event);
+        }
+
+        assertTrue(differ.getWeight() <= 10_000);
+        assertTrue(differ.getEvictions() > 0);
+        assertEquals(differ.size() + differ.getEvictions(), 100);
+    }
+
+    private static AdminEvent event(String id, OperationType operation, String representation) {
+        AdminEvent event = new AdminEvent();
+        event.setId(id);
+        event.setRealmId("realm-id");
+        event.setOperationType(operation);
+        event.setResourceType(ResourceType.CLIENT);
+        event.setResourcePath("clients/client-id");
+        event.setRepresentation(representation);
+        return event;
+    }
+}
@@ -0,0 +1,256 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+class BackfillJobTest {
+
+    private static final BackfillJob.Lease HELD = new BackfillJob.Lease() {
+        @Override
+        public boolean tryAcquire() {
+            return true;
+        }
+
+        @Override
+        public void release() {
+        }
+    };
+
+    private final AtomicReference<String> storedCheckpoint = new AtomicReference<>();
+    private final BackfillCheckpoint.Storage storage = new BackfillCheckpoint.Storage() {
+        @Override
+        public String read() {
+            return storedCheckpoint.get();
+        }
+
+        @Override
+        public void write(String checkpoint) {
+            storedCheckpoint.set(checkpoint);
+        }
+    };
+
+    private final List<Event> events = new ArrayList<>();
+    private final List<AdminEvent> adminEvents = new ArrayList<>();
+
+    private final BackfillSource source = new BackfillSource() {
+        @Override
+        public List<Event> events(long fromTime, long toTime, int limit) {
+            return events.stream().filter(event -> event.getTime() >= fromTime && event.getTime() <= toTime)
+                .sorted(Comparator.comparingLong(Event::getTime)).limit(limit).collect(Collectors.toList());
+        }
+
+        @Override
+        public List<AdminEvent> adminEvents(long fromTime, long toTime, int limit) {
+            return adminEvents.stream().filter(event -> event.getTime() >= fromTime && event.getTime() <= toTime)
+                .sorted(Comparator.comparingLong(AdminEvent::getTime)).limit(limit).collect(Collectors.toList());
+        }
+    };
+
+    private final KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+        new String[] { "LOGIN" }, "keycloak-admin-events", Map.of(), Map.of(), new KafkaMockFactory(),
+        new KafkaEventListenerConfig().setOutboxEnabled(true));
+
+    private final KafkaEventListenerConfig config = new KafkaEventListenerConfig().setBackfillBatchSize(3)
+        .setBackfillWorkers(2).setBackfillMaxRecordsPerSecond(0);
+
+    @Test
+    void shouldPublishEveryStoredEventOnceAcrossTimestampTies() throws Exception {
+        // Several events share a timestamp across page boundaries
+        for (int i = 0; i < 10; i++) {
+            events.add(event("event-" + i, 1000 + i / 4, EventType.LOGIN));
+        }
+        events.add(event("filtered", 1001, EventType.LOGOUT));
+        adminEvents.add(adminEvent("admin-1", 1500));
+        MockProducer<String, String> producer = newProducer();
+        BackfillJob job = new BackfillJob(source, listener, producer, new BackfillCheckpoint(storage), HELD, config);
+
+        job.run();
+
+        assertTrue(job.isCompleted());
+        assertEquals(11, job.getPublished());
+        assertEquals(1, job.getSkipped());
+        Set<String> ids = new HashSet<>();
+        for (ProducerRecord<String, String> record : producer.history()) {
+            assertTrue(ids.add(CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ID)));
+            assertEquals("true", CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.BACKFILL));
+        }
+        assertEquals("keycloak-admin-events", producer.history().get(10).topic());
+        Map<?, ?> statistics = (Map<?, ?>) KafkaEventsResource.statistics(listener, null, job).get("backfill");
+        assertEquals(11L, statistics.get("published"));
+        assertEquals(true, statistics.get("completed"));
+    }
+
+    @Test
+    void shouldNotRunAgainOnceCompleted() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            events.add(event("event-" + i, 1000 + i, EventType.LOGIN));
+        }
+        MockProducer<String, String> first = newProducer();
+        new BackfillJob(source, listener, first, new BackfillCheckpoint(storage), HELD, config).run();
+        assertEquals(6, first.history().size());
+
+        events.add(event("event-late", 1003, EventType.LOGIN));
+        MockProducer<String, String> second = newProducer();
+        new BackfillJob(source, listener, second, new BackfillCheckpoint(storage), HELD, config).run();
+        assertTrue(second.history().isEmpty());
+    }
+
+    @Test
+    void shouldKeepCheckpointWhenPublishingFails() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            events.add(event("event-" + i, 1000 + i, EventType.LOGIN));
+        }
+        MockProducer<String, String> failing = newProducer();
+        failing.sendException = new KafkaException("broker down");
+        BackfillJob job = new BackfillJob(source, listener, failing, new BackfillCheckpoint(storage), HELD,
+            config.setBackfillBatchSize(6));
+
+        assertThrows(IllegalStateException.class, job::run);
+        assertFalse(job.isCompleted());
+
+        MockProducer<String, String> producer = newProducer();
+        new BackfillJob(source, listener, producer, new BackfillCheckpoint(storage), HELD, config).run();
+        assertEquals(6, producer.history().size());
+    }
+
+    @Test
+    void shouldWaitForTheLeaseHeldByAnotherNode() throws Exception {
+        events.add(event("event-1", 1000, EventType.LOGIN));
+        AtomicInteger attempts = new AtomicInteger();
+        BackfillJob.Lease lease = new BackfillJob.Lease() {
+            @Override
+            public boolean tryAcquire() {
+                // Released by the other node after two attempts
+                return attempts.incrementAndGet() > 2;
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+        MockProducer<String, String> producer = newProducer();
+
+        new BackfillJob(source, listener, producer, new BackfillCheckpoint(storage), lease,
+            config.setBackfillLeaseMs(10)).run();
+
+        assertEquals(1, producer.history().size());
+        assertTrue(attempts.get() > 2);
+    }
+
+    @Test
+    void shouldContinueFromTheCheckpointOfTheNodeThatLostTheLease() throws Exception {
+        for (int i = 0; i < 9; i++) {
+            events.add(event("event-" + i, 1000 + i, EventType.LOGIN));
+        }
+        AtomicInteger renewals = new AtomicInteger();
+        BackfillJob.Lease lost = new BackfillJob.Lease() {
+            @Override
+            public boolean tryAcquire() {
+                // Acquired, renewed for the first page and then taken over
+                return renewals.incrementAndGet() <= 2;
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+        MockProducer<String, String> first = newProducer();
+        BackfillJob stopped = new BackfillJob(source, listener, first, new BackfillCheckpoint(storage), lost, config);
+        stopped.run();
+
+        assertFalse(stopped.isCompleted());
+        assertEquals(3, first.history().size());
+
+        MockProducer<String, String> second = newProducer();
+        BackfillJob other = new BackfillJob(source, listener, second, new BackfillCheckpoint(storage), HELD, config);
+        other.run();
+
+        assertTrue(other.isCompleted());
+        assertEquals(6, second.history().size());
+        assertEquals("event-3", CloudEventHeaders.headerAsString(second.history().get(0).headers(),
+            CloudEventHeaders.ID));
+    }
+
+    @Test
+    void shouldSplitStoredEventsLargerThanARequest() throws Exception {
+        AdminEvent large = adminEvent("admin-large", 1000);
+        large.setRepresentation("{\"description\":\"" + "x".repeat(5000) + "\"}");
+        adminEvents.add(large);
+        MockProducer<String, String> producer = new MockProducer<String, String>(true, null, new StringSerializer(),
+            new StringSerializer()) {
+            @Override
+            public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+                if (record.value().length() > 2048) {
+                    throw new RecordTooLargeException("record of " + record.value().length() + " chars");
+                }
+                return super.send(record, callback);
+            }
+        };
+        BackfillJob job = new BackfillJob(source, listener, producer, new BackfillCheckpoint(storage), HELD, config,
+            new RecordChunker(2048));
+
+        job.run();
+
+        assertTrue(job.isCompleted());
+        assertEquals(1, job.getPublished());
+        assertEquals(3, producer.history().size());
+        StringBuilder value = new StringBuilder();
+        for (ProducerRecord<String, String> chunk : producer.history()) {
+            assertEquals("3", CloudEventHeaders.headerAsString(chunk.headers(), CloudEventHeaders.CHUNK_COUNT));
+            assertEquals("admin-large", CloudEventHeaders.headerAsString(chunk.headers(), CloudEventHeaders.ID));
+            value.append(chunk.value());
+        }
+        assertTrue(value.toString().contains("x".repeat(5000)));
+    }
+
+    private static Event event(String id, long time, EventType type) {
+        Event event = new Event();
+        event.setId(id);
+        event.setTime(time);
+        event.setType(type);
+        return event;
+    }
+
+    private static AdminEvent adminEvent(String id, long time) {
+        AdminEvent event = new AdminEvent();
+        event.setId(id);
+        event.setTime(time);
+        event.setOperationType(OperationType.UPDATE);
+        event.setResourceType(ResourceType.USER);
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> newProducer() {
+        Producer<String, String> producer = new KafkaMockFactory().createProducer("", "", Map.of());
+        return (MockProducer<String, String>) producer;
+    }
+}
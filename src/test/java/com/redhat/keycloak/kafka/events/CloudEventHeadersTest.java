@@ -0,0 +1,111 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+class CloudEventHeadersTest {
+
+    private KafkaEventListenerProvider listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, "keycloak-admin-events", Map.of(), new KafkaMockFactory());
+    }
+
+    @Test
+    void shouldAddCloudEventHeadersToUserEvents() throws Exception {
+        Event event = new Event();
+        event.setId("event-1");
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm-1");
+        event.setClientId("account");
+        event.setTime(1700000000000L);
+
+        listener.onEvent(event);
+
+        Headers headers = lastRecord().headers();
+        assertEquals("1.0", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.SPEC_VERSION));
+        assertEquals("event-1", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.ID));
+        assertEquals("com.redhat.keycloak.event.LOGIN", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.TYPE));
+        assertEquals("/realms/realm-1", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.SOURCE));
+        assertEquals("realm-1", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.REALM_ID));
+        assertEquals("account", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.CLIENT_ID));
+        assertEquals("2023-11-14T22:13:20Z", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.TIME));
+        assertEquals("application/json", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.CONTENT_TYPE));
+        assertEquals(CloudEventHeaders.PAYLOAD_SCHEMA_VERSION,
+            CloudEventHeaders.headerAsString(headers, CloudEventHeaders.SCHEMA_VERSION));
+    }
+
+    @Test
+    void shouldAddCloudEventHeadersToAdminEvents() throws Exception {
+        AdminEvent event = new AdminEvent();
+        event.setId("admin-1");
+        event.setRealmId("realm-1");
+        event.setOperationType(OperationType.DELETE);
+        event.setResourceType(ResourceType.CLIENT);
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setClientId("admin-cli");
+        event.setAuthDetails(authDetails);
+
+        listener.onEvent(event, false);
+
+        Headers headers = lastRecord().headers();
+        assertEquals("com.redhat.keycloak.admin-event.CLIENT.DELETE",
+            CloudEventHeaders.headerAsString(headers, CloudEventHeaders.TYPE));
+        assertEquals("admin-cli", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.CLIENT_ID));
+        assertNull(CloudEventHeaders.headerAsString(headers, CloudEventHeaders.TIME));
+    }
+
+    @Test
+    void shouldReuseEncodedConstantHeaderValues() {
+        Event first = new Event();
+        first.setType(EventType.LOGIN);
+        Event second = new Event();
+        second.setType(EventType.LOGIN);
+
+        Headers firstHeaders = CloudEventHeaders.forEvent(first);
+        Headers secondHeaders = CloudEventHeaders.forEvent(second);
+
+        assertSame(firstHeaders.lastHeader(CloudEventHeaders.TYPE).value(),
+            secondHeaders.lastHeader(CloudEventHeaders.TYPE).value());
+        assertSame(firstHeaders.lastHeader(CloudEventHeaders.SPEC_VERSION).value(),
+            secondHeaders.lastHeader(CloudEventHeaders.SPEC_VERSION).value());
+    }
+
+    @Test
+    void shouldUseResourceTypeStringForCustomAdminResources() {
+        AdminEvent event = new AdminEvent();
+        event.setOperationType(OperationType.UPDATE);
+        event.setResourceTypeAsString("ORGANIZATION_MEMBER");
+
+        Headers headers = CloudEventHeaders.forAdminEvent(event);
+
+        assertEquals("com.redhat.keycloak.admin-event.ORGANIZATION_MEMBER.UPDATE",
+            CloudEventHeaders.headerAsString(headers, CloudEventHeaders.TYPE));
+        assertEquals("/keycloak", CloudEventHeaders.headerAsString(headers, CloudEventHeaders.SOURCE));
+    }
+
+    private ProducerRecord<?, ?> lastRecord() throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        MockProducer<?, ?> producer = (MockProducer<?, ?>) producerField.get(listener);
+        return producer.history().get(producer.history().size() - 1);
+    }
+}
@@ -0,0 +1,250 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class ClusterFanOutTest {
+
+    private static final List<EncodedEvent> RECORDS =
+        List.of(new EncodedEvent("keycloak-events", null, "event", null));
+
+    @Test
+    void shouldNotWaitForSlowClusterWithAnyPolicy() throws Exception {
+        MockProducer<String, String> dr = producer(false);
+        try (ClusterFanOut any = fanOut(ClusterFanOut.AckPolicy.ANY, dr);
+             ClusterFanOut all = fanOut(ClusterFanOut.AckPolicy.ALL, dr)) {
+            CompletableFuture<RecordMetadata> anyAck = any.publish(RECORDS, CompletableFuture.completedFuture(null));
+            CompletableFuture<RecordMetadata> allAck = all.publish(RECORDS, CompletableFuture.completedFuture(null));
+
+            anyAck.get(1, TimeUnit.SECONDS);
+            assertFalse(allAck.isDone());
+
+            awaitHistory(dr, 2);
+            dr.completeNext();
+            dr.completeNext();
+            allAck.get(1, TimeUnit.SECONDS);
+            assertEquals(1, all.getClusters().get(0).getAcked());
+            assertTrue(all.getClusters().get(0).getLastLagMs() >= 0);
+        }
+    }
+
+    @Test
+    void shouldFailAllPolicyWhenOneClusterFails() throws Exception {
+        MockProducer<String, String> dr = producer(false);
+        try (ClusterFanOut any = fanOut(ClusterFanOut.AckPolicy.ANY, dr);
+             ClusterFanOut all = fanOut(ClusterFanOut.AckPolicy.ALL, dr)) {
+            CompletableFuture<RecordMetadata> anyAck = any.publish(RECORDS, CompletableFuture.completedFuture(null));
+            CompletableFuture<RecordMetadata> allAck = all.publish(RECORDS, CompletableFuture.completedFuture(null));
+            awaitHistory(dr, 2);
+            dr.errorNext(new KafkaException("dr down"));
+            dr.errorNext(new KafkaException("dr down"));
+
+            anyAck.get(1, TimeUnit.SECONDS);
+            assertThrows(ExecutionException.class, () -> allAck.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void shouldFailAnyPolicyOnlyWhenEveryClusterFails() {
+        MockProducer<String, String> dr = producer(true);
+        dr.sendException = new KafkaException("dr down");
+        try (ClusterFanOut any = fanOut(ClusterFanOut.AckPolicy.ANY, dr)) {
+            CompletableFuture<RecordMetadata> ack = any.publish(RECORDS,
+                CompletableFuture.failedFuture(new KafkaException("primary down")));
+
+            assertThrows(ExecutionException.class, () -> ack.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void shouldRejectEventsWhileCircuitIsOpen() throws Exception {
+        MockProducer<String, String> dr = producer(true);
+        dr.sendException = new KafkaException("dr down");
+        ClusterPublisher cluster = new ClusterPublisher("dr", new KafkaEventSink(dr), 10, new CircuitBreaker(2, 60_000));
+        try {
+            for (int i = 0; i < 2; i++) {
+                CompletableFuture<Void> ack = cluster.submit(RECORDS);
+                assertThrows(ExecutionException.class, () -> ack.get(1, TimeUnit.SECONDS));
+            }
+            CompletableFuture<Void> rejected = cluster.submit(RECORDS);
+
+            assertTrue(rejected.isCompletedExceptionally());
+            assertEquals(CircuitBreaker.State.OPEN, cluster.getCircuitState());
+            assertEquals(2, cluster.getFailed());
+            assertEquals(1, cluster.getRejected());
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    void shouldDeliverWithTheRolledSink() throws Exception {
+        MockProducer<String, String> old = producer(true);
+        MockProducer<String, String> rolled = producer(true);
+        ClusterPublisher cluster = new ClusterPublisher("dr", new KafkaEventSink(old), 10, new CircuitBreaker(2, 60_000));
+        try {
+            cluster.submit(RECORDS).get(1, TimeUnit.SECONDS);
+            cluster.rollSink(new KafkaEventSink(rolled));
+            cluster.submit(RECORDS).get(1, TimeUnit.SECONDS);
+
+            assertTrue(old.closed());
+            assertEquals(RECORDS.size(), old.history().size());
+            assertEquals(RECORDS.size(), rolled.history().size());
+            assertEquals(2, cluster.getAcked());
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    void shouldLetOneTrialThroughAfterOpenPeriod() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, now::get);
+
+        breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+
+        now.set(1000);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.set(2000);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void shouldRejectEventsWhenQueueIsFull() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MockProducer<String, String> blocked = new MockProducer<>(true, (Partitioner) null, new StringSerializer(),
+            new StringSerializer()) {
+            @Override
+            public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.send(record, callback);
+            }
+        };
+        ClusterPublisher cluster = new ClusterPublisher("dr", new KafkaEventSink(blocked), 1,
+            new CircuitBreaker(5, 60_000));
+        try {
+            CompletableFuture<Void> first = cluster.submit(RECORDS);
+            assertTrue(sending.await(1, TimeUnit.SECONDS));
+            CompletableFuture<Void> queued = cluster.submit(RECORDS);
+            CompletableFuture<Void> rejected = cluster.submit(RECORDS);
+
+            assertTrue(rejected.isCompletedExceptionally());
+            release.countDown();
+            first.get(1, TimeUnit.SECONDS);
+            queued.get(1, TimeUnit.SECONDS);
+            assertEquals(1, cluster.getRejected());
+        } finally {
+            release.countDown();
+            cluster.close();
+        }
+    }
+
+    @Test
+    void shouldMapPrefixedSecurityVariablesPerCluster() {
+        Map<String, String> environment = Map.of(
+            "KAFKA_SASL_USERNAME", "primary",
+            "KAFKA_CLUSTER_DR_SASL_USERNAME", "dr-user",
+            "KAFKA_CLUSTER_DR_SECURITY_PROTOCOL", "SASL_SSL");
+
+        assertEquals(Map.of("KAFKA_SASL_USERNAME", "dr-user", "KAFKA_SECURITY_PROTOCOL", "SASL_SSL"),
+            KafkaEventListenerProviderFactory.clusterEnvironment(environment, "dr"));
+        assertTrue(KafkaEventListenerProviderFactory.clusterEnvironment(environment, "backup").isEmpty());
+    }
+
+    @Test
+    void shouldPublishEventToPrimaryAndAdditionalClusters() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), new KafkaMockFactory());
+        MockProducer<String, String> dr = producer(true);
+        listener.enableFanOut(fanOut(ClusterFanOut.AckPolicy.ALL, dr));
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+
+        listener.onEvent(event);
+
+        assertEquals(1, getProducer(listener).history().size());
+        assertEquals(1, dr.history().size());
+        assertEquals(1, listener.getFanOut().getClusters().get(0).getAcked());
+        listener.shutdown();
+        assertTrue(dr.closed());
+    }
+
+    @Test
+    void shouldPublishEventsKeptDuringAPauseToAdditionalClusters() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), new KafkaMockFactory());
+        MockProducer<String, String> dr = producer(true);
+        listener.enableFanOut(fanOut(ClusterFanOut.AckPolicy.ALL, dr));
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+
+        listener.pause();
+        listener.onEvent(event);
+        listener.resume();
+
+        assertEquals(1, getProducer(listener).history().size());
+        awaitHistory(dr, 1);
+        listener.shutdown();
+    }
+
+    private static ClusterFanOut fanOut(ClusterFanOut.AckPolicy policy, MockProducer<String, String> producer) {
+        return new ClusterFanOut(List.of(new ClusterPublisher("dr", new KafkaEventSink(producer), 10,
+            new CircuitBreaker(5, 60_000))), policy);
+    }
+
+    private static MockProducer<String, String> producer(boolean autoComplete) {
+        return new MockProducer<>(autoComplete, (Partitioner) null, new StringSerializer(), new StringSerializer());
+    }
+
+    private static void awaitHistory(MockProducer<String, String> producer, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (producer.history().size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, producer.history().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<String, String>) producerField.get(listener);
+    }
+}
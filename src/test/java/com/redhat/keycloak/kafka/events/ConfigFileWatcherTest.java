@@ -0,0 +1,172 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class ConfigFileWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<MockProducer<String, String>> producers = new ArrayList<>();
+    private final List<Map<String, Object>> producerProperties = new ArrayList<>();
+
+    private final KafkaProducerInterface factory = (clientId, bootstrapServer, optionalProperties) -> {
+        @SuppressWarnings("unchecked")
+        MockProducer<String, String> producer = (MockProducer<String, String>) new KafkaMockFactory()
+            .createProducer(clientId, bootstrapServer, optionalProperties);
+        synchronized (producers) {
+            producers.add(producer);
+            producerProperties.add(Map.copyOf(optionalProperties));
+        }
+        return producer;
+    };
+
+    @Test
+    void shouldNotifyOnlyWhenFileChanges() throws Exception {
+        Path file = tempDir.resolve("kafka.properties");
+        Files.writeString(file, "topicEvents=first\n");
+        AtomicReference<Properties> loaded = new AtomicReference<>();
+        ConfigFileWatcher watcher = new ConfigFileWatcher(file, 1000, loaded::set);
+
+        assertTrue(watcher.checkForChanges());
+        assertEquals("first", loaded.get().getProperty("topicEvents"));
+        assertFalse(watcher.checkForChanges());
+
+        Files.writeString(file, "topicEvents=second-topic\n");
+        assertTrue(watcher.checkForChanges());
+        assertEquals("second-topic", loaded.get().getProperty("topicEvents"));
+    }
+
+    @Test
+    void shouldSwapTopicsAndFilterOnReload() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "old-topic",
+            new String[] { "LOGIN" }, null, Map.of(), factory);
+        Properties properties = new Properties();
+        properties.setProperty("topicEvents", "new-topic");
+        properties.setProperty("events", "LOGOUT");
+
+        listener.reload(properties);
+        listener.onEvent(event(EventType.LOGIN));
+        listener.onEvent(event(EventType.LOGOUT));
+
+        assertEquals(1, producers.size());
+        assertEquals(1, producers.get(0).history().size());
+        assertEquals("new-topic", producers.get(0).history().get(0).topic());
+    }
+
+    @Test
+    void shouldSwapProducerWithoutDroppingEvents() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of("linger.ms", "0"), factory);
+        int threads = 4;
+        int eventsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < eventsPerThread; j++) {
+                    listener.onEvent(event(EventType.LOGIN));
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        for (int i = 1; i <= 5; i++) {
+            Properties properties = new Properties();
+            properties.setProperty("producer.linger.ms", Integer.toString(i));
+            listener.reload(properties);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        int delivered = 0;
+        for (MockProducer<String, String> producer : producers) {
+            delivered += producer.history().size();
+        }
+        assertEquals(6, producers.size());
+        assertEquals(threads * eventsPerThread, delivered);
+        assertTrue(producers.get(0).closed());
+        assertTrue(listener.getLastSwapMillis() >= 0);
+        assertEquals(0, listener.getInFlight());
+    }
+
+    @Test
+    void shouldRollProducerWhenCertificateFilesChange() throws Exception {
+        Path certificate = Files.writeString(tempDir.resolve("ca.crt"), "first");
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), factory);
+        ConfigFileWatcher watcher = new ConfigFileWatcher(List.of(certificate), 1000, listener::rollProducer);
+        watcher.start();
+        try {
+            listener.onEvent(event(EventType.LOGIN));
+            assertFalse(watcher.checkForChanges());
+
+            Files.writeString(certificate, "rotated");
+            assertTrue(watcher.checkForChanges());
+            listener.onEvent(event(EventType.LOGIN));
+        } finally {
+            watcher.close();
+        }
+
+        assertEquals(2, producers.size());
+        assertTrue(producers.get(0).closed());
+        assertEquals(1, producers.get(0).history().size());
+        assertEquals(1, producers.get(1).history().size());
+    }
+
+    @Test
+    void shouldKeepReloadedPropertiesWhenProducerIsRolledConcurrently() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of("linger.ms", "0"), factory);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch start = new CountDownLatch(1);
+        executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 20; i++) {
+                listener.rollProducer();
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (int i = 1; i <= 20; i++) {
+            Properties properties = new Properties();
+            properties.setProperty("producer.linger.ms", Integer.toString(i));
+            listener.reload(properties);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        listener.rollProducer();
+
+        assertEquals(42, producers.size());
+        assertEquals("20", producerProperties.get(producerProperties.size() - 1).get("linger.ms"));
+    }
+
+    private static Event event(EventType type) {
+        Event event = new Event();
+        event.setType(type);
+        return event;
+    }
+}
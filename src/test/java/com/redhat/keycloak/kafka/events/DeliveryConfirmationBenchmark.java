@@ -0,0 +1,45 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Confirmed publishing from many request threads against a broker that acknowledges after 2 ms, in each confirmation
+ * mode: {@code mvn -B test -Dtest=DeliveryConfirmationBenchmark}. Virtual threads need a Java 21 runtime; on older
+ * ones the virtual mode falls back to platform threads.
+ */
+class DeliveryConfirmationBenchmark {
+
+    private static final int REQUEST_THREADS = 200;
+    private static final int EVENTS_PER_THREAD = 250;
+    private static final long BROKER_LATENCY_MICROS = 2000;
+
+    @Test
+    void measureConfirmationModes() throws Exception {
+        ScheduledExecutorService broker = Executors.newSingleThreadScheduledExecutor();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try {
+            for (DeliveryConfirmation.Mode mode : DeliveryConfirmation.Mode.values()) {
+                try (DeliveryConfirmation confirmation = new DeliveryConfirmation(mode, 30_000)) {
+                    threads.resetPeakThreadCount();
+                    Microbenchmark.measureConcurrent(mode.name().toLowerCase(), REQUEST_THREADS, EVENTS_PER_THREAD,
+                        () -> {
+                            CompletableFuture<Object> acknowledgement = new CompletableFuture<>();
+                            broker.schedule(() -> acknowledgement.complete(Boolean.TRUE), BROKER_LATENCY_MICROS,
+                                TimeUnit.MICROSECONDS);
+                            return confirmation.await(acknowledgement);
+                        });
+                    System.out.println("  peak platform threads " + threads.getPeakThreadCount());
+                }
+            }
+        } finally {
+            broker.shutdownNow();
+        }
+    }
+}
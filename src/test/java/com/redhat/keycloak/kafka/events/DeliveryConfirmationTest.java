@@ -0,0 +1,72 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+class DeliveryConfirmationTest {
+
+    private static final RecordMetadata METADATA = new RecordMetadata(new TopicPartition("keycloak-events", 0),
+        0, 0, 0, 0, 0);
+
+    @Test
+    void shouldWaitForTheAcknowledgementInBlockingMode() throws Exception {
+        DeliveryConfirmation confirmation = new DeliveryConfirmation(DeliveryConfirmation.Mode.BLOCKING, 1000);
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        new Thread(() -> future.complete(METADATA)).start();
+
+        assertSame(METADATA, confirmation.await(future));
+    }
+
+    @Test
+    void shouldReportFailuresInBlockingMode() {
+        DeliveryConfirmation confirmation = new DeliveryConfirmation(DeliveryConfirmation.Mode.BLOCKING, 1000);
+        CompletableFuture<RecordMetadata> future = CompletableFuture.failedFuture(new KafkaException("broker down"));
+
+        assertThrows(ExecutionException.class, () -> confirmation.await(future));
+    }
+
+    @Test
+    void shouldWaitForTheAcknowledgementInVirtualMode() throws Exception {
+        try (DeliveryConfirmation confirmation = new DeliveryConfirmation(DeliveryConfirmation.Mode.VIRTUAL, 1000)) {
+            CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+            new Thread(() -> future.complete(METADATA)).start();
+
+            assertSame(METADATA, confirmation.await(future));
+        }
+    }
+
+    @Test
+    void shouldReportFailuresLikeBlockingModeInVirtualMode() {
+        try (DeliveryConfirmation confirmation = new DeliveryConfirmation(DeliveryConfirmation.Mode.VIRTUAL, 1000)) {
+            CompletableFuture<RecordMetadata> failed = CompletableFuture.failedFuture(new KafkaException("broker down"));
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> confirmation.await(failed));
+            assertTrue(exception.getCause() instanceof KafkaException);
+        }
+    }
+
+    @Test
+    void shouldFailAtTheDeadlineInVirtualMode() {
+        try (DeliveryConfirmation confirmation = new DeliveryConfirmation(DeliveryConfirmation.Mode.VIRTUAL, 50)) {
+            assertThrows(TimeoutException.class, () -> confirmation.await(new CompletableFuture<>()));
+        }
+    }
+
+    @Test
+    void shouldNotWaitInAsyncMode() throws Exception {
+        DeliveryConfirmation confirmation = new DeliveryConfirmation(DeliveryConfirmation.Mode.ASYNC, 1000);
+
+        assertNull(confirmation.await(new CompletableFuture<>()));
+    }
+}
@@ -0,0 +1,104 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.metadata.storage.Formatter;
+import org.apache.kafka.server.common.Feature;
+import org.apache.kafka.server.common.MetadataVersion;
+
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaRaftServer;
+
+/**
+ * Single node KRaft broker and controller in the test JVM, using the broker classes of the provided kafka_2.13
+ * dependency. The broker can advertise another address than it listens on, so clients reach it through a proxy.
+ */
+final class EmbeddedKafkaBroker implements AutoCloseable {
+
+    private final Path logDir;
+    private final int port;
+    private final KafkaRaftServer server;
+
+    /**
+     * Starts a broker that advertises the port it listens on.
+     */
+    EmbeddedKafkaBroker() throws Exception {
+        this(-1);
+    }
+
+    /**
+     * Formats the storage and starts the broker.
+     *
+     * @param advertisedPort port on localhost clients are told to connect to, or -1 for the listening port
+     */
+    EmbeddedKafkaBroker(int advertisedPort) throws Exception {
+        logDir = Files.createTempDirectory("kafka-events-broker");
+        port = freePort();
+        int controllerPort = freePort();
+
+        Properties props = new Properties();
+        props.put("node.id", "1");
+        props.put("process.roles", "broker,controller");
+        props.put("controller.quorum.voters", "1@localhost:" + controllerPort);
+        props.put("controller.listener.names", "CONTROLLER");
+        props.put("listeners", "PLAINTEXT://localhost:" + port + ",CONTROLLER://localhost:" + controllerPort);
+        props.put("advertised.listeners", "PLAINTEXT://localhost:" + (advertisedPort > 0 ? advertisedPort : port));
+        props.put("listener.security.protocol.map", "PLAINTEXT:PLAINTEXT,CONTROLLER:PLAINTEXT");
+        props.put("inter.broker.listener.name", "PLAINTEXT");
+        props.put("log.dirs", logDir.toString());
+        props.put("num.partitions", "1");
+        props.put("offsets.topic.replication.factor", "1");
+        props.put("transaction.state.log.replication.factor", "1");
+        props.put("transaction.state.log.min.isr", "1");
+        props.put("group.initial.rebalance.delay.ms", "0");
+
+        new Formatter()
+            .setPrintStream(new PrintStream(PrintStream.nullOutputStream()))
+            .setSupportedFeatures(Feature.PRODUCTION_FEATURES)
+            .setNodeId(1)
+            .setClusterId(Uuid.randomUuid().toString())
+            .addDirectory(logDir.toString())
+            .setMetadataLogDirectory(logDir.toString())
+            .setControllerListenerName("CONTROLLER")
+            .setReleaseVersion(MetadataVersion.LATEST_PRODUCTION)
+            .run();
+        server = new KafkaRaftServer(new KafkaConfig(props), Time.SYSTEM);
+        server.startup();
+    }
+
+    String getBootstrapServers() {
+        return "localhost:" + port;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        server.shutdown();
+        server.awaitShutdown();
+        try (Stream<Path> paths = Files.walk(logDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class EntityCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Map<String, String> load(String key) {
+        loads.incrementAndGet();
+        return Map.of("value", key);
+    }
+
+    @Test
+    void shouldReloadExpiredEntries() {
+        EntityCache cache = new EntityCache(10_000, 100, now::get);
+
+        cache.get("user/1", this::load);
+        cache.get("user/1", this::load);
+        now.addAndGet(100);
+        cache.get("user/1", this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1.0 / 3, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntriesBeyondMaxWeight() {
+        EntityCache cache = new EntityCache(400, 60_000, now::get);
+
+        cache.get("user/1", this::load);
+        cache.get("user/2", this::load);
+        cache.get("user/1", this::load);
+        cache.get("user/3", this::load);
+
+        assertTrue(cache.getWeight() <= 400);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        cache.get("user/1", this::load);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void shouldInvalidateByKeyAndPrefix() {
+        EntityCache cache = new EntityCache(10_000, 60_000, now::get);
+        cache.get("client/realm-a/app", this::load);
+        cache.get("client/realm-a/web", this::load);
+        cache.get("client/realm-b/app", this::load);
+        cache.get("user/realm-a/1", this::load);
+
+        cache.invalidatePrefix("client/realm-a/");
+        cache.invalidate("user/realm-a/1");
+
+        assertEquals(1, cache.size());
+        cache.get("client/realm-b/app", this::load);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void shouldNotStoreValueLoadedWhileTheKeyWasInvalidated() {
+        EntityCache cache = new EntityCache(10_000, 60_000, now::get);
+
+        Map<String, String> stale = cache.get("user/realm-a/1", key -> {
+            // The admin event arrives while the user is being loaded
+            cache.invalidate(key);
+            return load(key);
+        });
+        cache.get("client/realm-a/app", key -> {
+            cache.invalidatePrefix("client/realm-a/");
+            return load(key);
+        });
+
+        assertEquals(Map.of("value", "user/realm-a/1"), stale);
+        assertEquals(0, cache.size());
+        cache.get("user/realm-a/1", this::load);
+        assertEquals(1, cache.size());
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,294 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EnvelopePackerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TOPIC = "keycloak-events";
+
+    @Test
+    void shouldPackEventsUntilTheEnvelopeIsFull() throws Exception {
+        MockProducer<String, String> producer = mockProducer(false, Cluster.empty());
+        try (EnvelopePacker packer = new EnvelopePacker(producer, 250, 60_000)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            List<Integer> partitions = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(packer.add(event(null, "{\"n\":" + i + "}", "2024-01-01T00:00:0" + i + "Z"),
+                    partitions::add));
+            }
+
+            assertEquals(1, producer.history().size());
+            assertEquals(3, packer.getPending());
+            ProducerRecord<String, String> envelope = producer.history().get(0);
+            assertNull(envelope.key());
+            assertNull(envelope.partition());
+            assertEquals(EnvelopePacker.CONTENT_TYPE, header(envelope, CloudEventHeaders.CONTENT_TYPE));
+            int count = Integer.parseInt(header(envelope, CloudEventHeaders.ENVELOPE_COUNT));
+            assertEquals("2024-01-01T00:00:00Z", header(envelope, CloudEventHeaders.ENVELOPE_FIRST_TIME));
+            assertEquals("2024-01-01T00:00:0" + (count - 1) + "Z",
+                header(envelope, CloudEventHeaders.ENVELOPE_LAST_TIME));
+            JsonNode members = MAPPER.readTree(envelope.value());
+            assertEquals(count, members.size());
+            assertEquals("{\"n\":0}", members.get(0).get("value").asText());
+            JsonNode id = members.get(0).get("headers").get(0);
+            assertEquals(CloudEventHeaders.ID, id.get(0).asText());
+            assertEquals("event-{\"n\":0}", new String(Base64.getDecoder().decode(id.get(1).asText()),
+                StandardCharsets.UTF_8));
+
+            assertTrue(producer.completeNext());
+            for (int i = 0; i < count; i++) {
+                assertTrue(futures.get(i).isDone());
+            }
+            assertFalse(futures.get(count).isDone());
+            assertEquals(count, partitions.size());
+        }
+    }
+
+    @Test
+    void shouldSendTheEnvelopeBeforeAnEventThatDoesNotFit() throws Exception {
+        MockProducer<String, String> producer = mockProducer(true, Cluster.empty());
+        int maxChars = 300;
+        try (EnvelopePacker packer = new EnvelopePacker(producer, maxChars, 60_000)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(packer.add(event(null, "{\"n\":\"" + "x".repeat(i * 7) + "\"}", null), null));
+            }
+            packer.flush();
+
+            int events = 0;
+            int alone = 0;
+            for (ProducerRecord<String, String> envelope : producer.history()) {
+                String count = header(envelope, CloudEventHeaders.ENVELOPE_COUNT);
+                if (count == null) {
+                    // Too large for an envelope of its own
+                    assertTrue(EnvelopePacker.encode(EncodedEvent.of(envelope)).length() + 2 > maxChars);
+                    alone++;
+                    continue;
+                }
+                assertTrue(envelope.value().length() <= maxChars, envelope.value());
+                assertEquals(Integer.parseInt(count), MAPPER.readTree(envelope.value()).size());
+                events += Integer.parseInt(count);
+            }
+            assertTrue(alone > 0);
+            assertEquals(20, events + alone);
+            assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+        }
+    }
+
+    @Test
+    void shouldBoundEnvelopesByTheirUtf8Bytes() throws Exception {
+        MockProducer<String, String> producer = mockProducer(true, Cluster.empty());
+        int maxBytes = 2048;
+        try (EnvelopePacker packer = new EnvelopePacker(producer, 1_000_000, maxBytes, 60_000)) {
+            for (int i = 0; i < 20; i++) {
+                // Three bytes per char in UTF-8
+                packer.add(event(null, "{\"n\":\"" + "\u20ac".repeat(100) + "\"}", null), null);
+            }
+            packer.flush();
+
+            int events = 0;
+            for (ProducerRecord<String, String> envelope : producer.history()) {
+                assertTrue(Utils.utf8Length(envelope.value()) <= maxBytes, envelope.value());
+                events += Integer.parseInt(header(envelope, CloudEventHeaders.ENVELOPE_COUNT));
+            }
+            assertEquals(20, events);
+            assertTrue(producer.history().size() > 1);
+        }
+    }
+
+    @Test
+    void shouldSendEventsTooLargeForAnEnvelopeOnTheirOwn() throws Exception {
+        MockProducer<String, String> producer = mockProducer(true, Cluster.empty());
+        try (EnvelopePacker packer = new EnvelopePacker(producer, 100_000, 2048, 60_000)) {
+            CompletableFuture<Void> small = packer.add(event(null, "{}", null), null);
+            // JSON escaping doubles the quotes of the value, taking the encoded event over the limit
+            String quoted = "\"".repeat(1500);
+            List<Integer> partitions = new ArrayList<>();
+            CompletableFuture<Void> large = packer.add(event(null, quoted, null), partitions::add);
+            packer.flush();
+
+            assertTrue(small.isDone());
+            assertTrue(large.isDone());
+            assertEquals(List.of(0), partitions);
+            assertEquals(2, producer.history().size());
+            assertEquals("1", header(producer.history().get(0), CloudEventHeaders.ENVELOPE_COUNT));
+            ProducerRecord<String, String> alone = producer.history().get(1);
+            assertNull(alone.headers().lastHeader(CloudEventHeaders.ENVELOPE_COUNT));
+            assertEquals(quoted, alone.value());
+            assertEquals("event-" + quoted, header(alone, CloudEventHeaders.ID));
+            assertEquals(0, packer.getPending());
+        }
+    }
+
+    @Test
+    void shouldKeepBinaryAndRepeatedHeaders() throws Exception {
+        byte[] binary = { (byte) 0xff, 0, (byte) 0xc3 };
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("trace", binary);
+        headers.add("tag", "a".getBytes(StandardCharsets.UTF_8));
+        headers.add("tag", "b".getBytes(StandardCharsets.UTF_8));
+        headers.add("empty", null);
+
+        JsonNode encoded = MAPPER.readTree(EnvelopePacker.encode(new EncodedEvent(TOPIC, null, "{}", headers)))
+            .get("headers");
+
+        assertEquals(4, encoded.size());
+        assertEquals("trace", encoded.get(0).get(0).asText());
+        assertArrayEquals(binary, Base64.getDecoder().decode(encoded.get(0).get(1).asText()));
+        assertEquals("tag", encoded.get(1).get(0).asText());
+        assertEquals("YQ==", encoded.get(1).get(1).asText());
+        assertEquals("tag", encoded.get(2).get(0).asText());
+        assertEquals("Yg==", encoded.get(2).get(1).asText());
+        assertTrue(encoded.get(3).get(1).isNull());
+    }
+
+    @Test
+    void shouldRejectEnvelopesLargerThanARequestCanHold() {
+        assertThrows(IllegalArgumentException.class, () -> new KafkaEventListenerProvider("", "", TOPIC,
+            new String[] { "LOGIN" }, null, Map.of(), null,
+            (clientId, bootstrapServer, properties) -> mockProducer(true, Cluster.empty()),
+            new KafkaEventListenerConfig().setEnvelopeMaxChars(400_000)));
+    }
+
+    @Test
+    void shouldSendTheEnvelopeAfterTheLingerTime() throws Exception {
+        MockProducer<String, String> producer = mockProducer(true, Cluster.empty());
+        try (EnvelopePacker packer = new EnvelopePacker(producer, 1_000_000, 20)) {
+            CompletableFuture<Void> first = packer.add(event(null, "{}", null), null);
+            CompletableFuture<Void> second = packer.add(event(null, "{}", null), null);
+
+            second.get(5, TimeUnit.SECONDS);
+            assertTrue(first.isDone());
+            assertEquals(1, producer.history().size());
+            assertEquals("2", header(producer.history().get(0), CloudEventHeaders.ENVELOPE_COUNT));
+            assertNull(producer.history().get(0).headers().lastHeader(CloudEventHeaders.ENVELOPE_FIRST_TIME));
+            assertEquals(0, packer.getPending());
+        }
+    }
+
+    @Test
+    void shouldKeepEventsOfOneKeyOnTheirPartition() throws Exception {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> infos = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            infos.add(new PartitionInfo(TOPIC, i, node, new Node[] { node }, new Node[] { node }));
+        }
+        MockProducer<String, String> producer = mockProducer(true,
+            new Cluster("cluster", List.of(node), infos, Set.of(), Set.of()));
+        try (EnvelopePacker packer = new EnvelopePacker(producer, 1_000_000, 60_000)) {
+            for (String key : List.of("alice", "bob", "alice", "carol", "bob")) {
+                packer.add(event(key, "{}", null), null);
+            }
+            packer.flush();
+        }
+
+        assertEquals(expectedPartitions("alice", "bob", "carol"), producer.history().stream()
+            .map(ProducerRecord::partition).sorted().distinct().collect(Collectors.toList()));
+        for (ProducerRecord<String, String> envelope : producer.history()) {
+            JsonNode members = MAPPER.readTree(envelope.value());
+            for (JsonNode member : members) {
+                assertEquals(partition(member.get("key").asText()), envelope.partition());
+            }
+        }
+    }
+
+    @Test
+    void shouldFailEveryEventOfAFailedEnvelope() {
+        MockProducer<String, String> producer = mockProducer(false, Cluster.empty());
+        try (EnvelopePacker packer = new EnvelopePacker(producer, 1_000_000, 60_000)) {
+            CompletableFuture<Void> first = packer.add(event(null, "{}", null), null);
+            CompletableFuture<Void> second = packer.add(event(null, "{}", null), null);
+            packer.flush();
+
+            assertTrue(producer.errorNext(new RuntimeException("broker down")));
+            assertTrue(first.isCompletedExceptionally());
+            assertTrue(second.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void shouldPackListenerEventsButNotCanaryProbes() throws Exception {
+        MockProducer<String, String> producer = mockProducer(true, Cluster.empty());
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", TOPIC,
+            new String[] { "LOGIN" }, null, Map.of(), null, (clientId, bootstrapServer, properties) -> producer,
+            new KafkaEventListenerConfig().setConfirmationMode(DeliveryConfirmation.Mode.ASYNC)
+                .setEnvelopeMaxChars(300_000).setEnvelopeLingerMs(60_000));
+
+        for (int i = 0; i < 5; i++) {
+            Event event = new Event();
+            event.setType(EventType.LOGIN);
+            event.setTime(System.currentTimeMillis());
+            listener.onEvent(event);
+        }
+        assertEquals(0, producer.history().size());
+        assertEquals(5, listener.getInFlight());
+        listener.flush();
+
+        assertEquals(1, producer.history().size());
+        assertEquals(5, MAPPER.readTree(producer.history().get(0).value()).size());
+        assertEquals(5, listener.getStats().getPublished());
+
+        listener.publishProbe(event(null, "{}", null)).get(5, TimeUnit.SECONDS);
+        assertEquals(2, producer.history().size());
+        assertNull(producer.history().get(1).headers().lastHeader(CloudEventHeaders.ENVELOPE_COUNT));
+        listener.close();
+    }
+
+    private static EncodedEvent event(String key, String value, String time) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(CloudEventHeaders.ID, ("event-" + value).getBytes(StandardCharsets.UTF_8));
+        if (time != null) {
+            headers.add(CloudEventHeaders.TIME, time.getBytes(StandardCharsets.UTF_8));
+        }
+        return new EncodedEvent(TOPIC, key, value, headers);
+    }
+
+    private static String header(ProducerRecord<String, String> record, String key) {
+        return CloudEventHeaders.headerAsString(record.headers(), key);
+    }
+
+    private static int partition(String key) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % 4;
+    }
+
+    private static List<Integer> expectedPartitions(String... keys) {
+        return Arrays.stream(keys).map(EnvelopePackerTest::partition).sorted().distinct()
+            .collect(Collectors.toList());
+    }
+
+    private static MockProducer<String, String> mockProducer(boolean autoComplete, Cluster cluster) {
+        return new MockProducer<>(cluster, autoComplete, null, new StringSerializer(), new StringSerializer());
+    }
+}
@@ -0,0 +1,141 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EventCanaryTest {
+
+    private static final String TOPIC = "keycloak-canary";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    private final MockProducer<String, String> producer = new MockProducer<>(true,
+        (org.apache.kafka.clients.producer.Partitioner) null, new StringSerializer(), new StringSerializer());
+    private final KafkaEventSink sink = new KafkaEventSink(producer);
+    private MockConsumer<String, String> consumer;
+    private long offset;
+
+    @BeforeEach
+    void setUp() {
+        consumer = consumer();
+    }
+
+    @Test
+    void shouldMeasureTheLatencyOfConsumedProbes() {
+        EventCanary canary = new EventCanary(TOPIC, event -> sink.publish(List.of(event)), consumer, 60_000, 60_000);
+
+        canary.runOnce(Duration.ZERO);
+        assertEquals(1, canary.getSent());
+        assertEquals(1, canary.getPending());
+        ProducerRecord<String, String> probe = producer.history().get(0);
+        assertEquals(EventCanary.PROBE_TYPE, CloudEventHeaders.headerAsString(probe.headers(), CloudEventHeaders.TYPE));
+
+        deliver(probe);
+        canary.runOnce(Duration.ZERO);
+
+        assertEquals(1, canary.getSent());
+        assertEquals(1, canary.getReceived());
+        assertEquals(0, canary.getPending());
+        assertEquals(1, canary.getLatency().getCount());
+        assertTrue(canary.getLastLatencyMs() >= 0);
+
+        deliver(probe);
+        canary.runOnce(Duration.ZERO);
+        assertEquals(1, canary.getUnexpected());
+    }
+
+    @Test
+    void shouldCountProbesThatNeverArriveAsLost() throws Exception {
+        EventCanary canary = new EventCanary(TOPIC, event -> sink.publish(List.of(event)), consumer, 60_000, 1);
+
+        canary.runOnce(Duration.ZERO);
+        Thread.sleep(5);
+        canary.runOnce(Duration.ZERO);
+
+        assertEquals(1, canary.getLost());
+        assertEquals(0, canary.getPending());
+        assertEquals(0, canary.getReceived());
+    }
+
+    @Test
+    void shouldIgnoreProbesOfOtherNodesAndOtherRecords() {
+        EventCanary canary = new EventCanary(TOPIC, event -> sink.publish(List.of(event)), consumer, 60_000, 60_000);
+        EventCanary other = new EventCanary(TOPIC, event -> sink.publish(List.of(event)), consumer(), 60_000, 60_000);
+
+        canary.runOnce(Duration.ZERO);
+        other.runOnce(Duration.ZERO);
+        deliver(producer.history().get(1));
+        deliver(new ProducerRecord<>(TOPIC, null, "{}"));
+        canary.runOnce(Duration.ZERO);
+
+        assertEquals(0, canary.getReceived());
+        assertEquals(0, canary.getUnexpected());
+        assertEquals(1, canary.getPending());
+    }
+
+    @Test
+    void shouldNotCountFailedSendsAsLost() {
+        EventCanary canary = new EventCanary(TOPIC,
+            event -> CompletableFuture.failedFuture(new KafkaException("broker down")), consumer, 60_000, 1);
+
+        canary.runOnce(Duration.ZERO);
+
+        assertEquals(1, canary.getSendFailed());
+        assertEquals(0, canary.getPending());
+        assertEquals(0, canary.getLost());
+    }
+
+    @Test
+    void shouldConsumeProbesInFlightWithARolledConsumer() {
+        EventCanary canary = new EventCanary(TOPIC, event -> sink.publish(List.of(event)), consumer, 60_000, 60_000);
+        canary.runOnce(Duration.ZERO);
+        MockConsumer<String, String> old = consumer;
+
+        consumer = consumer();
+        canary.rollConsumer(consumer);
+        canary.runOnce(Duration.ZERO);
+        deliver(producer.history().get(0));
+        canary.runOnce(Duration.ZERO);
+
+        assertTrue(old.closed());
+        assertEquals(Set.of(PARTITION), consumer.assignment());
+        assertEquals(1, canary.getReceived());
+        assertEquals(0, canary.getPending());
+    }
+
+    private static MockConsumer<String, String> consumer() {
+        MockConsumer<String, String> consumer = new MockConsumer<>("earliest");
+        Node node = new Node(0, "localhost", 9092);
+        consumer.updatePartitions(TOPIC, List.of(new PartitionInfo(TOPIC, 0, node, new Node[0], new Node[0])));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        consumer.updateEndOffsets(Map.of(PARTITION, 0L));
+        return consumer;
+    }
+
+    private void deliver(ProducerRecord<String, String> record) {
+        RecordHeaders headers = new RecordHeaders(record.headers().toArray());
+        consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, offset++, 0L, TimestampType.CREATE_TIME,
+            0, 0, record.key(), record.value(), headers, Optional.empty()));
+        consumer.updateEndOffsets(Map.of(PARTITION, offset));
+    }
+}
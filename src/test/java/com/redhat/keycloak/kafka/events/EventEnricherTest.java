@@ -0,0 +1,107 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EventEnricherTest {
+
+    private KeycloakSession session;
+    private UserProvider users;
+    private UserModel user;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(KeycloakSession.class);
+        RealmProvider realms = mock(RealmProvider.class);
+        users = mock(UserProvider.class);
+        RealmModel realm = mock(RealmModel.class);
+        ClientModel client = mock(ClientModel.class);
+        user = mock(UserModel.class);
+
+        when(session.realms()).thenReturn(realms);
+        when(session.users()).thenReturn(users);
+        when(realms.getRealm("realm-id")).thenReturn(realm);
+        when(realm.getName()).thenReturn("acme");
+        when(realm.getClientByClientId("portal")).thenReturn(client);
+        when(client.getName()).thenReturn("Customer portal");
+        when(users.getUserById(realm, "user-id")).thenReturn(user);
+        when(user.getUsername()).thenReturn("alice");
+        when(user.getFirstAttribute("department")).thenReturn("sales");
+    }
+
+    @Test
+    void shouldAddEnrichmentToPayload() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), Map.of(), new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setEnrichment(List.of("realm.name", "client.name", "user.username",
+                "user.attribute.department")));
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm-id");
+        event.setClientId("portal");
+        event.setUserId("user-id");
+
+        JsonNode payload = new ObjectMapper().readTree(listener.toRecord(event, session).value());
+
+        assertEquals("LOGIN", payload.get("type").asText());
+        assertEquals("acme", payload.get("enrichment").get("realm.name").asText());
+        assertEquals("Customer portal", payload.get("enrichment").get("client.name").asText());
+        assertEquals("alice", payload.get("enrichment").get("user.username").asText());
+        assertEquals("sales", payload.get("enrichment").get("user.attribute.department").asText());
+
+        listener.toRecord(event, session);
+        Map<?, ?> cache = (Map<?, ?>) KafkaEventsResource.statistics(listener).get("enrichmentCache");
+        assertEquals(3L, cache.get("hits"));
+        assertEquals(3L, cache.get("misses"));
+        assertEquals(3, cache.get("size"));
+    }
+
+    @Test
+    void shouldInvalidateUserOnAdminUpdate() {
+        EventEnricher enricher = new EventEnricher(List.of("user.username"), new EntityCache(10_000, 60_000));
+
+        enricher.enrich(session, "realm-id", null, "user-id");
+        enricher.enrich(session, "realm-id", null, "user-id");
+        when(user.getUsername()).thenReturn("alice.smith");
+        AdminEvent update = new AdminEvent();
+        update.setRealmId("realm-id");
+        update.setOperationType(OperationType.UPDATE);
+        update.setResourceType(ResourceType.USER);
+        update.setResourcePath("users/user-id");
+        enricher.invalidate(update);
+
+        assertEquals("alice.smith", enricher.enrich(session, "realm-id", null, "user-id").get("user.username"));
+        verify(users, times(2)).getUserById(session.realms().getRealm("realm-id"), "user-id");
+        assertEquals(1, enricher.getCache().getHits());
+    }
+
+    @Test
+    void shouldRejectUnknownAttributes() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new EventEnricher(List.of("user.password"), new EntityCache(10_000, 60_000)));
+    }
+}
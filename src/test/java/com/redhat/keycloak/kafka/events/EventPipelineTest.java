@@ -0,0 +1,146 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class EventPipelineTest {
+
+    private KafkaEventListenerProvider listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN", "LOGOUT" }, null, Map.of(), new KafkaMockFactory());
+    }
+
+    @Test
+    void shouldRunBuiltInStagesInPhaseOrder() {
+        assertEquals("FILTER:filter -> ROUTE:route -> SERIALIZE:serialize -> SEND:send",
+            listener.getPipeline().describe());
+    }
+
+    @Test
+    void shouldPlaceExtensionStagesAfterBuiltInStagesOfTheirPhase() throws Exception {
+        listener.installStages(List.of(
+            stage(EventPipelineStage.Phase.SERIALIZE, "header", context -> {
+                context.getRecord().headers().add("x-tenant", "acme".getBytes(StandardCharsets.UTF_8));
+                return true;
+            }),
+            stage(EventPipelineStage.Phase.ROUTE, "tenant-route", context -> {
+                context.setTopic("tenant-events");
+                return true;
+            })));
+
+        listener.onEvent(event(EventType.LOGIN));
+
+        assertEquals("FILTER:filter -> ROUTE:route -> ROUTE:tenant-route -> SERIALIZE:serialize"
+            + " -> SERIALIZE:header -> SEND:send", listener.getPipeline().describe());
+        ProducerRecord<String, String> record = getProducer().history().get(0);
+        assertEquals("tenant-events", record.topic());
+        assertEquals("acme", CloudEventHeaders.headerAsString(record.headers(), "x-tenant"));
+    }
+
+    @Test
+    void shouldKeepThePartitionOfEventsHeldDuringAPause() throws Exception {
+        listener.installStages(List.of(stage(EventPipelineStage.Phase.SERIALIZE, "pin", context -> {
+            ProducerRecord<String, String> record = context.getRecord();
+            context.setRecord(new ProducerRecord<>(record.topic(), 2, record.key(), record.value(), record.headers()));
+            return true;
+        })));
+
+        listener.pause();
+        listener.onEvent(event(EventType.LOGIN));
+        listener.resume();
+
+        assertEquals(2, getProducer().history().get(0).partition());
+    }
+
+    @Test
+    void shouldCountInvocationsAndDiscardsPerStage() throws Exception {
+        listener.installStages(List.of(stage(EventPipelineStage.Phase.FILTER, "no-logout",
+            context -> context.getEvent().getType() != EventType.LOGOUT)));
+
+        listener.onEvent(event(EventType.LOGIN));
+        listener.onEvent(event(EventType.LOGOUT));
+        listener.onEvent(event(EventType.REGISTER));
+
+        EventPipeline pipeline = listener.getPipeline();
+        assertEquals(1, getProducer().history().size());
+        assertEquals(3, pipeline.getInvocations(0));
+        assertEquals(1, pipeline.getDiscards(0));
+        assertEquals("no-logout", pipeline.getStage(1).getName());
+        assertEquals(2, pipeline.getInvocations(1));
+        assertEquals(1, pipeline.getDiscards(1));
+        assertEquals(1, pipeline.getInvocations(pipeline.size() - 1));
+        assertTrue(pipeline.getNanos(pipeline.size() - 1) > 0);
+    }
+
+    @Test
+    void shouldNotSendWhenOnlyPreparingTheRecord() throws Exception {
+        ProducerRecord<String, String> record = listener.toRecord(event(EventType.LOGIN));
+
+        assertEquals("keycloak-events", record.topic());
+        assertTrue(getProducer().history().isEmpty());
+        assertNull(listener.toRecord(event(EventType.REGISTER)));
+    }
+
+    @Test
+    void shouldCountFailuresAndKeepListening() throws Exception {
+        listener.installStages(List.of(stage(EventPipelineStage.Phase.ENRICH, "broken", context -> {
+            throw new IllegalStateException("lookup failed");
+        })));
+
+        listener.onEvent(event(EventType.LOGIN));
+
+        EventPipeline pipeline = listener.getPipeline();
+        assertEquals(1, pipeline.getFailures(1));
+        assertTrue(getProducer().history().isEmpty());
+    }
+
+    private static EventPipelineStage stage(EventPipelineStage.Phase phase, String name,
+                                            Predicate<EventPipelineContext> body) {
+        return new EventPipelineStage() {
+            @Override
+            public Phase getPhase() {
+                return phase;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public boolean process(EventPipelineContext context) {
+                return body.test(context);
+            }
+        };
+    }
+
+    private static Event event(EventType type) {
+        Event event = new Event();
+        event.setType(type);
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MockProducer<String, String> getProducer() throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<String, String>) producerField.get(listener);
+    }
+}
@@ -0,0 +1,147 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EventSinkTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldCompleteKafkaBatchOnceAllRecordsAreAcknowledged() throws Exception {
+        MockProducer<String, String> producer = new MockProducer<>(false, (Partitioner) null, new StringSerializer(),
+            new StringSerializer());
+        KafkaEventSink sink = new KafkaEventSink(producer);
+
+        CompletableFuture<Void> published = sink.publish(List.of(event("first"), event("second")));
+        assertEquals(2, sink.getInFlight());
+        producer.completeNext();
+        assertFalse(published.isDone());
+        producer.completeNext();
+
+        assertNull(published.get(1, TimeUnit.SECONDS));
+        assertEquals(0, sink.getInFlight());
+        assertEquals(List.of("first", "second"),
+            producer.history().stream().map(record -> record.value()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void shouldFailKafkaBatchWhenOneRecordFails() {
+        MockProducer<String, String> producer = new MockProducer<>(false, (Partitioner) null, new StringSerializer(),
+            new StringSerializer());
+        KafkaEventSink sink = new KafkaEventSink(producer);
+
+        CompletableFuture<Void> published = sink.publish(List.of(event("first"), event("second")));
+        producer.completeNext();
+        producer.errorNext(new KafkaException("broker down"));
+
+        assertThrows(ExecutionException.class, () -> published.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldStopKafkaBatchWhenSendIsRejected() {
+        MockProducer<String, String> producer = new MockProducer<>(true, (Partitioner) null, new StringSerializer(),
+            new StringSerializer());
+        producer.sendException = new KafkaException("buffer exhausted");
+        KafkaEventSink sink = new KafkaEventSink(producer);
+
+        CompletableFuture<Void> published = sink.publish(List.of(event("first"), event("second")));
+
+        assertTrue(published.isCompletedExceptionally());
+        assertEquals(0, sink.getInFlight());
+    }
+
+    @Test
+    void shouldWriteEventsAsJsonLines() throws Exception {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("ce_type", "LOGIN".getBytes(StandardCharsets.UTF_8));
+        try (RollingFileEventSink sink = new RollingFileEventSink(tempDir, 1024 * 1024, 3)) {
+            sink.publish(List.of(new EncodedEvent("keycloak-events", "user-1", "{\"type\":\"LOGIN\"}", headers)))
+                .get(1, TimeUnit.SECONDS);
+            sink.publish(List.of(event("second"))).get(1, TimeUnit.SECONDS);
+
+            List<String> lines = Files.readAllLines(sink.getFile());
+            assertEquals(2, lines.size());
+            JsonNode first = MAPPER.readTree(lines.get(0));
+            assertEquals("keycloak-events", first.get("topic").asText());
+            assertEquals("user-1", first.get("key").asText());
+            assertEquals("LOGIN", first.get("headers").get("ce_type").asText());
+            assertEquals("LOGIN", MAPPER.readTree(first.get("value").asText()).get("type").asText());
+            assertEquals("second", MAPPER.readTree(lines.get(1)).get("value").asText());
+        }
+    }
+
+    @Test
+    void shouldRollFilesAndKeepOnlyTheNewest() throws Exception {
+        try (RollingFileEventSink sink = new RollingFileEventSink(tempDir, 100, 2)) {
+            for (int i = 0; i < 5; i++) {
+                sink.publish(List.of(event("x".repeat(80)))).get(1, TimeUnit.SECONDS);
+            }
+            assertEquals(List.of("events-00000004.jsonl", "events-00000005.jsonl"), fileNames());
+        }
+        try (RollingFileEventSink sink = new RollingFileEventSink(tempDir, 100, 2)) {
+            // A restart continues with a new file instead of appending to the last one
+            assertEquals("events-00000006.jsonl", sink.getFile().getFileName().toString());
+        }
+    }
+
+    @Test
+    void shouldPublishEventsToFileSinkWithoutProducer() throws Exception {
+        KafkaEventListenerConfig config = new KafkaEventListenerConfig().setSinkType(EventSink.Type.FILE)
+            .setSinkFileDirectory(tempDir.toString());
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), null, new KafkaMockFactory(), config);
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setUserId("user-1");
+
+        listener.onEvent(event);
+
+        RollingFileEventSink sink = (RollingFileEventSink) listener.getSink();
+        List<String> lines = Files.readAllLines(sink.getFile());
+        assertEquals(1, lines.size());
+        assertEquals("user-1", MAPPER.readTree(MAPPER.readTree(lines.get(0)).get("value").asText())
+            .get("userId").asText());
+        listener.shutdown();
+    }
+
+    private static EncodedEvent event(String value) {
+        return new EncodedEvent("keycloak-events", null, value, null);
+    }
+
+    private List<String> fileNames() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class EventTracingTest {
+
+    private final InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    private OpenTelemetrySdk openTelemetry;
+
+    @BeforeEach
+    void setUp() {
+        openTelemetry = OpenTelemetrySdk.builder()
+            .setTracerProvider(SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(exporter)).build())
+            .build();
+    }
+
+    @Test
+    void shouldPublishInTheTraceOfTheRequest() throws Exception {
+        KafkaEventListenerProvider listener = listener(new KafkaMockFactory());
+        MockProducer<String, String> producer = getProducer(listener);
+
+        Span request = openTelemetry.getTracer("test").spanBuilder("POST /token").startSpan();
+        try (Scope ignored = request.makeCurrent()) {
+            listener.onEvent(event(System.currentTimeMillis() - 5));
+        } finally {
+            request.end();
+        }
+
+        SpanData serialize = span("keycloak-events serialize");
+        SpanData publish = span("keycloak-events publish");
+        String traceId = request.getSpanContext().getTraceId();
+        assertEquals(traceId, serialize.getTraceId());
+        assertEquals(request.getSpanContext().getSpanId(), serialize.getParentSpanId());
+        assertEquals(request.getSpanContext().getSpanId(), publish.getParentSpanId());
+        assertEquals(SpanKind.PRODUCER, publish.getKind());
+        assertEquals("keycloak-events", publish.getAttributes().get(EventTracing.DESTINATION));
+        assertEquals(0L, publish.getAttributes().get(EventTracing.PARTITION));
+        assertEquals("LOGIN", publish.getAttributes().get(EventTracing.EVENT_TYPE));
+        assertTrue(publish.getAttributes().get(EventTracing.BODY_SIZE) > 0);
+        assertTrue(publish.getAttributes().get(EventTracing.QUEUE_TIME) >= 5);
+
+        ProducerRecord<String, String> record = producer.history().get(0);
+        assertEquals("00-" + traceId + "-" + publish.getSpanId() + "-01",
+            CloudEventHeaders.headerAsString(record.headers(), "traceparent"));
+    }
+
+    @Test
+    void shouldEndThePublishSpanWithTheDeliveryError() throws Exception {
+        MockProducer<String, String> producer = new MockProducer<>(false,
+            (org.apache.kafka.clients.producer.Partitioner) null, new StringSerializer(), new StringSerializer());
+        KafkaEventListenerProvider listener = listener((clientId, bootstrapServer, properties) -> producer);
+
+        listener.onEvent(event(System.currentTimeMillis()));
+        assertTrue(exporter.getFinishedSpanItems().stream().noneMatch(span -> span.getName().endsWith("publish")));
+        producer.errorNext(new KafkaException("broker down"));
+
+        SpanData publish = span("keycloak-events publish");
+        assertEquals(StatusCode.ERROR, publish.getStatus().getStatusCode());
+        assertNull(publish.getAttributes().get(EventTracing.PARTITION));
+    }
+
+    @Test
+    void shouldEndThePublishSpanOfHeldEvents() throws Exception {
+        KafkaEventListenerProvider listener = listener(new KafkaMockFactory());
+        listener.pause();
+        listener.onEvent(event(System.currentTimeMillis()));
+
+        assertEquals("held", span("keycloak-events publish").getAttributes().get(EventTracing.OUTCOME));
+    }
+
+    private KafkaEventListenerProvider listener(KafkaProducerInterface factory) {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), null, factory,
+            new KafkaEventListenerConfig().setConfirmationMode(DeliveryConfirmation.Mode.ASYNC));
+        listener.enableTracing(new EventTracing(openTelemetry));
+        return listener;
+    }
+
+    private SpanData span(String name) {
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        return spans.stream().filter(span -> span.getName().equals(name)).findFirst()
+            .orElseThrow(() -> new AssertionError(name + " not in " + spans));
+    }
+
+    private static Event event(long time) {
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm");
+        event.setTime(time);
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<String, String>) producerField.get(listener);
+    }
+}
@@ -0,0 +1,245 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP proxy in front of a broker that injects network faults: latency, a bandwidth cap, connection resets and a
+ * blackhole that swallows all traffic while keeping the connections open, as a network partition does. Faults apply
+ * to open and new connections alike and can be changed while clients are running.
+ * <p>
+ * Each direction of a connection has a reader thread that stamps chunks with their due time and a writer thread that
+ * delivers them in order once due, throttled to the bandwidth cap. Latency therefore delays every chunk by the same
+ * amount instead of adding up under load.
+ */
+final class FaultInjectingProxy implements AutoCloseable {
+
+    private static final byte[] END = new byte[0];
+
+    private final ServerSocket server;
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int targetPort = -1;
+    private volatile long latencyNanos;
+    private volatile long bytesPerSecond;
+    private volatile boolean blackholed;
+    private volatile boolean closed;
+
+    FaultInjectingProxy() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        daemon(this::accept, "proxy-accept").start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Sets the port on localhost connections are forwarded to. Connections accepted before are refused.
+     */
+    void forwardTo(int port) {
+        this.targetPort = port;
+    }
+
+    /**
+     * Delays every chunk in each direction, so a request and its response are delayed by twice the latency.
+     */
+    FaultInjectingProxy latency(long millis) {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * Caps the throughput of each direction of each connection, 0 for no cap.
+     */
+    FaultInjectingProxy bandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Drops all traffic without closing connections. New connections are accepted and swallowed as well.
+     */
+    FaultInjectingProxy blackhole() {
+        blackholed = true;
+        return this;
+    }
+
+    /**
+     * Closes every open connection with a TCP reset.
+     */
+    FaultInjectingProxy reset() {
+        for (Link link : links) {
+            link.close(true);
+        }
+        return this;
+    }
+
+    /**
+     * Removes all faults. Connections that lost traffic to the blackhole are reset, since their byte stream can no
+     * longer be parsed.
+     */
+    FaultInjectingProxy heal() {
+        latencyNanos = 0;
+        bytesPerSecond = 0;
+        if (blackholed) {
+            blackholed = false;
+            reset();
+        }
+        return this;
+    }
+
+    /**
+     * Bytes swallowed by the blackhole.
+     */
+    long getDroppedBytes() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        reset();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket client = server.accept();
+                if (targetPort < 0) {
+                    client.close();
+                    continue;
+                }
+                Socket upstream = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                Link link = new Link(client, upstream);
+                links.add(link);
+                link.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    sleep(10);
+                }
+            }
+        }
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Chunk {
+        private final long dueAt;
+        private final byte[] bytes;
+
+        private Chunk(long dueAt, byte[] bytes) {
+            this.dueAt = dueAt;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Proxied connection: a client socket, its upstream socket and the four threads pumping between them.
+     */
+    private final class Link {
+        private final Socket client;
+        private final Socket upstream;
+        private volatile boolean open = true;
+
+        private Link(Socket client, Socket upstream) {
+            this.client = client;
+            this.upstream = upstream;
+        }
+
+        private void start() throws IOException {
+            pump(client.getInputStream(), upstream.getOutputStream(), "proxy-up");
+            pump(upstream.getInputStream(), client.getOutputStream(), "proxy-down");
+        }
+
+        private void pump(InputStream in, OutputStream out, String name) {
+            BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+            daemon(() -> read(in, queue), name + "-read").start();
+            daemon(() -> write(queue, out), name + "-write").start();
+        }
+
+        private void read(InputStream in, BlockingQueue<Chunk> queue) {
+            byte[] buffer = new byte[16 * 1024];
+            try {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    if (blackholed) {
+                        dropped.addAndGet(read);
+                        continue;
+                    }
+                    queue.add(new Chunk(System.nanoTime() + latencyNanos, Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException e) {
+                // Closed by the peer or by a reset
+            }
+            queue.add(new Chunk(0, END));
+        }
+
+        private void write(BlockingQueue<Chunk> queue, OutputStream out) {
+            try {
+                while (open) {
+                    Chunk chunk = queue.take();
+                    if (chunk.bytes == END) {
+                        break;
+                    }
+                    long wait = chunk.dueAt - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    long cap = bytesPerSecond;
+                    if (cap > 0) {
+                        TimeUnit.NANOSECONDS.sleep(TimeUnit.SECONDS.toNanos(chunk.bytes.length) / cap);
+                    }
+                    out.write(chunk.bytes);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Closed by the peer or by a reset
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close(false);
+        }
+
+        private void close(boolean reset) {
+            if (!links.remove(this) && !open) {
+                return;
+            }
+            open = false;
+            for (Socket socket : new Socket[] { client, upstream }) {
+                try {
+                    if (reset) {
+                        socket.setSoLinger(true, 0);
+                    }
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+/**
+ * Scripted network faults between a real producer and an embedded broker. Each scenario bounds what a Keycloak user
+ * notices, the time {@code onEvent} takes on the request thread, and what operators notice, lost events and the time
+ * until publishing recovers.
+ */
+class FaultInjectionTest {
+
+    private static final long REQUEST_TIMEOUT_MS = 1000;
+    private static final long MAX_BLOCK_MS = 1000;
+
+    private static FaultInjectingProxy proxy;
+    private static EmbeddedKafkaBroker broker;
+    private static int topics;
+
+    private KafkaEventListenerProvider listener;
+    private String topic;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        proxy = new FaultInjectingProxy();
+        broker = new EmbeddedKafkaBroker(proxy.getPort());
+        proxy.forwardTo(broker.getPort());
+    }
+
+    @AfterAll
+    static void stopBroker() throws Exception {
+        broker.close();
+        proxy.close();
+    }
+
+    @AfterEach
+    void tearDown() {
+        proxy.heal();
+        if (listener != null) {
+            listener.shutdown();
+        }
+    }
+
+    @Test
+    void shouldKeepAsyncOnEventFastWhenTheBrokerIsSlow() throws Exception {
+        listener = listener(DeliveryConfirmation.Mode.ASYNC, 0);
+        warmUp();
+        proxy.latency(200).bandwidth(64 * 1024);
+
+        long[] nanos = publish(300);
+
+        assertTrue(percentile(nanos, 0.99) < TimeUnit.MILLISECONDS.toNanos(50), "p99 " + Arrays.toString(nanos));
+        listener.flush();
+        proxy.heal();
+        assertDelivered(301);
+    }
+
+    @Test
+    void shouldBoundBlockingOnEventByTheConfirmationTimeout() throws Exception {
+        listener = listener(DeliveryConfirmation.Mode.BLOCKING, 500);
+        warmUp();
+        proxy.latency(1000);
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(publish(1)[0]);
+
+        assertTrue(millis >= 450 && millis < 1500, millis + " ms");
+        // The timed out event is still delivered, it is not lost
+        proxy.heal();
+        listener.flush();
+        assertDelivered(2);
+    }
+
+    @Test
+    void shouldDeliverEverythingOnceAcrossConnectionResets() throws Exception {
+        listener = listener(DeliveryConfirmation.Mode.ASYNC, 0);
+        warmUp();
+
+        for (int i = 0; i < 5; i++) {
+            publish(100);
+            proxy.reset();
+        }
+
+        listener.flush();
+        assertDelivered(501);
+    }
+
+    @Test
+    void shouldRecoverOnceAPartitionHeals() throws Exception {
+        listener = listener(DeliveryConfirmation.Mode.ASYNC, 0);
+        warmUp();
+        proxy.blackhole();
+
+        long[] nanos = publish(50);
+        Thread.sleep(2 * REQUEST_TIMEOUT_MS);
+        assertEquals(1, listener.getStats().getPublished());
+        assertTrue(proxy.getDroppedBytes() > 0);
+        long healedAt = System.nanoTime();
+        proxy.heal();
+        awaitTrue(() -> listener.getStats().getPublished() == 51, Duration.ofSeconds(10));
+
+        assertTrue(percentile(nanos, 0.99) < TimeUnit.MILLISECONDS.toNanos(50), "p99 " + Arrays.toString(nanos));
+        long recoveryMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - healedAt);
+        assertTrue(recoveryMs < 5000, "recovered after " + recoveryMs + " ms");
+        assertDelivered(51);
+    }
+
+    @Test
+    void shouldBoundOnEventByMaxBlockWhenMetadataStalls() {
+        listener = listener(DeliveryConfirmation.Mode.ASYNC, 0);
+        proxy.blackhole();
+
+        // Without metadata the producer blocks the request thread for up to max.block.ms
+        long millis = TimeUnit.NANOSECONDS.toMillis(publish(1)[0]);
+
+        assertTrue(millis < MAX_BLOCK_MS + 1000, millis + " ms");
+        awaitTrue(() -> listener.getStats().getFailed() == 1, Duration.ofSeconds(5));
+        assertEquals(0, listener.getStats().getPublished());
+    }
+
+    private KafkaEventListenerProvider listener(DeliveryConfirmation.Mode mode, long confirmationTimeoutMs) {
+        topic = "fault-injection-" + ++topics;
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("linger.ms", "5");
+        properties.put("request.timeout.ms", String.valueOf(REQUEST_TIMEOUT_MS));
+        properties.put("delivery.timeout.ms", "20000");
+        properties.put("max.block.ms", String.valueOf(MAX_BLOCK_MS));
+        properties.put("retry.backoff.ms", "50");
+        properties.put("reconnect.backoff.max.ms", "200");
+        KafkaEventListenerConfig config = new KafkaEventListenerConfig().setConfirmationMode(mode);
+        if (confirmationTimeoutMs > 0) {
+            config.setConfirmationTimeoutMs(confirmationTimeoutMs);
+        }
+        return new KafkaEventListenerProvider("localhost:" + proxy.getPort(), "fault-injection", topic,
+            new String[] { "LOGIN" }, null, properties, null, new KafkaProducerFactory(), config);
+    }
+
+    /**
+     * Publishes one event and waits for it, so the topic exists and the producer has its metadata.
+     */
+    private void warmUp() {
+        publish(1);
+        listener.flush();
+        assertEquals(1, listener.getStats().getPublished());
+    }
+
+    /**
+     * Publishes events and returns the time each {@code onEvent} call took.
+     */
+    private long[] publish(int count) {
+        long[] nanos = new long[count];
+        for (int i = 0; i < count; i++) {
+            Event event = new Event();
+            event.setType(EventType.LOGIN);
+            event.setRealmId("realm");
+            event.setUserId("user-" + i);
+            event.setTime(System.currentTimeMillis());
+            long start = System.nanoTime();
+            listener.onEvent(event);
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    /**
+     * Asserts the listener reports every event as published and the topic holds each of them exactly once.
+     */
+    private void assertDelivered(int count) {
+        assertEquals(count, listener.getStats().getPublished());
+        assertEquals(0, listener.getStats().getFailed());
+        List<String> ids = consumeIds();
+        assertEquals(count, ids.size(), "records in " + topic);
+        assertEquals(count, new HashSet<>(ids).size(), "distinct records in " + topic);
+    }
+
+    private List<String> consumeIds() {
+        TopicPartition partition = new TopicPartition(topic, 0);
+        List<String> ids = new ArrayList<>();
+        try (Consumer<String, String> consumer = new KafkaProducerFactory().createConsumer("fault-injection-check",
+            "localhost:" + proxy.getPort(), new HashMap<>(), new HashMap<>())) {
+            consumer.assign(List.of(partition));
+            consumer.seekToBeginning(List.of(partition));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (consumer.position(partition) < consumer.endOffsets(List.of(partition)).get(partition)
+                && System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(200))) {
+                    ids.add(CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ID));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static long percentile(long[] values, double fraction) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within " + timeout);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
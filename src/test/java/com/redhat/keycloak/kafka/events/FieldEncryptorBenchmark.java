@@ -0,0 +1,55 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.KeyGenerator;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+/**
+ * Encoding cost of a LOGIN event with field encryption off and on, and of encrypting a single value:
+ * {@code mvn -B test -Dtest=FieldEncryptorBenchmark}.
+ */
+class FieldEncryptorBenchmark {
+
+    @Test
+    void measureEncryptionOverhead() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        FieldEncryptor encryptor = new FieldEncryptor("key-1", generator.generateKey(),
+            List.of("ipAddress", "details.username", "details.email"));
+        KafkaEventListenerProvider plain = listener();
+        KafkaEventListenerProvider encrypted = listener();
+        encrypted.enableEncryption(encryptor);
+        Event event = new Event();
+        event.setId("5a1e2c1f-7c1b-4d0e-9f5e-2b3c4d5e6f70");
+        event.setType(EventType.LOGIN);
+        event.setTime(System.currentTimeMillis());
+        event.setRealmId("2f0b7e3c-1d4a-4b8e-a6c2-9e8f7d6c5b4a");
+        event.setClientId("account-console");
+        event.setUserId("8d9c0b1a-2e3f-4a5b-8c7d-6e5f4a3b2c1d");
+        event.setSessionId("0c1d2e3f-4a5b-4c6d-8e7f-9a0b1c2d3e4f");
+        event.setIpAddress("10.0.0.1");
+        event.setDetails(Map.of("username", "alice", "email", "alice@example.com", "auth_method", "openid-connect"));
+
+        Microbenchmark.measure("encode LOGIN, encryption off", () -> plain.toBackfillRecord(event));
+        Microbenchmark.measure("encode LOGIN, 3 fields encrypted", () -> encrypted.toBackfillRecord(event));
+        Microbenchmark.measure("encrypt one value", () -> encryptor.encrypt("details.email", "alice@example.com"));
+
+        ProducerRecord<String, String> record = encrypted.toBackfillRecord(event);
+        assertNotNull(record.headers().lastHeader(CloudEventHeaders.ENCRYPTION_KEY_ID));
+        plain.close();
+        encrypted.close();
+    }
+
+    private static KafkaEventListenerProvider listener() {
+        return new KafkaEventListenerProvider("", "", "keycloak-events", new String[] { "LOGIN" }, null, Map.of(),
+            new KafkaMockFactory());
+    }
+}
@@ -0,0 +1,171 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class FieldEncryptorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PASSWORD = "changeit";
+    private static final List<String> FIELDS = List.of("ipAddress", "details.username", "details.email",
+        "authDetails.ipAddress");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldEncryptWithTheNewestOrTheConfiguredKey() throws Exception {
+        SecretKey first = aesKey();
+        SecretKey second = aesKey();
+        Path keystore = tempDir.resolve("keys.p12");
+        addKey(keystore, "key-1", first);
+        assertEquals("key-1", FieldEncryptor.load(keystore, "PKCS12", PASSWORD, null, FIELDS).getKeyId());
+
+        // Rotation adds a key, the records already written keep the id of the old one
+        Thread.sleep(1100);
+        addKey(keystore, "key-2", second);
+        FieldEncryptor rotated = FieldEncryptor.load(keystore, "PKCS12", PASSWORD, null, FIELDS);
+        assertEquals("key-2", rotated.getKeyId());
+        assertEquals("secret", decrypt(second, "ipAddress", rotated.encrypt("ipAddress", "secret")));
+
+        assertEquals("key-1", FieldEncryptor.load(keystore, "PKCS12", PASSWORD, "KEY-1", FIELDS).getKeyId());
+        assertThrows(KeyStoreException.class,
+            () -> FieldEncryptor.load(keystore, "PKCS12", PASSWORD, "key-3", FIELDS));
+    }
+
+    @Test
+    void shouldNeverReuseAnIv() throws Exception {
+        FieldEncryptor encryptor = new FieldEncryptor("key-1", aesKey(), FIELDS);
+        Set<String> ivs = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            byte[] value = Base64.getDecoder().decode(encryptor.encrypt("ipAddress", "10.0.0.1"));
+            assertEquals(FieldEncryptor.IV_BYTES + 8 + 16, value.length);
+            ivs.add(Base64.getEncoder().encodeToString(Arrays.copyOf(value, FieldEncryptor.IV_BYTES)));
+        }
+        assertEquals(10_000, ivs.size());
+    }
+
+    @Test
+    void shouldPublishEventsWithEncryptedFields() throws Exception {
+        SecretKey key = aesKey();
+        MockProducer<String, String> producer = new MockProducer<>(true,
+            (org.apache.kafka.clients.producer.Partitioner) null, new StringSerializer(), new StringSerializer());
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, "admin-events", Map.of(), null, (clientId, bootstrapServer, properties) -> producer,
+            new KafkaEventListenerConfig());
+        listener.enableEncryption(new FieldEncryptor("key-1", key, FIELDS));
+
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setTime(System.currentTimeMillis());
+        event.setIpAddress("10.0.0.1");
+        event.setDetails(Map.of("username", "alice", "auth_method", "openid-connect"));
+        listener.onEvent(event);
+
+        ProducerRecord<String, String> record = producer.history().get(0);
+        JsonNode payload = MAPPER.readTree(record.value());
+        assertEquals("10.0.0.1", decrypt(key, "ipAddress", payload.get("ipAddress").asText()));
+        assertEquals("alice", decrypt(key, "details.username", payload.get("details").get("username").asText()));
+        assertEquals("openid-connect", payload.get("details").get("auth_method").asText());
+        assertEquals("key-1", CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ENCRYPTION_KEY_ID));
+        assertEquals("ipAddress,details.username",
+            CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ENCRYPTED_FIELDS));
+
+        AdminEvent adminEvent = new AdminEvent();
+        adminEvent.setTime(System.currentTimeMillis());
+        adminEvent.setOperationType(OperationType.CREATE);
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setIpAddress("10.0.0.2");
+        adminEvent.setAuthDetails(authDetails);
+        listener.onEvent(adminEvent, false);
+
+        JsonNode adminPayload = MAPPER.readTree(producer.history().get(1).value());
+        assertEquals("10.0.0.2",
+            decrypt(key, "authDetails.ipAddress", adminPayload.get("authDetails").get("ipAddress").asText()));
+
+        ProducerRecord<String, String> backfilled = listener.toBackfillRecord(event);
+        assertEquals("10.0.0.1", decrypt(key, "ipAddress", MAPPER.readTree(backfilled.value()).get("ipAddress").asText()));
+        listener.close();
+    }
+
+    @Test
+    void shouldLeaveEventsWithoutTheFieldsUnmarked() throws Exception {
+        ObjectNode payload = MAPPER.createObjectNode().put("type", "LOGIN");
+        RecordHeaders headers = new RecordHeaders();
+
+        new FieldEncryptor("key-1", aesKey(), FIELDS).encrypt(payload, headers);
+
+        assertEquals("{\"type\":\"LOGIN\"}", payload.toString());
+        assertNull(headers.lastHeader(CloudEventHeaders.ENCRYPTION_KEY_ID));
+    }
+
+    /**
+     * Adds a key to the keystore file as {@code keytool -genseckey} does, creating the file if needed.
+     */
+    private static void addKey(Path file, String alias, SecretKey key) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                keyStore.load(in, PASSWORD.toCharArray());
+            }
+        } else {
+            keyStore.load(null, null);
+        }
+        keyStore.setEntry(alias, new KeyStore.SecretKeyEntry(key), new KeyStore.PasswordProtection(PASSWORD.toCharArray()));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            keyStore.store(out, PASSWORD.toCharArray());
+        }
+    }
+
+    private static SecretKey aesKey() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+
+    private static String decrypt(SecretKey key, String path, String value) throws Exception {
+        byte[] input = Base64.getDecoder().decode(value);
+        Cipher cipher = Cipher.getInstance(FieldEncryptor.TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(FieldEncryptor.TAG_BITS, input, 0,
+            FieldEncryptor.IV_BYTES));
+        cipher.updateAAD(path.getBytes(StandardCharsets.UTF_8));
+        return new String(cipher.doFinal(input, FieldEncryptor.IV_BYTES, input.length - FieldEncryptor.IV_BYTES),
+            StandardCharsets.UTF_8);
+    }
+}
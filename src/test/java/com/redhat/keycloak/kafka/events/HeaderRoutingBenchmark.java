@@ -0,0 +1,66 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Consumer-side cost of routing a record on type and realm read from the CloudEvents headers versus parsing the
+ * payload: {@code mvn -B test -Dtest=HeaderRoutingBenchmark}.
+ */
+class HeaderRoutingBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String LOGIN_TYPE = CloudEventHeaders.EVENT_TYPE_PREFIX + EventType.LOGIN.name();
+
+    @Test
+    void measureHeaderOnlyRouting() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), new KafkaMockFactory());
+        Event event = new Event();
+        event.setId("5a1e2c1f-7c1b-4d0e-9f5e-2b3c4d5e6f70");
+        event.setType(EventType.LOGIN);
+        event.setTime(System.currentTimeMillis());
+        event.setRealmId("2f0b7e3c-1d4a-4b8e-a6c2-9e8f7d6c5b4a");
+        event.setClientId("account-console");
+        event.setUserId("8d9c0b1a-2e3f-4a5b-8c7d-6e5f4a3b2c1d");
+        event.setSessionId("0c1d2e3f-4a5b-4c6d-8e7f-9a0b1c2d3e4f");
+        event.setIpAddress("10.0.0.1");
+        event.setDetails(Map.of("username", "alice", "auth_method", "openid-connect", "redirect_uri",
+            "https://app.example.com/callback", "consent", "no_consent_required", "code_id", event.getSessionId()));
+        ProducerRecord<String, String> record = listener.toBackfillRecord(event);
+        Headers headers = record.headers();
+        byte[] value = record.value().getBytes(StandardCharsets.UTF_8);
+
+        Microbenchmark.measure("route on ce_type and ce_realmid", () -> routeOnHeaders(headers));
+        Microbenchmark.measure("route on parsed payload", () -> routeOnPayload(value));
+
+        assertEquals("logins-" + event.getRealmId(), routeOnHeaders(headers));
+        assertEquals(routeOnPayload(value), routeOnHeaders(headers));
+        listener.close();
+    }
+
+    private static String routeOnHeaders(Headers headers) {
+        return route(LOGIN_TYPE.equals(CloudEventHeaders.headerAsString(headers, CloudEventHeaders.TYPE)),
+            CloudEventHeaders.headerAsString(headers, CloudEventHeaders.REALM_ID));
+    }
+
+    private static String routeOnPayload(byte[] value) throws Exception {
+        JsonNode payload = MAPPER.readTree(value);
+        return route(EventType.LOGIN.name().equals(payload.get("type").asText()), payload.get("realmId").asText());
+    }
+
+    private static String route(boolean login, String realmId) {
+        return login ? "logins-" + realmId : "other";
+    }
+}
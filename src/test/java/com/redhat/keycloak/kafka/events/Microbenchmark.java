@@ -0,0 +1,102 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-threaded timing loop shared by the {@code *Benchmark} classes. Surefire only picks up {@code *Test}
+ * classes, so benchmarks run on request, e.g. {@code mvn -B test -Dtest=FieldEncryptorBenchmark}.
+ */
+final class Microbenchmark {
+
+    private static final int WARMUP_OPERATIONS = 200_000;
+    private static final int MEASURED_OPERATIONS = 200_000;
+
+    // Results are published here so the JIT cannot drop the measured work
+    static volatile Object sink;
+
+    @FunctionalInterface
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    private Microbenchmark() {
+    }
+
+    /**
+     * Times each call of the operation after a warm-up and prints the mean, throughput and percentiles.
+     *
+     * @return mean nanoseconds per operation
+     */
+    static double measure(String name, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+            sink = operation.run();
+        }
+        long[] latencies = new long[MEASURED_OPERATIONS];
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_OPERATIONS; i++) {
+            long before = System.nanoTime();
+            sink = operation.run();
+            latencies[i] = System.nanoTime() - before;
+        }
+        return report(name, System.nanoTime() - startedAt, latencies);
+    }
+
+    /**
+     * Runs the operation on {@code threads} threads at once, each calling it {@code operationsPerThread} times after
+     * a warm-up of as many calls, and prints the combined throughput and the percentiles of the single calls.
+     *
+     * @return mean nanoseconds of wall-clock time per operation
+     */
+    static double measureConcurrent(String name, int threads, int operationsPerThread, Operation operation)
+        throws Exception {
+        run(threads, operationsPerThread, operation);
+        long startedAt = System.nanoTime();
+        long[] latencies = run(threads, operationsPerThread, operation);
+        return report(name + " x" + threads, System.nanoTime() - startedAt, latencies);
+    }
+
+    private static long[] run(int threads, int operationsPerThread, Operation operation) throws Exception {
+        long[] latencies = new long[threads * operationsPerThread];
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * operationsPerThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        long before = System.nanoTime();
+                        sink = operation.run();
+                        latencies[offset + i] = System.nanoTime() - before;
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return latencies;
+    }
+
+    private static double report(String name, long elapsedNanos, long[] latencies) {
+        double mean = (double) elapsedNanos / latencies.length;
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.ROOT, "%-40s %8.0f ns/op %10.0f ops/s  p50 %6d ns  p99 %6d ns",
+            name, mean, 1e9 / mean, latencies[latencies.length / 2], latencies[latencies.length * 99 / 100]));
+        return mean;
+    }
+}
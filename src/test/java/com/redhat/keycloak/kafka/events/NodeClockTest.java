@@ -0,0 +1,42 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class NodeClockTest {
+
+    @Test
+    void shouldFollowWallClockWhenItAdvances() {
+        AtomicLong wallClock = new AtomicLong(1000);
+        NodeClock clock = new NodeClock(wallClock::get);
+
+        long first = clock.now();
+        wallClock.set(2000);
+        long second = clock.now();
+
+        assertEquals(1000, NodeClock.physicalTime(first));
+        assertEquals(2000, NodeClock.physicalTime(second));
+        assertEquals(0, NodeClock.logicalCounter(second));
+    }
+
+    @Test
+    void shouldStayMonotonicWhenWallClockStallsOrStepsBack() {
+        AtomicLong wallClock = new AtomicLong(5000);
+        NodeClock clock = new NodeClock(wallClock::get);
+
+        long first = clock.now();
+        long second = clock.now();
+        wallClock.set(4000);
+        long third = clock.now();
+
+        assertTrue(second > first);
+        assertTrue(third > second);
+        assertEquals(5000, NodeClock.physicalTime(third));
+        assertEquals(2, NodeClock.logicalCounter(third));
+    }
+
+}
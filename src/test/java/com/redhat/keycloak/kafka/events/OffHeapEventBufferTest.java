@@ -0,0 +1,108 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+class OffHeapEventBufferTest {
+
+    @Test
+    void shouldReturnEventsWithHeadersInOrder() {
+        OffHeapEventBuffer buffer = new OffHeapEventBuffer(1024 * 1024, 1024);
+        Headers headers = new RecordHeaders();
+        headers.add("ce_id", "1".getBytes(StandardCharsets.UTF_8));
+        headers.add("empty", null);
+        headers.add("ce_id", "2".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(buffer.offer(List.of(new EncodedEvent("events", "key", "{\"type\":\"LOGIN\"}", headers),
+            new EncodedEvent("events", 3, null, "ü", null)), 1));
+        assertTrue(buffer.offer(List.of(new EncodedEvent("admin-events", null, null, new RecordHeaders())), 0));
+        assertEquals(2, buffer.size());
+
+        OffHeapEventBuffer.Entry first = buffer.poll();
+        assertEquals(1, first.getTag());
+        EncodedEvent event = first.getEvents().get(0);
+        assertEquals("events", event.getTopic());
+        assertEquals("key", event.getKey());
+        assertEquals("{\"type\":\"LOGIN\"}", event.getValue());
+        assertNull(event.getPartition());
+        assertEquals(3, first.getEvents().get(1).getPartition());
+        assertArrayEquals(headers.toArray(), event.getHeaders().toArray());
+        assertNull(first.getEvents().get(1).getKey());
+        assertEquals("ü", first.getEvents().get(1).getValue());
+        assertNull(first.getEvents().get(1).getHeaders());
+
+        OffHeapEventBuffer.Entry second = buffer.poll();
+        assertEquals("admin-events", second.getEvents().get(0).getTopic());
+        assertNull(second.getEvents().get(0).getValue());
+        assertEquals(0, second.getEvents().get(0).getHeaders().toArray().length);
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.getUsedBytes());
+    }
+
+    @Test
+    void shouldRejectEventsBeyondTheBudget() {
+        OffHeapEventBuffer buffer = new OffHeapEventBuffer(2048, 1024);
+        String value = "x".repeat(400);
+        int accepted = 0;
+        while (buffer.offer(List.of(new EncodedEvent("events", null, value, null)), 0)) {
+            accepted++;
+        }
+
+        // Two entries per slab, two slabs
+        assertEquals(4, accepted);
+        assertEquals(2048, buffer.getAllocatedBytes());
+        assertFalse(buffer.offer(List.of(new EncodedEvent("events", null, "x".repeat(4096), null)), 0));
+
+        buffer.poll();
+        buffer.poll();
+        assertTrue(buffer.offer(List.of(new EncodedEvent("events", null, value, null)), 0));
+        assertEquals(2048, buffer.getAllocatedBytes());
+    }
+
+    @Test
+    void shouldGiveLargeEventsASlabOfTheirOwn() {
+        OffHeapEventBuffer buffer = new OffHeapEventBuffer(16 * 1024, 1024);
+        String large = "y".repeat(5000);
+        assertTrue(buffer.offer(List.of(new EncodedEvent("events", null, "small", null)), 0));
+        assertTrue(buffer.offer(List.of(new EncodedEvent("events", null, large, null)), 0));
+        assertTrue(buffer.offer(List.of(new EncodedEvent("events", null, "after", null)), 0));
+
+        assertEquals("small", buffer.poll().getEvents().get(0).getValue());
+        assertEquals(large, buffer.poll().getEvents().get(0).getValue());
+        assertEquals("after", buffer.poll().getEvents().get(0).getValue());
+        assertTrue(buffer.getAllocatedBytes() <= 16 * 1024);
+    }
+
+    @Test
+    void shouldMatchAQueueUnderRandomOperations() {
+        OffHeapEventBuffer buffer = new OffHeapEventBuffer(8 * 1024, 1024);
+        Deque<String> expected = new ArrayDeque<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            if (random.nextInt(3) > 0) {
+                String value = i + "-" + "z".repeat(random.nextInt(random.nextInt(10) == 0 ? 3000 : 300));
+                if (buffer.offer(List.of(new EncodedEvent("events", null, value, null)), 0)) {
+                    expected.addLast(value);
+                }
+            } else {
+                OffHeapEventBuffer.Entry entry = buffer.poll();
+                assertEquals(expected.pollFirst(), entry != null ? entry.getEvents().get(0).getValue() : null);
+            }
+            assertEquals(expected.size(), buffer.size());
+            assertTrue(buffer.getAllocatedBytes() <= 8 * 1024);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransactionManager;
+
+class OutboxEventListenerProviderTest {
+
+    private final KeycloakSession session = mock(KeycloakSession.class);
+    private final KeycloakTransactionManager transaction = mock(KeycloakTransactionManager.class);
+    private final KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+        new String[] { "LOGIN" }, null, Map.of(), Map.of(), new KafkaMockFactory(), new KafkaEventListenerConfig());
+
+    @Test
+    void shouldRollBackTheKeycloakTransactionWhenTheInsertFails() {
+        when(session.getTransactionManager()).thenReturn(transaction);
+        when(session.getProvider(JpaConnectionProvider.class)).thenThrow(new IllegalStateException("no database"));
+
+        assertThrows(IllegalStateException.class,
+            () -> new OutboxEventListenerProvider(session, listener, new OutboxStore()).onEvent(event(EventType.LOGIN)));
+
+        verify(transaction).setRollbackOnly();
+    }
+
+    @Test
+    void shouldNotTouchTheTransactionForFilteredEvents() {
+        when(session.getTransactionManager()).thenReturn(transaction);
+
+        new OutboxEventListenerProvider(session, listener, new OutboxStore()).onEvent(event(EventType.LOGOUT));
+
+        verify(transaction, never()).setRollbackOnly();
+    }
+
+    private static Event event(EventType type) {
+        Event event = new Event();
+        event.setType(type);
+        event.setTime(System.currentTimeMillis());
+        return event;
+    }
+}
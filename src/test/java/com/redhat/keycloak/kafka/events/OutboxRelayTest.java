@@ -0,0 +1,226 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class OutboxRelayTest {
+
+    private Connection keepAlive;
+    private String url;
+    private OutboxStore store;
+    private OutboxStore.TransactionRunner runner;
+    private KafkaEventListenerConfig config;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        url = "jdbc:h2:mem:outbox-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url);
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE KAFKA_EVENT_OUTBOX (ID BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                + " TOPIC VARCHAR(255) NOT NULL, RECORD_KEY VARCHAR(255), PAYLOAD CLOB, HEADERS CLOB,"
+                + " CREATED_AT BIGINT NOT NULL)");
+            statement.execute("CREATE TABLE KAFKA_EVENT_OUTBOX_LEASE (NAME VARCHAR(36) PRIMARY KEY,"
+                + " OWNER VARCHAR(36), EXPIRES_AT BIGINT DEFAULT 0 NOT NULL)");
+            statement.execute("INSERT INTO KAFKA_EVENT_OUTBOX_LEASE (NAME, EXPIRES_AT) VALUES ('relay', 0)");
+        }
+        store = new OutboxStore();
+        runner = new OutboxStore.TransactionRunner() {
+            @Override
+            public <T> T inTransaction(OutboxStore.Work<T> work) {
+                try (Connection connection = DriverManager.getConnection(url)) {
+                    connection.setAutoCommit(false);
+                    T result = work.execute(connection);
+                    connection.commit();
+                    return result;
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        config = new KafkaEventListenerConfig().setOutboxBatchSize(2).setOutboxLeaseMs(60_000);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        keepAlive.close();
+    }
+
+    @Test
+    void shouldPublishAllRowsInPagesAndDeleteThem() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            insert(new ProducerRecord<>("keycloak-events", "event-" + i));
+        }
+        MockProducer<String, String> producer = newProducer();
+        OutboxRelay relay = new OutboxRelay(store, runner, () -> producer, false, config);
+
+        assertEquals(5, relay.runOnce());
+
+        assertEquals(5, producer.history().size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("event-" + i, producer.history().get(i).value());
+        }
+        assertTrue(runner.inTransaction(connection -> store.fetchAfter(connection, 0, 10)).isEmpty());
+        assertEquals(5, relay.getPublishedRecords());
+        assertEquals(0, relay.getLagMs());
+    }
+
+    @Test
+    void shouldOnlyLetTheLeaseHolderPublish() throws Exception {
+        insert(new ProducerRecord<>("keycloak-events", "event"));
+        MockProducer<String, String> firstProducer = newProducer();
+        MockProducer<String, String> secondProducer = newProducer();
+        OutboxRelay first = new OutboxRelay(store, runner, () -> firstProducer, false, config);
+        OutboxRelay second = new OutboxRelay(store, runner, () -> secondProducer, false, config);
+
+        assertEquals(1, first.runOnce());
+        insert(new ProducerRecord<>("keycloak-events", "event"));
+        assertEquals(0, second.runOnce());
+
+        assertEquals(1, first.runOnce());
+        assertEquals(2, firstProducer.history().size());
+        assertTrue(secondProducer.history().isEmpty());
+    }
+
+    @Test
+    void shouldKeepRowsThatWereNotAcknowledged() throws Exception {
+        insert(new ProducerRecord<>("keycloak-events", "event"));
+        MockProducer<String, String> producer = newProducer();
+        producer.sendException = new KafkaException("broker down");
+        OutboxRelay relay = new OutboxRelay(store, runner, () -> producer, false, config);
+
+        assertEquals(0, relay.runOnce());
+
+        assertEquals(1, runner.inTransaction(connection -> store.fetchAfter(connection, 0, 10)).size());
+        assertEquals(1, relay.getFailedRecords());
+    }
+
+    @Test
+    void shouldPreserveHeadersAndPublishTransactionally() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), Map.of(), new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setOutboxEnabled(true));
+        Event event = new Event();
+        event.setId("event-1");
+        event.setType(EventType.LOGIN);
+        insert(listener.toRecord(event));
+        MockProducer<String, String> producer = newProducer();
+        OutboxRelay relay = new OutboxRelay(store, runner, () -> producer, true, config);
+
+        assertEquals(1, relay.runOnce());
+
+        assertEquals(1, producer.commitCount());
+        assertEquals("event-1", CloudEventHeaders.headerAsString(producer.history().get(0).headers(),
+            CloudEventHeaders.ID));
+    }
+
+    @Test
+    void shouldKeepBinaryAndRepeatedHeaders() throws Exception {
+        byte[] binary = { (byte) 0xff, 0, (byte) 0xc3 };
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("trace", binary);
+        headers.add("tag", "a".getBytes(StandardCharsets.UTF_8));
+        headers.add("tag", "b".getBytes(StandardCharsets.UTF_8));
+        headers.add("empty", null);
+        insert(new ProducerRecord<>("keycloak-events", null, (String) null, "event", headers));
+
+        Headers stored = runner.inTransaction(connection -> store.fetchAfter(connection, 0, 10)).get(0).getRecord()
+            .headers();
+
+        Header[] all = stored.toArray();
+        assertEquals(4, all.length);
+        assertArrayEquals(binary, all[0].value());
+        assertEquals("tag", all[1].key());
+        assertEquals("a", new String(all[1].value(), StandardCharsets.UTF_8));
+        assertEquals("tag", all[2].key());
+        assertEquals("b", new String(all[2].value(), StandardCharsets.UTF_8));
+        assertNull(all[3].value());
+    }
+
+    @Test
+    void shouldReadHeadersOfRowsWrittenAsAnObject() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("INSERT INTO KAFKA_EVENT_OUTBOX (TOPIC, PAYLOAD, HEADERS, CREATED_AT)"
+                + " VALUES ('keycloak-events', 'event', '{\"ce_id\":\"event-1\"}', 0)");
+        }
+
+        Headers stored = runner.inTransaction(connection -> store.fetchAfter(connection, 0, 10)).get(0).getRecord()
+            .headers();
+
+        assertEquals("event-1", CloudEventHeaders.headerAsString(stored, CloudEventHeaders.ID));
+    }
+
+    @Test
+    void shouldReplaceAFencedProducer() throws Exception {
+        insert(new ProducerRecord<>("keycloak-events", "event"));
+        MockProducer<String, String> fenced = newProducer();
+        MockProducer<String, String> replacement = newProducer();
+        Iterator<MockProducer<String, String>> producers = List.of(fenced, replacement).iterator();
+        OutboxRelay relay = new OutboxRelay(store, runner, producers::next, true, config);
+        fenced.commitTransactionException = new ProducerFencedException("fenced by a newer instance");
+
+        assertEquals(0, relay.runOnce());
+        assertTrue(fenced.closed());
+
+        assertEquals(1, relay.runOnce());
+        assertEquals(1, replacement.commitCount());
+        assertTrue(runner.inTransaction(connection -> store.fetchAfter(connection, 0, 10)).isEmpty());
+    }
+
+    @Test
+    void shouldRollTheProducerBeforeTheNextPage() throws Exception {
+        insert(new ProducerRecord<>("keycloak-events", "event"));
+        MockProducer<String, String> first = newProducer();
+        MockProducer<String, String> rolled = newProducer();
+        Iterator<MockProducer<String, String>> producers = List.of(first, rolled).iterator();
+        OutboxRelay relay = new OutboxRelay(store, runner, producers::next, true, config);
+        assertEquals(1, relay.runOnce());
+
+        relay.rollProducer();
+        insert(new ProducerRecord<>("keycloak-events", "event"));
+        assertEquals(1, relay.runOnce());
+
+        assertTrue(first.closed());
+        assertEquals(1, first.commitCount());
+        assertTrue(rolled.transactionInitialized());
+        assertEquals(1, rolled.commitCount());
+    }
+
+    private void insert(ProducerRecord<String, String> record) {
+        runner.inTransaction(connection -> {
+            store.insert(connection, record);
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> newProducer() {
+        Producer<String, String> producer = new KafkaMockFactory().createProducer("", "", Map.of());
+        return (MockProducer<String, String>) producer;
+    }
+}
@@ -0,0 +1,123 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+
+class PriorityLaneTest {
+
+    @Test
+    void shouldClassifyByEventTypeAndAdminOperation() {
+        PriorityClassifier classifier = new PriorityClassifier(List.of("login_error", "UNKNOWN"),
+            List.of("CREATE", "DELETE"));
+
+        assertTrue(classifier.isEnabled());
+        assertEquals(PriorityClassifier.Priority.HIGH,
+            classifier.classify(new EventPipelineContext(event(EventType.LOGIN_ERROR), null)));
+        assertEquals(PriorityClassifier.Priority.NORMAL,
+            classifier.classify(new EventPipelineContext(event(EventType.REFRESH_TOKEN), null)));
+        assertEquals(PriorityClassifier.Priority.HIGH,
+            classifier.classify(new EventPipelineContext(adminEvent(OperationType.DELETE), null)));
+        assertEquals(PriorityClassifier.Priority.NORMAL,
+            classifier.classify(new EventPipelineContext(adminEvent(OperationType.UPDATE), null)));
+        assertFalse(new PriorityClassifier(List.of(), List.of()).isEnabled());
+    }
+
+    @Test
+    void shouldCountSloBreachesPerLane() {
+        PublisherStats stats = new PublisherStats(1);
+        stats.setLatencyTarget(PriorityClassifier.Priority.HIGH, 100);
+        stats.recordLatency(PriorityClassifier.Priority.HIGH, TimeUnit.MILLISECONDS.toNanos(50));
+        stats.recordLatency(PriorityClassifier.Priority.HIGH, TimeUnit.MILLISECONDS.toNanos(150));
+        stats.recordLatency(PriorityClassifier.Priority.NORMAL, TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(1, stats.getSloBreaches(PriorityClassifier.Priority.HIGH));
+        assertEquals(0, stats.getSloBreaches(PriorityClassifier.Priority.NORMAL));
+        assertEquals(2, stats.getLatency(PriorityClassifier.Priority.HIGH).getCount());
+        assertEquals(3, stats.getLatency().getCount());
+    }
+
+    @Test
+    void shouldPublishHighPriorityEventsWhileTheNormalLaneIsBacklogged() {
+        MockProducer<String, String> normal = mockProducer(false);
+        MockProducer<String, String> priority = mockProducer(true);
+        KafkaProducerInterface factory = (clientId, bootstrapServer, properties) ->
+            "-priority".equals(properties.get(ProducerConfig.CLIENT_ID_CONFIG)) ? priority : normal;
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "REFRESH_TOKEN", "LOGIN_ERROR" }, "admin-events", Map.of(), null, factory,
+            new KafkaEventListenerConfig().setConfirmationMode(DeliveryConfirmation.Mode.ASYNC)
+                .setPriorityEvents(List.of("LOGIN_ERROR")).setPriorityAdminOperations(List.of("CREATE")));
+
+        for (int i = 0; i < 1000; i++) {
+            listener.onEvent(event(EventType.REFRESH_TOKEN));
+        }
+        listener.onEvent(event(EventType.LOGIN_ERROR));
+        listener.onEvent(adminEvent(OperationType.CREATE), false);
+
+        assertEquals(1000, normal.history().size());
+        assertEquals(2, priority.history().size());
+        assertEquals(1000, listener.getInFlight());
+        assertEquals(2, listener.getStats().getPublished());
+        assertEquals(2, listener.getStats().getLatency(PriorityClassifier.Priority.HIGH).getCount());
+
+        while (normal.completeNext()) {
+            // acknowledge the backlog
+        }
+        assertEquals(1002, listener.getStats().getPublished());
+        Map<?, ?> lanes = (Map<?, ?>) KafkaEventsResource.statistics(listener).get("lanes");
+        assertEquals(1000L, ((Map<?, ?>) lanes.get("NORMAL")).get("count"));
+        assertEquals(100L, ((Map<?, ?>) lanes.get("HIGH")).get("sloMs"));
+    }
+
+    @Test
+    void shouldKeepTheLaneOfEventsHeldDuringAPause() {
+        MockProducer<String, String> normal = mockProducer(true);
+        MockProducer<String, String> priority = mockProducer(true);
+        KafkaProducerInterface factory = (clientId, bootstrapServer, properties) ->
+            "-priority".equals(properties.get(ProducerConfig.CLIENT_ID_CONFIG)) ? priority : normal;
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "REFRESH_TOKEN", "LOGIN_ERROR" }, null, Map.of(), null, factory,
+            new KafkaEventListenerConfig().setPriorityEvents(List.of("LOGIN_ERROR")));
+
+        listener.pause();
+        listener.onEvent(event(EventType.REFRESH_TOKEN));
+        listener.onEvent(event(EventType.LOGIN_ERROR));
+        listener.resume();
+
+        assertEquals(1, normal.history().size());
+        assertEquals(1, priority.history().size());
+    }
+
+    private static Event event(EventType type) {
+        Event event = new Event();
+        event.setType(type);
+        event.setTime(System.currentTimeMillis());
+        return event;
+    }
+
+    private static AdminEvent adminEvent(OperationType operationType) {
+        AdminEvent event = new AdminEvent();
+        event.setOperationType(operationType);
+        event.setTime(System.currentTimeMillis());
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> mockProducer(boolean autoComplete) {
+        return new MockProducer<>(autoComplete, (org.apache.kafka.clients.producer.Partitioner) null,
+            new StringSerializer(), new StringSerializer());
+    }
+}
@@ -0,0 +1,127 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class PublisherStatsTest {
+
+    @Test
+    void shouldReportPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 100L));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertWithin(50_000, histogram.percentile(0.5));
+        assertWithin(99_000, histogram.percentile(0.99));
+        assertWithin(100_000, histogram.percentile(1));
+        assertEquals(0, new LatencyHistogram().percentile(0.5));
+    }
+
+    @Test
+    void shouldCoverEveryValueWithContiguousBuckets() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucket(micros);
+            assertTrue(micros <= LatencyHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || micros > LatencyHistogram.upperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    void shouldCountPublishedEventsPerTopic() {
+        PublisherStats stats = new PublisherStats(1);
+        stats.recordPublished("events");
+        stats.recordPublished("events");
+        stats.recordPublished("admin-events");
+        stats.recordFailed();
+
+        assertEquals(Map.of("admin-events", 1L, "events", 2L), stats.getTopicCounts());
+        assertEquals(0.25, stats.getErrorRate());
+        assertThrows(IllegalArgumentException.class, () -> stats.setSamplingRate(1.5));
+        stats.setSamplingRate(0);
+        assertFalse(stats.sample());
+    }
+
+    @Test
+    void shouldHoldEventsWhilePausedAndPublishThemInOrderOnResume() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), null, new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setPauseBufferCapacity(2));
+        MockProducer<String, String> producer = getProducer(listener);
+
+        listener.pause();
+        listener.onEvent(event("first"));
+        listener.onEvent(event("second"));
+        listener.onEvent(event("dropped"));
+
+        assertTrue(producer.history().isEmpty());
+        assertEquals(2, listener.getQueueDepth());
+        assertEquals(1, listener.getStats().getDropped());
+
+        listener.resume();
+        listener.onEvent(event("third"));
+
+        assertFalse(listener.isPaused());
+        assertEquals(0, listener.getQueueDepth());
+        assertEquals(List.of("first", "second", "third"), producer.history().stream()
+            .map(record -> CloudEventHeaders.headerAsString(record.headers(), CloudEventHeaders.ID))
+            .collect(Collectors.toList()));
+
+        Map<String, Object> statistics = KafkaEventsResource.statistics(listener);
+        assertEquals(3L, statistics.get("published"));
+        assertEquals(Map.of("keycloak-events", 3L), statistics.get("topics"));
+        assertEquals(3L, ((Map<?, ?>) statistics.get("latencyMicros")).get("count"));
+        Map<?, ?> stage = (Map<?, ?>) ((List<?>) statistics.get("stages")).get(0);
+        assertEquals(4L, stage.get("invocations"));
+        assertTrue(stage.containsKey("timeMicros"));
+    }
+
+    @Test
+    void shouldPublishEventsKeptDuringAPauseOnShutdown() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), null, new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setPauseBufferCapacity(2));
+        MockProducer<String, String> producer = getProducer(listener);
+
+        listener.pause();
+        listener.onEvent(event("first"));
+        listener.onEvent(event("second"));
+        listener.shutdown();
+
+        assertEquals(2, producer.history().size());
+        assertEquals(0, listener.getQueueDepth());
+        assertEquals(0, listener.getStats().getDropped());
+    }
+
+    private static Event event(String id) {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(EventType.LOGIN);
+        return event;
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.125, expected + " ~ " + actual);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<String, String>) producerField.get(listener);
+    }
+}
@@ -0,0 +1,177 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class RecentIdCacheTest {
+
+    @Test
+    void shouldSuppressIdsWithinWindow() {
+        AtomicLong now = new AtomicLong();
+        RecentIdCache cache = new RecentIdCache(1000, 10, now::get);
+
+        assertTrue(cache.add("a"));
+        assertFalse(cache.add("a"));
+        now.set(999);
+        assertFalse(cache.add("a"));
+        now.set(1000);
+        assertTrue(cache.add("a"));
+        assertEquals(2, cache.getSuppressed());
+    }
+
+    @Test
+    void shouldDropOldestIdWhenFull() {
+        RecentIdCache cache = new RecentIdCache(60_000, 2, () -> 0);
+
+        cache.add("a");
+        cache.add("b");
+        cache.add("c");
+
+        assertFalse(cache.contains("a"));
+        assertTrue(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void shouldKeepReaddedIdWhenItsOldEntryExpires() {
+        AtomicLong now = new AtomicLong();
+        RecentIdCache cache = new RecentIdCache(1000, 10, now::get);
+
+        cache.add("a");
+        cache.remove("a");
+        now.set(500);
+        assertTrue(cache.add("a"));
+        now.set(1000);
+
+        assertTrue(cache.contains("a"));
+        now.set(1500);
+        assertFalse(cache.contains("a"));
+    }
+
+    @Test
+    void shouldMatchSetSemanticsUnderRandomOperations() {
+        // A small table makes probe sequences wrap around and collide, exercising the backward shift on delete
+        int maxIds = 50;
+        RecentIdCache cache = new RecentIdCache(Long.MAX_VALUE, maxIds, () -> 0);
+        // Ring of added ids by insertion number; removed ids keep their ring entry until it is dropped
+        Map<String, Integer> expected = new HashMap<>();
+        Deque<Map.Entry<String, Integer>> ring = new ArrayDeque<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            String id = "id-" + random.nextInt(200);
+            if (random.nextInt(4) == 0) {
+                cache.remove(id);
+                expected.remove(id);
+            } else {
+                boolean added = cache.add(id);
+                assertEquals(!expected.containsKey(id), added);
+                if (added) {
+                    if (ring.size() == maxIds) {
+                        Map.Entry<String, Integer> oldest = ring.removeFirst();
+                        expected.remove(oldest.getKey(), oldest.getValue());
+                    }
+                    ring.addLast(Map.entry(id, i));
+                    expected.put(id, i);
+                }
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected.containsKey("id-" + i), cache.contains("id-" + i));
+        }
+    }
+
+    @Test
+    void shouldPublishEventIdOnlyOnceWithinWindow() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), null, new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setDedupeWindowMs(60_000));
+        MockProducer<String, String> producer = getProducer(listener);
+        Event event = new Event();
+        event.setId("event-1");
+        event.setType(EventType.LOGIN);
+
+        producer.sendException = new KafkaException("broker down");
+        listener.onEvent(event);
+        producer.sendException = null;
+        listener.onEvent(event);
+        listener.onEvent(event);
+
+        List<ProducerRecord<String, String>> history = producer.history();
+        assertEquals(1, history.size());
+        assertEquals("event-1", CloudEventHeaders.headerAsString(history.get(0).headers(), CloudEventHeaders.ID));
+        assertEquals(1, listener.getRecentIds().getSuppressed());
+        assertEquals("dedupe", listener.getPipeline().getStage(1).getName());
+        assertEquals(1, listener.getPipeline().getDiscards(1));
+    }
+
+    @Test
+    void shouldNotAdvanceTheUserSequenceForDuplicates() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), null, new KafkaMockFactory(),
+            new KafkaEventListenerConfig().setDedupeWindowMs(60_000));
+        MockProducer<String, String> producer = getProducer(listener);
+        Event first = event("event-1");
+        Event second = event("event-2");
+
+        listener.onEvent(first);
+        listener.onEvent(first);
+        listener.onEvent(second);
+
+        List<ProducerRecord<String, String>> history = producer.history();
+        assertEquals(2, history.size());
+        assertEquals("1", CloudEventHeaders.headerAsString(history.get(0).headers(), CloudEventHeaders.SEQUENCE));
+        assertEquals("2", CloudEventHeaders.headerAsString(history.get(1).headers(), CloudEventHeaders.SEQUENCE));
+    }
+
+    private static Event event(String id) {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm");
+        event.setUserId("alice");
+        return event;
+    }
+
+    @Test
+    void shouldDeriveStableIdForEventsWithoutId() {
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setTime(1000);
+        event.setUserId("user-1");
+        Event retried = event.clone();
+        Event other = event.clone();
+        other.setUserId("user-2");
+
+        assertEquals(CloudEventHeaders.eventId(event), CloudEventHeaders.eventId(retried));
+        assertNotEquals(CloudEventHeaders.eventId(event), CloudEventHeaders.eventId(other));
+        assertEquals(CloudEventHeaders.eventId(event),
+            CloudEventHeaders.headerAsString(CloudEventHeaders.forEvent(event), CloudEventHeaders.ID));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<String, String>) producerField.get(listener);
+    }
+}
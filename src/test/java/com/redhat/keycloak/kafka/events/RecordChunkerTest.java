@@ -0,0 +1,102 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+class RecordChunkerTest {
+
+    @Test
+    void shouldKeepRecordsThatFit() {
+        RecordChunker chunker = RecordChunker.forProducer(Map.of(), new KafkaEventListenerConfig());
+        ProducerRecord<String, String> record = new ProducerRecord<>("admin-events", "{\"small\":true}");
+
+        List<ProducerRecord<String, String>> chunks = chunker.split(record);
+
+        assertEquals(1, chunks.size());
+        assertSame(record, chunks.get(0));
+        assertEquals(RecordChunker.DEFAULT_MAX_REQUEST_SIZE - RecordChunker.HEADROOM, chunker.getMaxChunkBytes());
+    }
+
+    @Test
+    void shouldSplitOnCharacterBoundariesAndReassemble() {
+        RecordChunker chunker = new RecordChunker(64 * 1024);
+        // Mixes one, two and three byte characters so cuts fall inside multi-byte sequences
+        String value = "aé€".repeat(200_000);
+        ProducerRecord<String, String> record = new ProducerRecord<>("admin-events", value);
+        record.headers().add(CloudEventHeaders.ID, "event-1".getBytes(StandardCharsets.UTF_8));
+
+        List<ProducerRecord<String, String>> chunks = chunker.split(record);
+
+        assertTrue(chunks.size() > 1);
+        String key = chunks.get(0).key();
+        for (ProducerRecord<String, String> chunk : chunks) {
+            assertTrue(chunk.value().getBytes(StandardCharsets.UTF_8).length <= 64 * 1024);
+            assertEquals(key, chunk.key());
+            assertEquals("event-1", CloudEventHeaders.headerAsString(chunk.headers(), CloudEventHeaders.ID));
+        }
+
+        assertEquals(value, join(chunks));
+    }
+
+    @Test
+    void shouldSendLargeAdminRepresentationAsChunks() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "",
+            new String[] { "REGISTER" }, "admin-events", Map.of(), new KafkaMockFactory());
+        String representation = "{\"description\":\"" + "ü".repeat(1_500_000) + "\"}";
+        AdminEvent event = new AdminEvent();
+        event.setId("admin-1");
+        event.setOperationType(OperationType.UPDATE);
+        event.setResourceType(ResourceType.CLIENT);
+        event.setRepresentation(representation);
+
+        listener.onEvent(event, true);
+
+        MockProducer<String, String> producer = getProducer(listener);
+        List<ProducerRecord<String, String>> history = producer.history();
+        assertEquals(3, history.size());
+        for (ProducerRecord<String, String> chunk : history) {
+            assertEquals("admin-events", chunk.topic());
+        }
+        String value = join(history);
+        assertTrue(value.contains(representation.substring(16, 1000)));
+        assertTrue(value.length() > representation.length());
+    }
+
+    /**
+     * Concatenates the chunks after checking that they are complete and in order.
+     */
+    private static String join(List<ProducerRecord<String, String>> chunks) {
+        String chunkId = CloudEventHeaders.headerAsString(chunks.get(0).headers(), CloudEventHeaders.CHUNK_ID);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            Headers headers = chunks.get(i).headers();
+            assertEquals(chunkId, CloudEventHeaders.headerAsString(headers, CloudEventHeaders.CHUNK_ID));
+            assertEquals(Integer.toString(i), CloudEventHeaders.headerAsString(headers, CloudEventHeaders.CHUNK_INDEX));
+            assertEquals(Integer.toString(chunks.size()),
+                CloudEventHeaders.headerAsString(headers, CloudEventHeaders.CHUNK_COUNT));
+            value.append(chunks.get(i).value());
+        }
+        return value.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MockProducer<String, String> getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<String, String>) producerField.get(listener);
+    }
+}
@@ -0,0 +1,104 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.Config;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.config.TopicConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class TopicProvisionerTest {
+
+    private static EmbeddedKafkaBroker broker;
+    private static Admin admin;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        broker = new EmbeddedKafkaBroker();
+        admin = new KafkaProducerFactory().createAdmin("provisioner-test", broker.getBootstrapServers(), Map.of());
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        admin.close();
+        broker.close();
+    }
+
+    @Test
+    void shouldCreateMissingTopicsSizedForTheExpectedRate() throws Exception {
+        KafkaEventListenerConfig config = new KafkaEventListenerConfig()
+            .setExpectedEventsPerSecond(2500)
+            .setTopicReplicationFactor(1)
+            .setTopicRetentionMs(TimeUnit.DAYS.toMillis(7))
+            .setCanaryTopic("create-canary");
+
+        Map<String, TopicProvisioner.Status> result = provisioner(TopicProvisioner.Mode.CREATE)
+            .provision(TopicProvisioner.specs(config, "create-events", "create-admin-events"));
+
+        assertEquals(Map.of("create-events", TopicProvisioner.Status.CREATED,
+            "create-admin-events", TopicProvisioner.Status.CREATED,
+            "create-canary", TopicProvisioner.Status.CREATED), result);
+        assertEquals(3, partitions("create-events"));
+        assertEquals(1, partitions("create-canary"));
+        Config topicConfig = admin.describeConfigs(List.of(new ConfigResource(ConfigResource.Type.TOPIC,
+            "create-events"))).all().get(10, TimeUnit.SECONDS).values().iterator().next();
+        assertEquals(String.valueOf(TimeUnit.DAYS.toMillis(7)), topicConfig.get(TopicConfig.RETENTION_MS_CONFIG).value());
+        assertEquals(String.valueOf(TopicProvisioner.segmentBytes(2500, 1024, 3)),
+            topicConfig.get(TopicConfig.SEGMENT_BYTES_CONFIG).value());
+
+        // A second node finds the topics in place
+        assertEquals(TopicProvisioner.Status.OK, provisioner(TopicProvisioner.Mode.CREATE)
+            .provision(TopicProvisioner.specs(config, "create-events", "create-admin-events")).get("create-events"));
+    }
+
+    @Test
+    void shouldOnlyReportMissingTopicsWhenVerifying() throws Exception {
+        Map<String, TopicProvisioner.Status> result = provisioner(TopicProvisioner.Mode.VERIFY)
+            .provision(TopicProvisioner.specs(new KafkaEventListenerConfig(), "verify-events", null));
+
+        assertEquals(Map.of("verify-events", TopicProvisioner.Status.MISSING), result);
+        assertFalse(admin.listTopics().names().get(10, TimeUnit.SECONDS).contains("verify-events"));
+    }
+
+    @Test
+    void shouldReportTopicsWithTooFewPartitionsWithoutChangingThem() throws Exception {
+        admin.createTopics(List.of(new NewTopic("small-events", Optional.of(2), Optional.empty())))
+            .all().get(10, TimeUnit.SECONDS);
+        KafkaEventListenerConfig config = new KafkaEventListenerConfig().setExpectedEventsPerSecond(4000);
+
+        Map<String, TopicProvisioner.Status> result = provisioner(TopicProvisioner.Mode.CREATE)
+            .provision(TopicProvisioner.specs(config, "small-events", null));
+
+        assertEquals(TopicProvisioner.Status.TOO_FEW_PARTITIONS, result.get("small-events"));
+        assertEquals(2, partitions("small-events"));
+    }
+
+    @Test
+    void shouldDeriveSizingFromTheExpectedRate() {
+        assertEquals(-1, TopicProvisioner.requiredPartitions(0, 1000));
+        assertEquals(1, TopicProvisioner.requiredPartitions(10, 1000));
+        assertEquals(3, TopicProvisioner.requiredPartitions(2001, 1000));
+        assertEquals(TopicProvisioner.MIN_SEGMENT_BYTES, TopicProvisioner.segmentBytes(1, 1024, 1));
+        assertEquals(TopicProvisioner.MAX_SEGMENT_BYTES, TopicProvisioner.segmentBytes(10_000, 1024, 1));
+        assertEquals(100L * 1024 * 3600 / 2, TopicProvisioner.segmentBytes(100, 1024, 2));
+    }
+
+    private static TopicProvisioner provisioner(TopicProvisioner.Mode mode) {
+        return new TopicProvisioner(admin, mode, 10_000);
+    }
+
+    private static int partitions(String topic) throws Exception {
+        return admin.describeTopics(List.of(topic)).allTopicNames().get(10, TimeUnit.SECONDS).get(topic)
+            .partitions().size();
+    }
+}
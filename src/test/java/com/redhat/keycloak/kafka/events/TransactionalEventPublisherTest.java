@@ -0,0 +1,176 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class TransactionalEventPublisherTest {
+
+    private final List<MockProducer<String, String>> producers = new ArrayList<>();
+    private final KafkaMockFactory factory = new KafkaMockFactory();
+    private TransactionalEventPublisher publisher;
+
+    @AfterEach
+    void tearDown() {
+        if (publisher != null) {
+            publisher.close();
+        }
+    }
+
+    @Test
+    void shouldCommitWhenBatchIsFull() {
+        publisher = new TransactionalEventPublisher(this::newProducer, 3, 60_000);
+
+        publisher.send(record("1"));
+        publisher.send(record("2"));
+        assertEquals(0, producers.get(0).commitCount());
+
+        publisher.send(record("3"));
+
+        assertEquals(1, producers.get(0).commitCount());
+        assertEquals(3, producers.get(0).history().size());
+    }
+
+    @Test
+    void shouldCommitOpenTransactionWhenIntervalElapses() throws Exception {
+        publisher = new TransactionalEventPublisher(this::newProducer, 100, 10);
+
+        publisher.send(record("1"));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (producers.get(0).commitCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, producers.get(0).history().size());
+    }
+
+    @Test
+    void shouldReplaceFencedProducerAndReplayPendingRecords() {
+        publisher = new TransactionalEventPublisher(this::newProducer, 2, 60_000);
+
+        publisher.send(record("1"));
+        producers.get(0).fenceProducer();
+        publisher.send(record("2"));
+
+        assertEquals(2, producers.size());
+        assertTrue(producers.get(0).history().isEmpty());
+        assertEquals(2, producers.get(1).history().size());
+        assertNotSame(producers.get(0), publisher.getProducer());
+    }
+
+    @Test
+    void shouldAbortAndReplayAfterAbortableError() {
+        publisher = new TransactionalEventPublisher(this::newProducer, 1, 60_000);
+        MockProducer<String, String> producer = producers.get(0);
+        producer.commitTransactionException = new KafkaException("transient");
+        AtomicLong dropped = new AtomicLong();
+        publisher.setDroppedListener(dropped::addAndGet);
+
+        // The replay fails as well, so the record is dropped and reported
+        assertThrows(KafkaException.class, () -> publisher.send(record("1")));
+
+        assertTrue(producer.transactionAborted());
+        assertEquals(1, producers.size());
+        assertEquals(1, dropped.get());
+        assertEquals(0, publisher.getUncommitted());
+    }
+
+    @Test
+    void shouldRetryACommitThatTimedOut() {
+        AtomicInteger timeouts = new AtomicInteger(TransactionalEventPublisher.COMMIT_ATTEMPTS - 1);
+        MockProducer<String, String> producer = timingOutProducer(timeouts);
+        publisher = new TransactionalEventPublisher(() -> producer, 1, 60_000);
+
+        publisher.send(record("1"));
+
+        assertEquals(1, producer.commitCount());
+        assertFalse(producer.transactionAborted());
+        assertEquals(0, publisher.getUncommitted());
+    }
+
+    @Test
+    void shouldKeepRecordsPendingWhileTheCommitTimesOut() {
+        AtomicInteger timeouts = new AtomicInteger(TransactionalEventPublisher.COMMIT_ATTEMPTS);
+        MockProducer<String, String> producer = timingOutProducer(timeouts);
+        publisher = new TransactionalEventPublisher(() -> producer, 1, 60_000);
+
+        assertThrows(TimeoutException.class, () -> publisher.send(record("1")));
+        assertEquals(1, publisher.getUncommitted());
+        assertFalse(producer.transactionAborted());
+
+        // The next send completes the open transaction before starting a new one
+        publisher.send(record("2"));
+
+        assertEquals(2, producer.commitCount());
+        assertEquals(2, producer.history().size());
+        assertEquals(0, publisher.getUncommitted());
+    }
+
+    @Test
+    void shouldPublishEventsTransactionallyWhenTransactionalIdIsConfigured() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of("transactional.id", "keycloak-1"), Map.of(), factory,
+            new KafkaEventListenerConfig().setTransactionBatchSize(2));
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+
+        listener.onEvent(event);
+        listener.onEvent(event);
+
+        MockProducer<?, ?> producer = (MockProducer<?, ?>) getProducer(listener);
+        assertTrue(producer.transactionInitialized());
+        assertEquals(1, producer.commitCount());
+        assertEquals(2, producer.history().size());
+        listener.shutdown();
+    }
+
+    private Producer<String, String> newProducer() {
+        @SuppressWarnings("unchecked")
+        MockProducer<String, String> producer = (MockProducer<String, String>) factory.createProducer("", "", Map.of());
+        producers.add(producer);
+        return producer;
+    }
+
+    private static MockProducer<String, String> timingOutProducer(AtomicInteger timeouts) {
+        return new MockProducer<>(true, (Partitioner) null, new StringSerializer(), new StringSerializer()) {
+            @Override
+            public synchronized void commitTransaction() {
+                if (timeouts.getAndDecrement() > 0) {
+                    throw new TimeoutException("Timeout expired while committing the transaction");
+                }
+                super.commitTransaction();
+            }
+        };
+    }
+
+    private static ProducerRecord<String, String> record(String value) {
+        return new ProducerRecord<>("keycloak-events", value);
+    }
+
+    private static Object getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return producerField.get(listener);
+    }
+}
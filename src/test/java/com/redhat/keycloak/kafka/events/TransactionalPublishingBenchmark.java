@@ -0,0 +1,79 @@
+package com.redhat.keycloak.kafka.events;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+/**
+ * Publishing throughput of the idempotent producer, with blocking and async confirmation, against commit-batched
+ * transactions, on the in-process broker: {@code mvn -B test -Dtest=TransactionalPublishingBenchmark}. The final
+ * flush commits the open transaction or waits for the outstanding acknowledgements, so the throughput including it
+ * compares delivered events.
+ */
+class TransactionalPublishingBenchmark {
+
+    private static final int THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 2000;
+
+    private static EmbeddedKafkaBroker broker;
+    private static int topics;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        broker = new EmbeddedKafkaBroker();
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.close();
+    }
+
+    @Test
+    void measureTransactionalAgainstIdempotentPublishing() throws Exception {
+        measure("idempotent, blocking confirmation", Map.of(),
+            new KafkaEventListenerConfig().setConfirmationMode(DeliveryConfirmation.Mode.BLOCKING));
+        measure("idempotent, async confirmation", Map.of(),
+            new KafkaEventListenerConfig().setConfirmationMode(DeliveryConfirmation.Mode.ASYNC));
+        measure("transactional, batches of 100", Map.of("transactional.id", "benchmark-" + UUID.randomUUID()),
+            new KafkaEventListenerConfig().setTransactionBatchSize(100).setTransactionCommitIntervalMs(100));
+    }
+
+    private static void measure(String name, Map<String, Object> overrides, KafkaEventListenerConfig config)
+        throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("linger.ms", "0");
+        properties.put("enable.idempotence", "true");
+        properties.put("acks", "all");
+        properties.putAll(overrides);
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider(broker.getBootstrapServers(),
+            "benchmark", "benchmark-" + ++topics, new String[] { "LOGIN" }, null, properties, null,
+            new KafkaProducerFactory(), config);
+        try {
+            double nanosPerEvent = Microbenchmark.measureConcurrent(name, THREADS, EVENTS_PER_THREAD, () -> {
+                Event event = new Event();
+                event.setId(UUID.randomUUID().toString());
+                event.setType(EventType.LOGIN);
+                event.setTime(System.currentTimeMillis());
+                event.setRealmId("realm");
+                event.setUserId("user");
+                listener.onEvent(event);
+                return event;
+            });
+            long startedAt = System.nanoTime();
+            listener.flush();
+            long flushNanos = System.nanoTime() - startedAt;
+            int events = THREADS * EVENTS_PER_THREAD;
+            System.out.println(String.format(Locale.ROOT, "  final flush %d us, %.0f events/s including the flush",
+                flushNanos / 1000, events * 1e9 / (nanosPerEvent * events + flushNanos)));
+        } finally {
+            listener.shutdown();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Retained heap per tracked user and cost of assigning a sequence: {@code mvn -B test -Dtest=UserSequenceTrackerBenchmark}.
+ */
+class UserSequenceTrackerBenchmark {
+
+    private static final int USERS = 200_000;
+
+    @Test
+    void measureFootprintPerUser() throws Exception {
+        String realmId = UUID.randomUUID().toString();
+        long before = usedHeap();
+        // Headroom so that no stripe evicts
+        UserSequenceTracker tracker = new UserSequenceTracker(2 * USERS, UUID.randomUUID().toString());
+        for (int i = 0; i < USERS; i++) {
+            tracker.next(realmId, UUID.randomUUID().toString(), i);
+        }
+        long after = usedHeap();
+        assertEquals(USERS, tracker.size());
+        System.out.println("retained bytes per tracked user " + (after - before) / USERS);
+
+        String[] userIds = new String[1024];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = UUID.randomUUID().toString();
+        }
+        int[] next = new int[1];
+        Microbenchmark.measure("next sequence of a tracked user",
+            () -> tracker.next(realmId, userIds[next[0]++ & (userIds.length - 1)], 0));
+        Microbenchmark.sink = tracker;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,76 @@
+package com.redhat.keycloak.kafka.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+class UserSequenceTrackerTest {
+
+    @Test
+    void shouldIncrementSequencePerUser() {
+        UserSequenceTracker tracker = new UserSequenceTracker(100, "node");
+
+        assertEquals(1, tracker.next("realm", "alice", 10).getValue());
+        assertEquals(2, tracker.next("realm", "alice", 20).getValue());
+        assertEquals(1, tracker.next("realm", "bob", 30).getValue());
+        assertEquals(1, tracker.next("other-realm", "alice", 40).getValue());
+        assertEquals("10-node", tracker.next("realm", "alice", 50).getEpoch());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedUsersAndStartNewEpoch() {
+        UserSequenceTracker tracker = new UserSequenceTracker(64, "node");
+        tracker.next("realm", "alice", 1);
+
+        for (int i = 0; i < 10_000; i++) {
+            tracker.next("realm", "user-" + i, 2);
+        }
+
+        assertTrue(tracker.size() <= 64);
+        UserSequenceTracker.Sequence sequence = tracker.next("realm", "alice", 3);
+        assertEquals(1, sequence.getValue());
+        assertEquals("3-node", sequence.getEpoch());
+    }
+
+    @Test
+    void shouldAddOrderingHeadersToPublishedEvents() throws Exception {
+        KafkaEventListenerProvider listener = new KafkaEventListenerProvider("", "", "keycloak-events",
+            new String[] { "LOGIN" }, null, Map.of(), new KafkaMockFactory());
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm");
+        event.setUserId("alice");
+        Event anonymous = new Event();
+        anonymous.setType(EventType.LOGIN);
+
+        listener.onEvent(event);
+        listener.onEvent(event);
+        listener.onEvent(anonymous);
+
+        MockProducer<?, ?> producer = getProducer(listener);
+        Headers first = producer.history().get(0).headers();
+        Headers second = producer.history().get(1).headers();
+        assertEquals("1", CloudEventHeaders.headerAsString(first, CloudEventHeaders.SEQUENCE));
+        assertEquals("2", CloudEventHeaders.headerAsString(second, CloudEventHeaders.SEQUENCE));
+        assertEquals(CloudEventHeaders.headerAsString(first, CloudEventHeaders.SEQUENCE_EPOCH),
+            CloudEventHeaders.headerAsString(second, CloudEventHeaders.SEQUENCE_EPOCH));
+        assertTrue(Long.parseLong(CloudEventHeaders.headerAsString(second, CloudEventHeaders.NODE_CLOCK))
+            > Long.parseLong(CloudEventHeaders.headerAsString(first, CloudEventHeaders.NODE_CLOCK)));
+        assertNull(CloudEventHeaders.headerAsString(producer.history().get(2).headers(), CloudEventHeaders.SEQUENCE));
+    }
+
+    private static MockProducer<?, ?> getProducer(KafkaEventListenerProvider listener) throws Exception {
+        Field producerField = KafkaEventListenerProvider.class.getDeclaredField("producer");
+        producerField.setAccessible(true);
+        return (MockProducer<?, ?>) producerField.get(listener);
+    }
+}